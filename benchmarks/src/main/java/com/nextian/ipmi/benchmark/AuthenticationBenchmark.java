@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.benchmark;
+
+import com.nextian.ipmi.coding.commands.PrivilegeLevel;
+import com.nextian.ipmi.coding.commands.session.Rakp1;
+import com.nextian.ipmi.coding.commands.session.Rakp1ResponseData;
+import com.nextian.ipmi.coding.security.AuthenticationAlgorithm;
+import com.nextian.ipmi.coding.security.CipherSuite;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computations of the RAKP handshake done by the remote console, with the authentication algorithm of the cipher
+ * suite (RAKP-HMAC-SHA1 for suite 3, RAKP-HMAC-MD5 for suite 8, RAKP-HMAC-SHA256 for suite 17):
+ * <ul>
+ * <li>checking the Key Exchange Authentication Code of RAKP Message 2,</li>
+ * <li>calculating the Key Exchange Authentication Code of RAKP Message 3,</li>
+ * <li>calculating the Session Integrity Key with {@link Rakp1#calculateSik},</li>
+ * <li>checking the Integrity Check Value of RAKP Message 4.</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthenticationBenchmark {
+
+    /**
+     * Session IDs, random numbers, GUID, role and username of RAKP Message 2.
+     */
+    private static final int RAKP2_BASE_SIZE = 58 + Fixtures.USERNAME.length();
+
+    /**
+     * Session IDs, random number and GUID of RAKP Message 3.
+     */
+    private static final int RAKP3_BASE_SIZE = 22 + Fixtures.USERNAME.length();
+
+    /**
+     * Random number, session ID and GUID of RAKP Message 4.
+     */
+    private static final int RAKP4_BASE_SIZE = 36;
+
+    @Param({"3", "8", "17"})
+    private int cipherSuite;
+
+    private AuthenticationAlgorithm algorithm;
+    private byte[] rakp2Base;
+    private byte[] rakp2Code;
+    private byte[] rakp3Base;
+    private byte[] rakp4Base;
+    private byte[] rakp4Code;
+    private byte[] sik;
+    private Rakp1 rakp1;
+    private Rakp1ResponseData rakp2;
+
+    @Setup
+    public void setUp() throws GeneralSecurityException {
+        CipherSuite suite = Fixtures.createCipherSuite(cipherSuite);
+        algorithm = suite.getAuthenticationAlgorithm();
+        rakp2Base = Fixtures.randomBytes(RAKP2_BASE_SIZE, 2);
+        rakp2Code = algorithm.getKeyExchangeAuthenticationCode(rakp2Base, Fixtures.PASSWORD);
+        rakp3Base = Fixtures.randomBytes(RAKP3_BASE_SIZE, 3);
+
+        rakp1 = new Rakp1(Fixtures.SESSION_ID, PrivilegeLevel.Administrator, Fixtures.USERNAME, Fixtures.PASSWORD,
+                null, suite);
+        rakp2 = new Rakp1ResponseData();
+        rakp2.setManagedSystemRandomNumber(Fixtures.randomBytes(16, 16));
+        rakp2.setManagedSystemGuid(Fixtures.randomBytes(16, 17));
+        sik = rakp1.calculateSik(rakp2);
+
+        rakp4Base = Fixtures.randomBytes(RAKP4_BASE_SIZE, 4);
+        Mac mac = Mac.getInstance(algorithm.getSecretKeyAlgorithmName());
+        mac.init(new SecretKeySpec(sik, algorithm.getSecretKeyAlgorithmName()));
+        rakp4Code = new byte[algorithm.getIntegrityCheckBaseLength()];
+        System.arraycopy(mac.doFinal(rakp4Base), 0, rakp4Code, 0, rakp4Code.length);
+        if (!algorithm.doIntegrityCheck(rakp4Base, rakp4Code, sik)) {
+            throw new IllegalStateException("Invalid RAKP Message 4 fixture");
+        }
+    }
+
+    @Benchmark
+    public boolean checkRakp2() throws GeneralSecurityException {
+        return algorithm.checkKeyExchangeAuthenticationCode(rakp2Base, rakp2Code, Fixtures.PASSWORD);
+    }
+
+    @Benchmark
+    public byte[] rakp3() throws GeneralSecurityException {
+        return algorithm.getKeyExchangeAuthenticationCode(rakp3Base, Fixtures.PASSWORD);
+    }
+
+    @Benchmark
+    public byte[] calculateSik() throws GeneralSecurityException {
+        return rakp1.calculateSik(rakp2);
+    }
+
+    @Benchmark
+    public boolean checkRakp4() throws GeneralSecurityException {
+        return algorithm.doIntegrityCheck(rakp4Base, rakp4Code, sik);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.benchmark;
+
+import com.nextian.ipmi.coding.security.CipherSuite;
+import com.nextian.ipmi.common.TypeConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the Cipher Suite Records received by Get Channel Cipher Suites, for the 18 standard cipher suites.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CipherSuiteBenchmark {
+
+    /**
+     * Authentication, integrity and confidentiality algorithms of the standard cipher suites 0-17.
+     */
+    private static final int[][] STANDARD_CIPHER_SUITES = {
+            {0, 0, 0}, {1, 0, 0}, {1, 1, 0}, {1, 1, 1}, {1, 1, 2}, {1, 1, 3},
+            {2, 0, 0}, {2, 2, 0}, {2, 2, 1}, {2, 2, 2}, {2, 2, 3}, {2, 3, 0},
+            {2, 3, 1}, {2, 3, 2}, {2, 3, 3}, {3, 0, 0}, {3, 4, 0}, {3, 4, 1},
+    };
+
+    private byte[] records;
+
+    @Setup
+    public void setUp() {
+        records = new byte[STANDARD_CIPHER_SUITES.length * 5];
+        for (int i = 0; i < STANDARD_CIPHER_SUITES.length; ++i) {
+            records[i * 5] = TypeConverter.intToByte(0xC0);
+            records[i * 5 + 1] = TypeConverter.intToByte(i);
+            records[i * 5 + 2] = TypeConverter.intToByte(STANDARD_CIPHER_SUITES[i][0]);
+            records[i * 5 + 3] = TypeConverter.intToByte(0x40 | STANDARD_CIPHER_SUITES[i][1]);
+            records[i * 5 + 4] = TypeConverter.intToByte(0x80 | STANDARD_CIPHER_SUITES[i][2]);
+        }
+    }
+
+    @Benchmark
+    public List<CipherSuite> getCipherSuites() {
+        return CipherSuite.getCipherSuites(records);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.benchmark;
+
+import com.nextian.ipmi.coding.security.ConfidentialityAlgorithm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AES-CBC-128 encryption and decryption of the IPMI payloads. Sizes cover a typical request, a typical response and
+ * a large FRU or SDR read response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfidentialityBenchmark {
+
+    @Param({"8", "32", "128"})
+    private int payloadSize;
+
+    private ConfidentialityAlgorithm algorithm;
+    private byte[] payload;
+    private byte[] encrypted;
+
+    @Setup
+    public void setUp() throws GeneralSecurityException {
+        algorithm = Fixtures.createCipherSuite(17).getConfidentialityAlgorithm();
+        payload = Fixtures.randomBytes(payloadSize, payloadSize);
+        encrypted = algorithm.encrypt(payload);
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws GeneralSecurityException {
+        return algorithm.encrypt(payload);
+    }
+
+    @Benchmark
+    public byte[] decrypt() {
+        return algorithm.decrypt(encrypted);
+    }
+}
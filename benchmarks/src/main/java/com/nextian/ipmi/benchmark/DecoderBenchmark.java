@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.benchmark;
+
+import com.nextian.ipmi.coding.Decoder;
+import com.nextian.ipmi.coding.commands.IpmiVersion;
+import com.nextian.ipmi.coding.commands.ResponseData;
+import com.nextian.ipmi.coding.commands.chassis.GetChassisStatus;
+import com.nextian.ipmi.coding.payload.lan.IPMIException;
+import com.nextian.ipmi.coding.protocol.AuthenticationType;
+import com.nextian.ipmi.coding.protocol.IpmiMessage;
+import com.nextian.ipmi.coding.protocol.decoder.Protocolv20Decoder;
+import com.nextian.ipmi.coding.rmcp.RmcpDecoder;
+import com.nextian.ipmi.coding.rmcp.RmcpMessage;
+import com.nextian.ipmi.coding.security.CipherSuite;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of the Get Chassis Status response received in a session. Stages of the decoding path are measured
+ * separately: {@link RmcpDecoder}, {@link Protocolv20Decoder} (including decryption and the IPMI LAN response) and
+ * {@link GetChassisStatus#getResponseData}, followed by the whole path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecoderBenchmark {
+
+    @Param({"0", "3", "17"})
+    private int cipherSuite;
+
+    private byte[] datagram;
+    private RmcpMessage rmcpMessage;
+    private IpmiMessage ipmiMessage;
+    private Protocolv20Decoder decoder;
+    private GetChassisStatus command;
+
+    @Setup
+    public void setUp() throws Exception {
+        CipherSuite suite = Fixtures.createCipherSuite(cipherSuite);
+        datagram = Fixtures.encodeChassisStatusResponse(suite, 1);
+        decoder = new Protocolv20Decoder(suite);
+        command = new GetChassisStatus(IpmiVersion.V20, suite, AuthenticationType.RMCPPlus);
+        rmcpMessage = RmcpDecoder.decode(datagram);
+        ipmiMessage = decoder.decode(rmcpMessage);
+        // fail fast when the fixture is not understood by the decoder
+        command.getResponseData(ipmiMessage);
+    }
+
+    @Benchmark
+    public RmcpMessage rmcp() {
+        return RmcpDecoder.decode(datagram);
+    }
+
+    @Benchmark
+    public IpmiMessage protocol() throws GeneralSecurityException {
+        return decoder.decode(rmcpMessage);
+    }
+
+    @Benchmark
+    public ResponseData responseData() throws IPMIException {
+        return command.getResponseData(ipmiMessage);
+    }
+
+    @Benchmark
+    public ResponseData decode() throws GeneralSecurityException, IPMIException {
+        return Decoder.decode(datagram, decoder, command);
+    }
+}
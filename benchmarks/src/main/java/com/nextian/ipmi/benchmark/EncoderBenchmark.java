@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.benchmark;
+
+import com.nextian.ipmi.coding.Encoder;
+import com.nextian.ipmi.coding.commands.IpmiVersion;
+import com.nextian.ipmi.coding.commands.chassis.GetChassisStatus;
+import com.nextian.ipmi.coding.protocol.AuthenticationType;
+import com.nextian.ipmi.coding.protocol.encoder.Protocolv20Encoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding of the Get Chassis Status request sent in a session, from the command to the RMCP datagram.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncoderBenchmark {
+
+    @Param({"0", "3", "17"})
+    private int cipherSuite;
+
+    private GetChassisStatus command;
+    private Protocolv20Encoder encoder;
+    private int sequenceNumber;
+
+    @Setup
+    public void setUp() throws GeneralSecurityException {
+        command = new GetChassisStatus(IpmiVersion.V20, Fixtures.createCipherSuite(cipherSuite),
+                AuthenticationType.RMCPPlus);
+        encoder = new Protocolv20Encoder();
+    }
+
+    @Benchmark
+    public byte[] encode() throws GeneralSecurityException {
+        return Encoder.encode(encoder, command, ++sequenceNumber, Fixtures.SESSION_ID);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.benchmark;
+
+import com.nextian.ipmi.coding.commands.CommandCodes;
+import com.nextian.ipmi.coding.payload.PlainMessage;
+import com.nextian.ipmi.coding.payload.lan.NetworkFunction;
+import com.nextian.ipmi.coding.protocol.AuthenticationType;
+import com.nextian.ipmi.coding.protocol.Ipmiv20Message;
+import com.nextian.ipmi.coding.protocol.PayloadType;
+import com.nextian.ipmi.coding.protocol.encoder.Protocolv20Encoder;
+import com.nextian.ipmi.coding.rmcp.RmcpEncoder;
+import com.nextian.ipmi.coding.rmcp.RmcpIpmiMessage;
+import com.nextian.ipmi.coding.security.CipherSuite;
+import com.nextian.ipmi.coding.security.SecurityConstants;
+import com.nextian.ipmi.common.TypeConverter;
+
+import java.security.GeneralSecurityException;
+import java.util.Random;
+
+/**
+ * Data shared by the benchmarks.
+ */
+final class Fixtures {
+
+    /**
+     * Managed system session ID used in the encoded messages.
+     */
+    static final int SESSION_ID = 0x02030405;
+
+    /**
+     * Remote console session ID used in the encoded responses.
+     */
+    static final int CONSOLE_SESSION_ID = 0x01020304;
+
+    static final String USERNAME = "admin";
+    static final String PASSWORD = "password";
+
+    private static final byte BMC_ADDRESS = 0x20;
+    private static final byte REMOTE_CONSOLE_ADDRESS = (byte) 0x81;
+
+    /**
+     * Creates one of the cipher suites supported by most BMCs with the algorithms initialized with a constant
+     * Session Integrity Key.
+     *
+     * @param id 0, 3, 8 or 17
+     * @return initialized cipher suite
+     * @throws GeneralSecurityException when initialization of the algorithms fails
+     */
+    static CipherSuite createCipherSuite(int id) throws GeneralSecurityException {
+        CipherSuite cipherSuite = newCipherSuite(id);
+        int sikLength = cipherSuite.getAuthenticationAlgorithm().getKeyLength();
+        cipherSuite.initializeAlgorithms(randomBytes(sikLength, id));
+        return cipherSuite;
+    }
+
+    /**
+     * @param id 0, 3, 8 or 17
+     * @return cipher suite with the algorithms not initialized, as used to open a session
+     */
+    static CipherSuite newCipherSuite(int id) {
+        switch (id) {
+            case 0:
+                return CipherSuite.getEmpty();
+            case 3:
+                return new CipherSuite((byte) 3, SecurityConstants.AA_RAKP_HMAC_SHA1,
+                        SecurityConstants.CA_AES_CBC128, SecurityConstants.IA_HMAC_SHA1_96);
+            case 8:
+                return new CipherSuite((byte) 8, SecurityConstants.AA_RAKP_HMAC_MD5,
+                        SecurityConstants.CA_AES_CBC128, SecurityConstants.IA_HMAC_MD5_128);
+            case 17:
+                return new CipherSuite((byte) 17, SecurityConstants.AA_RAKP_HMAC_SHA256,
+                        SecurityConstants.CA_AES_CBC128, SecurityConstants.IA_HMAC_SHA256_128);
+            default:
+                throw new IllegalArgumentException("Unsupported cipher suite " + id);
+        }
+    }
+
+    /**
+     * Encodes Get Chassis Status response the way the BMC does.
+     *
+     * @param cipherSuite    initialized cipher suite of the session
+     * @param sequenceNumber session sequence number and the IPMI LAN sequence number (modulo 64)
+     * @return RMCP datagram
+     * @throws GeneralSecurityException when encryption or authentication fails
+     */
+    static byte[] encodeChassisStatusResponse(CipherSuite cipherSuite, int sequenceNumber)
+            throws GeneralSecurityException {
+        byte[] data = {0x01, 0x00, 0x00, 0x00};
+        byte[] lanResponse = new byte[8 + data.length];
+        lanResponse[0] = REMOTE_CONSOLE_ADDRESS;
+        lanResponse[1] = TypeConverter.intToByte(NetworkFunction.ChassisResponse.getCode() << 2);
+        lanResponse[2] = checksum(lanResponse, 0, 2);
+        lanResponse[3] = BMC_ADDRESS;
+        lanResponse[4] = TypeConverter.intToByte((sequenceNumber % 64) << 2);
+        lanResponse[5] = CommandCodes.GET_CHASSIS_STATUS;
+        lanResponse[6] = 0;
+        System.arraycopy(data, 0, lanResponse, 7, data.length);
+        lanResponse[lanResponse.length - 1] = checksum(lanResponse, 3, lanResponse.length - 1);
+
+        Ipmiv20Message message = new Ipmiv20Message(cipherSuite.getConfidentialityAlgorithm());
+        message.setAuthenticationType(AuthenticationType.RMCPPlus);
+        message.setPayloadType(PayloadType.Ipmi);
+        message.setSessionID(CONSOLE_SESSION_ID);
+        message.setSessionSequenceNumber(sequenceNumber);
+        message.setPayloadAuthenticated(cipherSuite.getIntegrityAlgorithmCode() != SecurityConstants.IA_NONE);
+        message.setPayloadEncrypted(cipherSuite.getConfidentialityAlgorithmCode() != SecurityConstants.CA_NONE);
+        message.setPayload(new PlainMessage(lanResponse));
+        message.setAuthCode(cipherSuite.getIntegrityAlgorithm().generateAuthCode(
+                message.getIntegrityAlgorithmBase(new Protocolv20Encoder())));
+        return RmcpEncoder.encode(new RmcpIpmiMessage(new Protocolv20Encoder().encode(message)));
+    }
+
+    /**
+     * @param length length of the array
+     * @param seed   seed of the generator, so the results are repeatable
+     * @return array filled with pseudo-random bytes
+     */
+    static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte checksum(byte[] data, int from, int to) {
+        int sum = 0;
+        for (int i = from; i < to; ++i) {
+            sum += TypeConverter.byteToInt(data[i]);
+        }
+        return TypeConverter.intToByte((-sum) & 0xff);
+    }
+
+    private Fixtures() {
+    }
+}
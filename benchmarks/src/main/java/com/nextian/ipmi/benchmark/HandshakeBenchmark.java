@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.benchmark;
+
+import com.nextian.ipmi.api.async.ConnectionHandle;
+import com.nextian.ipmi.api.sync.IpmiConnector;
+import com.nextian.ipmi.coding.commands.IpmiVersion;
+import com.nextian.ipmi.coding.commands.PrivilegeLevel;
+import com.nextian.ipmi.coding.commands.ResponseData;
+import com.nextian.ipmi.coding.commands.chassis.GetChassisStatus;
+import com.nextian.ipmi.coding.protocol.AuthenticationType;
+import com.nextian.ipmi.sim.BmcSimulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end cost of the session establishment (Open Session, RAKP 1-4 and Close Session) and of an authenticated
+ * request in the session, against a {@link BmcSimulator} in the same process. No network is involved, so the
+ * results cover the work of both sides and the thread hand-offs of the connector.
+ * <p>
+ * {@link #fastHandshake()} establishes the session with {@link IpmiConnector#setFastHandshake(boolean)} enabled, so
+ * comparing it with {@link #handshake()} gives the time-to-SessionValid saved by the fast path. Both include the same
+ * Close Session exchange.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandshakeBenchmark {
+
+    @Param({"0", "3", "17"})
+    private int cipherSuite;
+
+    private BmcSimulator simulator;
+    private IpmiConnector connector;
+    private IpmiConnector fastConnector;
+    private InetAddress address;
+    private ConnectionHandle session;
+    private GetChassisStatus request;
+
+    @Setup
+    public void setUp() throws Exception {
+        simulator = new BmcSimulator(1);
+        address = simulator.addBmcs(1, Fixtures.USERNAME, Fixtures.PASSWORD).get(0);
+        // sessions are closed without waiting for the response, the limit must not be hit by the ones being closed
+        simulator.getBmc(address).setMaxSessions(Integer.MAX_VALUE);
+        connector = new IpmiConnector(simulator);
+        fastConnector = new IpmiConnector(simulator);
+        fastConnector.setFastHandshake(true);
+
+        session = connector.createConnection(address, Fixtures.newCipherSuite(cipherSuite),
+                PrivilegeLevel.Administrator);
+        connector.openSession(session, Fixtures.USERNAME, Fixtures.PASSWORD, null);
+        request = new GetChassisStatus(IpmiVersion.V20, session.getCipherSuite(), AuthenticationType.RMCPPlus);
+    }
+
+    @TearDown
+    public void tearDown() {
+        connector.tearDown();
+        fastConnector.tearDown();
+        simulator.shutdown();
+    }
+
+    @Benchmark
+    public ConnectionHandle handshake() throws Exception {
+        return establishSession(connector);
+    }
+
+    @Benchmark
+    public ConnectionHandle fastHandshake() throws Exception {
+        return establishSession(fastConnector);
+    }
+
+    @Benchmark
+    public ResponseData request() throws Exception {
+        return connector.sendMessage(session, request);
+    }
+
+    private ConnectionHandle establishSession(IpmiConnector connector) throws Exception {
+        ConnectionHandle handle = connector.createConnection(address, Fixtures.newCipherSuite(cipherSuite),
+                PrivilegeLevel.Administrator);
+        try {
+            connector.openSession(handle, Fixtures.USERNAME, Fixtures.PASSWORD, null);
+            connector.closeSession(handle);
+        } finally {
+            connector.closeConnection(handle);
+        }
+        return handle;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.benchmark;
+
+import com.nextian.ipmi.coding.security.IntegrityAlgorithm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generation of the AuthCode of the session messages by the integrity algorithm of the cipher suite
+ * (HMAC-SHA1-96 for suite 3, HMAC-MD5-128 for suite 8, HMAC-SHA256-128 for suite 17). The base consists of the
+ * session header, the encrypted payload and the integrity pad.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IntegrityBenchmark {
+
+    @Param({"3", "8", "17"})
+    private int cipherSuite;
+
+    @Param({"48", "64", "160"})
+    private int baseSize;
+
+    private IntegrityAlgorithm algorithm;
+    private byte[] base;
+
+    @Setup
+    public void setUp() throws GeneralSecurityException {
+        algorithm = Fixtures.createCipherSuite(cipherSuite).getIntegrityAlgorithm();
+        base = Fixtures.randomBytes(baseSize, baseSize);
+    }
+
+    @Benchmark
+    public byte[] generateAuthCode() {
+        return algorithm.generateAuthCode(base);
+    }
+}
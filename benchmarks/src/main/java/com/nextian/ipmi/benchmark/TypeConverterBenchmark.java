@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.benchmark;
+
+import com.nextian.ipmi.common.TypeConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TypeConverter} helpers used on every encoded and decoded message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypeConverterBenchmark {
+
+    private int value = 0x12345678;
+    private byte[] littleEndian = {0x78, 0x56, 0x34, 0x12};
+    private byte[] bcdPlus = {0x12, 0x34, 0x5a, (byte) 0xbc};
+    private byte[] sixBitAscii = {0x29, (byte) 0xdc, (byte) 0xa6, 0x00, 0x26, (byte) 0xa5};
+
+    @Benchmark
+    public byte[] intToByteArray() {
+        return TypeConverter.intToByteArray(value);
+    }
+
+    @Benchmark
+    public byte[] intToLittleEndianByteArray() {
+        return TypeConverter.intToLittleEndianByteArray(value);
+    }
+
+    @Benchmark
+    public int littleEndianByteArrayToInt() {
+        return TypeConverter.littleEndianByteArrayToInt(littleEndian);
+    }
+
+    @Benchmark
+    public int byteToInt() {
+        return TypeConverter.byteToInt(littleEndian[3]);
+    }
+
+    @Benchmark
+    public byte intToByte() {
+        return TypeConverter.intToByte(value & 0xff);
+    }
+
+    @Benchmark
+    public String decodeBcdPlus() {
+        return TypeConverter.decodeBcdPlus(bcdPlus);
+    }
+
+    @Benchmark
+    public String decode6bitAscii() {
+        return TypeConverter.decode6bitAscii(sixBitAscii);
+    }
+}
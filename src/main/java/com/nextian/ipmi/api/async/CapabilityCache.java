@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.api.async;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.nextian.ipmi.coding.commands.PrivilegeLevel;
+import com.nextian.ipmi.coding.commands.session.GetChannelAuthenticationCapabilitiesResponseData;
+import com.nextian.ipmi.coding.security.CipherSuite;
+import com.nextian.ipmi.common.GsonFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-host cache of the cipher suites and channel authentication capabilities reported by BMCs. Entries expire after
+ * the time to live. With the capabilities known, {@link IpmiAsyncConnector#createConnection(InetAddress,
+ * PrivilegeLevel)} skips the discovery phase and the connection goes straight to Open Session, and
+ * {@link IpmiAsyncConnector#getChannelAuthenticationCapabilities} answers from the cache without sending a request.
+ * <p>
+ * Cache may be persisted with {@link #save(File)} and restored with {@link #load(File)}, so the discovery is skipped
+ * also after restart.
+ */
+public class CapabilityCache {
+
+    /**
+     * Default time to live of the entries in milliseconds (24 hours).
+     */
+    public static final long DEFAULT_TTL = 24 * 60 * 60 * 1000L;
+
+    private final long ttl;
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    public CapabilityCache() {
+        this(DEFAULT_TTL);
+    }
+
+    /**
+     * @param ttl time to live of the entries in milliseconds
+     */
+    public CapabilityCache(long ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * @param address address of the BMC
+     * @return new instances of the cipher suites reported by the BMC or null if not known
+     */
+    public List<CipherSuite> getCipherSuites(InetAddress address) {
+        byte[] codes;
+        synchronized (entries) {
+            Entry entry = getEntry(address);
+            if (entry == null || entry.cipherSuites == null) {
+                return null;
+            }
+            codes = entry.cipherSuites;
+        }
+        // Cipher suites keep session keys once initialized, so cached instances are never handed out
+        List<CipherSuite> suites = new ArrayList<CipherSuite>(codes.length / 4);
+        for (int i = 0; i + 3 < codes.length; i += 4) {
+            suites.add(new CipherSuite(codes[i], codes[i + 1], codes[i + 2], codes[i + 3]));
+        }
+        return suites;
+    }
+
+    /**
+     * @param address      address of the BMC
+     * @param cipherSuites cipher suites reported by the BMC
+     */
+    public void putCipherSuites(InetAddress address, List<CipherSuite> cipherSuites) {
+        byte[] codes = new byte[cipherSuites.size() * 4];
+        int i = 0;
+        for (CipherSuite suite : cipherSuites) {
+            codes[i++] = suite.getId();
+            codes[i++] = suite.getAuthenticationAlgorithmCode();
+            codes[i++] = suite.getConfidentialityAlgorithmCode();
+            codes[i++] = suite.getIntegrityAlgorithmCode();
+        }
+        synchronized (entries) {
+            Entry entry = getOrCreateEntry(address);
+            entry.cipherSuites = codes;
+        }
+    }
+
+    /**
+     * @param address        address of the BMC
+     * @param privilegeLevel privilege level the capabilities were requested for
+     * @return capabilities reported by the BMC or null if not known
+     */
+    public GetChannelAuthenticationCapabilitiesResponseData getAuthenticationCapabilities(
+            InetAddress address, PrivilegeLevel privilegeLevel) {
+        synchronized (entries) {
+            Entry entry = getEntry(address);
+            return entry == null ? null : entry.authenticationCapabilities.get(privilegeLevel.name());
+        }
+    }
+
+    /**
+     * @param address        address of the BMC
+     * @param privilegeLevel privilege level the capabilities were requested for
+     * @param capabilities   capabilities reported by the BMC
+     */
+    public void putAuthenticationCapabilities(InetAddress address, PrivilegeLevel privilegeLevel,
+                                              GetChannelAuthenticationCapabilitiesResponseData capabilities) {
+        synchronized (entries) {
+            getOrCreateEntry(address).authenticationCapabilities.put(privilegeLevel.name(), capabilities);
+        }
+    }
+
+    /**
+     * Removes capabilities of the BMC, e.g. after session could not be opened with the cached ones.
+     *
+     * @param address address of the BMC
+     */
+    public void invalidate(InetAddress address) {
+        synchronized (entries) {
+            entries.remove(address.getHostAddress());
+        }
+    }
+
+    /**
+     * Writes not expired entries to the file as JSON.
+     *
+     * @param file file to write
+     * @throws IOException when file cannot be written
+     */
+    public void save(File file) throws IOException {
+        String json;
+        synchronized (entries) {
+            removeExpired();
+            json = GsonFactory.getGson().toJson(entries);
+        }
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(json);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Reads entries written by {@link #save(File)}. Expired entries are skipped, entries already in the cache are
+     * replaced.
+     *
+     * @param file file to read
+     * @throws IOException when file cannot be read or has invalid format
+     */
+    public void load(File file) throws IOException {
+        Map<String, Entry> loaded;
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            loaded = GsonFactory.getGson().fromJson(reader, new TypeToken<Map<String, Entry>>() {
+            }.getType());
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid capability cache file " + file, e);
+        } finally {
+            reader.close();
+        }
+        if (loaded == null) {
+            return;
+        }
+        synchronized (entries) {
+            for (Map.Entry<String, Entry> item : loaded.entrySet()) {
+                if (item.getValue().authenticationCapabilities == null) {
+                    item.getValue().authenticationCapabilities =
+                            new HashMap<String, GetChannelAuthenticationCapabilitiesResponseData>();
+                }
+                entries.put(item.getKey(), item.getValue());
+            }
+            removeExpired();
+        }
+    }
+
+    private Entry getEntry(InetAddress address) {
+        Entry entry = entries.get(address.getHostAddress());
+        if (entry != null && System.currentTimeMillis() - entry.created >= ttl) {
+            entries.remove(address.getHostAddress());
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Time to live of the entry starts over, since the caller is about to store freshly discovered data in it.
+     */
+    private Entry getOrCreateEntry(InetAddress address) {
+        Entry entry = getEntry(address);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(address.getHostAddress(), entry);
+        }
+        entry.created = System.currentTimeMillis();
+        return entry;
+    }
+
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        List<String> expired = new ArrayList<String>();
+        for (Map.Entry<String, Entry> item : entries.entrySet()) {
+            if (now - item.getValue().created >= ttl) {
+                expired.add(item.getKey());
+            }
+        }
+        for (String key : expired) {
+            entries.remove(key);
+        }
+    }
+
+    private static class Entry {
+        private long created;
+
+        /**
+         * Id and algorithm codes (authentication, confidentiality, integrity) of the cipher suites, 4 bytes per suite.
+         */
+        private byte[] cipherSuites;
+
+        /**
+         * Capabilities by privilege level name.
+         */
+        private Map<String, GetChannelAuthenticationCapabilitiesResponseData> authenticationCapabilities =
+                new HashMap<String, GetChannelAuthenticationCapabilitiesResponseData>();
+    }
+}
@@ -17,6 +17,9 @@ import com.nextian.ipmi.connection.ConnectionManager;
  * Handle of the pseudo connection built on UDP protocol.
  * The handle property is used identify created by {@link ConnectionManager ) connection entry.
  * On IPMI capabilities request cipherSuite and privilegeLevel values may be set.
+ * <p>
+ * The handle value combines the slot of the connection in {@link ConnectionManager} with the slot's generation, so a
+ * handle of a closed connection stays invalid after its slot is reused.
  */
 public class ConnectionHandle {
     private final int handle;
@@ -76,4 +79,28 @@ public class ConnectionHandle {
     public int getHandle() {
         return handle;
     }
+
+    /**
+     * @return index of the slot the connection occupies in {@link ConnectionManager}
+     */
+    public int getSlot() {
+        return ConnectionManager.getSlot(handle);
+    }
+
+    /**
+     * @return generation of the slot at the time the connection was created
+     */
+    public int getGeneration() {
+        return ConnectionManager.getGeneration(handle);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ConnectionHandle && ((ConnectionHandle) o).handle == handle;
+    }
+
+    @Override
+    public int hashCode() {
+        return handle;
+    }
 }
@@ -16,11 +16,18 @@ import com.nextian.ipmi.coding.commands.PrivilegeLevel;
 import com.nextian.ipmi.coding.commands.ResponseData;
 import com.nextian.ipmi.coding.commands.session.GetChannelAuthenticationCapabilitiesResponseData;
 import com.nextian.ipmi.coding.security.CipherSuite;
+import com.nextian.ipmi.connection.CircuitOpenException;
 import com.nextian.ipmi.connection.Connection;
 import com.nextian.ipmi.connection.ConnectionException;
+import com.nextian.ipmi.connection.ConnectionHealth;
 import com.nextian.ipmi.connection.ConnectionListener;
 import com.nextian.ipmi.connection.ConnectionManager;
+import com.nextian.ipmi.connection.SessionState;
 import com.nextian.ipmi.connection.queue.MessageQueue;
+import com.nextian.ipmi.metrics.ConnectionMetricsSnapshot;
+import com.nextian.ipmi.metrics.ConnectorMetricsSnapshot;
+import com.nextian.ipmi.metrics.Counter;
+import com.nextian.ipmi.transport.Messenger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,6 +60,9 @@ public class IpmiAsyncConnector implements ConnectionListener {
 
     private ConnectionManager connectionManager;
     private int retries;
+    private CapabilityCache capabilityCache = new CapabilityCache();
+    private boolean fastHandshake;
+    private volatile boolean shuttingDown;
 
 
     /**
@@ -111,6 +121,18 @@ public class IpmiAsyncConnector implements ConnectionListener {
         loadProperties(retries);
     }
 
+    /**
+     * Create {@link IpmiAsyncConnector} communicating through the given {@link Messenger}, e.g. an in-process
+     * simulator.
+     *
+     * @param messenger {@link Messenger} to be used in communication
+     */
+    public IpmiAsyncConnector(Messenger messenger) {
+        listeners = new ArrayList<IpmiListener>();
+        connectionManager = new ConnectionManager(messenger);
+        loadProperties(DEFAULT_RETRIES_NUMBER);
+    }
+
     private void loadProperties(int retries) {
         this.retries = retries;
     }
@@ -146,8 +168,64 @@ public class IpmiAsyncConnector implements ConnectionListener {
         return connectionHandle;
     }
 
+    /**
+     * Creates connection to the remote host and prepares it for {@link #openSession}. When cipher suites of the host
+     * are in the {@link CapabilityCache}, the strongest supported one is picked and the discovery phase is skipped,
+     * otherwise cipher suites and authentication capabilities are queried and stored in the cache.
+     *
+     * @param address        {@link InetAddress} of the remote host
+     * @param privilegeLevel {@link PrivilegeLevel} requested for the session
+     * @return handle to the connection with cipher suite and privilege level set
+     * @throws ConnectionException  when discovery fails or the host supports no cipher suite known to the API
+     * @throws InterruptedException when thread is interrupted
+     */
+    public ConnectionHandle createConnection(InetAddress address, PrivilegeLevel privilegeLevel)
+            throws ConnectionException, InterruptedException {
+        List<CipherSuite> cipherSuites = capabilityCache.getCipherSuites(address);
+        if (cipherSuites != null) {
+            CipherSuite cipherSuite = selectStrongestCipherSuite(cipherSuites);
+            if (cipherSuite != null) {
+                LOGGER.debug("Using cached capabilities of {}", address);
+                return createConnection(address, cipherSuite, privilegeLevel);
+            }
+        }
+
+        ConnectionHandle handle = createConnection(address);
+        try {
+            CipherSuite cipherSuite = selectStrongestCipherSuite(getAvailableCipherSuites(handle));
+            if (cipherSuite == null) {
+                throw new ConnectionException("No supported cipher suite");
+            }
+            getChannelAuthenticationCapabilities(handle, cipherSuite, privilegeLevel);
+        } catch (ConnectionException e) {
+            closeConnection(handle);
+            throw e;
+        } catch (InterruptedException e) {
+            closeConnection(handle);
+            throw e;
+        }
+        return handle;
+    }
+
+    /**
+     * @return cache of the cipher suites and authentication capabilities discovered by the connector
+     */
+    public CapabilityCache getCapabilityCache() {
+        return capabilityCache;
+    }
+
+    /**
+     * Replaces cache of the discovered capabilities, e.g. with one shared by several connectors or loaded from file.
+     *
+     * @param capabilityCache cache to use
+     */
+    public void setCapabilityCache(CapabilityCache capabilityCache) {
+        this.capabilityCache = capabilityCache;
+    }
+
     /**
      * Gets {@link CipherSuite}s available for a connection. Those are all cipher suites reported by IPMI server.
+     * The server is queried only once per connection, afterwards the suites are taken from {@link CapabilityCache}.
      *
      * @param connectionHandle connection to retrieve cipher suites for
      * @return list of the {@link CipherSuite}s that are allowed for the connection
@@ -157,6 +235,13 @@ public class IpmiAsyncConnector implements ConnectionListener {
      */
     public List<CipherSuite> getAvailableCipherSuites(ConnectionHandle connectionHandle)
             throws ConnectionException, InterruptedException {
+        Connection connection = getConnection(connectionHandle);
+        if (!connection.isCipherDiscoveryPending()) {
+            List<CipherSuite> cached = capabilityCache.getCipherSuites(connection.getRemoteMachineAddress());
+            if (cached != null) {
+                return cached;
+            }
+        }
         ConnectionException lastException = null;
         int attemptNumber = 0;
         List<CipherSuite> result = null;
@@ -172,6 +257,9 @@ public class IpmiAsyncConnector implements ConnectionListener {
         if (result == null && lastException != null) {
             throw lastException;
         }
+        if (result != null) {
+            capabilityCache.putCipherSuites(connection.getRemoteMachineAddress(), result);
+        }
         return result;
     }
 
@@ -231,13 +319,19 @@ public class IpmiAsyncConnector implements ConnectionListener {
      */
     public CipherSuite getStrongestCipherSuite(ConnectionHandle connectionHandle)
             throws ConnectionException, InterruptedException {
-        List<CipherSuite> cipherSuites = getAvailableCipherSuites(connectionHandle);
+        return selectStrongestCipherSuite(getAvailableCipherSuites(connectionHandle));
+    }
+
+    /**
+     * @return the strongest cipher suite from the list supported by API or null if there is none
+     */
+    private CipherSuite selectStrongestCipherSuite(List<CipherSuite> cipherSuites) {
         CipherSuite cipherSuite = null;
         int i;
 
         for(i = 0; cipherSuite == null && i < CIPHER_SUITE_RECOMMENDATION_LIST.length; i++) {
             try {
-                if (cipherSuites.size() >= CIPHER_SUITE_RECOMMENDATION_LIST[i]) {
+                if (cipherSuites.size() > CIPHER_SUITE_RECOMMENDATION_LIST[i]) {
                     CipherSuite item = cipherSuites.get(CIPHER_SUITE_RECOMMENDATION_LIST[i]);
                     if (item.getAuthenticationAlgorithm() != null && item.getIntegrityAlgorithm() != null &&
                             item.getConfidentialityAlgorithm() != null) {
@@ -253,7 +347,8 @@ public class IpmiAsyncConnector implements ConnectionListener {
     }
 
     /**
-     * Gets authentication capabilities for a connection.
+     * Gets authentication capabilities for a connection. When capabilities of the host for the privilege level are in
+     * the {@link CapabilityCache}, the cached ones are returned and no request is sent.
      *
      * @param connectionHandle        {@link ConnectionHandle} to retrieve capabilities for
      * @param cipherSuite             {@link CipherSuite} to be used during the connection
@@ -266,9 +361,17 @@ public class IpmiAsyncConnector implements ConnectionListener {
     public GetChannelAuthenticationCapabilitiesResponseData getChannelAuthenticationCapabilities(
             ConnectionHandle connectionHandle, CipherSuite cipherSuite, PrivilegeLevel requestedPrivilegeLevel)
             throws InterruptedException, ConnectionException {
+        Connection connection = getConnection(connectionHandle);
+        GetChannelAuthenticationCapabilitiesResponseData result = capabilityCache.getAuthenticationCapabilities(
+                connection.getRemoteMachineAddress(), requestedPrivilegeLevel);
+        if (result != null) {
+            connection.skipAuthenticationCapabilities();
+            connectionHandle.setCipherSuite(cipherSuite);
+            connectionHandle.setPrivilegeLevel(requestedPrivilegeLevel);
+            return result;
+        }
         int attemptNumber = 0;
         ConnectionException lastException = null;
-        GetChannelAuthenticationCapabilitiesResponseData result = null;
         while (attemptNumber <= retries && result == null) {
             try {
                 ++attemptNumber;
@@ -276,6 +379,8 @@ public class IpmiAsyncConnector implements ConnectionListener {
                                 connectionHandle.getHandle(), cipherSuite, requestedPrivilegeLevel);
                 connectionHandle.setCipherSuite(cipherSuite);
                 connectionHandle.setPrivilegeLevel(requestedPrivilegeLevel);
+                capabilityCache.putAuthenticationCapabilities(
+                        connection.getRemoteMachineAddress(), requestedPrivilegeLevel, result);
             } catch (ConnectionException e) {
                 LOGGER.debug("Failed to receive answer, cause:", e);
                 lastException = e;
@@ -287,6 +392,17 @@ public class IpmiAsyncConnector implements ConnectionListener {
         return result;
     }
 
+    /**
+     * Enables fast handshake mode of {@link #openSession}: Get Channel Authentication Capabilities probe is sent
+     * together with the Open Session request and RAKP Message 1 follows the Open Session response without waiting
+     * for the caller's thread. Disabled by default.
+     *
+     * @param fastHandshake true to enable fast handshake
+     */
+    public void setFastHandshake(boolean fastHandshake) {
+        this.fastHandshake = fastHandshake;
+    }
+
     /**
      * Establish a session with remote host.
      *
@@ -308,8 +424,16 @@ public class IpmiAsyncConnector implements ConnectionListener {
         while (attemptNumber <= retries && !succeeded) {
             try {
                 ++attemptNumber;
-                connectionManager.startSession(connectionHandle.getHandle(), connectionHandle.getCipherSuite(),
-                        connectionHandle.getPrivilegeLevel(), username, password, bmcKey);
+                long start = System.currentTimeMillis();
+                if (fastHandshake) {
+                    connectionManager.startSessionFast(connectionHandle.getHandle(), connectionHandle.getCipherSuite(),
+                            connectionHandle.getPrivilegeLevel(), username, password, bmcKey);
+                } else {
+                    connectionManager.startSession(connectionHandle.getHandle(), connectionHandle.getCipherSuite(),
+                            connectionHandle.getPrivilegeLevel(), username, password, bmcKey);
+                }
+                LOGGER.debug("Session {} opened in {} ms", connectionHandle.getHandle(),
+                        System.currentTimeMillis() - start);
                 succeeded = true;
             } catch (InterruptedException e) {
                 throw e; // Exit on interrupt
@@ -335,14 +459,14 @@ public class IpmiAsyncConnector implements ConnectionListener {
      * @throws InterruptedException when thread is interrupted
      */
     public void closeSession(ConnectionHandle connectionHandle) throws ConnectionException, InterruptedException {
-        if (connectionManager.getConnection(connectionHandle.getHandle()).isSessionValid()) {
+        if (getConnection(connectionHandle).isSessionValid()) {
             ConnectionException lastException = null;
             int attemptNumber = 0;
             boolean succeeded = false;
             while (attemptNumber <= retries && !succeeded) {
                 try {
                     ++attemptNumber;
-                    connectionManager.getConnection(connectionHandle.getHandle()).closeSession();
+                    getConnection(connectionHandle).closeSession();
                     succeeded = true;
                 } catch (ConnectionException e) {
                     LOGGER.info("Failed to receive answer, cause:", e);
@@ -355,6 +479,80 @@ public class IpmiAsyncConnector implements ConnectionListener {
         }
     }
 
+    /**
+     * Checks if session with the remote host is currently open.
+     *
+     * @param connectionHandle {@link ConnectionHandle} associated with the remote host
+     * @return true if session is valid, false otherwise
+     * @throws ConnectionException when connection has already been closed
+     */
+    public boolean isSessionValid(ConnectionHandle connectionHandle) throws ConnectionException {
+        return getConnection(connectionHandle).isSessionValid();
+    }
+
+    /**
+     * Drops session that was lost on the remote host side, so it can be established again with {@link #openSession}.
+     * Cipher suite of the handle is replaced with a fresh copy as the old one keeps keys of the lost session.
+     *
+     * @param connectionHandle {@link ConnectionHandle} associated with the remote host
+     * @throws ConnectionException  when connection has already been closed
+     * @throws InterruptedException when thread is interrupted
+     */
+    public void invalidateSession(ConnectionHandle connectionHandle) throws ConnectionException, InterruptedException {
+        getConnection(connectionHandle).invalidateSession();
+        if (connectionHandle.getCipherSuite() != null) {
+            connectionHandle.setCipherSuite(connectionHandle.getCipherSuite().copy());
+        }
+    }
+
+    /**
+     * Captures state of the open session for {@link #resumeSession(ConnectionHandle, SessionState)}.
+     *
+     * @param connectionHandle {@link ConnectionHandle} associated with the remote host
+     * @return state of the session or null if session is not open
+     * @throws ConnectionException when connection has already been closed
+     */
+    public SessionState getSessionState(ConnectionHandle connectionHandle) throws ConnectionException {
+        return getConnection(connectionHandle).getSessionState();
+    }
+
+    /**
+     * Stops keepalives of the connection, so the sequence numbers of the session stay as captured by
+     * {@link #getSessionState(ConnectionHandle)} until the connector is torn down.
+     *
+     * @param connectionHandle {@link ConnectionHandle} associated with the remote host
+     * @throws ConnectionException when connection is closed
+     * @see Connection#stopKeepalive()
+     */
+    public void stopKeepalive(ConnectionHandle connectionHandle) throws ConnectionException {
+        getConnection(connectionHandle).stopKeepalive();
+    }
+
+    /**
+     * Resumes session captured with {@link #getSessionState(ConnectionHandle)} without the RAKP handshake. The
+     * connection must be created with {@link #createConnection(InetAddress, CipherSuite, PrivilegeLevel)} - cipher
+     * suite of the handle is initialized with the session keys, as in {@link #openSession}. Session is
+     * validated with a keepalive - its response or timeout is delivered to the listeners with the returned tag.
+     *
+     * @param connectionHandle {@link ConnectionHandle} associated with the remote host
+     * @param state            state of the session
+     * @return tag of the validating keepalive
+     * @throws ConnectionException  when connection is in the state that does not allow to perform this operation
+     * @throws InterruptedException when thread is interrupted
+     */
+    public int resumeSession(ConnectionHandle connectionHandle, SessionState state)
+            throws ConnectionException, InterruptedException {
+        try {
+            return getConnection(connectionHandle).resumeSession(connectionHandle.getCipherSuite(), state);
+        } catch (ConnectionException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ConnectionException("Session resume failed", e);
+        }
+    }
+
     /**
      * Send IPMI message to remote host.
      *
@@ -368,20 +566,68 @@ public class IpmiAsyncConnector implements ConnectionListener {
      */
     public int sendMessage(ConnectionHandle connectionHandle, IpmiCommandCoder request)
             throws ConnectionException, InterruptedException {
+        return send(connectionHandle, request, false);
+    }
+
+    /**
+     * Sends IPMI message again after the previous attempt failed, e.g. timed out. It is the same as
+     * {@link #sendMessage(ConnectionHandle, IpmiCommandCoder)}, but the message is counted as a retry in the
+     * metrics of the connection.
+     *
+     * @param connectionHandle connection handle (associated with the target host)
+     * @param request          {@link IpmiCommandCoder} containing request to be sent
+     * @return message id, -1 when sending of the message failed
+     * @throws ConnectionException  when connection is in the state that does not allow to perform this operation.
+     * @throws InterruptedException when thread execution is interrupted
+     */
+    public int resendMessage(ConnectionHandle connectionHandle, IpmiCommandCoder request)
+            throws ConnectionException, InterruptedException {
+        return send(connectionHandle, request, true);
+    }
+
+    /**
+     * Stops waiting for the response to a message. The message is removed from the queue of the connection, so its
+     * response, if it arrives, is dropped as an orphan and is not reported to the listeners. When the message has
+     * already timed out and its tag was reused by another message, nothing is cancelled.
+     *
+     * @param connectionHandle connection handle (associated with the target host)
+     * @param tag              message id returned by {@link #sendMessage(ConnectionHandle, IpmiCommandCoder)}
+     * @param request          the message sent with the tag
+     * @throws ConnectionException when connection has already been closed
+     */
+    public void cancelMessage(ConnectionHandle connectionHandle, int tag, IpmiCommandCoder request)
+            throws ConnectionException {
+        getConnection(connectionHandle).cancelRequest(tag, request);
+    }
+
+    private int send(ConnectionHandle connectionHandle, IpmiCommandCoder request, boolean retry)
+            throws ConnectionException, InterruptedException {
+        if (shuttingDown) {
+            throw new ConnectionException("Connector is shutting down");
+        }
+        Connection connection = getConnection(connectionHandle);
+        if (retry) {
+            connection.getMetrics().increment(Counter.Retries);
+        }
         int tries = 0;
         int tag = MessageQueue.ILLEGAL_SEQUENCE_NUMBER;
         while (tries <= retries && tag == MessageQueue.ILLEGAL_SEQUENCE_NUMBER) {
             try {
-                ++tries;
+                if (++tries > 1) {
+                    connection.getMetrics().increment(Counter.Retries);
+                }
                 while (tag == MessageQueue.ILLEGAL_SEQUENCE_NUMBER) {
-                    tag = connectionManager.getConnection(connectionHandle.getHandle()).sendIpmiCommand(request);
+                    tag = getConnection(connectionHandle).sendIpmiCommand(request);
                     if (tag == MessageQueue.ILLEGAL_SEQUENCE_NUMBER) {
+                        connection.getMetrics().increment(Counter.QueueFullWaits);
                         Thread.sleep(10); // MessageQueue is full so we need to wait and retry
                     }
                 }
                 LOGGER.debug("Sending message with tag {}  try {}", tag, tries);
             } catch (IllegalArgumentException e) {
                 throw e; // Illegal parameter will not be corrected so exit immediately
+            } catch (CircuitOpenException e) {
+                throw e; // Managed system is not responding, fail fast
             } catch (ConnectionException e) {
                 LOGGER.debug("Failed to send message, cause:", e);
                 if (tries > retries) {
@@ -435,17 +681,84 @@ public class IpmiAsyncConnector implements ConnectionListener {
      * Closes the connection with the given handle
      */
     public void closeConnection(ConnectionHandle handle) {
-        connectionManager.getConnection(handle.getHandle()).unregisterListener(this);
-        connectionManager.closeConnection(handle.getHandle());
+        Connection connection = connectionManager.getConnection(handle.getHandle());
+        if (connection != null) {
+            connection.unregisterListener(this);
+            connectionManager.closeConnection(handle.getHandle());
+        }
+    }
+
+    /**
+     * @return current values of the metrics aggregated over all connections of the connector
+     */
+    public ConnectorMetricsSnapshot getMetrics() {
+        return connectionManager.getMetrics();
+    }
+
+    /**
+     * @param handle handle of the connection
+     * @return current values of the metrics of the connection
+     * @throws ConnectionException when connection has already been closed
+     */
+    public ConnectionMetricsSnapshot getMetrics(ConnectionHandle handle) throws ConnectionException {
+        return getConnection(handle).getMetricsSnapshot();
+    }
+
+    /**
+     * Captures metrics of all open connections, e.g. to find the managed systems with the slowest responses or the
+     * most timeouts.
+     *
+     * @return current values of the metrics of each open connection
+     */
+    public List<ConnectionMetricsSnapshot> getConnectionMetrics() {
+        return connectionManager.getConnectionMetrics();
     }
 
     /**
-     * Finalizes the connector and closes all connections.
+     * @param handle handle of the connection
+     * @return health score and circuit breaker of the connection
+     * @throws ConnectionException when connection has already been closed
+     */
+    public ConnectionHealth getHealth(ConnectionHandle handle) throws ConnectionException {
+        return getConnection(handle).getHealth();
+    }
+
+    /**
+     * @return connection associated with the handle
+     * @throws ConnectionException when connection has already been closed
+     */
+    private Connection getConnection(ConnectionHandle handle) throws ConnectionException {
+        Connection connection = connectionManager.getConnection(handle.getHandle());
+        if (connection == null) {
+            throw new ConnectionException("Connection " + handle.getHandle() + " is closed");
+        }
+        return connection;
+    }
+
+    /**
+     * Finalizes the connector and closes all connections. Sessions are not closed and stay open on the remote hosts
+     * until they time out.
+     *
+     * @see #shutdown(long)
      */
     public void tearDown() {
         connectionManager.close();
     }
 
+    /**
+     * Gracefully finalizes the connector: stops accepting new requests, waits for the in-flight ones, closes all
+     * sessions concurrently and closes all connections. The whole operation takes at most the given timeout,
+     * regardless of the number of connections.
+     *
+     * @param timeout maximum time of the shutdown in milliseconds
+     * @throws InterruptedException when thread is interrupted
+     * @see ConnectionManager#shutdown(long)
+     */
+    public void shutdown(long timeout) throws InterruptedException {
+        shuttingDown = true;
+        connectionManager.shutdown(timeout);
+    }
+
     /**
      * Change timeout for connection with the given handle.
      *
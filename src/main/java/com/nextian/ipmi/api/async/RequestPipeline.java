@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.api.async;
+
+import com.nextian.ipmi.api.async.messages.IpmiResponse;
+import com.nextian.ipmi.coding.commands.IpmiCommandCoder;
+import com.nextian.ipmi.connection.ConnectionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends batch of independent requests over one session keeping up to window size requests in flight and collects
+ * the responses. Responses are matched with requests by tag, so the connection should not be used by other callers
+ * while the batch is processed. Requests still in flight when the batch fails are cancelled, so their late responses
+ * cannot be taken for responses of the next batch.
+ */
+public class RequestPipeline implements IpmiListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestPipeline.class);
+
+    /**
+     * Maximal number of requests in flight - one less than the size of the connection's message queue, so there is
+     * always room for the keepalive.
+     */
+    public static final int MAX_WINDOW = 7;
+
+    /**
+     * Default number of requests in flight, leaving room also for a request of another user of a shared session.
+     */
+    public static final int DEFAULT_WINDOW = 6;
+
+    private final IpmiAsyncConnector connector;
+    private final ConnectionHandle handle;
+    private final int window;
+    private final int timeout;
+    private final BlockingQueue<IpmiResponse> responses;
+
+    /**
+     * @param connector connector used to send requests
+     * @param handle    connection with an open session
+     * @param window    maximum number of requests in flight (1-7)
+     * @param timeout   time in milliseconds to wait for a single response
+     */
+    public RequestPipeline(IpmiAsyncConnector connector, ConnectionHandle handle, int window, int timeout) {
+        if (window < 1 || window > MAX_WINDOW) {
+            throw new IllegalArgumentException("Window must be 1-" + MAX_WINDOW);
+        }
+        this.connector = connector;
+        this.handle = handle;
+        this.window = window;
+        this.timeout = timeout;
+        this.responses = new LinkedBlockingQueue<IpmiResponse>();
+    }
+
+    /**
+     * Sends all requests and waits for the responses.
+     *
+     * @param requests requests to send
+     * @return responses ({@link com.nextian.ipmi.api.async.messages.IpmiResponseData} or
+     * {@link com.nextian.ipmi.api.async.messages.IpmiError}) in the order of the requests
+     * @throws ConnectionException  when request cannot be sent or response does not arrive in time
+     * @throws InterruptedException when thread is interrupted
+     */
+    public List<IpmiResponse> execute(List<? extends IpmiCommandCoder> requests)
+            throws ConnectionException, InterruptedException {
+        List<IpmiResponse> result = new ArrayList<IpmiResponse>(requests.size());
+        for (int i = 0; i < requests.size(); ++i) {
+            result.add(null);
+        }
+
+        Map<Integer, Integer> inFlight = new HashMap<Integer, Integer>();
+        int next = 0;
+
+        responses.clear();
+        connector.registerListener(this);
+        try {
+            while (next < requests.size() || !inFlight.isEmpty()) {
+                while (next < requests.size() && inFlight.size() < window) {
+                    int tag = connector.sendMessage(handle, requests.get(next));
+                    inFlight.put(tag, next);
+                    ++next;
+                }
+
+                IpmiResponse response = responses.poll(timeout, TimeUnit.MILLISECONDS);
+                if (response == null) {
+                    throw new ConnectionException("Pipelined request timed out");
+                }
+                Integer index = inFlight.remove(response.getTag());
+                if (index == null) {
+                    LOGGER.debug("Dropping response with unexpected tag {}", response.getTag());
+                } else {
+                    result.set(index, response);
+                }
+            }
+        } finally {
+            connector.unregisterListener(this);
+            for (Map.Entry<Integer, Integer> request : inFlight.entrySet()) {
+                try {
+                    connector.cancelMessage(handle, request.getKey(), requests.get(request.getValue()));
+                } catch (ConnectionException e) {
+                    break; // connection closed, nothing left to cancel
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void notify(IpmiResponse response) {
+        if (response.getHandle().getHandle() == handle.getHandle()) {
+            responses.add(response);
+        }
+    }
+}
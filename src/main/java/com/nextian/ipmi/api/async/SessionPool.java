@@ -0,0 +1,396 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.api.async;
+
+import com.nextian.ipmi.coding.commands.PrivilegeLevel;
+import com.nextian.ipmi.coding.security.CipherSuite;
+import com.nextian.ipmi.connection.ConnectionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Pool of IPMI sessions opened through {@link IpmiAsyncConnector}. One session is kept per (host, user, privilege
+ * level) and its {@link ConnectionHandle} is shared by all callers that {@link #acquire} it. Sessions are opened
+ * lazily on first use and closed after they stay unused for the idle timeout. The total number of sessions and the
+ * number of sessions per BMC are limited - when a limit is reached the least recently used idle session is closed
+ * to make room, and when no session is idle the caller waits for one to be released.
+ * <p>
+ * Every {@link #acquire} must be paired with {@link #release(ConnectionHandle)}, or with
+ * {@link #invalidate(ConnectionHandle)} when the session turned out to be broken.
+ */
+public class SessionPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SessionPool.class);
+
+    public static final int DEFAULT_MAX_SESSIONS = 256;
+    public static final int DEFAULT_MAX_SESSIONS_PER_HOST = 2;
+    public static final long DEFAULT_IDLE_TIMEOUT = 60000;
+
+    private final IpmiAsyncConnector connector;
+    private final int maxSessions;
+    private final int maxSessionsPerHost;
+    private final long idleTimeout;
+    private final Object lock = new Object();
+
+    /**
+     * Sessions in the least recently used order.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private final Map<Integer, Entry> entriesByHandle = new HashMap<Integer, Entry>();
+
+    /**
+     * Number of sessions per BMC, including the ones being opened.
+     */
+    private final Map<InetAddress, Integer> sessionsPerHost = new HashMap<InetAddress, Integer>();
+
+    private CipherSuite cipherSuite;
+    private long acquireTimeout = DEFAULT_IDLE_TIMEOUT;
+    private Timer timer;
+    private boolean closed;
+
+    /**
+     * Creates pool with default limits.
+     *
+     * @param connector connector used to open sessions
+     */
+    public SessionPool(IpmiAsyncConnector connector) {
+        this(connector, DEFAULT_MAX_SESSIONS, DEFAULT_MAX_SESSIONS_PER_HOST, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * @param connector          connector used to open sessions
+     * @param maxSessions        maximum number of sessions kept by the pool
+     * @param maxSessionsPerHost maximum number of sessions kept with a single BMC
+     * @param idleTimeout        time in milliseconds after which an unused session is closed
+     */
+    public SessionPool(IpmiAsyncConnector connector, int maxSessions, int maxSessionsPerHost, long idleTimeout) {
+        if (maxSessions < 1 || maxSessionsPerHost < 1) {
+            throw new IllegalArgumentException("Session limits must be positive");
+        }
+        this.connector = connector;
+        this.maxSessions = maxSessions;
+        this.maxSessionsPerHost = maxSessionsPerHost;
+        this.idleTimeout = idleTimeout;
+
+        timer = new Timer("SessionPool", true);
+        long period = Math.max(idleTimeout / 2, 100);
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                closeIdleSessions();
+            }
+        }, period, period);
+    }
+
+    /**
+     * Sets cipher suite used for new sessions. When set, cipher suite discovery is skipped, otherwise the strongest
+     * cipher suite supported by the BMC is negotiated (or taken from the connector's {@link CapabilityCache}).
+     *
+     * @param cipherSuite cipher suite or null to negotiate it
+     */
+    public void setCipherSuite(CipherSuite cipherSuite) {
+        this.cipherSuite = cipherSuite;
+    }
+
+    /**
+     * @param acquireTimeout time in milliseconds {@link #acquire} waits for a free session slot
+     */
+    public void setAcquireTimeout(long acquireTimeout) {
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    /**
+     * Gets session with the BMC, opening it if necessary.
+     *
+     * @param address        address of the BMC
+     * @param username       username for authentication
+     * @param password       password for authentication
+     * @param bmcKey         the key that should be provided if the two-key authentication is enabled, null otherwise
+     * @param privilegeLevel requested privilege level
+     * @return handle of the shared session
+     * @throws ConnectionException  when session cannot be opened or no session slot becomes free in time
+     * @throws InterruptedException when thread is interrupted
+     */
+    public ConnectionHandle acquire(InetAddress address, String username, String password, byte[] bmcKey,
+                                    PrivilegeLevel privilegeLevel) throws ConnectionException, InterruptedException {
+        String key = address.getHostAddress() + '|' + username + '|' + privilegeLevel;
+        long deadline = System.currentTimeMillis() + acquireTimeout;
+        List<Entry> evicted = new ArrayList<Entry>();
+        Entry entry;
+
+        try {
+            synchronized (lock) {
+                while (true) {
+                    if (closed) {
+                        throw new ConnectionException("Session pool is closed");
+                    }
+                    entry = entries.get(key);
+                    if (entry != null && entry.handle != null) {
+                        ++entry.users;
+                        break;
+                    }
+                    if (entry == null) {
+                        Entry victim = null;
+                        boolean full = false;
+                        if (countSessions(address) >= maxSessionsPerHost) {
+                            victim = findIdle(address);
+                            full = victim == null;
+                        } else if (entries.size() >= maxSessions) {
+                            victim = findIdle(null);
+                            full = victim == null;
+                        }
+                        if (victim != null) {
+                            remove(victim);
+                            evicted.add(victim);
+                            continue;
+                        }
+                        if (!full) {
+                            entry = new Entry(key, address);
+                            entry.users = 1;
+                            add(entry);
+                            break;
+                        }
+                    }
+                    // Session is being opened by another thread or limits are reached
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new ConnectionException("No free session slot for " + address.getHostAddress());
+                    }
+                    lock.wait(remaining);
+                }
+            }
+        } finally {
+            // Evicted sessions are closed even when no slot was obtained
+            for (Entry victim : evicted) {
+                LOGGER.debug("Evicting session {}", victim.key);
+                close(victim);
+            }
+        }
+
+        if (entry.handle != null) {
+            return entry.handle;
+        }
+
+        ConnectionHandle handle = null;
+        boolean discard = false;
+        try {
+            handle = open(address, username, password, bmcKey, privilegeLevel);
+        } finally {
+            synchronized (lock) {
+                if (handle != null && closed) {
+                    entry.handle = handle;
+                    discard = true;
+                } else if (handle != null) {
+                    entry.handle = handle;
+                    entry.lastUsed = System.currentTimeMillis();
+                    entriesByHandle.put(handle.getHandle(), entry);
+                } else {
+                    remove(entry);
+                }
+                lock.notifyAll();
+            }
+        }
+        if (discard) {
+            close(entry);
+            throw new ConnectionException("Session pool is closed");
+        }
+        return handle;
+    }
+
+    /**
+     * Returns session to the pool. Session stays open until it is idle for the idle timeout or it is evicted.
+     *
+     * @param handle handle obtained from {@link #acquire}
+     */
+    public void release(ConnectionHandle handle) {
+        synchronized (lock) {
+            Entry entry = entriesByHandle.get(handle.getHandle());
+            if (entry != null && entry.users > 0) {
+                --entry.users;
+                entry.lastUsed = System.currentTimeMillis();
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Removes broken session from the pool and closes it. Other users of the session get failures on their
+     * requests and should invalidate it as well.
+     *
+     * @param handle handle obtained from {@link #acquire}
+     */
+    public void invalidate(ConnectionHandle handle) {
+        Entry entry;
+        synchronized (lock) {
+            entry = entriesByHandle.get(handle.getHandle());
+            if (entry == null) {
+                return;
+            }
+            remove(entry);
+            lock.notifyAll();
+        }
+        close(entry);
+    }
+
+    /**
+     * @return number of sessions kept by the pool, including the ones being opened
+     */
+    public int size() {
+        synchronized (lock) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Closes all sessions. Pool cannot be used afterwards.
+     */
+    public void close() {
+        List<Entry> toClose;
+        synchronized (lock) {
+            closed = true;
+            timer.cancel();
+            toClose = new ArrayList<Entry>(entriesByHandle.values());
+            entries.clear();
+            entriesByHandle.clear();
+            sessionsPerHost.clear();
+            lock.notifyAll();
+        }
+        for (Entry entry : toClose) {
+            close(entry);
+        }
+    }
+
+    private void closeIdleSessions() {
+        List<Entry> idle = new ArrayList<Entry>();
+        long now = System.currentTimeMillis();
+        synchronized (lock) {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.handle != null && entry.users == 0 && now - entry.lastUsed >= idleTimeout) {
+                    iterator.remove();
+                    entriesByHandle.remove(entry.handle.getHandle());
+                    updateSessionCount(entry.address, -1);
+                    idle.add(entry);
+                }
+            }
+            if (!idle.isEmpty()) {
+                lock.notifyAll();
+            }
+        }
+        for (Entry entry : idle) {
+            LOGGER.debug("Closing idle session {}", entry.key);
+            close(entry);
+        }
+    }
+
+    private ConnectionHandle open(InetAddress address, String username, String password, byte[] bmcKey,
+                                  PrivilegeLevel privilegeLevel) throws ConnectionException, InterruptedException {
+        ConnectionHandle handle;
+        if (cipherSuite != null) {
+            handle = connector.createConnection(address, cipherSuite.copy(), privilegeLevel);
+        } else {
+            handle = connector.createConnection(address, privilegeLevel);
+        }
+        try {
+            connector.openSession(handle, username, password, bmcKey);
+            return handle;
+        } catch (ConnectionException e) {
+            // Capabilities of the BMC might have changed - discover them again next time
+            connector.getCapabilityCache().invalidate(address);
+            connector.closeConnection(handle);
+            throw e;
+        } catch (InterruptedException e) {
+            connector.closeConnection(handle);
+            throw e;
+        }
+    }
+
+    private void close(Entry entry) {
+        try {
+            connector.closeSession(entry.handle);
+        } catch (ConnectionException e) {
+            LOGGER.debug("Failed to close session, cause:", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            connector.closeConnection(entry.handle);
+        }
+    }
+
+    /**
+     * @return number of sessions with the BMC
+     */
+    private int countSessions(InetAddress address) {
+        Integer count = sessionsPerHost.get(address);
+        return count == null ? 0 : count;
+    }
+
+    private void updateSessionCount(InetAddress address, int delta) {
+        int count = countSessions(address) + delta;
+        if (count > 0) {
+            sessionsPerHost.put(address, count);
+        } else {
+            sessionsPerHost.remove(address);
+        }
+    }
+
+    /**
+     * @param address address of the BMC or null for any BMC
+     * @return least recently used idle session or null if all sessions are in use
+     */
+    private Entry findIdle(InetAddress address) {
+        for (Entry entry : entries.values()) {
+            if (entry.handle != null && entry.users == 0 && (address == null || entry.address.equals(address))) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void add(Entry entry) {
+        entries.put(entry.key, entry);
+        updateSessionCount(entry.address, 1);
+    }
+
+    private void remove(Entry entry) {
+        if (entries.remove(entry.key) == entry) {
+            updateSessionCount(entry.address, -1);
+        }
+        if (entry.handle != null) {
+            entriesByHandle.remove(entry.handle.getHandle());
+        }
+    }
+
+    private static class Entry {
+        private final String key;
+        private final InetAddress address;
+
+        /**
+         * Handle of the open session, null while the session is being opened.
+         */
+        private ConnectionHandle handle;
+        private int users;
+        private long lastUsed;
+
+        Entry(String key, InetAddress address) {
+            this.key = key;
+            this.address = address;
+        }
+    }
+}
@@ -0,0 +1,456 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.api.async;
+
+import com.nextian.ipmi.api.async.messages.IpmiError;
+import com.nextian.ipmi.api.async.messages.IpmiResponse;
+import com.nextian.ipmi.coding.commands.IpmiCommandCoder;
+import com.nextian.ipmi.connection.CircuitOpenException;
+import com.nextian.ipmi.connection.ConnectionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opt-in self-healing of sessions opened through {@link IpmiAsyncConnector}. Session of a managed handle is considered
+ * lost when sending fails because the session is no longer valid or when several consecutive requests time out
+ * (e.g. after BMC reboot). The session is then re-established in the background with the cipher suite of the handle
+ * and the credentials given to {@link #manage}, retrying with exponential backoff.
+ * <p>
+ * While the session is being re-established, requests sent via {@link #sendMessage} are parked in a bounded queue
+ * and replayed in order once the session is valid again and its circuit breaker lets requests through. Replayed
+ * requests get new tags, reported to {@link SessionRecoveryListener#requestReplayed}. Credentials of managed handles
+ * are kept in memory until {@link #unmanage} is called.
+ * <p>
+ * Sessions are re-established on a small thread pool, so a host that does not answer the handshake delays only the
+ * sessions waiting for the same thread, not all of them.
+ */
+public class SessionRecovery implements IpmiListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SessionRecovery.class);
+
+    /**
+     * Returned by {@link #sendMessage} when the request was parked until the session is re-established.
+     */
+    public static final int PARKED = -2;
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    public static final long DEFAULT_INITIAL_BACKOFF = 1000;
+    public static final long DEFAULT_MAX_BACKOFF = 60000;
+    public static final int DEFAULT_THREADS = 4;
+
+    private final IpmiAsyncConnector connector;
+    private final int failureThreshold;
+    private final int queueCapacity;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final Map<Integer, Session> sessions = new HashMap<Integer, Session>();
+    private final List<SessionRecoveryListener> listeners = new ArrayList<SessionRecoveryListener>();
+    private final ScheduledExecutorService executor;
+    private boolean closed;
+
+    /**
+     * Creates recovery with default settings.
+     *
+     * @param connector connector the managed sessions are opened with
+     */
+    public SessionRecovery(IpmiAsyncConnector connector) {
+        this(connector, DEFAULT_FAILURE_THRESHOLD, DEFAULT_QUEUE_CAPACITY, DEFAULT_INITIAL_BACKOFF,
+                DEFAULT_MAX_BACKOFF);
+    }
+
+    /**
+     * @param connector        connector the managed sessions are opened with
+     * @param failureThreshold number of consecutive timed out requests after which session is considered lost
+     * @param queueCapacity    maximum number of requests parked per session
+     * @param initialBackoff   delay in milliseconds before the second attempt to re-establish session
+     * @param maxBackoff       maximum delay in milliseconds between attempts to re-establish session
+     */
+    public SessionRecovery(IpmiAsyncConnector connector, int failureThreshold, int queueCapacity, long initialBackoff,
+                           long maxBackoff) {
+        this(connector, failureThreshold, queueCapacity, initialBackoff, maxBackoff, DEFAULT_THREADS);
+    }
+
+    /**
+     * @param connector        connector the managed sessions are opened with
+     * @param failureThreshold number of consecutive timed out requests after which session is considered lost
+     * @param queueCapacity    maximum number of requests parked per session
+     * @param initialBackoff   delay in milliseconds before the second attempt to re-establish session
+     * @param maxBackoff       maximum delay in milliseconds between attempts to re-establish session
+     * @param threads          number of threads re-establishing sessions
+     */
+    public SessionRecovery(IpmiAsyncConnector connector, int failureThreshold, int queueCapacity, long initialBackoff,
+                           long maxBackoff, int threads) {
+        if (failureThreshold < 1 || queueCapacity < 0 || threads < 1) {
+            throw new IllegalArgumentException("Invalid session recovery settings");
+        }
+        this.connector = connector;
+        this.failureThreshold = failureThreshold;
+        this.queueCapacity = queueCapacity;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        executor = new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SessionRecovery-" + ++count);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        connector.registerListener(this);
+    }
+
+    /**
+     * Enables self-healing of the session. Session must be already open.
+     *
+     * @param handle   handle of the session
+     * @param username username the session was opened with
+     * @param password password matching the username
+     * @param bmcKey   the key that should be provided if the two-key authentication is enabled, null otherwise
+     */
+    public void manage(ConnectionHandle handle, String username, String password, byte[] bmcKey) {
+        synchronized (sessions) {
+            sessions.put(handle.getHandle(), new Session(handle, username, password, bmcKey));
+        }
+    }
+
+    /**
+     * Disables self-healing of the session. Parked requests are dropped.
+     *
+     * @param handle handle of the session
+     */
+    public void unmanage(ConnectionHandle handle) {
+        Session session;
+        synchronized (sessions) {
+            session = sessions.remove(handle.getHandle());
+        }
+        if (session != null) {
+            dropParked(session, new ConnectionException("Session recovery stopped"));
+        }
+    }
+
+    /**
+     * @param handle handle of the session
+     * @return true if session is being re-established
+     */
+    public boolean isRecovering(ConnectionHandle handle) {
+        Session session = getSession(handle);
+        if (session == null) {
+            return false;
+        }
+        synchronized (session) {
+            return session.recovering;
+        }
+    }
+
+    /**
+     * Sends IPMI message, parking it when session of a managed handle is being re-established.
+     *
+     * @param handle  connection handle (associated with the target host)
+     * @param request {@link IpmiCommandCoder} containing request to be sent
+     * @return message tag, {@link #PARKED} when the request will be replayed later or -1 when sending of the message
+     * failed
+     * @throws ConnectionException  when message cannot be sent and the handle is not managed, or queue of the parked
+     *                              requests is full
+     * @throws InterruptedException when thread execution is interrupted
+     * @see IpmiAsyncConnector#sendMessage(ConnectionHandle, IpmiCommandCoder)
+     */
+    public int sendMessage(ConnectionHandle handle, IpmiCommandCoder request)
+            throws ConnectionException, InterruptedException {
+        Session session = getSession(handle);
+        if (session == null) {
+            return connector.sendMessage(handle, request);
+        }
+        synchronized (session) {
+            if (session.recovering) {
+                park(session, request);
+                return PARKED;
+            }
+        }
+        try {
+            return connector.sendMessage(handle, request);
+        } catch (ConnectionException e) {
+            if (connector.isSessionValid(handle)) {
+                throw e;
+            }
+            synchronized (session) {
+                park(session, request);
+            }
+            sessionLost(session);
+            return PARKED;
+        }
+    }
+
+    /**
+     * Registers a listener to receive session recovery notifications.
+     *
+     * @param listener listener to register
+     */
+    public void registerListener(SessionRecoveryListener listener) {
+        synchronized (listeners) {
+            listeners.add(listener);
+        }
+    }
+
+    /**
+     * Unregisters a listener so it will no longer receive notifications.
+     *
+     * @param listener listener to unregister
+     */
+    public void unregisterListener(SessionRecoveryListener listener) {
+        synchronized (listeners) {
+            listeners.remove(listener);
+        }
+    }
+
+    @Override
+    public void notify(IpmiResponse response) {
+        Session session = getSession(response.getHandle());
+        if (session == null) {
+            return;
+        }
+        boolean lost = false;
+        synchronized (session) {
+            // Timeouts are reported as ConnectionException, other errors come from the BMC
+            if (response instanceof IpmiError && ((IpmiError) response).getException() instanceof ConnectionException) {
+                lost = ++session.failures >= failureThreshold;
+            } else {
+                session.failures = 0;
+            }
+        }
+        if (lost) {
+            sessionLost(session);
+        }
+    }
+
+    /**
+     * Stops recovery of all sessions. Parked requests are dropped, sessions are left as they are.
+     */
+    public void close() {
+        List<Session> toDrop;
+        synchronized (sessions) {
+            closed = true;
+            executor.shutdownNow();
+            toDrop = new ArrayList<Session>(sessions.values());
+            sessions.clear();
+        }
+        connector.unregisterListener(this);
+        for (Session session : toDrop) {
+            dropParked(session, new ConnectionException("Session recovery stopped"));
+        }
+    }
+
+    private Session getSession(ConnectionHandle handle) {
+        synchronized (sessions) {
+            return sessions.get(handle.getHandle());
+        }
+    }
+
+    private void park(Session session, IpmiCommandCoder request) throws ConnectionException {
+        if (session.parked.size() >= queueCapacity) {
+            throw new ConnectionException("Queue of parked requests is full for connection "
+                    + session.handle.getHandle());
+        }
+        session.parked.add(request);
+    }
+
+    private void sessionLost(Session session) {
+        synchronized (session) {
+            if (session.recovering) {
+                return;
+            }
+            session.recovering = true;
+            session.backoff = initialBackoff;
+        }
+        LOGGER.info("Session {} lost, re-establishing", session.handle.getHandle());
+        synchronized (listeners) {
+            for (SessionRecoveryListener listener : listeners) {
+                listener.sessionLost(session.handle);
+            }
+        }
+        schedule(session, 0, false);
+    }
+
+    /**
+     * @param replayOnly true to only replay the parked requests, the session is valid
+     */
+    private void schedule(final Session session, long delay, final boolean replayOnly) {
+        synchronized (sessions) {
+            if (closed || sessions.get(session.handle.getHandle()) != session) {
+                return;
+            }
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (replayOnly) {
+                            replay(session);
+                        } else {
+                            recover(session);
+                        }
+                    } catch (RuntimeException e) {
+                        // Recovery of the session must go on, as well as of the other sessions on this thread
+                        retryLater(session, new ConnectionException("Session recovery failed", e), replayOnly);
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void recover(Session session) {
+        try {
+            connector.isSessionValid(session.handle);
+        } catch (ConnectionException e) {
+            LOGGER.debug("Connection {} closed, recovery stopped", session.handle.getHandle());
+            unmanage(session.handle);
+            return;
+        }
+        try {
+            connector.invalidateSession(session.handle);
+            connector.openSession(session.handle, session.username, session.password, session.bmcKey);
+        } catch (ConnectionException e) {
+            retryLater(session, e, false);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        LOGGER.info("Session {} re-established", session.handle.getHandle());
+        synchronized (session) {
+            session.backoff = initialBackoff;
+        }
+        synchronized (listeners) {
+            for (SessionRecoveryListener listener : listeners) {
+                listener.sessionRestored(session.handle);
+            }
+        }
+        replay(session);
+    }
+
+    /**
+     * @param replayOnly true to only replay the parked requests, the session is valid
+     */
+    private void retryLater(Session session, ConnectionException cause, boolean replayOnly) {
+        long delay;
+        synchronized (session) {
+            delay = session.backoff;
+            session.backoff = Math.min(session.backoff * 2, maxBackoff);
+        }
+        LOGGER.debug("Session {} not re-established, next attempt in {} ms, cause:", session.handle.getHandle(),
+                delay, cause);
+        schedule(session, delay, replayOnly);
+    }
+
+    /**
+     * Sends parked requests in order. New requests stay parked until the queue is drained.
+     */
+    private void replay(Session session) {
+        while (true) {
+            IpmiCommandCoder request;
+            synchronized (session) {
+                request = session.parked.poll();
+                if (request == null) {
+                    session.recovering = false;
+                    session.failures = 0;
+                    return;
+                }
+            }
+            try {
+                int tag = connector.sendMessage(session.handle, request);
+                synchronized (listeners) {
+                    for (SessionRecoveryListener listener : listeners) {
+                        listener.requestReplayed(session.handle, request, tag);
+                    }
+                }
+            } catch (CircuitOpenException e) {
+                // Managed system stopped answering right after the session was re-established - keep the request
+                // and replay once the circuit breaker lets requests through
+                long delay;
+                synchronized (session) {
+                    session.parked.addFirst(request);
+                    delay = session.backoff;
+                    session.backoff = Math.min(session.backoff * 2, maxBackoff);
+                }
+                LOGGER.debug("Replay of session {} postponed by {} ms, cause:", session.handle.getHandle(), delay, e);
+                schedule(session, delay, true);
+                return;
+            } catch (ConnectionException e) {
+                boolean valid;
+                try {
+                    valid = connector.isSessionValid(session.handle);
+                } catch (ConnectionException closedException) {
+                    valid = false;
+                }
+                if (!valid) {
+                    // Session lost again - keep the request and start over
+                    synchronized (session) {
+                        session.parked.addFirst(request);
+                        session.backoff = initialBackoff;
+                    }
+                    retryLater(session, e, false);
+                    return;
+                }
+                notifyDropped(session, request, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void dropParked(Session session, Exception cause) {
+        List<IpmiCommandCoder> dropped;
+        synchronized (session) {
+            dropped = new ArrayList<IpmiCommandCoder>(session.parked);
+            session.parked.clear();
+        }
+        for (IpmiCommandCoder request : dropped) {
+            notifyDropped(session, request, cause);
+        }
+    }
+
+    private void notifyDropped(Session session, IpmiCommandCoder request, Exception cause) {
+        synchronized (listeners) {
+            for (SessionRecoveryListener listener : listeners) {
+                listener.requestDropped(session.handle, request, cause);
+            }
+        }
+    }
+
+    private static class Session {
+        private final ConnectionHandle handle;
+        private final String username;
+        private final String password;
+        private final byte[] bmcKey;
+        private final ArrayDeque<IpmiCommandCoder> parked = new ArrayDeque<IpmiCommandCoder>();
+
+        private boolean recovering;
+        private int failures;
+        private long backoff;
+
+        Session(ConnectionHandle handle, String username, String password, byte[] bmcKey) {
+            this.handle = handle;
+            this.username = username;
+            this.password = password;
+            this.bmcKey = bmcKey;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.api.async;
+
+import com.nextian.ipmi.coding.commands.IpmiCommandCoder;
+
+/**
+ * Interface for listeners of {@link SessionRecovery}. Parked requests get new tags when they are replayed, so callers
+ * pairing responses by tag should track {@link #requestReplayed}.
+ */
+public interface SessionRecoveryListener {
+
+    /**
+     * Session was detected as lost and is being re-established.
+     *
+     * @param handle handle of the session
+     */
+    void sessionLost(ConnectionHandle handle);
+
+    /**
+     * Session was re-established. Called before parked requests are replayed.
+     *
+     * @param handle handle of the session
+     */
+    void sessionRestored(ConnectionHandle handle);
+
+    /**
+     * Parked request was sent in the re-established session.
+     *
+     * @param handle  handle of the session
+     * @param request the request
+     * @param tag     tag the response will be reported with
+     */
+    void requestReplayed(ConnectionHandle handle, IpmiCommandCoder request, int tag);
+
+    /**
+     * Parked request was dropped without being sent.
+     *
+     * @param handle  handle of the session
+     * @param request the request
+     * @param cause   reason of the drop
+     */
+    void requestDropped(ConnectionHandle handle, IpmiCommandCoder request, Exception cause);
+}
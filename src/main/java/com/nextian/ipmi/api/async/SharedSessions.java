@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.api.async;
+
+import com.nextian.ipmi.coding.commands.PrivilegeLevel;
+import com.nextian.ipmi.connection.ConnectionException;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+/**
+ * JVM-wide {@link IpmiAsyncConnector} with a {@link SessionPool} on top of it. IPMI session is bound to the UDP socket
+ * it was established from, so components that want to share sessions must send through the same connector. All
+ * callers asking for the same host, username and privilege level get the same session and their requests are
+ * interleaved in the session's message window.
+ * <p>
+ * The connector uses an ephemeral local port and lives until {@link #shutdown()} is called.
+ */
+public final class SharedSessions {
+
+    private static SharedSessions instance;
+
+    private final IpmiAsyncConnector connector;
+    private final SessionPool pool;
+
+    private SharedSessions() throws IOException {
+        connector = new IpmiAsyncConnector(0);
+        pool = new SessionPool(connector);
+    }
+
+    /**
+     * @return shared instance, created on first use
+     * @throws IOException when UDP socket cannot be created
+     */
+    public static synchronized SharedSessions getInstance() throws IOException {
+        if (instance == null) {
+            instance = new SharedSessions();
+        }
+        return instance;
+    }
+
+    /**
+     * Closes all shared sessions and the connector. Next {@link #getInstance()} creates a new instance.
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.pool.close();
+            instance.connector.tearDown();
+            instance = null;
+        }
+    }
+
+    /**
+     * @return connector the shared sessions are opened with - requests and listeners for shared handles must go
+     * through it
+     */
+    public IpmiAsyncConnector getConnector() {
+        return connector;
+    }
+
+    /**
+     * @return pool of the shared sessions
+     */
+    public SessionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Attaches to the shared session with the BMC, opening it if necessary.
+     *
+     * @param address        address of the BMC
+     * @param username       username for authentication
+     * @param password       password for authentication
+     * @param bmcKey         the key that should be provided if the two-key authentication is enabled, null otherwise
+     * @param privilegeLevel requested privilege level
+     * @return handle of the shared session, valid for {@link #getConnector()}
+     * @throws ConnectionException  when session cannot be opened
+     * @throws InterruptedException when thread is interrupted
+     * @see SessionPool#acquire
+     */
+    public ConnectionHandle acquire(InetAddress address, String username, String password, byte[] bmcKey,
+                                    PrivilegeLevel privilegeLevel) throws ConnectionException, InterruptedException {
+        return pool.acquire(address, username, password, bmcKey, privilegeLevel);
+    }
+
+    /**
+     * Detaches from the shared session.
+     *
+     * @param handle handle obtained from {@link #acquire}
+     */
+    public void release(ConnectionHandle handle) {
+        pool.release(handle);
+    }
+}
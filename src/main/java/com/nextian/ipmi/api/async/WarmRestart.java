@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.api.async;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.nextian.ipmi.api.async.messages.IpmiError;
+import com.nextian.ipmi.api.async.messages.IpmiResponse;
+import com.nextian.ipmi.common.GsonFactory;
+import com.nextian.ipmi.connection.ConnectionException;
+import com.nextian.ipmi.connection.SessionState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Opt-in warm restart of sessions opened through {@link IpmiAsyncConnector}. On shutdown, state of the tracked
+ * sessions (session IDs, Session Integrity Key, sequence numbers and cipher suite) is written to a file encrypted with
+ * AES and authenticated with HMAC-SHA256. On startup the sessions are resumed from the file without the RAKP
+ * handshake and validated lazily with one keepalive each. When the BMC has already expired the session, a full
+ * handshake is performed in the background with the credentials stored along with the session.
+ * <p>
+ * {@link #save(File)} stops keepalives of the saved sessions before their state is captured, so the saved sequence
+ * numbers are not overtaken by keepalives sent before teardown. The sessions must not be used afterwards - the
+ * connector must be torn down without closing them, and the application must be restarted before the BMCs expire
+ * the idle sessions (usually within a minute).
+ */
+public class WarmRestart implements IpmiListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(WarmRestart.class);
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final int IV_LENGTH = 16;
+    private static final int MAC_LENGTH = 32;
+
+    /**
+     * Number of threads re-establishing expired sessions, so one unreachable BMC does not hold up the others.
+     */
+    private static final int HANDSHAKE_THREADS = 4;
+
+    private final IpmiAsyncConnector connector;
+    private final SecretKeySpec encryptionKey;
+    private final SecretKeySpec authenticationKey;
+    private final Map<Integer, Entry> tracked = new HashMap<Integer, Entry>();
+
+    /**
+     * Tags of the validating keepalives by connection handle.
+     */
+    private final Map<Integer, Integer> validating = new HashMap<Integer, Integer>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(HANDSHAKE_THREADS, new ThreadFactory() {
+        private int count;
+
+        @Override
+        public synchronized Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "WarmRestart-" + ++count);
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * @param connector connector the sessions are opened with
+     * @param key       secret key the snapshot is protected with, at least 16 bytes
+     */
+    public WarmRestart(IpmiAsyncConnector connector, byte[] key) {
+        if (key == null || key.length < 16) {
+            throw new IllegalArgumentException("Key must be at least 16 bytes long");
+        }
+        this.connector = connector;
+        try {
+            // Separate keys for encryption and authentication are derived from the given one
+            encryptionKey = new SecretKeySpec(Arrays.copyOf(hmac(new SecretKeySpec(key, "HmacSHA256"),
+                    "encryption".getBytes("US-ASCII")), 16), "AES");
+            authenticationKey = new SecretKeySpec(hmac(new SecretKeySpec(key, "HmacSHA256"),
+                    "authentication".getBytes("US-ASCII")), "HmacSHA256");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Required cryptographic algorithms are not available", e);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        connector.registerListener(this);
+    }
+
+    /**
+     * Includes session in the snapshot.
+     *
+     * @param handle   handle of the session
+     * @param username username the session was opened with
+     * @param password password matching the username, used when the session has to be re-established
+     * @param bmcKey   the key that should be provided if the two-key authentication is enabled, null otherwise
+     */
+    public void track(ConnectionHandle handle, String username, String password, byte[] bmcKey) {
+        synchronized (tracked) {
+            tracked.put(handle.getHandle(), new Entry(handle, username, password, bmcKey));
+        }
+    }
+
+    /**
+     * Excludes session from the snapshot.
+     *
+     * @param handle handle of the session
+     */
+    public void untrack(ConnectionHandle handle) {
+        synchronized (tracked) {
+            tracked.remove(handle.getHandle());
+            validating.remove(handle.getHandle());
+        }
+    }
+
+    /**
+     * @param handle handle of the resumed session
+     * @return true if validating keepalive of the session has not been answered yet
+     */
+    public boolean isValidating(ConnectionHandle handle) {
+        synchronized (tracked) {
+            return validating.containsKey(handle.getHandle());
+        }
+    }
+
+    /**
+     * Writes state of the tracked open sessions to the file. Sessions are left open, but their keepalives are
+     * stopped and no requests may be sent in them afterwards.
+     *
+     * @param file file to write
+     * @return number of sessions written
+     * @throws IOException when file cannot be written
+     */
+    public int save(File file) throws IOException {
+        List<Entry> entries = new ArrayList<Entry>();
+        synchronized (tracked) {
+            for (Entry entry : tracked.values()) {
+                SessionState state;
+                try {
+                    connector.stopKeepalive(entry.handle);
+                    state = connector.getSessionState(entry.handle);
+                } catch (ConnectionException e) {
+                    continue; // Connection closed
+                }
+                if (state != null) {
+                    entries.add(new Entry(entry, state));
+                }
+            }
+        }
+        byte[] data = GsonFactory.getGson().toJson(entries).getBytes("UTF-8");
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(encrypt(data));
+        } finally {
+            output.close();
+        }
+        LOGGER.info("Saved {} sessions to {}", entries.size(), file);
+        return entries.size();
+    }
+
+    /**
+     * Resumes sessions written by {@link #save(File)}. Resumed sessions are tracked and can be used immediately;
+     * sessions expired by the BMC are re-established in the background.
+     *
+     * @param file file to read
+     * @return handles of the resumed sessions
+     * @throws IOException when file cannot be read, has invalid format or was not written with the same key
+     */
+    public List<ConnectionHandle> restore(File file) throws IOException {
+        List<Entry> entries;
+        try {
+            String json = new String(decrypt(readFile(file)), "UTF-8");
+            entries = GsonFactory.getGson().fromJson(json, new TypeToken<List<Entry>>() {
+            }.getType());
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid session snapshot " + file, e);
+        }
+        List<ConnectionHandle> handles = new ArrayList<ConnectionHandle>();
+        if (entries == null) {
+            return handles;
+        }
+        for (Entry entry : entries) {
+            SessionState state = entry.state;
+            ConnectionHandle handle = connector.createConnection(InetAddress.getByName(state.getAddress()),
+                    state.getCipherSuite(), state.getPrivilegeLevel());
+            synchronized (tracked) {
+                tracked.put(handle.getHandle(), new Entry(handle, entry.username, entry.password, entry.bmcKey));
+            }
+            try {
+                int tag = connector.resumeSession(handle, state);
+                synchronized (tracked) {
+                    validating.put(handle.getHandle(), tag);
+                }
+            } catch (ConnectionException e) {
+                LOGGER.debug("Session with {} not resumed, cause:", state.getAddress(), e);
+                scheduleHandshake(handle);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while resuming sessions", e);
+            }
+            handles.add(handle);
+        }
+        LOGGER.info("Resumed {} sessions from {}", handles.size(), file);
+        return handles;
+    }
+
+    @Override
+    public void notify(IpmiResponse response) {
+        boolean expired;
+        synchronized (tracked) {
+            Integer tag = validating.get(response.getHandle().getHandle());
+            if (tag == null || tag != response.getTag()) {
+                return;
+            }
+            validating.remove(response.getHandle().getHandle());
+            expired = response instanceof IpmiError;
+        }
+        if (expired) {
+            LOGGER.debug("Resumed session {} expired", response.getHandle().getHandle());
+            scheduleHandshake(response.getHandle());
+        }
+    }
+
+    /**
+     * Stops background handshakes and unregisters from the connector.
+     */
+    public void close() {
+        executor.shutdownNow();
+        connector.unregisterListener(this);
+    }
+
+    private void scheduleHandshake(final ConnectionHandle handle) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        handshake(handle);
+                    } catch (RuntimeException e) {
+                        LOGGER.warn("Session " + handle.getHandle() + " could not be re-established", e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Warm restart closed, session {} not re-established", handle.getHandle());
+        }
+    }
+
+    private void handshake(ConnectionHandle handle) {
+        Entry entry;
+        synchronized (tracked) {
+            entry = tracked.get(handle.getHandle());
+        }
+        if (entry == null) {
+            return;
+        }
+        try {
+            // Handle passed to the listener has no cipher suite, the tracked one is used
+            connector.invalidateSession(entry.handle);
+            connector.openSession(entry.handle, entry.username, entry.password, entry.bmcKey);
+            LOGGER.debug("Session {} re-established", handle.getHandle());
+        } catch (ConnectionException e) {
+            LOGGER.warn("Session " + handle.getHandle() + " could not be re-established", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private byte[] encrypt(byte[] data) throws IOException {
+        try {
+            byte[] iv = new byte[IV_LENGTH];
+            new SecureRandom().nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new IvParameterSpec(iv));
+            byte[] encrypted = cipher.doFinal(data);
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream(1 + IV_LENGTH + encrypted.length + MAC_LENGTH);
+            output.write(FORMAT_VERSION);
+            output.write(iv);
+            output.write(encrypted);
+            output.write(hmac(authenticationKey, output.toByteArray()));
+            return output.toByteArray();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Session snapshot encryption failed", e);
+        }
+    }
+
+    private byte[] decrypt(byte[] data) throws IOException {
+        if (data.length < 1 + IV_LENGTH + MAC_LENGTH || data[0] != FORMAT_VERSION) {
+            throw new IOException("Invalid session snapshot format");
+        }
+        try {
+            int macOffset = data.length - MAC_LENGTH;
+            byte[] mac = hmac(authenticationKey, Arrays.copyOf(data, macOffset));
+            if (!MessageDigest.isEqual(mac, Arrays.copyOfRange(data, macOffset, data.length))) {
+                throw new IOException("Session snapshot was modified or written with another key");
+            }
+            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new IvParameterSpec(data, 1, IV_LENGTH));
+            return cipher.doFinal(data, 1 + IV_LENGTH, macOffset - 1 - IV_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Session snapshot decryption failed", e);
+        }
+    }
+
+    private static byte[] hmac(SecretKeySpec key, byte[] data) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(key);
+        return mac.doFinal(data);
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = input.read(buffer)) > 0) {
+                output.write(buffer, 0, count);
+            }
+            return output.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    private static class Entry {
+        private transient ConnectionHandle handle;
+        private String username;
+        private String password;
+        private byte[] bmcKey;
+        private SessionState state;
+
+        /**
+         * For deserialization.
+         */
+        Entry() {
+        }
+
+        Entry(ConnectionHandle handle, String username, String password, byte[] bmcKey) {
+            this.handle = handle;
+            this.username = username;
+            this.password = password;
+            this.bmcKey = bmcKey;
+        }
+
+        Entry(Entry credentials, SessionState state) {
+            this(credentials.handle, credentials.username, credentials.password, credentials.bmcKey);
+            this.state = state;
+        }
+    }
+}
@@ -10,6 +10,8 @@ package com.nextian.ipmi.api.sync;
 
 import com.nextian.ipmi.api.async.ConnectionHandle;
 import com.nextian.ipmi.api.async.IpmiAsyncConnector;
+import com.nextian.ipmi.api.async.SessionPool;
+import com.nextian.ipmi.api.async.SharedSessions;
 import com.nextian.ipmi.coding.commands.IpmiCommandCoder;
 import com.nextian.ipmi.coding.commands.PrivilegeLevel;
 import com.nextian.ipmi.coding.commands.ResponseData;
@@ -18,9 +20,14 @@ import com.nextian.ipmi.coding.payload.CompletionCode;
 import com.nextian.ipmi.coding.payload.lan.IPMIException;
 import com.nextian.ipmi.coding.security.CipherSuite;
 import com.nextian.ipmi.common.Defaults;
+import com.nextian.ipmi.connection.CircuitOpenException;
 import com.nextian.ipmi.connection.Connection;
 import com.nextian.ipmi.connection.ConnectionException;
+import com.nextian.ipmi.connection.ConnectionHealth;
 import com.nextian.ipmi.connection.ConnectionManager;
+import com.nextian.ipmi.metrics.ConnectionMetricsSnapshot;
+import com.nextian.ipmi.metrics.ConnectorMetricsSnapshot;
+import com.nextian.ipmi.transport.Messenger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -68,6 +75,16 @@ public class IpmiConnector {
 
     private Random random = new Random(System.currentTimeMillis());
 
+    /**
+     * True if the connector sends through {@link SharedSessions} and does not own {@link #asyncConnector}
+     */
+    private boolean shared;
+
+    /**
+     * Pool backing {@link #acquireSession}, created on first use unless the connector is shared
+     */
+    private SessionPool sessionPool;
+
     /**
      * Starts {@link IpmiConnector} and initiates the {@link ConnectionManager} at the given port. Wildcard IP address
      * will be used.
@@ -124,6 +141,49 @@ public class IpmiConnector {
         loadProperties(retries,  retryDelay, timeout);
     }
 
+    /**
+     * Starts {@link IpmiConnector} communicating through the given {@link Messenger}, e.g. an in-process simulator.
+     *
+     * @param messenger {@link Messenger} to be used in communication
+     */
+    public IpmiConnector(Messenger messenger) {
+        asyncConnector = new IpmiAsyncConnector(messenger);
+        loadProperties(Defaults.RETRIES, Defaults.RETRY_DELAY, Defaults.TIMEOUT);
+    }
+
+    private IpmiConnector(SharedSessions sharedSessions, int retries, int retryDelay, int timeout) {
+        asyncConnector = sharedSessions.getConnector();
+        sessionPool = sharedSessions.getPool();
+        shared = true;
+        loadProperties(retries, retryDelay, timeout);
+    }
+
+    /**
+     * Creates {@link IpmiConnector} that sends through the JVM-wide {@link SharedSessions} connector. Sessions obtained
+     * via {@link #acquireSession} are shared with all other connectors created this way.
+     *
+     * @return connector attached to the shared sessions
+     * @throws IOException when UDP socket cannot be created
+     */
+    public static IpmiConnector createShared() throws IOException {
+        return new IpmiConnector(SharedSessions.getInstance(), Defaults.RETRIES, Defaults.RETRY_DELAY,
+                Defaults.TIMEOUT);
+    }
+
+    /**
+     * Creates {@link IpmiConnector} that sends through the JVM-wide {@link SharedSessions} connector. Sessions obtained
+     * via {@link #acquireSession} are shared with all other connectors created this way.
+     *
+     * @param retries    number of send retries
+     * @param retryDelay delay time before send retry occurs (in ms)
+     * @param timeout    send timeout in ms
+     * @return connector attached to the shared sessions
+     * @throws IOException when UDP socket cannot be created
+     */
+    public static IpmiConnector createShared(int retries, int retryDelay, int timeout) throws IOException {
+        return new IpmiConnector(SharedSessions.getInstance(), retries, retryDelay, timeout);
+    }
+
     private void loadProperties(int retries, int retryDelay, int timeout) {
         this.retries = retries;
         this.retryDelay = retryDelay;
@@ -240,6 +300,42 @@ public class IpmiConnector {
         asyncConnector.openSession(connectionHandle, username, password, bmcKey);
     }
 
+    /**
+     * Gets session with the remote host from the connector's {@link SessionPool}, opening it if necessary. Callers
+     * asking for the same host, username and privilege level share one session - for connectors created with
+     * {@link #createShared()} also across connector instances.
+     *
+     * @param address        {@link InetAddress} of the remote host
+     * @param username       the username
+     * @param password       password matching the username
+     * @param bmcKey         the key that should be provided if the two-key authentication is enabled, null otherwise.
+     * @param privilegeLevel requested {@link PrivilegeLevel}
+     * @return handle of the session, must be returned with {@link #releaseSession(ConnectionHandle)}
+     * @throws ConnectionException  when session cannot be opened
+     * @throws InterruptedException when thread is interrupted
+     */
+    public ConnectionHandle acquireSession(InetAddress address, String username, String password, byte[] bmcKey,
+                                           PrivilegeLevel privilegeLevel)
+            throws ConnectionException, InterruptedException {
+        return getSessionPool().acquire(address, username, password, bmcKey, privilegeLevel);
+    }
+
+    /**
+     * Returns session obtained with {@link #acquireSession} to the pool.
+     *
+     * @param connectionHandle handle of the session
+     */
+    public void releaseSession(ConnectionHandle connectionHandle) {
+        getSessionPool().release(connectionHandle);
+    }
+
+    private synchronized SessionPool getSessionPool() {
+        if (sessionPool == null) {
+            sessionPool = new SessionPool(asyncConnector);
+        }
+        return sessionPool;
+    }
+
     /**
      * Closes the session with the remote host if it is currently in open state.
      *
@@ -259,7 +355,8 @@ public class IpmiConnector {
      * @return {@link ResponseData} for the <b>request</b>
      * @throws IPMIException            when received error response that cannot be retried
      * @throws IllegalArgumentException when illegal argument was used so retry cannot be done
-     * @throws IOException              when communication error occurs
+     * @throws IOException              when communication error occurs, also immediately when the circuit breaker of
+     *                                  the connection is open (see {@link ConnectionHealth})
      * @throws InterruptedException     when thread is interrupted
      */
     public ResponseData sendMessage(ConnectionHandle connectionHandle, IpmiCommandCoder request)
@@ -278,7 +375,8 @@ public class IpmiConnector {
                     ++tries;
                     lastException = null;
                     lastIPMIException = null;
-                    int tag = asyncConnector.sendMessage(connectionHandle, request);
+                    int tag = tries > 1 ? asyncConnector.resendMessage(connectionHandle, request)
+                            : asyncConnector.sendMessage(connectionHandle, request);
                     LOGGER.debug("Sending message with tag {}, try {}, previous tag {}", tag, tries, previousTag);
                     previousTag = tag;
                     data = listener.waitForAnswer(tag, timeout);
@@ -296,6 +394,8 @@ public class IpmiConnector {
                     }
                 } catch (IOException e) {
                     lastException = e;
+                } catch (CircuitOpenException e) {
+                    throw new IOException("Connection failed", e); // Managed system is not responding, fail fast
                 } catch (ConnectionException e) {
                     lastException = new IOException("Connection failed", e);
                 }
@@ -326,12 +426,63 @@ public class IpmiConnector {
     }
 
     /**
-     * Finalizes the connector and closes all connections.
+     * Finalizes the connector and closes all connections. Connector created with {@link #createShared()} leaves the
+     * shared sessions open - they are closed by {@link SharedSessions#shutdown()}.
      */
     public void tearDown() {
+        if (shared) {
+            return;
+        }
+        synchronized (this) {
+            if (sessionPool != null) {
+                sessionPool.close();
+            }
+        }
         asyncConnector.tearDown();
     }
 
+    /**
+     * @return current values of the metrics aggregated over all connections of the connector
+     */
+    public ConnectorMetricsSnapshot getMetrics() {
+        return asyncConnector.getMetrics();
+    }
+
+    /**
+     * @param handle handle of the connection
+     * @return current values of the metrics of the connection
+     * @throws ConnectionException when connection has already been closed
+     */
+    public ConnectionMetricsSnapshot getMetrics(ConnectionHandle handle) throws ConnectionException {
+        return asyncConnector.getMetrics(handle);
+    }
+
+    /**
+     * @param handle handle of the connection
+     * @return health score and circuit breaker of the connection
+     * @throws ConnectionException when connection has already been closed
+     */
+    public ConnectionHealth getHealth(ConnectionHandle handle) throws ConnectionException {
+        return asyncConnector.getHealth(handle);
+    }
+
+    /**
+     * @return current values of the metrics of each open connection
+     */
+    public List<ConnectionMetricsSnapshot> getConnectionMetrics() {
+        return asyncConnector.getConnectionMetrics();
+    }
+
+    /**
+     * Enables fast handshake mode of {@link #openSession}.
+     *
+     * @param fastHandshake true to enable fast handshake
+     * @see IpmiAsyncConnector#setFastHandshake(boolean)
+     */
+    public void setFastHandshake(boolean fastHandshake) {
+        asyncConnector.setFastHandshake(fastHandshake);
+    }
+
     /**
      * Changes the timeout value for connection with the given handle.
      *
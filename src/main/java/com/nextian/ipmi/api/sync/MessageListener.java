@@ -71,6 +71,9 @@ public class MessageListener implements IpmiListener {
             // Get response from queue - wait if necessary
             do {
                 response = messagesQueue.poll(timeout, TimeUnit.MILLISECONDS);
+                if (response == null) {
+                    throw new IOException("Response timed out");
+                }
             } while (response.getTag() != tag);
 
             // Remove other messages
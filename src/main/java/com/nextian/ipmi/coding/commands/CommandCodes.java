@@ -70,6 +70,11 @@ public final class CommandCodes {
      */
     public static final byte SET_SESSION_PRIVILEGE_LEVEL = 0x3B;
 
+    /**
+     * An IPMI code for Close Session command
+     */
+    public static final byte CLOSE_SESSION = 0x3C;
+
     /**
      * An IPMI code for Get SEL Info command
      */
@@ -133,6 +138,9 @@ public final class CommandCodes {
             case SET_SESSION_PRIVILEGE_LEVEL:
                 name = "SET_SESSION_PRIVILEGE_LEVEL";
                 break;
+            case CLOSE_SESSION:
+                name = "CLOSE_SESSION";
+                break;
             case GET_SEL_INFO:
                 name = "GET_SEL_INFO";
                 break;
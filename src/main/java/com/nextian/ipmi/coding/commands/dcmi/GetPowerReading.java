@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.coding.commands.dcmi;
+
+import com.nextian.ipmi.coding.commands.IpmiCommandCoder;
+import com.nextian.ipmi.coding.commands.IpmiVersion;
+import com.nextian.ipmi.coding.commands.ResponseData;
+import com.nextian.ipmi.coding.payload.CompletionCode;
+import com.nextian.ipmi.coding.payload.lan.*;
+import com.nextian.ipmi.coding.protocol.AuthenticationType;
+import com.nextian.ipmi.coding.protocol.IpmiMessage;
+import com.nextian.ipmi.coding.security.CipherSuite;
+import com.nextian.ipmi.common.TypeConverter;
+
+/**
+ * DCMI Get Power Reading request (system power statistics mode). The command does not hold any per-request state, so
+ * one instance can be sent repeatedly.
+ */
+public class GetPowerReading extends IpmiCommandCoder {
+
+    /**
+     * Group Extension identification of DCMI.
+     */
+    public static final byte DCMI_GROUP_ID = TypeConverter.intToByte(0xDC);
+
+    /**
+     * DCMI code of Get Power Reading command. Not listed in CommandCodes since Group Extension codes overlap with
+     * the codes of other network functions.
+     */
+    public static final byte COMMAND_CODE = 0x02;
+
+    /**
+     * Mode returning system power statistics.
+     */
+    private static final byte SYSTEM_POWER_STATISTICS = 0x01;
+
+    /**
+     * Initiates GetPowerReading for encoding and decoding.
+     *
+     * @param version            IPMI version of the command
+     * @param cipherSuite        {@link CipherSuite} containing authentication, confidentiality and integrity algorithms for this session.
+     * @param authenticationType type of authentication used (must be RMCPPlus for IPMI v2.0)
+     */
+    public GetPowerReading(IpmiVersion version, CipherSuite cipherSuite, AuthenticationType authenticationType) {
+        super(version, cipherSuite, authenticationType);
+
+        if (version == IpmiVersion.V20 && authenticationType != AuthenticationType.RMCPPlus) {
+            throw new IllegalArgumentException("Authentication Type must be RMCPPlus for IPMI v2.0 messages");
+        }
+    }
+
+    @Override
+    protected IpmiLanMessage preparePayload(int sequenceNumber) {
+        byte[] requestData = new byte[4];
+
+        requestData[0] = DCMI_GROUP_ID;
+        requestData[1] = SYSTEM_POWER_STATISTICS;
+        requestData[2] = 0; // mode attributes
+        requestData[3] = 0; // reserved
+
+        return new IpmiLanRequest(getNetworkFunction(), getCommandCode(), requestData,
+                TypeConverter.intToByte(sequenceNumber % 64));
+    }
+
+    @Override
+    public byte getCommandCode() {
+        return COMMAND_CODE;
+    }
+
+    @Override
+    public NetworkFunction getNetworkFunction() {
+        return NetworkFunction.GroupExtensionRequest;
+    }
+
+    @Override
+    public ResponseData getResponseData(IpmiMessage message)
+            throws IllegalArgumentException, IPMIException {
+        if (!isCommandResponse(message)) {
+            throw new IllegalArgumentException("Invalid response for Get Power Reading command");
+        }
+        if (!(message.getPayload() instanceof IpmiLanResponse)) {
+            throw new IllegalArgumentException("Invalid response payload");
+        }
+        if (((IpmiLanResponse) message.getPayload()).getCompletionCode() != CompletionCode.Ok) {
+            throw new IPMIException(((IpmiLanResponse) message.getPayload()).getCompletionCode());
+        }
+
+        byte[] raw = message.getPayload().getIpmiCommandData();
+
+        if (raw == null || raw.length < 18 || raw[0] != DCMI_GROUP_ID) {
+            throw new IllegalArgumentException("Invalid response payload length");
+        }
+
+        GetPowerReadingResponseData responseData = new GetPowerReadingResponseData();
+
+        responseData.setCurrentPower(readShort(raw, 1));
+        responseData.setMinimumPower(readShort(raw, 3));
+        responseData.setMaximumPower(readShort(raw, 5));
+        responseData.setAveragePower(readShort(raw, 7));
+        responseData.setTimestamp(readInt(raw, 9) & 0xFFFFFFFFL);
+        responseData.setStatisticsPeriod(readInt(raw, 13) & 0xFFFFFFFFL);
+        responseData.setPowerMeasurementActive((raw[17] & 0x40) != 0);
+
+        return responseData;
+    }
+
+    private static int readShort(byte[] data, int offset) {
+        return TypeConverter.byteToInt(data[offset]) | (TypeConverter.byteToInt(data[offset + 1]) << 8);
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return readShort(data, offset) | (readShort(data, offset + 2) << 16);
+    }
+}
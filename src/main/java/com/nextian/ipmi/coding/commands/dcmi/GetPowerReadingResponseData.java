@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.coding.commands.dcmi;
+
+import com.nextian.ipmi.coding.commands.ResponseData;
+
+/**
+ * DCMI Get Power Reading response.
+ */
+public class GetPowerReadingResponseData implements ResponseData {
+
+    private int currentPower;
+
+    private int minimumPower;
+
+    private int maximumPower;
+
+    private int averagePower;
+
+    private long timestamp;
+
+    private long statisticsPeriod;
+
+    private boolean powerMeasurementActive;
+
+    /**
+     * @return current power in watts
+     */
+    public int getCurrentPower() {
+        return currentPower;
+    }
+
+    public void setCurrentPower(int currentPower) {
+        this.currentPower = currentPower;
+    }
+
+    /**
+     * @return minimum power over the sampling duration in watts
+     */
+    public int getMinimumPower() {
+        return minimumPower;
+    }
+
+    public void setMinimumPower(int minimumPower) {
+        this.minimumPower = minimumPower;
+    }
+
+    /**
+     * @return maximum power over the sampling duration in watts
+     */
+    public int getMaximumPower() {
+        return maximumPower;
+    }
+
+    public void setMaximumPower(int maximumPower) {
+        this.maximumPower = maximumPower;
+    }
+
+    /**
+     * @return average power over the sampling duration in watts
+     */
+    public int getAveragePower() {
+        return averagePower;
+    }
+
+    public void setAveragePower(int averagePower) {
+        this.averagePower = averagePower;
+    }
+
+    /**
+     * @return BMC timestamp of the reading in seconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @return statistics reporting time period in milliseconds
+     */
+    public long getStatisticsPeriod() {
+        return statisticsPeriod;
+    }
+
+    public void setStatisticsPeriod(long statisticsPeriod) {
+        this.statisticsPeriod = statisticsPeriod;
+    }
+
+    /**
+     * @return true if power measurement is active
+     */
+    public boolean isPowerMeasurementActive() {
+        return powerMeasurementActive;
+    }
+
+    public void setPowerMeasurementActive(boolean powerMeasurementActive) {
+        this.powerMeasurementActive = powerMeasurementActive;
+    }
+}
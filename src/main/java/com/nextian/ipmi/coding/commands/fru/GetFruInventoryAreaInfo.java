@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+
+package com.nextian.ipmi.coding.commands.fru;
+
+import com.nextian.ipmi.coding.commands.CommandCodes;
+import com.nextian.ipmi.coding.commands.IpmiCommandCoder;
+import com.nextian.ipmi.coding.commands.IpmiVersion;
+import com.nextian.ipmi.coding.commands.ResponseData;
+import com.nextian.ipmi.coding.payload.CompletionCode;
+import com.nextian.ipmi.coding.payload.lan.*;
+import com.nextian.ipmi.coding.protocol.AuthenticationType;
+import com.nextian.ipmi.coding.protocol.IpmiMessage;
+import com.nextian.ipmi.coding.security.CipherSuite;
+import com.nextian.ipmi.common.TypeConverter;
+
+/**
+ * Get FRU Inventory Area Info request.
+ */
+public class GetFruInventoryAreaInfo extends IpmiCommandCoder {
+
+    private byte fruId;
+
+    /**
+     * Initiates GetFruInventoryAreaInfo for encoding and decoding.
+     *
+     * @param version            IPMI version of the command
+     * @param cipherSuite        {@link CipherSuite} containing authentication, confidentiality and integrity algorithms for this session.
+     * @param authenticationType type of authentication used (must be RMCPPlus for IPMI v2.0)
+     * @param fruId              ID of the FRU device to query (0 is the BMC's FRU, FFh is reserved)
+     */
+    public GetFruInventoryAreaInfo(IpmiVersion version, CipherSuite cipherSuite, AuthenticationType authenticationType,
+                                   int fruId) {
+        super(version, cipherSuite, authenticationType);
+
+        if (version == IpmiVersion.V20 && authenticationType != AuthenticationType.RMCPPlus) {
+            throw new IllegalArgumentException("Authentication Type must be RMCPPlus for IPMI v2.0 messages");
+        }
+        if (fruId < 0 || fruId > 0xFE) {
+            throw new IllegalArgumentException("FRU ID must be 0-254");
+        }
+        this.fruId = TypeConverter.intToByte(fruId);
+    }
+
+    @Override
+    protected IpmiLanMessage preparePayload(int sequenceNumber) {
+        return new IpmiLanRequest(getNetworkFunction(), getCommandCode(), new byte[]{fruId},
+                TypeConverter.intToByte(sequenceNumber % 64));
+    }
+
+    @Override
+    public byte getCommandCode() {
+        return CommandCodes.GET_FRU_INVENTORY_AREA_INFO;
+    }
+
+    @Override
+    public NetworkFunction getNetworkFunction() {
+        return NetworkFunction.StorageRequest;
+    }
+
+    @Override
+    public ResponseData getResponseData(IpmiMessage message)
+            throws IllegalArgumentException, IPMIException {
+        if (!isCommandResponse(message)) {
+            throw new IllegalArgumentException("Invalid response for Get FRU Inventory Area Info command");
+        }
+        if (!(message.getPayload() instanceof IpmiLanResponse)) {
+            throw new IllegalArgumentException("Invalid response payload");
+        }
+        if (((IpmiLanResponse) message.getPayload()).getCompletionCode() != CompletionCode.Ok) {
+            throw new IPMIException(((IpmiLanResponse) message.getPayload()).getCompletionCode());
+        }
+
+        byte[] raw = message.getPayload().getIpmiCommandData();
+
+        if (raw == null || raw.length != 3) {
+            throw new IllegalArgumentException("Invalid response payload length");
+        }
+
+        GetFruInventoryAreaInfoResponseData responseData = new GetFruInventoryAreaInfoResponseData();
+
+        responseData.setAreaSize(TypeConverter.byteToInt(raw[0]) | (TypeConverter.byteToInt(raw[1]) << 8));
+        responseData.setWordAccess((raw[2] & 0x01) != 0);
+
+        return responseData;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+
+package com.nextian.ipmi.coding.commands.fru;
+
+import com.nextian.ipmi.coding.commands.ResponseData;
+
+/**
+ * Get FRU Inventory Area Info response.
+ */
+public class GetFruInventoryAreaInfoResponseData implements ResponseData {
+
+    private int areaSize;
+
+    private boolean wordAccess;
+
+    /**
+     * @return size of the FRU inventory area in bytes
+     */
+    public int getAreaSize() {
+        return areaSize;
+    }
+
+    public void setAreaSize(int areaSize) {
+        this.areaSize = areaSize;
+    }
+
+    /**
+     * @return true if the device is accessed by words, false if by bytes
+     */
+    public boolean isWordAccess() {
+        return wordAccess;
+    }
+
+    public void setWordAccess(boolean wordAccess) {
+        this.wordAccess = wordAccess;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+
+package com.nextian.ipmi.coding.commands.fru;
+
+import com.nextian.ipmi.coding.commands.CommandCodes;
+import com.nextian.ipmi.coding.commands.IpmiCommandCoder;
+import com.nextian.ipmi.coding.commands.IpmiVersion;
+import com.nextian.ipmi.coding.commands.ResponseData;
+import com.nextian.ipmi.coding.payload.CompletionCode;
+import com.nextian.ipmi.coding.payload.lan.*;
+import com.nextian.ipmi.coding.protocol.AuthenticationType;
+import com.nextian.ipmi.coding.protocol.IpmiMessage;
+import com.nextian.ipmi.coding.security.CipherSuite;
+import com.nextian.ipmi.common.TypeConverter;
+
+/**
+ * Read FRU Data request.
+ */
+public class ReadFruData extends IpmiCommandCoder {
+
+    private byte fruId;
+
+    private int offset;
+
+    private int count;
+
+    private boolean wordAccess;
+
+    /**
+     * Initiates ReadFruData for encoding and decoding of a FRU device accessed by bytes.
+     *
+     * @param version            IPMI version of the command
+     * @param cipherSuite        {@link CipherSuite} containing authentication, confidentiality and integrity algorithms for this session.
+     * @param authenticationType type of authentication used (must be RMCPPlus for IPMI v2.0)
+     * @param fruId              ID of the FRU device to read (0 is the BMC's FRU, FFh is reserved)
+     * @param offset             offset to read from (in bytes)
+     * @param count              number of bytes to read (1-255)
+     */
+    public ReadFruData(IpmiVersion version, CipherSuite cipherSuite, AuthenticationType authenticationType,
+                       int fruId, int offset, int count) {
+        this(version, cipherSuite, authenticationType, fruId, offset, count, false);
+    }
+
+    /**
+     * Initiates ReadFruData for encoding and decoding.
+     *
+     * @param version            IPMI version of the command
+     * @param cipherSuite        {@link CipherSuite} containing authentication, confidentiality and integrity algorithms for this session.
+     * @param authenticationType type of authentication used (must be RMCPPlus for IPMI v2.0)
+     * @param fruId              ID of the FRU device to read (0 is the BMC's FRU, FFh is reserved)
+     * @param offset             offset to read from (in bytes or words, depending on the device access type)
+     * @param count              number of bytes (or words) to read (1-255)
+     * @param wordAccess         true if the device is accessed by words
+     *                           (see {@link GetFruInventoryAreaInfoResponseData#isWordAccess()})
+     */
+    public ReadFruData(IpmiVersion version, CipherSuite cipherSuite, AuthenticationType authenticationType,
+                       int fruId, int offset, int count, boolean wordAccess) {
+        super(version, cipherSuite, authenticationType);
+
+        if (version == IpmiVersion.V20 && authenticationType != AuthenticationType.RMCPPlus) {
+            throw new IllegalArgumentException("Authentication Type must be RMCPPlus for IPMI v2.0 messages");
+        }
+        if (fruId < 0 || fruId > 0xFE) {
+            throw new IllegalArgumentException("FRU ID must be 0-254");
+        }
+        if (offset < 0 || offset > 0xFFFF) {
+            throw new IllegalArgumentException("Offset must be 0-65535");
+        }
+        if (count < 1 || count > 0xFF) {
+            throw new IllegalArgumentException("Count must be 1-255");
+        }
+        this.fruId = TypeConverter.intToByte(fruId);
+        this.offset = offset;
+        this.count = count;
+        this.wordAccess = wordAccess;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public boolean isWordAccess() {
+        return wordAccess;
+    }
+
+    @Override
+    protected IpmiLanMessage preparePayload(int sequenceNumber) {
+        byte[] requestData = new byte[4];
+
+        requestData[0] = fruId;
+        requestData[1] = TypeConverter.intToByte(offset & 0xff);
+        requestData[2] = TypeConverter.intToByte((offset >> 8) & 0xff);
+        requestData[3] = TypeConverter.intToByte(count);
+
+        return new IpmiLanRequest(getNetworkFunction(), getCommandCode(), requestData,
+                TypeConverter.intToByte(sequenceNumber % 64));
+    }
+
+    @Override
+    public byte getCommandCode() {
+        return CommandCodes.READ_FRU_DATA;
+    }
+
+    @Override
+    public NetworkFunction getNetworkFunction() {
+        return NetworkFunction.StorageRequest;
+    }
+
+    @Override
+    public ResponseData getResponseData(IpmiMessage message)
+            throws IllegalArgumentException, IPMIException {
+        if (!isCommandResponse(message)) {
+            throw new IllegalArgumentException("Invalid response for Read FRU Data command");
+        }
+        if (!(message.getPayload() instanceof IpmiLanResponse)) {
+            throw new IllegalArgumentException("Invalid response payload");
+        }
+        if (((IpmiLanResponse) message.getPayload()).getCompletionCode() != CompletionCode.Ok) {
+            throw new IPMIException(((IpmiLanResponse) message.getPayload()).getCompletionCode());
+        }
+
+        byte[] raw = message.getPayload().getIpmiCommandData();
+
+        // count returned is in the access units of the device
+        int length = raw != null && raw.length > 0 ? TypeConverter.byteToInt(raw[0]) * (wordAccess ? 2 : 1) : 0;
+        if (raw == null || raw.length < 1 || raw.length - 1 < length) {
+            throw new IllegalArgumentException("Invalid response payload length");
+        }
+
+        ReadFruDataResponseData responseData = new ReadFruDataResponseData();
+
+        byte[] data = new byte[length];
+        System.arraycopy(raw, 1, data, 0, data.length);
+
+        responseData.setOffset(offset);
+        responseData.setData(data);
+
+        return responseData;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+
+package com.nextian.ipmi.coding.commands.fru;
+
+import com.nextian.ipmi.coding.commands.ResponseData;
+
+/**
+ * Read FRU Data response.
+ */
+public class ReadFruDataResponseData implements ResponseData {
+
+    private int offset;
+
+    private byte[] data;
+
+    /**
+     * @return offset of the requested data (copied from the request)
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    /**
+     * @return data returned by the BMC. May be shorter than requested.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+}
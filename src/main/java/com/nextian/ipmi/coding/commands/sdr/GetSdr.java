@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.coding.commands.sdr;
+
+import com.nextian.ipmi.coding.commands.CommandCodes;
+import com.nextian.ipmi.coding.commands.IpmiCommandCoder;
+import com.nextian.ipmi.coding.commands.IpmiVersion;
+import com.nextian.ipmi.coding.commands.ResponseData;
+import com.nextian.ipmi.coding.payload.CompletionCode;
+import com.nextian.ipmi.coding.payload.lan.*;
+import com.nextian.ipmi.coding.protocol.AuthenticationType;
+import com.nextian.ipmi.coding.protocol.IpmiMessage;
+import com.nextian.ipmi.coding.security.CipherSuite;
+import com.nextian.ipmi.common.TypeConverter;
+
+/**
+ * Get SDR request.
+ */
+public class GetSdr extends IpmiCommandCoder {
+
+    /**
+     * Record ID of the first record in the repository.
+     */
+    public static final int FIRST_RECORD = 0x0000;
+
+    /**
+     * Next Record ID marking the last record in the repository.
+     */
+    public static final int LAST_RECORD = 0xFFFF;
+
+    /**
+     * Number of bytes to read meaning 'entire record'.
+     */
+    public static final int ENTIRE_RECORD = 0xFF;
+
+    private int reservationId;
+
+    private int recordId;
+
+    private int offset;
+
+    private int count;
+
+    /**
+     * Initiates GetSdr for encoding and decoding.
+     *
+     * @param version            IPMI version of the command
+     * @param cipherSuite        {@link CipherSuite} containing authentication, confidentiality and integrity algorithms for this session.
+     * @param authenticationType type of authentication used (must be RMCPPlus for IPMI v2.0)
+     * @param reservationId      reservation obtained by {@link ReserveSdrRepository} (0 when offset is 0)
+     * @param recordId           ID of the record to read ({@link #FIRST_RECORD} for the first record)
+     * @param offset             offset into the record
+     * @param count              number of bytes to read ({@link #ENTIRE_RECORD} to read entire record)
+     */
+    public GetSdr(IpmiVersion version, CipherSuite cipherSuite, AuthenticationType authenticationType,
+                  int reservationId, int recordId, int offset, int count) {
+        super(version, cipherSuite, authenticationType);
+
+        if (version == IpmiVersion.V20 && authenticationType != AuthenticationType.RMCPPlus) {
+            throw new IllegalArgumentException("Authentication Type must be RMCPPlus for IPMI v2.0 messages");
+        }
+        if (recordId < 0 || recordId >= LAST_RECORD) {
+            throw new IllegalArgumentException("Invalid record ID " + recordId);
+        }
+        if (offset < 0 || offset > 0xFF || count < 1 || count > 0xFF) {
+            throw new IllegalArgumentException("Offset and count must be 0-255 and 1-255");
+        }
+        this.reservationId = reservationId;
+        this.recordId = recordId;
+        this.offset = offset;
+        this.count = count;
+    }
+
+    public int getRecordId() {
+        return recordId;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    protected IpmiLanMessage preparePayload(int sequenceNumber) {
+        byte[] requestData = new byte[6];
+
+        requestData[0] = TypeConverter.intToByte(reservationId & 0xff);
+        requestData[1] = TypeConverter.intToByte((reservationId >> 8) & 0xff);
+        requestData[2] = TypeConverter.intToByte(recordId & 0xff);
+        requestData[3] = TypeConverter.intToByte((recordId >> 8) & 0xff);
+        requestData[4] = TypeConverter.intToByte(offset);
+        requestData[5] = TypeConverter.intToByte(count);
+
+        return new IpmiLanRequest(getNetworkFunction(), getCommandCode(), requestData,
+                TypeConverter.intToByte(sequenceNumber % 64));
+    }
+
+    @Override
+    public byte getCommandCode() {
+        return CommandCodes.GET_SDR;
+    }
+
+    @Override
+    public NetworkFunction getNetworkFunction() {
+        return NetworkFunction.StorageRequest;
+    }
+
+    @Override
+    public ResponseData getResponseData(IpmiMessage message)
+            throws IllegalArgumentException, IPMIException {
+        if (!isCommandResponse(message)) {
+            throw new IllegalArgumentException("Invalid response for Get SDR command");
+        }
+        if (!(message.getPayload() instanceof IpmiLanResponse)) {
+            throw new IllegalArgumentException("Invalid response payload");
+        }
+        if (((IpmiLanResponse) message.getPayload()).getCompletionCode() != CompletionCode.Ok) {
+            throw new IPMIException(((IpmiLanResponse) message.getPayload()).getCompletionCode());
+        }
+
+        byte[] raw = message.getPayload().getIpmiCommandData();
+
+        if (raw == null || raw.length < 2) {
+            throw new IllegalArgumentException("Invalid response payload length");
+        }
+
+        GetSdrResponseData responseData = new GetSdrResponseData();
+
+        responseData.setNextRecordId(TypeConverter.byteToInt(raw[0]) | (TypeConverter.byteToInt(raw[1]) << 8));
+
+        byte[] data = new byte[raw.length - 2];
+        System.arraycopy(raw, 2, data, 0, data.length);
+        responseData.setRecordData(data);
+
+        return responseData;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.coding.commands.sdr;
+
+import com.nextian.ipmi.coding.commands.ResponseData;
+
+/**
+ * Get SDR response.
+ */
+public class GetSdrResponseData implements ResponseData {
+
+    private int nextRecordId;
+
+    private byte[] recordData;
+
+    /**
+     * @return ID of the next record in the repository or {@link GetSdr#LAST_RECORD} if this is the last one
+     */
+    public int getNextRecordId() {
+        return nextRecordId;
+    }
+
+    public void setNextRecordId(int nextRecordId) {
+        this.nextRecordId = nextRecordId;
+    }
+
+    /**
+     * @return requested part of the record
+     */
+    public byte[] getRecordData() {
+        return recordData;
+    }
+
+    public void setRecordData(byte[] recordData) {
+        this.recordData = recordData;
+    }
+}
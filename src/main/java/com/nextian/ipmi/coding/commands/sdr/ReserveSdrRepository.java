@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.coding.commands.sdr;
+
+import com.nextian.ipmi.coding.commands.CommandCodes;
+import com.nextian.ipmi.coding.commands.IpmiCommandCoder;
+import com.nextian.ipmi.coding.commands.IpmiVersion;
+import com.nextian.ipmi.coding.commands.ResponseData;
+import com.nextian.ipmi.coding.payload.CompletionCode;
+import com.nextian.ipmi.coding.payload.lan.*;
+import com.nextian.ipmi.coding.protocol.AuthenticationType;
+import com.nextian.ipmi.coding.protocol.IpmiMessage;
+import com.nextian.ipmi.coding.security.CipherSuite;
+import com.nextian.ipmi.common.TypeConverter;
+
+/**
+ * Reserve SDR Repository request. Reservation is required to read SDR records with an offset and is canceled by the
+ * BMC whenever the repository changes.
+ */
+public class ReserveSdrRepository extends IpmiCommandCoder {
+
+    /**
+     * Initiates ReserveSdrRepository for encoding and decoding.
+     *
+     * @param version            IPMI version of the command
+     * @param cipherSuite        {@link CipherSuite} containing authentication, confidentiality and integrity algorithms for this session.
+     * @param authenticationType type of authentication used (must be RMCPPlus for IPMI v2.0)
+     */
+    public ReserveSdrRepository(IpmiVersion version, CipherSuite cipherSuite, AuthenticationType authenticationType) {
+        super(version, cipherSuite, authenticationType);
+
+        if (version == IpmiVersion.V20 && authenticationType != AuthenticationType.RMCPPlus) {
+            throw new IllegalArgumentException("Authentication Type must be RMCPPlus for IPMI v2.0 messages");
+        }
+    }
+
+    @Override
+    protected IpmiLanMessage preparePayload(int sequenceNumber) {
+        return new IpmiLanRequest(getNetworkFunction(), getCommandCode(), null,
+                TypeConverter.intToByte(sequenceNumber % 64));
+    }
+
+    @Override
+    public byte getCommandCode() {
+        return CommandCodes.RESERVE_SDR_REPOSITORY;
+    }
+
+    @Override
+    public NetworkFunction getNetworkFunction() {
+        return NetworkFunction.StorageRequest;
+    }
+
+    @Override
+    public ResponseData getResponseData(IpmiMessage message)
+            throws IllegalArgumentException, IPMIException {
+        if (!isCommandResponse(message)) {
+            throw new IllegalArgumentException("Invalid response for Reserve SDR Repository command");
+        }
+        if (!(message.getPayload() instanceof IpmiLanResponse)) {
+            throw new IllegalArgumentException("Invalid response payload");
+        }
+        if (((IpmiLanResponse) message.getPayload()).getCompletionCode() != CompletionCode.Ok) {
+            throw new IPMIException(((IpmiLanResponse) message.getPayload()).getCompletionCode());
+        }
+
+        byte[] raw = message.getPayload().getIpmiCommandData();
+
+        if (raw == null || raw.length != 2) {
+            throw new IllegalArgumentException("Invalid response payload length");
+        }
+
+        ReserveSdrRepositoryResponseData responseData = new ReserveSdrRepositoryResponseData();
+
+        responseData.setReservationId(TypeConverter.byteToInt(raw[0]) | (TypeConverter.byteToInt(raw[1]) << 8));
+
+        return responseData;
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.coding.commands.sdr;
+
+import com.nextian.ipmi.coding.commands.ResponseData;
+
+/**
+ * Reserve SDR Repository response.
+ */
+public class ReserveSdrRepositoryResponseData implements ResponseData {
+
+    private int reservationId;
+
+    public int getReservationId() {
+        return reservationId;
+    }
+
+    public void setReservationId(int reservationId) {
+        this.reservationId = reservationId;
+    }
+}
@@ -9,6 +9,7 @@
 
 package com.nextian.ipmi.coding.commands.session;
 
+import com.nextian.ipmi.coding.commands.CommandCodes;
 import com.nextian.ipmi.coding.commands.IpmiCommandCoder;
 import com.nextian.ipmi.coding.commands.IpmiVersion;
 import com.nextian.ipmi.coding.commands.ResponseData;
@@ -53,7 +54,7 @@ public class CloseSession extends IpmiCommandCoder {
 
     @Override
     public byte getCommandCode() {
-        return TypeConverter.intToByte(0x3c);
+        return CommandCodes.CLOSE_SESSION;
     }
 
     @Override
@@ -29,7 +29,15 @@ public enum NetworkFunction {
 			NetworkFunction.APPLICATIONREQUEST), ApplicationResponse(
 			NetworkFunction.APPLICATIONRESPONSE), FirmwareRequest(
 			NetworkFunction.FIRMWAREREQUEST), FirmwareResponse(
-			NetworkFunction.FIRMWARERESPONSE), ;
+			NetworkFunction.FIRMWARERESPONSE),
+	/**
+	 * Group Extension Request (used by DCMI)
+	 */
+	GroupExtensionRequest(NetworkFunction.GROUPEXTENSIONREQUEST),
+	/**
+	 * Group Extension Response (used by DCMI)
+	 */
+	GroupExtensionResponse(NetworkFunction.GROUPEXTENSIONRESPONSE), ;
 	private static final int CHASSISREQUEST = 0;
 	private static final int CHASSISRESPONSE = 1;
 	private static final int STORAGEREQUEST = 10;
@@ -42,6 +50,8 @@ public enum NetworkFunction {
 	private static final int APPLICATIONRESPONSE = 7;
 	private static final int FIRMWAREREQUEST = 8;
 	private static final int FIRMWARERESPONSE = 9;
+	private static final int GROUPEXTENSIONREQUEST = 0x2C;
+	private static final int GROUPEXTENSIONRESPONSE = 0x2D;
 
 	private int code;
 
@@ -87,6 +97,10 @@ public enum NetworkFunction {
 			return FirmwareRequest;
 		case FIRMWARERESPONSE:
 			return FirmwareResponse;
+		case GROUPEXTENSIONREQUEST:
+			return GroupExtensionRequest;
+		case GROUPEXTENSIONRESPONSE:
+			return GroupExtensionResponse;
 		default:
 			throw new IllegalArgumentException("Invalid value: " + value);
 		}
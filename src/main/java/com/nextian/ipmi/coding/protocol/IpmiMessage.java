@@ -25,6 +25,11 @@ public abstract class IpmiMessage {
 
     private byte[] authCode;
 
+    /**
+     * False if the AuthCode of the received message did not match the one calculated from its contents.
+     */
+    private boolean authCodeValid = true;
+
     private IpmiPayload payload;
 
     private int payloadLength;
@@ -66,6 +71,14 @@ public abstract class IpmiMessage {
         return authCode;
     }
 
+    public void setAuthCodeValid(boolean authCodeValid) {
+        this.authCodeValid = authCodeValid;
+    }
+
+    public boolean isAuthCodeValid() {
+        return authCodeValid;
+    }
+
     /**
      * Sets {@link #payload} and {@link #payloadLength}
      *
@@ -16,6 +16,8 @@ import com.nextian.ipmi.coding.rmcp.RmcpMessage;
 import com.nextian.ipmi.coding.security.CipherSuite;
 import com.nextian.ipmi.coding.security.ConfidentialityNone;
 import com.nextian.ipmi.common.TypeConverter;
+import com.nextian.ipmi.trace.Tracer;
+import com.nextian.ipmi.trace.Tracing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -72,6 +74,8 @@ public class Protocolv20Decoder extends ProtocolDecoder {
      */
     @Override
     public IpmiMessage decode(RmcpMessage rmcpMessage) throws IllegalArgumentException, InvalidKeyException {
+        Tracer tracer = Tracing.getTracer();
+        long start = tracer != null ? System.nanoTime() : 0;
         Ipmiv20Message message = new Ipmiv20Message(cipherSuite.getConfidentialityAlgorithm());
 
         byte[] raw = rmcpMessage.getData();
@@ -119,9 +123,15 @@ public class Protocolv20Decoder extends ProtocolDecoder {
             message.setAuthCode(decodeAuthCode(raw, offset));
             if (!validateAuthCode(raw, offset)) {
                 LOGGER.warn("Integrity check failed");
+                message.setAuthCodeValid(false);
             }
         }
 
+        if (tracer != null) {
+            tracer.messageDecoded(message.getPayloadType(), message.getSessionID(), message.getSessionSequenceNumber(),
+                    payloadLength, message.isAuthCodeValid(), System.nanoTime() - start);
+        }
+
         return message;
     }
 
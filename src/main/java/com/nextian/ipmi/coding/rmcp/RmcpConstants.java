@@ -36,6 +36,11 @@ public final class RmcpConstants {
      */
     public static final byte PRESENCE_PING = (byte) (0x80 - 256);
 
+    /**
+     * ASF Message type = Presence Pong
+     */
+    public static final byte PRESENCE_PONG = 0x40;
+
     private RmcpConstants() {
     }
 }
@@ -49,6 +49,37 @@ public class CipherSuite {
         this.integrityAlgorithm = (integrityAlgorithm);
     }
 
+    /**
+     * @return code of the authentication algorithm
+     */
+    public byte getAuthenticationAlgorithmCode() {
+        return authenticationAlgorithm;
+    }
+
+    /**
+     * @return code of the confidentiality algorithm
+     */
+    public byte getConfidentialityAlgorithmCode() {
+        return confidentialityAlgorithm;
+    }
+
+    /**
+     * @return code of the integrity algorithm
+     */
+    public byte getIntegrityAlgorithmCode() {
+        return integrityAlgorithm;
+    }
+
+    /**
+     * Creates cipher suite with the same algorithm codes and not initialized algorithms. Algorithms keep session keys,
+     * so every session needs its own instance.
+     *
+     * @return new instance of the cipher suite
+     */
+    public CipherSuite copy() {
+        return new CipherSuite(id, authenticationAlgorithm, confidentialityAlgorithm, integrityAlgorithm);
+    }
+
     /**
      * Initializes algorithms contained in this {@link CipherSuite}.
      *
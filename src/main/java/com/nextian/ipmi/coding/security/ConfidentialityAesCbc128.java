@@ -60,7 +60,7 @@ public class ConfidentialityAesCbc128 extends ConfidentialityAlgorithm {
     }
 
     @Override
-    public byte[] encrypt(byte[] data) throws InvalidKeyException {
+    public synchronized byte[] encrypt(byte[] data) throws InvalidKeyException {
         int length = data.length + 17;
         int pad = 0;
         if (length % 16 != 0) {
@@ -95,7 +95,7 @@ public class ConfidentialityAesCbc128 extends ConfidentialityAlgorithm {
     }
 
     @Override
-    public byte[] decrypt(byte[] data) throws IllegalArgumentException {
+    public synchronized byte[] decrypt(byte[] data) throws IllegalArgumentException {
 
         byte[] decrypted = null;
         try {
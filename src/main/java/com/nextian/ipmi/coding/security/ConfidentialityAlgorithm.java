@@ -19,6 +19,8 @@ import java.security.NoSuchAlgorithmException;
 
 /**
  * Interface for Confidentiality Algorithms. All classes extending this one must implement constructor(byte[]).
+ * {@link #encrypt(byte[])} and {@link #decrypt(byte[])} must be thread-safe, since messages of a session are encoded
+ * and decoded concurrently.
  */
 public abstract class ConfidentialityAlgorithm {
     protected byte[] sik;
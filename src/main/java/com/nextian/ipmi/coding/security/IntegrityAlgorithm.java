@@ -21,6 +21,8 @@ import java.security.InvalidKeyException;
 
 /**
  * Interface for Integrity Algorithms. All classes extending this one must implement constructor(byte[]).
+ * {@link #generateAuthCode(byte[])} must be thread-safe, since messages of a session are encoded and decoded
+ * concurrently.
  */
 public abstract class IntegrityAlgorithm {
 
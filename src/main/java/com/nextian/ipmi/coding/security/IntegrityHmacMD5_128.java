@@ -56,7 +56,7 @@ public class IntegrityHmacMD5_128 extends IntegrityAlgorithm {
     }
 
     @Override
-    public byte[] generateAuthCode(byte[] base) {
+    public synchronized byte[] generateAuthCode(byte[] base) {
 
         if (sik == null) {
             throw new NullPointerException("Algorithm not initialized.");
@@ -56,7 +56,7 @@ public class IntegrityHmacSha1_96 extends IntegrityAlgorithm {
     }
 
     @Override
-    public byte[] generateAuthCode(byte[] base) {
+    public synchronized byte[] generateAuthCode(byte[] base) {
 
         if (sik == null) {
             throw new NullPointerException("Algorithm not initialized.");
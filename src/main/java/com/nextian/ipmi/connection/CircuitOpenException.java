@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.connection;
+
+/**
+ * Exception indicating that the request was not sent because the circuit breaker of the connection is open, i.e. the
+ * managed system stopped responding. Retrying the request before the managed system answers the presence ping is
+ * pointless.
+ *
+ * @see ConnectionHealth
+ */
+public class CircuitOpenException extends ConnectionException {
+    private static final long serialVersionUID = -4262447309817154618L;
+
+    public CircuitOpenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.connection;
+
+/**
+ * States of the circuit breaker of a connection.
+ *
+ * @see ConnectionHealth
+ */
+public enum CircuitState {
+    /**
+     * Requests are sent.
+     */
+    Closed,
+    /**
+     * Managed system stopped responding, requests fail immediately.
+     */
+    Open,
+    /**
+     * RMCP presence ping was sent to check if the managed system is back, requests still fail immediately. After the
+     * pong a single trial request is sent, the breaker closes on its response.
+     */
+    HalfOpen
+}
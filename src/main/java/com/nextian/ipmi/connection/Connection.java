@@ -16,6 +16,8 @@ import com.nextian.ipmi.coding.commands.session.*;
 import com.nextian.ipmi.coding.payload.lan.IPMIException;
 import com.nextian.ipmi.coding.payload.lan.IpmiLanResponse;
 import com.nextian.ipmi.coding.protocol.Ipmiv20Message;
+import com.nextian.ipmi.coding.rmcp.RmcpEncoder;
+import com.nextian.ipmi.coding.rmcp.RmcpPingMessage;
 import com.nextian.ipmi.coding.security.AuthenticationRakpHmacSha1;
 import com.nextian.ipmi.coding.security.CipherSuite;
 import com.nextian.ipmi.coding.security.ConfidentialityAesCbc128;
@@ -23,11 +25,18 @@ import com.nextian.ipmi.coding.security.IntegrityHmacSha1_96;
 import com.nextian.ipmi.common.Defaults;
 import com.nextian.ipmi.common.TypeConverter;
 import com.nextian.ipmi.connection.queue.MessageQueue;
+import com.nextian.ipmi.metrics.ConnectionMetrics;
+import com.nextian.ipmi.metrics.ConnectionMetricsSnapshot;
+import com.nextian.ipmi.metrics.ConnectionState;
+import com.nextian.ipmi.metrics.ConnectorMetrics;
+import com.nextian.ipmi.metrics.Counter;
+import com.nextian.ipmi.metrics.HandshakePhase;
 import com.nextian.ipmi.sm.MachineObserver;
 import com.nextian.ipmi.sm.StateMachine;
 import com.nextian.ipmi.sm.actions.ErrorAction;
 import com.nextian.ipmi.sm.actions.GetSikAction;
 import com.nextian.ipmi.sm.actions.MessageAction;
+import com.nextian.ipmi.sm.actions.PresencePongAction;
 import com.nextian.ipmi.sm.actions.ResponseAction;
 import com.nextian.ipmi.sm.actions.StateMachineAction;
 import com.nextian.ipmi.sm.events.AuthenticationCapabilitiesReceived;
@@ -35,6 +44,7 @@ import com.nextian.ipmi.sm.events.Authorize;
 import com.nextian.ipmi.sm.events.CloseSession;
 import com.nextian.ipmi.sm.events.Default;
 import com.nextian.ipmi.sm.events.DefaultAck;
+import com.nextian.ipmi.sm.events.FastAuthorize;
 import com.nextian.ipmi.sm.events.GetChannelCipherSuitesPending;
 import com.nextian.ipmi.sm.events.OpenSessionAck;
 import com.nextian.ipmi.sm.events.Rakp2Ack;
@@ -43,8 +53,12 @@ import com.nextian.ipmi.sm.events.StartSession;
 import com.nextian.ipmi.sm.events.Timeout;
 import com.nextian.ipmi.sm.states.Authcap;
 import com.nextian.ipmi.sm.states.Ciphers;
+import com.nextian.ipmi.sm.states.CiphersWaiting;
 import com.nextian.ipmi.sm.states.SessionValid;
+import com.nextian.ipmi.sm.states.State;
 import com.nextian.ipmi.sm.states.Uninitialized;
+import com.nextian.ipmi.trace.Tracer;
+import com.nextian.ipmi.trace.Tracing;
 import com.nextian.ipmi.transport.Messenger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,6 +70,7 @@ import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.Exchanger;
@@ -70,6 +85,8 @@ public class Connection extends TimerTask implements MachineObserver {
 
     private static final int DEFAULT_CIPHER_SUITE = 3;
     private static final int NOTIFICATION_TIMEOUT = 250; // Maximum time in milliseconds to propagate response from socket to active operation
+    private static final int KEEPALIVE_TAG_WAIT = 10; // Delay in milliseconds between attempts to get tag for keepalive
+    private static final Random JITTER = new Random();
     private final List<ConnectionListener> listeners;
     private final StateMachine stateMachine;
     /**
@@ -78,6 +95,9 @@ public class Connection extends TimerTask implements MachineObserver {
     private final int cleaningFrequency;
     private final Exchanger<StateMachineAction> lastAction;
     private final int handle;
+    private final ConnectionMetrics metrics;
+
+    private final ConnectionHealth health = new ConnectionHealth();
 
     /**
      * Time in ms after which a message times out. It is propagated to {{@link MessageQueue}} either on connection
@@ -91,6 +111,29 @@ public class Connection extends TimerTask implements MachineObserver {
     private MessageQueue messageQueue;
     private Timer timer;
 
+    /**
+     * Time in ms after which an idle session is kept up with a no-op command.
+     */
+    private int keepalivePeriod;
+
+    /**
+     * Guards sending of the keepalives, so {@link #stopKeepalive()} returns only after the keepalive being sent.
+     */
+    private final Object keepaliveLock = new Object();
+    private boolean keepaliveStopped;
+
+    /**
+     * Time in ms of the last request sent or response received in the session.
+     */
+    private volatile long lastActivity;
+
+    private PrivilegeLevel privilegeLevel;
+
+    /**
+     * Tag of the keepalive validating resumed session, which response is reported to the listeners.
+     */
+    private volatile int resumeProbeTag = MessageQueue.ILLEGAL_SEQUENCE_NUMBER;
+
     /**
      * Creates the connection.
      *
@@ -100,12 +143,27 @@ public class Connection extends TimerTask implements MachineObserver {
      * @param cleaningFrequency delay in ms between message queue cleaning action (responsible for timeout discovery)
      */
     public Connection(Messenger messenger, int handle, int timeout, int cleaningFrequency) {
+        this(messenger, handle, timeout, cleaningFrequency, null);
+    }
+
+    /**
+     * Creates the connection reporting its metrics to the connector.
+     *
+     * @param messenger         {@link Messenger} associated with the proper {@link Defaults#IPMI_PORT}
+     * @param handle            id of the connection
+     * @param timeout           requests timeout in ms
+     * @param cleaningFrequency delay in ms between message queue cleaning action (responsible for timeout discovery)
+     * @param connectorMetrics  metrics of the connector owning the connection, null if none
+     */
+    public Connection(Messenger messenger, int handle, int timeout, int cleaningFrequency,
+                      ConnectorMetrics connectorMetrics) {
         stateMachine = new StateMachine(messenger);
         this.handle = handle;
         this.timeout = timeout;
         this.cleaningFrequency = cleaningFrequency;
         lastAction = new Exchanger<StateMachineAction>();
         listeners = new ArrayList<ConnectionListener>();
+        metrics = new ConnectionMetrics(connectorMetrics);
     }
 
     /**
@@ -121,6 +179,27 @@ public class Connection extends TimerTask implements MachineObserver {
         return handle;
     }
 
+    /**
+     * @return live metrics of the connection
+     */
+    public ConnectionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return health score and circuit breaker of the connection
+     */
+    public ConnectionHealth getHealth() {
+        return health;
+    }
+
+    /**
+     * @return current values of the connection metrics
+     */
+    public ConnectionMetricsSnapshot getMetricsSnapshot() {
+        return metrics.snapshot(handle, getRemoteMachineAddress());
+    }
+
     public int getTimeout() {
         return timeout;
     }
@@ -170,8 +249,13 @@ public class Connection extends TimerTask implements MachineObserver {
      */
     public void connect(InetAddress address, int keepalivePeriod, boolean skipCiphers) {
         messageQueue = new MessageQueue(this, timeout, cleaningFrequency);
+        this.keepalivePeriod = keepalivePeriod;
+        lastActivity = System.currentTimeMillis();
+        // Idle time is checked twice per keepalive period, so no-op is sent at most keepalivePeriod after the last
+        // activity. Random phase keeps connections created at once from sending keepalives at the same time.
+        int checkPeriod = Math.max(keepalivePeriod / 2, 1);
         timer = new Timer();
-        timer.schedule(this, keepalivePeriod, keepalivePeriod);
+        timer.schedule(this, checkPeriod + JITTER.nextInt(checkPeriod), checkPeriod);
         stateMachine.register(this);
         if (skipCiphers) {
             stateMachine.start(address);
@@ -214,6 +298,20 @@ public class Connection extends TimerTask implements MachineObserver {
      * @throws InterruptedException when thread is interrupted
      */
     public List<CipherSuite> getAvailableCipherSuites(int tag) throws ConnectionException, InterruptedException {
+        return getAvailableCipherSuites(new int[]{tag});
+    }
+
+    /**
+     * Gets from the managed system supported {@link CipherSuite}s. Should be performed only immediately after
+     * {@link #connect(InetAddress, int)}. One Get Channel Cipher Suites request per tag is sent at once, so the list
+     * of up to 16 bytes times the number of tags is retrieved in a single round trip.
+     *
+     * @param tags distinct integers from range 0-63 to match requests with responses
+     * @return list of the {@link CipherSuite}s supported by the managed system.
+     * @throws ConnectionException  when connection is in the state that does not allow to perform this operation.
+     * @throws InterruptedException when thread is interrupted
+     */
+    public List<CipherSuite> getAvailableCipherSuites(int[] tags) throws ConnectionException, InterruptedException {
 
         if (stateMachine.getCurrent().getClass() != Uninitialized.class) {
             throw new ConnectionException("Illegal connection state: "
@@ -221,12 +319,13 @@ public class Connection extends TimerTask implements MachineObserver {
         }
 
         boolean process = true;
+        long start = System.nanoTime();
 
         ArrayList<byte[]> rawCipherSuites = new ArrayList<byte[]>();
 
         while (process) {
 
-            stateMachine.doTransition(new GetChannelCipherSuitesPending(tag));
+            stateMachine.doTransition(new GetChannelCipherSuitesPending(tags));
 
             ResponseAction action = getResponse(timeout);
 
@@ -240,11 +339,12 @@ public class Connection extends TimerTask implements MachineObserver {
 
             rawCipherSuites.add(responseData.getCipherSuiteData());
 
-            if (responseData.getCipherSuiteData().length < 16) {
+            if (responseData.getCipherSuiteData().length < CiphersWaiting.CHUNK_SIZE * tags.length) {
                 process = false;
             }
         }
 
+        metrics.recordHandshakePhase(HandshakePhase.CipherSuites, System.nanoTime() - start);
         stateMachine.doTransition(new DefaultAck());
 
         int length = 0;
@@ -304,6 +404,7 @@ public class Connection extends TimerTask implements MachineObserver {
             throw new ConnectionException("Illegal connection state: " + stateMachine.getCurrent().getClass().getSimpleName());
         }
 
+        long start = System.nanoTime();
         stateMachine.doTransition(new Default(cipherSuite, tag, requestedPrivilegeLevel));
 
         ResponseAction action = getResponse(timeout);
@@ -315,6 +416,7 @@ public class Connection extends TimerTask implements MachineObserver {
 
         GetChannelAuthenticationCapabilitiesResponseData responseData =
                 (GetChannelAuthenticationCapabilitiesResponseData) action.getIpmiResponseData();
+        metrics.recordHandshakePhase(HandshakePhase.AuthenticationCapabilities, System.nanoTime() - start);
 
         sessionId = ConnectionManager.generateSessionId();
 
@@ -323,6 +425,22 @@ public class Connection extends TimerTask implements MachineObserver {
         return responseData;
     }
 
+    /**
+     * Marks channel authentication capabilities as known without querying the managed system, e.g. when they are
+     * taken from the cache. Afterwards the connection is in the same state as after
+     * {@link #getChannelAuthenticationCapabilities(int, CipherSuite, PrivilegeLevel)}.
+     *
+     * @throws ConnectionException when connection is in the state that does not allow to perform this operation.
+     */
+    public void skipAuthenticationCapabilities() throws ConnectionException {
+        if (stateMachine.getCurrent().getClass() != Ciphers.class) {
+            throw new ConnectionException("Illegal connection state: " +
+                    stateMachine.getCurrent().getClass().getSimpleName());
+        }
+        sessionId = ConnectionManager.generateSessionId();
+        stateMachine.setCurrent(new Authcap());
+    }
+
     /**
      * Initiates the session with the managed system. Must be performed after
      * {@link #getChannelAuthenticationCapabilities(int, CipherSuite, PrivilegeLevel)}
@@ -349,6 +467,7 @@ public class Connection extends TimerTask implements MachineObserver {
         }
 
         // Open Session
+        long start = System.nanoTime();
         stateMachine.doTransition(new Authorize(cipherSuite, tag, privilegeLevel, sessionId));
 
         ResponseAction action = getResponse(timeout);
@@ -357,16 +476,78 @@ public class Connection extends TimerTask implements MachineObserver {
             stateMachine.doTransition(new Timeout());
             throw new ConnectionException("Response data not matching OpenSession response data");
         }
+        metrics.recordHandshakePhase(HandshakePhase.OpenSession, System.nanoTime() - start);
 
         managedSystemSessionId = ((OpenSessionResponseData) action.getIpmiResponseData()).getManagedSystemSessionId();
 
         stateMachine.doTransition(new DefaultAck());
+        start = System.nanoTime();
 
         // RAKP 1
         stateMachine.doTransition(new OpenSessionAck(cipherSuite, privilegeLevel, tag, managedSystemSessionId, username,
                 password, bmcKey));
 
-        action = getResponse(timeout);
+        completeSession(tag, cipherSuite, privilegeLevel, start);
+    }
+
+    /**
+     * Initiates the session with the managed system in the fast handshake mode: Get Channel Authentication
+     * Capabilities probe is sent together with the Open Session request and RAKP Message 1 is sent as soon as the
+     * Open Session response arrives. Must be performed when cipher suite and privilege level are already known, i.e.
+     * after {@link #getChannelAuthenticationCapabilities(int, CipherSuite, PrivilegeLevel)} or on connection created
+     * with skipCiphers.
+     *
+     * @param tag            the integer from range 0-63 to match request with response
+     * @param probeTag       tag of the Get Channel Authentication Capabilities probe, {@link FastAuthorize#NO_PROBE}
+     *                       to skip the probe
+     * @param cipherSuite    {@link CipherSuite} that will be used during the session
+     * @param privilegeLevel requested {@link PrivilegeLevel}
+     * @param username       the username
+     * @param password       the password matching the username
+     * @param bmcKey         the key that should be provided if the two-key authentication is enabled, null otherwise.
+     * @throws ConnectionException      when connection is in the state that does not allow to perform this operation.
+     * @throws InterruptedException     when thread is interrupted
+     * @throws NoSuchPaddingException   when cipher algorithm initialization fails
+     * @throws NoSuchAlgorithmException when cipher algorithm initialization fails
+     */
+    public void startSessionFast(int tag, int probeTag, CipherSuite cipherSuite, PrivilegeLevel privilegeLevel,
+                                 String username, String password, byte[] bmcKey)
+            throws ConnectionException, InterruptedException, NoSuchPaddingException, NoSuchAlgorithmException,
+            InvalidKeyException {
+        if (stateMachine.getCurrent().getClass() != Authcap.class) {
+            throw new ConnectionException("Illegal connection state: " +
+                    stateMachine.getCurrent().getClass().getSimpleName());
+        }
+
+        // Open Session, RAKP 1 is sent by the state machine on the response
+        long start = System.nanoTime();
+        stateMachine.doTransition(new FastAuthorize(cipherSuite, tag, privilegeLevel, sessionId, probeTag, username,
+                password, bmcKey));
+
+        ResponseAction action = getResponse(timeout);
+
+        if (!(action.getIpmiResponseData() instanceof OpenSessionResponseData)) {
+            stateMachine.doTransition(new Timeout());
+            throw new ConnectionException("Response data not matching OpenSession response data");
+        }
+
+        long openSessionEnd = System.nanoTime();
+        metrics.recordHandshakePhase(HandshakePhase.OpenSession, openSessionEnd - start);
+
+        managedSystemSessionId = ((OpenSessionResponseData) action.getIpmiResponseData()).getManagedSystemSessionId();
+
+        completeSession(tag, cipherSuite, privilegeLevel, openSessionEnd);
+    }
+
+    /**
+     * Waits for RAKP Message 2, performs RAKP 3/4 exchange and validates the session.
+     *
+     * @param rakp1Start time RAKP Message 1 was sent at, in ns of {@link System#nanoTime()}
+     */
+    private void completeSession(int tag, CipherSuite cipherSuite, PrivilegeLevel privilegeLevel, long rakp1Start)
+            throws ConnectionException, InterruptedException, NoSuchPaddingException, NoSuchAlgorithmException,
+            InvalidKeyException {
+        ResponseAction action = getResponse(timeout);
 
         if (!(action.getIpmiResponseData() instanceof Rakp1ResponseData)) {
             stateMachine.doTransition(new Timeout());
@@ -376,10 +557,12 @@ public class Connection extends TimerTask implements MachineObserver {
         }
 
         Rakp1ResponseData rakp1ResponseData = (Rakp1ResponseData) action.getIpmiResponseData();
+        metrics.recordHandshakePhase(HandshakePhase.Rakp1, System.nanoTime() - rakp1Start);
 
         stateMachine.doTransition(new DefaultAck());
 
         // RAKP 3
+        long start = System.nanoTime();
         stateMachine.doTransition(new Rakp2Ack(cipherSuite, tag, (byte) 0, managedSystemSessionId, rakp1ResponseData));
 
         action = getResponse(timeout);
@@ -394,9 +577,69 @@ public class Connection extends TimerTask implements MachineObserver {
             stateMachine.doTransition(new Timeout());
             throw new ConnectionException("Response data not matching RAKP Message 4");
         }
+        metrics.recordHandshakePhase(HandshakePhase.Rakp3, System.nanoTime() - start);
 
         stateMachine.doTransition(new DefaultAck());
         stateMachine.doTransition(new StartSession(cipherSuite, sessionId));
+        this.privilegeLevel = privilegeLevel;
+        health.reset(); // managed system has just answered the whole handshake
+    }
+
+    /**
+     * Captures state of the open session, so it can be resumed with
+     * {@link #resumeSession(CipherSuite, SessionState)} e.g. after application restart.
+     *
+     * @return state of the session or null if session is not open
+     */
+    public SessionState getSessionState() {
+        if (!(stateMachine.getCurrent() instanceof SessionValid)) {
+            return null;
+        }
+        return new SessionState(getRemoteMachineAddress().getHostAddress(),
+                ((SessionValid) stateMachine.getCurrent()).getCipherSuite(), privilegeLevel, sessionId,
+                managedSystemSessionId, sik, messageQueue.getLastSequenceNumber(), lastReceivedSequenceNumber);
+    }
+
+    /**
+     * Resumes session captured with {@link #getSessionState()} without the RAKP handshake. Must be performed on a
+     * connection created with skipCiphers. A keepalive is sent to validate the session - its response (or timeout if
+     * the managed system has already expired the session) is reported to the listeners.
+     *
+     * @param cipherSuite {@link CipherSuite} of the session, initialized with the Session Integrity Key of the state
+     * @param state       state of the session
+     * @return tag of the validating keepalive
+     * @throws ConnectionException      when connection is in the state that does not allow to perform this operation
+     *                                  or the keepalive cannot be sent
+     * @throws InterruptedException     when thread is interrupted
+     * @throws NoSuchPaddingException   when cipher algorithm initialization fails
+     * @throws NoSuchAlgorithmException when cipher algorithm initialization fails
+     * @throws InvalidKeyException      when cipher algorithm initialization fails
+     */
+    public int resumeSession(CipherSuite cipherSuite, SessionState state)
+            throws ConnectionException, InterruptedException, NoSuchPaddingException, NoSuchAlgorithmException,
+            InvalidKeyException {
+        if (stateMachine.getCurrent().getClass() != Authcap.class) {
+            throw new ConnectionException("Illegal connection state: " +
+                    stateMachine.getCurrent().getClass().getSimpleName());
+        }
+        cipherSuite.initializeAlgorithms(state.getSik());
+
+        sessionId = state.getSessionId();
+        managedSystemSessionId = state.getManagedSystemSessionId();
+        sik = state.getSik();
+        privilegeLevel = state.getPrivilegeLevel();
+        lastReceivedSequenceNumber = state.getLastReceivedSequenceNumber();
+        messageQueue.setLastSequenceNumber(state.getLastSequenceNumber());
+        stateMachine.setCurrent(new SessionValid(cipherSuite, sessionId));
+        health.reset(); // history of the previous session must not block the validating keepalive
+
+        int tag = sendIpmiCommand(new GetChannelAuthenticationCapabilities(IpmiVersion.V20, IpmiVersion.V20,
+                cipherSuite, PrivilegeLevel.Callback, TypeConverter.intToByte(0xe)));
+        if (tag == MessageQueue.ILLEGAL_SEQUENCE_NUMBER) {
+            throw new ConnectionException("Message queue is full");
+        }
+        resumeProbeTag = tag;
+        return tag;
     }
 
     /**
@@ -414,6 +657,21 @@ public class Connection extends TimerTask implements MachineObserver {
         }
     }
 
+    /**
+     * Drops the session that was lost on the managed system side (e.g. after BMC reboot) so a new one can be started
+     * with {@link #startSession}. Requests waiting for responses are left to time out.
+     *
+     * @throws InterruptedException when thread is interrupted
+     */
+    public void invalidateSession() throws InterruptedException {
+        if (stateMachine.getCurrent() instanceof SessionValid) {
+            stateMachine.doTransition(new Timeout());
+        }
+        sessionId = ConnectionManager.generateSessionId();
+        // Sequence numbers of the new session start over
+        lastReceivedSequenceNumber = 0;
+    }
+
     /**
      * Attempts to send IPMI request to the managed system.
      *
@@ -421,6 +679,7 @@ public class Connection extends TimerTask implements MachineObserver {
      * @return ID of the message that will be also attached to the response to pair request with response if queue
      * was not full and message was sent, -1 if sending of the message failed.
      * @throws ConnectionException  when connection isn't in state where sending commands is allowed
+     * @throws CircuitOpenException when the managed system stopped responding, see {@link ConnectionHealth}
      * @throws ArithmeticException  when {@link Connection} runs out of available ID's for the messages. If this
      *                              happens session needs to be restarted.
      * @throws InterruptedException when thread is interrupted
@@ -429,8 +688,16 @@ public class Connection extends TimerTask implements MachineObserver {
             throws ConnectionException, ArithmeticException, InterruptedException {
         int seq;
         if ((stateMachine.getCurrent().getClass() == SessionValid.class)) {
+            if (!health.startRequest()) {
+                probe();
+                metrics.increment(Counter.FastFailures);
+                throw new CircuitOpenException("Managed system is not responding, circuit breaker is "
+                        + health.getState());
+            }
             seq = messageQueue.add(commandCoder);
             if (seq > 0) {
+                metrics.increment(Counter.RequestsSent);
+                lastActivity = System.currentTimeMillis();
                 stateMachine.doTransition(new Sendv20Message(commandCoder, managedSystemSessionId, seq));
             }
         } else {
@@ -440,6 +707,17 @@ public class Connection extends TimerTask implements MachineObserver {
         return seq % 64;
     }
 
+    /**
+     * Removes the request from the message queue without waiting for its response. Nothing is removed when the tag
+     * has been already reused by another request.
+     *
+     * @param tag     tag of the request
+     * @param request the request sent with the tag
+     */
+    public void cancelRequest(int tag, IpmiCommandCoder request) {
+        messageQueue.remove(tag, request);
+    }
+
     /**
      * Attempts to retry sending a message (message will be sent only if current number of retries does not exceed
      * and is not equal to maxAllowedRetries. <br>
@@ -484,14 +762,20 @@ public class Connection extends TimerTask implements MachineObserver {
     private void handleIncomingMessage(Ipmiv20Message message) throws NullPointerException {
         int seq = message.getSessionSequenceNumber();
 
+        if (!message.isAuthCodeValid()) {
+            metrics.increment(Counter.IntegrityFailures);
+        }
+
         if (seq != 0 && (seq > lastReceivedSequenceNumber + 15 || seq < lastReceivedSequenceNumber - 16)) {
             LOGGER.debug("Dropping message {}", seq);
+            metrics.increment(Counter.SequenceWindowDrops);
             return; // if the message's sequence number gets out of the sliding window range we need to drop it
         }
 
         if (seq != 0) {
             lastReceivedSequenceNumber = seq > lastReceivedSequenceNumber ? seq : lastReceivedSequenceNumber;
         }
+        lastActivity = System.currentTimeMillis();
 
         if (message.getPayload() instanceof IpmiLanResponse) {
 
@@ -503,12 +787,28 @@ public class Connection extends TimerTask implements MachineObserver {
 
             if (coder == null) {
                 LOGGER.debug("No message tagged with {} in queue. Dropping orphan message.", tag);
+                metrics.increment(Counter.OrphanResponses);
                 return;
             }
 
-            if (coder.getClass() == GetChannelAuthenticationCapabilities.class) {
+            long queueTime = messageQueue.getQueueTime(tag);
+            if (queueTime != -1) {
+                long roundTripTime = System.nanoTime() - queueTime;
+                metrics.recordRtt(roundTripTime);
+                health.recordResponse(TimeUnit.NANOSECONDS.toMicros(roundTripTime));
+                Tracer tracer = Tracing.getTracer();
+                if (tracer != null) {
+                    tracer.responseMatched(getRemoteMachineAddress(), tag, roundTripTime);
+                }
+            }
+            metrics.increment(Counter.ResponsesReceived);
+
+            if (coder.getClass() == GetChannelAuthenticationCapabilities.class && tag != resumeProbeTag) {
                 messageQueue.remove(tag);
             } else {
+                if (tag == resumeProbeTag) {
+                    resumeProbeTag = MessageQueue.ILLEGAL_SEQUENCE_NUMBER;
+                }
 
                 try {
                     ResponseData responseData = coder.getResponseData(message);
@@ -541,6 +841,8 @@ public class Connection extends TimerTask implements MachineObserver {
     public void notify(StateMachineAction action) throws InterruptedException {
         if (action instanceof GetSikAction) {
             sik = ((GetSikAction) action).getSik();
+        } else if (action instanceof PresencePongAction) {
+            health.recordPong(((PresencePongAction) action).getTag());
         } else if (!(action instanceof MessageAction)) {
             try {
                 lastAction.exchange(action, NOTIFICATION_TIMEOUT, TimeUnit.MILLISECONDS);
@@ -554,23 +856,75 @@ public class Connection extends TimerTask implements MachineObserver {
 
     /**
      * {@link TimerTask} runner - periodically sends no-op messages to keep the
-     * session up
+     * session up. No-op is sent only if there was no traffic in the session for
+     * half of the keepalive period. When message queue is full, sending is retried
+     * until the next check. While the circuit breaker is open, presence ping is sent
+     * instead when due.
      */
     @Override
     public void run() {
-        int result = -1;
-        do {
+        synchronized (keepaliveLock) {
+            if (keepaliveStopped) {
+                return;
+            }
+            if (!health.allowRequest()) {
+                probe();
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastActivity < keepalivePeriod / 2) {
+                return;
+            }
+            long deadline = now + keepalivePeriod / 2;
+            int result = MessageQueue.ILLEGAL_SEQUENCE_NUMBER;
             try {
-                if (!(stateMachine.getCurrent() instanceof SessionValid)) {
-                    break;
+                while (result == MessageQueue.ILLEGAL_SEQUENCE_NUMBER && System.currentTimeMillis() < deadline
+                        && !keepaliveStopped) {
+                    if (!(stateMachine.getCurrent() instanceof SessionValid)) {
+                        return;
+                    }
+                    result = sendIpmiCommand(new GetChannelAuthenticationCapabilities(IpmiVersion.V20,
+                            IpmiVersion.V20, ((SessionValid) stateMachine.getCurrent()).getCipherSuite(),
+                            PrivilegeLevel.Callback, TypeConverter.intToByte(0xe)));
+                    if (result == MessageQueue.ILLEGAL_SEQUENCE_NUMBER) {
+                        metrics.increment(Counter.QueueFullWaits);
+                        keepaliveLock.wait(KEEPALIVE_TAG_WAIT); // lets stopKeepalive() in while waiting
+                    }
                 }
-                result = sendIpmiCommand(new GetChannelAuthenticationCapabilities(
-                        IpmiVersion.V20, IpmiVersion.V20, ((SessionValid) stateMachine.getCurrent()).getCipherSuite(),
-                        PrivilegeLevel.Callback, TypeConverter.intToByte(0xe)));
+            } catch (CircuitOpenException e) {
+                // Breaker opened meanwhile, the managed system is probed on the next run
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             } catch (Exception e) {
                 LOGGER.error(e.getMessage(), e);
             }
-        } while (result <= 0);
+        }
+    }
+
+    /**
+     * Stops sending keepalives and presence pings, e.g. before {@link #getSessionState()} is captured for
+     * {@link #resumeSession(CipherSuite, SessionState)}, so the sequence numbers are not advanced afterwards. Returns
+     * after the keepalive being sent, if any. Keepalives are not restarted - the connection is expected to be closed.
+     */
+    public void stopKeepalive() {
+        synchronized (keepaliveLock) {
+            keepaliveStopped = true;
+        }
+        timer.cancel();
+    }
+
+    /**
+     * Sends RMCP presence ping if the circuit breaker is due to check the managed system.
+     */
+    private void probe() {
+        int tag = health.startProbe();
+        if (tag != -1) {
+            try {
+                stateMachine.sendMessage(RmcpEncoder.encode(new RmcpPingMessage(tag)));
+            } catch (IOException e) {
+                LOGGER.debug("Failed to send presence ping, cause:", e);
+            }
+        }
     }
 
     public InetAddress getRemoteMachineAddress() {
@@ -583,4 +937,37 @@ public class Connection extends TimerTask implements MachineObserver {
     public boolean isSessionValid() {
         return stateMachine.getCurrent() instanceof SessionValid;
     }
+
+    /**
+     * @return coarse state of the connection
+     */
+    public ConnectionState getConnectionState() {
+        State current = stateMachine.getCurrent();
+        if (current instanceof SessionValid) {
+            return ConnectionState.SessionValid;
+        } else if (current instanceof Authcap) {
+            return ConnectionState.NoSession;
+        } else if (current == null || current instanceof Uninitialized) {
+            return ConnectionState.Uninitialized;
+        } else if (current instanceof Ciphers || current instanceof CiphersWaiting) {
+            return ConnectionState.CipherDiscovery;
+        }
+        return ConnectionState.Handshake;
+    }
+
+    /**
+     * @return number of requests sent in the session and waiting for response
+     */
+    public int getPendingRequests() {
+        return messageQueue.getPendingCount();
+    }
+
+    /**
+     * Checks if cipher suites have not been queried yet.
+     *
+     * @see #getAvailableCipherSuites(int)
+     */
+    public boolean isCipherDiscoveryPending() {
+        return stateMachine.getCurrent() instanceof Uninitialized;
+    }
 }
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.connection;
+
+/**
+ * Health of a {@link Connection} and its circuit breaker.
+ * <p>
+ * Health score is built from exponentially weighted averages of the timeout rate and the round trip time of the
+ * recent requests. The breaker opens after a number of consecutive timeouts, then requests fail immediately with
+ * {@link CircuitOpenException} instead of holding the message queue for the whole timeout. When the open time
+ * passes, an RMCP presence ping is sent (half-open state). When the managed system answers it, a single trial request
+ * is let through - the pong proves only that the RMCP stack is alive, not IPMI. The breaker closes when a response to
+ * an IPMI request arrives (the trial one or any late one) or a session is established again. When the ping or the
+ * trial request is not answered, it opens again for twice as long, up to {@link #MAX_OPEN_TIME}. The longer open time
+ * is kept until the breaker closes.
+ * <p>
+ * The breaker has no timer of its own - probes are sent when a request is attempted or the keepalive of the
+ * connection runs, see {@link #startProbe()}.
+ */
+public class ConnectionHealth {
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+    /**
+     * Time the breaker stays open after opening for the first time (in ms).
+     */
+    public static final long DEFAULT_OPEN_TIME = 5000;
+
+    /**
+     * Maximal time the breaker stays open (in ms).
+     */
+    public static final long MAX_OPEN_TIME = 60000;
+
+    /**
+     * Time to wait for the presence pong (in ms).
+     */
+    public static final long PROBE_TIMEOUT = 1000;
+
+    /**
+     * Weight of the latest request in the averages.
+     */
+    private static final double ALPHA = 0.2;
+
+    /**
+     * Round trip times up to this value do not lower the score (in us).
+     */
+    private static final long GOOD_RTT = 50000;
+
+    /**
+     * Round trip times from this value on halve the score (in us).
+     */
+    private static final long BAD_RTT = 1000000;
+
+    /**
+     * ASF message tags are 0-254.
+     */
+    private static final int PROBE_TAGS = 255;
+
+    private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private long initialOpenTime = DEFAULT_OPEN_TIME;
+
+    private CircuitState state = CircuitState.Closed;
+    private int consecutiveTimeouts;
+    private long openedAt;
+    private long openTime;
+    private long probeSentAt;
+    private int probeTag = -1;
+    private int lastProbeTag = -1;
+
+    /**
+     * Pong was received and the trial request was not sent yet.
+     */
+    private boolean trialAllowed;
+
+    /**
+     * Time the trial request was sent or -1 if none is pending.
+     */
+    private long trialSentAt = -1;
+
+    private double timeoutRate;
+    private double rtt = -1;
+
+    /**
+     * @param failureThreshold number of consecutive timeouts opening the breaker
+     */
+    public synchronized void setFailureThreshold(int failureThreshold) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("Failure threshold must be positive");
+        }
+        this.failureThreshold = failureThreshold;
+    }
+
+    /**
+     * @param openTime time the breaker stays open after opening for the first time (in ms)
+     */
+    public synchronized void setOpenTime(long openTime) {
+        this.initialOpenTime = Math.min(openTime, MAX_OPEN_TIME);
+    }
+
+    public synchronized CircuitState getState() {
+        return state;
+    }
+
+    /**
+     * @return true if requests can be sent, i.e. the breaker is closed or the trial request is due
+     */
+    public synchronized boolean allowRequest() {
+        return state == CircuitState.Closed || (state == CircuitState.HalfOpen && trialAllowed);
+    }
+
+    /**
+     * Checks if a request can be sent. In the half-open state it lets the trial request through once.
+     *
+     * @return true if the request can be sent
+     */
+    public synchronized boolean startRequest() {
+        if (state == CircuitState.Closed) {
+            return true;
+        }
+        if (state == CircuitState.HalfOpen && trialAllowed) {
+            trialAllowed = false;
+            trialSentAt = System.currentTimeMillis();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Health score of the connection: 1 for a managed system answering every request within 50 ms, lowered by the
+     * rate of the recent timeouts and halved when the recent round trip times reach 1 s. It is 0 while the breaker
+     * is not closed.
+     *
+     * @return score in range 0-1
+     */
+    public synchronized double getScore() {
+        if (state != CircuitState.Closed) {
+            return 0;
+        }
+        double penalty = rtt <= GOOD_RTT ? 0 : Math.min(1, (rtt - GOOD_RTT) / (BAD_RTT - GOOD_RTT)) / 2;
+        return (1 - timeoutRate) * (1 - penalty);
+    }
+
+    /**
+     * @return average of the recent round trip times in microseconds or -1 if no response was received
+     */
+    public synchronized double getAverageRtt() {
+        return rtt;
+    }
+
+    /**
+     * Records a response to a request, closing the breaker.
+     *
+     * @param rttMicros round trip time of the request in microseconds
+     */
+    public synchronized void recordResponse(long rttMicros) {
+        timeoutRate *= 1 - ALPHA;
+        rtt = rtt < 0 ? rttMicros : rtt * (1 - ALPHA) + rttMicros * ALPHA;
+        close();
+    }
+
+    /**
+     * Records a timed out request, opening the breaker if the threshold of consecutive timeouts is reached or the
+     * trial request timed out.
+     */
+    public synchronized void recordTimeout() {
+        timeoutRate = timeoutRate * (1 - ALPHA) + ALPHA;
+        if (state == CircuitState.Closed && ++consecutiveTimeouts >= failureThreshold) {
+            openTime = initialOpenTime;
+            open(System.currentTimeMillis());
+        } else if (state == CircuitState.HalfOpen && trialSentAt != -1) {
+            openTime = Math.min(openTime * 2, MAX_OPEN_TIME);
+            open(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Checks if the presence ping should be sent, moving the breaker to the half-open state if so. Reopens the
+     * breaker with a longer open time if the previous ping was not answered in time, or the trial request was neither
+     * answered nor timed out within the open time (e.g. it was cancelled).
+     *
+     * @return ASF message tag of the ping to send or -1 if no ping is due
+     */
+    public synchronized int startProbe() {
+        long now = System.currentTimeMillis();
+        if (state == CircuitState.HalfOpen) {
+            boolean failed;
+            if (trialSentAt != -1) {
+                failed = now - trialSentAt >= openTime;
+            } else {
+                failed = !trialAllowed && now - probeSentAt >= PROBE_TIMEOUT;
+            }
+            if (failed) {
+                openTime = Math.min(openTime * 2, MAX_OPEN_TIME);
+                open(now);
+            }
+        }
+        if (state != CircuitState.Open || now - openedAt < openTime) {
+            return -1;
+        }
+        state = CircuitState.HalfOpen;
+        probeSentAt = now;
+        lastProbeTag = (lastProbeTag + 1) % PROBE_TAGS;
+        probeTag = lastProbeTag;
+        return probeTag;
+    }
+
+    /**
+     * Records the presence pong, letting the trial request through if it answers the pending ping.
+     *
+     * @param tag ASF message tag of the pong
+     */
+    public synchronized void recordPong(int tag) {
+        if (state == CircuitState.HalfOpen && tag == probeTag) {
+            probeTag = -1;
+            trialAllowed = true;
+        }
+    }
+
+    /**
+     * Closes the breaker and forgets the recent requests, e.g. when a new session was established with the managed
+     * system.
+     */
+    public synchronized void reset() {
+        timeoutRate = 0;
+        rtt = -1;
+        close();
+    }
+
+    private void open(long now) {
+        state = CircuitState.Open;
+        openedAt = now;
+        probeTag = -1;
+        trialAllowed = false;
+        trialSentAt = -1;
+    }
+
+    private void close() {
+        state = CircuitState.Closed;
+        consecutiveTimeouts = 0;
+        probeTag = -1;
+        trialAllowed = false;
+        trialSentAt = -1;
+    }
+}
@@ -12,9 +12,16 @@ import com.nextian.ipmi.coding.commands.PrivilegeLevel;
 import com.nextian.ipmi.coding.commands.session.GetChannelAuthenticationCapabilitiesResponseData;
 import com.nextian.ipmi.coding.security.CipherSuite;
 import com.nextian.ipmi.common.Defaults;
+import com.nextian.ipmi.metrics.ConnectionMetricsSnapshot;
+import com.nextian.ipmi.metrics.ConnectionState;
+import com.nextian.ipmi.metrics.ConnectorMetrics;
+import com.nextian.ipmi.metrics.ConnectorMetricsSnapshot;
+import com.nextian.ipmi.sm.events.FastAuthorize;
 import com.nextian.ipmi.transport.Messenger;
 import com.nextian.ipmi.transport.UdpListener;
 import com.nextian.ipmi.transport.UdpMessenger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.crypto.NoSuchPaddingException;
 import java.io.IOException;
@@ -24,17 +31,32 @@ import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Manages multiple {@link Connection}s
  */
 public class ConnectionManager {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionManager.class);
     private static final int SESSIONLESS_FREE_TAGS_NUMBER = 60;
+
+    /**
+     * Delay in milliseconds between checks for in-flight requests during shutdown.
+     */
+    private static final int SHUTDOWN_POLL_PERIOD = 10;
+
+    /**
+     * Maximum number of Get Channel Cipher Suites requests sent at once by a connection.
+     */
+    private static final int CIPHER_SUITES_WINDOW = 8;
     private static Integer sessionId = 100;
     private static BlockingDeque<Integer> freeTags;
     private Messenger messenger;
-    private List<Connection> connections;
+    private ConnectionRegistry connections;
+    private final ConnectorMetrics metrics = new ConnectorMetrics();
 
     /**
      * Initialize list of free sessionless tags
@@ -97,6 +119,27 @@ public class ConnectionManager {
         return getFreeTags().take();
     }
 
+    /**
+     * Gets tags for messages sent at once outside the session. Waits for the first tag, the others are taken only if
+     * they are free, so under load the number of tags drops down to one.
+     *
+     * @param max maximum number of tags
+     * @return 1 to max distinct tags
+     */
+    public static int[] generateSessionlessTags(int max) throws InterruptedException {
+        List<Integer> tags = new ArrayList<Integer>(max);
+        tags.add(getFreeTags().take());
+        Integer tag;
+        while (tags.size() < max && (tag = getFreeTags().poll()) != null) {
+            tags.add(tag);
+        }
+        int[] result = new int[tags.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = tags.get(i);
+        }
+        return result;
+    }
+
     /**
      * Frees the sessionless tag for further use
      *
@@ -112,37 +155,104 @@ public class ConnectionManager {
      * Initialize object (like constructor but can be reused)
      */
     private void initialize() {
-        connections = new ArrayList<Connection>();
+        connections = new ConnectionRegistry();
     }
 
     /**
      * Closes all open connections and disconnects {@link UdpListener}.
      */
     public void close() {
-        synchronized (connections) {
-            for (Connection connection : connections) {
-                if (connection != null && connection.isActive()) {
-                    connection.disconnect();
-                }
+        for (Connection connection : connections.values()) {
+            if (connection.isActive()) {
+                connection.disconnect();
             }
         }
         messenger.closeConnection();
     }
 
     /**
-     * Returns {@link Connection} identified by index.
+     * Closes all sessions and connections within the timeout. In-flight requests are waited for at most half of the
+     * timeout, then Close Session is sent to all managed systems with open sessions concurrently and
+     * {@link #close()} is performed. Caller must stop sending new requests beforehand.
      *
-     * @param index index of the connection to return
+     * @param timeout maximum time of the shutdown in milliseconds
+     * @throws InterruptedException when thread is interrupted
      */
-    public Connection getConnection(int index) {
-        return connections.get(index);
+    public void shutdown(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        List<Connection> active = new ArrayList<Connection>();
+        for (Connection connection : connections.values()) {
+            if (connection.isActive()) {
+                active.add(connection);
+            }
+        }
+
+        try {
+            long drainDeadline = deadline - timeout / 2;
+            while (System.currentTimeMillis() < drainDeadline && hasPendingRequests(active)) {
+                Thread.sleep(SHUTDOWN_POLL_PERIOD);
+            }
+
+            if (!active.isEmpty()) {
+                ExecutorService executor = Executors.newFixedThreadPool(
+                        Math.min(active.size(), Runtime.getRuntime().availableProcessors()));
+                for (final Connection connection : active) {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (connection.isSessionValid()) {
+                                try {
+                                    connection.closeSession();
+                                } catch (ConnectionException e) {
+                                    LOGGER.debug("Failed to close session, cause:", e);
+                                } catch (InterruptedException e) {
+                                    Thread.currentThread().interrupt();
+                                }
+                            }
+                        }
+                    });
+                }
+                executor.shutdown();
+                if (!executor.awaitTermination(Math.max(deadline - System.currentTimeMillis(), 0),
+                        TimeUnit.MILLISECONDS)) {
+                    LOGGER.warn("Not all sessions were closed before shutdown timeout");
+                    executor.shutdownNow();
+                }
+            }
+        } finally {
+            close();
+        }
+    }
+
+    private static boolean hasPendingRequests(List<Connection> connections) {
+        for (Connection connection : connections) {
+            if (connection.isSessionValid() && connection.getPendingRequests() > 0) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * Closes the connection with the given index.
+     * Returns {@link Connection} identified by handle.
+     *
+     * @param handle handle of the connection to return
+     * @return the connection or null if it has been closed or the handle is stale
+     */
+    public Connection getConnection(int handle) {
+        return connections.get(handle);
+    }
+
+    /**
+     * Closes the connection with the given handle and releases it, so the {@link Connection} can be garbage collected.
+     * The slot of the connection is reused by a later connection, but with a new generation -
+     * {@link #getConnection(int)} returns null for the closed connection's handle.
      */
-    public void closeConnection(int index) {
-        connections.get(index).disconnect();
+    public void closeConnection(int handle) {
+        Connection connection = connections.remove(handle);
+        if (connection != null) {
+            connection.disconnect();
+        }
     }
 
     /**
@@ -152,14 +262,60 @@ public class ConnectionManager {
      * @return First {@link Connection} to the address or null if none found
      */
     public Connection getConnection(InetAddress address) {
-        synchronized (connections) {
-            for (Connection connection : connections) {
-                if (connection != null && connection.isActive() && connection.getRemoteMachineAddress() == address) {
-                    return connection;
-                }
+        return connections.findByAddress(address);
+    }
+
+    /**
+     * @return number of open connections
+     */
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * @return current values of the metrics aggregated over all connections ever created by the manager
+     */
+    public ConnectorMetricsSnapshot getMetrics() {
+        List<Connection> open = connections.values();
+        int requestsInFlight = 0;
+        int[] connectionsByState = new int[ConnectionState.values().length];
+        int openCircuitCount = 0;
+        for (Connection connection : open) {
+            requestsInFlight += connection.getPendingRequests();
+            ++connectionsByState[connection.getConnectionState().ordinal()];
+            if (!connection.getHealth().allowRequest()) {
+                ++openCircuitCount;
             }
         }
-        return null;
+        return metrics.snapshot(open.size(), requestsInFlight, connectionsByState, openCircuitCount);
+    }
+
+    /**
+     * @return current values of the metrics of each open connection
+     */
+    public List<ConnectionMetricsSnapshot> getConnectionMetrics() {
+        List<Connection> open = connections.values();
+        List<ConnectionMetricsSnapshot> snapshots = new ArrayList<ConnectionMetricsSnapshot>(open.size());
+        for (Connection connection : open) {
+            snapshots.add(connection.getMetricsSnapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * @param handle handle of the connection
+     * @return index of the slot the connection occupies
+     */
+    public static int getSlot(int handle) {
+        return ConnectionRegistry.slotOf(handle);
+    }
+
+    /**
+     * @param handle handle of the connection
+     * @return generation of the slot at the time the connection was created
+     */
+    public static int getGeneration(int handle) {
+        return ConnectionRegistry.generationOf(handle);
     }
 
     /**
@@ -169,16 +325,10 @@ public class ConnectionManager {
      * @param keepalivePeriod   frequency of the no-op commands that will be sent to keep up the session
      * @param timeout           requests timeout in ms
      * @param cleaningFrequency delay in ms between message queue cleaning action (responsible for timeout discovery)
-     * @return index of the connection
+     * @return handle of the connection
      */
     public int createConnection(InetAddress address, int keepalivePeriod, int timeout, int cleaningFrequency) {
-        Connection connection = new Connection(messenger, 0, timeout, cleaningFrequency);
-        connection.connect(address, keepalivePeriod);
-
-        synchronized (connections) {
-            connections.add(connection);
-            return connections.size() - 1;
-        }
+        return createConnection(address, false, keepalivePeriod, timeout, cleaningFrequency);
     }
 
     /**
@@ -190,32 +340,29 @@ public class ConnectionManager {
      * @param keepalivePeriod   frequency of the no-op commands that will be sent to keep up the session
      * @param timeout           requests timeout in ms
      * @param cleaningFrequency delay in ms between message queue cleaning action (responsible for timeout discovery)
-     * @return index of the connection
+     * @return handle of the connection
      */
     public int createConnection(InetAddress address, boolean skipCiphers, int keepalivePeriod, int timeout, int cleaningFrequency) {
-        Connection connection = new Connection(messenger, 0, timeout, cleaningFrequency);
-        connection.connect(address, keepalivePeriod, skipCiphers);
-
-        synchronized (connections) {
-            connections.add(connection);
-            return connections.size() - 1;
+        int handle = connections.allocate();
+        try {
+            Connection connection = new Connection(messenger, handle, timeout, cleaningFrequency, metrics);
+            connection.connect(address, keepalivePeriod, skipCiphers);
+            connections.put(handle, connection);
+        } catch (RuntimeException e) {
+            connections.remove(handle);
+            throw e;
         }
+        return handle;
     }
 
     /**
      * Creates and initiates {@link Connection} to the remote host with the default ping frequency.
      *
      * @param address {@link InetAddress} of the remote host
-     * @return index of the connection
+     * @return handle of the connection
      */
     public int createConnection(InetAddress address) {
-
-        synchronized (connections) {
-            Connection connection = new Connection(messenger, connections.size(), Defaults.TIMEOUT, Defaults.CLEANING_FREQUENCY);
-            connection.connect(address, Defaults.KEEPALIVE_DELAY);
-            connections.add(connection);
-            return connections.size() - 1;
-        }
+        return createConnection(address, false);
     }
 
     /**
@@ -223,33 +370,31 @@ public class ConnectionManager {
      *
      * @param address     {@link InetAddress} of the remote host
      * @param skipCiphers determines if the getAvailableCipherSuites and getChannelAuthenticationCapabilities phases should be skipped
-     * @return index of the connection
+     * @return handle of the connection
      */
     public int createConnection(InetAddress address, boolean skipCiphers) {
-        synchronized (connections) {
-            Connection connection = new Connection(messenger, connections.size(), Defaults.TIMEOUT, Defaults.CLEANING_FREQUENCY);
-            connection.connect(address, Defaults.KEEPALIVE_DELAY, skipCiphers);
-            connections.add(connection);
-            return connections.size() - 1;
-        }
+        return createConnection(address, skipCiphers, Defaults.KEEPALIVE_DELAY, Defaults.TIMEOUT,
+                Defaults.CLEANING_FREQUENCY);
     }
 
     /**
      * Gets from the managed system supported {@link CipherSuite}s. Should be performed only immediately
      * after {@link #createConnection}.
      *
-     * @param connection index of the connection to get available Cipher Suites from
+     * @param connection handle of the connection to get available Cipher Suites from
      * @return list of the {@link CipherSuite}s supported by the managed system.
      * @throws ConnectionException  when connection is in the state that does not allow to perform this operation.
      * @throws InterruptedException when thread is interrupted
      */
     public List<CipherSuite> getAvailableCipherSuites(int connection) throws ConnectionException, InterruptedException {
-        int tag = generateSessionlessTag();
+        int[] tags = generateSessionlessTags(CIPHER_SUITES_WINDOW);
         List<CipherSuite> suites;
         try {
-            suites = connections.get(connection).getAvailableCipherSuites(tag);
+            suites = getLiveConnection(connection).getAvailableCipherSuites(tags);
         } finally {
-            freeTag(tag);
+            for (int tag : tags) {
+                freeTag(tag);
+            }
         }
         return suites;
     }
@@ -258,7 +403,7 @@ public class ConnectionManager {
      * Queries the managed system for the details of the authentication process. Must be performed
      * after {@link #getAvailableCipherSuites(int)}.
      *
-     * @param connection              index of the connection to get Channel Authentication Capabilities from
+     * @param connection              handle of the connection to get Channel Authentication Capabilities from
      * @param cipherSuite             {@link CipherSuite} requested for the session
      * @param requestedPrivilegeLevel {@link PrivilegeLevel} requested for the session
      * @return {@link GetChannelAuthenticationCapabilitiesResponseData}
@@ -271,7 +416,7 @@ public class ConnectionManager {
         int tag = generateSessionlessTag();
         GetChannelAuthenticationCapabilitiesResponseData responseData;
         try {
-            responseData = connections.get(connection).getChannelAuthenticationCapabilities(tag, cipherSuite,
+            responseData = getLiveConnection(connection).getChannelAuthenticationCapabilities(tag, cipherSuite,
                     requestedPrivilegeLevel);
         } finally {
             freeTag(tag);
@@ -283,7 +428,7 @@ public class ConnectionManager {
      * Initiates the session with the managed system. Must be performed after
      * {@link #getChannelAuthenticationCapabilities(int, CipherSuite, PrivilegeLevel)}.
      *
-     * @param connection     index of the connection that starts the session
+     * @param connection     handle of the connection that starts the session
      * @param cipherSuite    {@link CipherSuite} that will be used during the session
      * @param privilegeLevel requested {@link PrivilegeLevel} - most of the time it will be {@link PrivilegeLevel#User}
      * @param username       the username
@@ -300,19 +445,69 @@ public class ConnectionManager {
             NoSuchAlgorithmException, NoSuchPaddingException {
         int tag = generateSessionlessTag();
         try {
-            connections.get(connection).startSession(tag, cipherSuite, privilegeLevel, username, password, bmcKey);
+            getLiveConnection(connection).startSession(tag, cipherSuite, privilegeLevel, username, password, bmcKey);
         } finally {
             freeTag(tag);
         }
     }
 
+    /**
+     * Initiates the session with the managed system in the fast handshake mode. Cipher suite and privilege level must
+     * be already known - the connection has to be created with skipCiphers or
+     * {@link #getChannelAuthenticationCapabilities(int, CipherSuite, PrivilegeLevel)} must be performed.
+     *
+     * @param connection     handle of the connection that starts the session
+     * @param cipherSuite    {@link CipherSuite} that will be used during the session
+     * @param privilegeLevel requested {@link PrivilegeLevel}
+     * @param username       the username
+     * @param password       the password matching the username
+     * @param bmcKey         the key that should be provided if the two-key authentication is enabled, null otherwise.
+     * @throws ConnectionException      when connection is in the state that does not allow to perform this operation.
+     * @throws InterruptedException     when thread is interrupted
+     * @throws NoSuchPaddingException   when cipher algorithm initialization fails
+     * @throws NoSuchAlgorithmException when cipher algorithm initialization fails
+     * @see Connection#startSessionFast
+     */
+    public void startSessionFast(int connection, CipherSuite cipherSuite, PrivilegeLevel privilegeLevel,
+                                 String username, String password, byte[] bmcKey)
+            throws InterruptedException, ConnectionException, InvalidKeyException,
+            NoSuchAlgorithmException, NoSuchPaddingException {
+        // The probe is skipped when no second tag is free
+        int[] tags = generateSessionlessTags(2);
+        try {
+            getLiveConnection(connection).startSessionFast(tags[0],
+                    tags.length > 1 ? tags[1] : FastAuthorize.NO_PROBE, cipherSuite, privilegeLevel, username,
+                    password, bmcKey);
+        } finally {
+            for (int tag : tags) {
+                freeTag(tag);
+            }
+        }
+    }
+
     /**
      * Registers the listener so it will receive notifications from connection.
      *
-     * @param connection index of the {@link Connection} to listen to
+     * @param connection handle of the {@link Connection} to listen to
      * @param listener   {@link ConnectionListener} to notify
      */
     public void registerListener(int connection, ConnectionListener listener) {
-        connections.get(connection).registerListener(listener);
+        Connection target = connections.get(connection);
+        if (target == null) {
+            throw new IllegalArgumentException("Connection " + connection + " is closed");
+        }
+        target.registerListener(listener);
+    }
+
+    /**
+     * @return connection identified by handle
+     * @throws ConnectionException when connection has been closed or the handle is stale
+     */
+    private Connection getLiveConnection(int handle) throws ConnectionException {
+        Connection connection = connections.get(handle);
+        if (connection == null) {
+            throw new ConnectionException("Connection " + handle + " is closed");
+        }
+        return connection;
     }
 }
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.connection;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Slot map of the {@link Connection}s managed by {@link ConnectionManager}. Slots of the removed connections are
+ * reused. Handle consists of the slot index (lower {@link #SLOT_BITS} bits) and the generation of the slot, incremented
+ * whenever the slot is freed, so a handle of the removed connection never resolves to the connection that reused its
+ * slot (until the generation wraps around).
+ * <p>
+ * Free slots are reused in FIFO order and only once at least {@link #MIN_FREE_SLOTS} of them are free, so a single
+ * reconnecting host does not churn one slot - generation of a slot wraps around only after
+ * {@code MIN_FREE_SLOTS * 2^11} connections are closed.
+ * <p>
+ * Connections are additionally indexed by the remote address.
+ */
+class ConnectionRegistry {
+
+    static final int SLOT_BITS = 20;
+    static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+
+    /**
+     * Generation is kept in the remaining bits without the sign bit, so handles are never negative.
+     */
+    static final int GENERATION_MASK = (1 << (31 - SLOT_BITS)) - 1;
+
+    /**
+     * Number of free slots kept before the oldest one is reused.
+     */
+    static final int MIN_FREE_SLOTS = 1024;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Connection[] slots = new Connection[INITIAL_CAPACITY];
+    private int[] generations = new int[INITIAL_CAPACITY];
+    private boolean[] allocated = new boolean[INITIAL_CAPACITY];
+
+    /**
+     * Ring buffer of the free slot indexes below {@link #used}, the oldest one at {@link #freeHead}.
+     */
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    private int freeHead;
+    private int freeCount;
+
+    /**
+     * Number of slots that were ever allocated.
+     */
+    private int used;
+    private int size;
+    private final Map<InetAddress, List<Connection>> byAddress = new HashMap<InetAddress, List<Connection>>();
+
+    static int slotOf(int handle) {
+        return handle & SLOT_MASK;
+    }
+
+    static int generationOf(int handle) {
+        return (handle >>> SLOT_BITS) & GENERATION_MASK;
+    }
+
+    /**
+     * Reserves slot for a new connection.
+     *
+     * @return handle of the slot
+     * @throws IllegalStateException when all slots are in use
+     */
+    synchronized int allocate() {
+        int slot;
+        if (freeCount > 0 && (freeCount >= MIN_FREE_SLOTS || used > SLOT_MASK)) {
+            slot = freeSlots[freeHead];
+            freeHead = (freeHead + 1) % freeSlots.length;
+            --freeCount;
+        } else {
+            if (used > SLOT_MASK) {
+                throw new IllegalStateException("Too many connections");
+            }
+            if (used == slots.length) {
+                grow();
+            }
+            slot = used++;
+        }
+        allocated[slot] = true;
+        ++size;
+        return (generations[slot] << SLOT_BITS) | slot;
+    }
+
+    /**
+     * Stores connection in the slot reserved with {@link #allocate()}.
+     *
+     * @param handle     handle of the slot
+     * @param connection connection to store, already connected to the remote host
+     */
+    synchronized void put(int handle, Connection connection) {
+        if (!isCurrent(handle)) {
+            throw new IllegalArgumentException("Stale connection handle " + handle);
+        }
+        slots[slotOf(handle)] = connection;
+        InetAddress address = connection.getRemoteMachineAddress();
+        if (address != null) {
+            List<Connection> list = byAddress.get(address);
+            if (list == null) {
+                list = new ArrayList<Connection>(1);
+                byAddress.put(address, list);
+            }
+            list.add(connection);
+        }
+    }
+
+    /**
+     * @param handle handle of the connection
+     * @return the connection or null if it was removed or the handle is stale
+     */
+    synchronized Connection get(int handle) {
+        return isCurrent(handle) ? slots[slotOf(handle)] : null;
+    }
+
+    /**
+     * Removes connection and frees its slot.
+     *
+     * @param handle handle of the connection
+     * @return removed connection or null if it was already removed or the handle is stale
+     */
+    synchronized Connection remove(int handle) {
+        if (!isCurrent(handle)) {
+            return null;
+        }
+        int slot = slotOf(handle);
+        Connection connection = slots[slot];
+        slots[slot] = null;
+        allocated[slot] = false;
+        generations[slot] = (generations[slot] + 1) & GENERATION_MASK;
+        freeSlots[(freeHead + freeCount++) % freeSlots.length] = slot;
+        --size;
+        if (connection != null && connection.getRemoteMachineAddress() != null) {
+            List<Connection> list = byAddress.get(connection.getRemoteMachineAddress());
+            if (list != null) {
+                list.remove(connection);
+                if (list.isEmpty()) {
+                    byAddress.remove(connection.getRemoteMachineAddress());
+                }
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * @param address address of the remote host
+     * @return first active connection with the host or null if there is none
+     */
+    synchronized Connection findByAddress(InetAddress address) {
+        List<Connection> list = byAddress.get(address);
+        if (list != null) {
+            for (Connection connection : list) {
+                if (connection.isActive()) {
+                    return connection;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return snapshot of the stored connections
+     */
+    synchronized List<Connection> values() {
+        List<Connection> values = new ArrayList<Connection>(size);
+        for (int i = 0; i < used; ++i) {
+            if (slots[i] != null) {
+                values.add(slots[i]);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return number of allocated slots
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    private boolean isCurrent(int handle) {
+        int slot = slotOf(handle);
+        return handle >= 0 && slot < used && allocated[slot] && generations[slot] == generationOf(handle);
+    }
+
+    private void grow() {
+        int capacity = Math.min(slots.length * 2, SLOT_MASK + 1);
+        Connection[] newSlots = new Connection[capacity];
+        System.arraycopy(slots, 0, newSlots, 0, used);
+        slots = newSlots;
+        int[] newGenerations = new int[capacity];
+        System.arraycopy(generations, 0, newGenerations, 0, used);
+        generations = newGenerations;
+        boolean[] newAllocated = new boolean[capacity];
+        System.arraycopy(allocated, 0, newAllocated, 0, used);
+        allocated = newAllocated;
+        int[] newFreeSlots = new int[capacity];
+        for (int i = 0; i < freeCount; ++i) {
+            newFreeSlots[i] = freeSlots[(freeHead + i) % freeSlots.length];
+        }
+        freeSlots = newFreeSlots;
+        freeHead = 0;
+    }
+}
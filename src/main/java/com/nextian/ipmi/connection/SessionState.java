@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.connection;
+
+import com.nextian.ipmi.coding.commands.PrivilegeLevel;
+import com.nextian.ipmi.coding.security.CipherSuite;
+
+/**
+ * State of the established session needed to resume it on a new {@link Connection} without the RAKP handshake.
+ * Contains the Session Integrity Key, so it must be stored as securely as the credentials.
+ *
+ * @see Connection#getSessionState()
+ * @see Connection#resumeSession(CipherSuite, SessionState)
+ */
+public class SessionState {
+    private String address;
+    private byte cipherSuiteId;
+    private byte authenticationAlgorithm;
+    private byte confidentialityAlgorithm;
+    private byte integrityAlgorithm;
+    private String privilegeLevel;
+    private int sessionId;
+    private int managedSystemSessionId;
+    private byte[] sik;
+    private int lastSequenceNumber;
+    private int lastReceivedSequenceNumber;
+
+    /**
+     * For deserialization.
+     */
+    SessionState() {
+    }
+
+    SessionState(String address, CipherSuite cipherSuite, PrivilegeLevel privilegeLevel, int sessionId,
+                 int managedSystemSessionId, byte[] sik, int lastSequenceNumber, int lastReceivedSequenceNumber) {
+        this.address = address;
+        this.cipherSuiteId = cipherSuite.getId();
+        this.authenticationAlgorithm = cipherSuite.getAuthenticationAlgorithmCode();
+        this.confidentialityAlgorithm = cipherSuite.getConfidentialityAlgorithmCode();
+        this.integrityAlgorithm = cipherSuite.getIntegrityAlgorithmCode();
+        this.privilegeLevel = privilegeLevel.name();
+        this.sessionId = sessionId;
+        this.managedSystemSessionId = managedSystemSessionId;
+        this.sik = sik;
+        this.lastSequenceNumber = lastSequenceNumber;
+        this.lastReceivedSequenceNumber = lastReceivedSequenceNumber;
+    }
+
+    /**
+     * @return IP address of the managed system
+     */
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * @return new instance of the session's cipher suite with not initialized algorithms
+     */
+    public CipherSuite getCipherSuite() {
+        return new CipherSuite(cipherSuiteId, authenticationAlgorithm, confidentialityAlgorithm, integrityAlgorithm);
+    }
+
+    public PrivilegeLevel getPrivilegeLevel() {
+        return PrivilegeLevel.valueOf(privilegeLevel);
+    }
+
+    /**
+     * @return the Remote Console's Session ID
+     */
+    public int getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * @return the Managed System's Session ID
+     */
+    public int getManagedSystemSessionId() {
+        return managedSystemSessionId;
+    }
+
+    public byte[] getSik() {
+        return sik;
+    }
+
+    /**
+     * @return sequence number of the last message sent in the session
+     */
+    public int getLastSequenceNumber() {
+        return lastSequenceNumber;
+    }
+
+    /**
+     * @return highest sequence number received in the session
+     */
+    public int getLastReceivedSequenceNumber() {
+        return lastReceivedSequenceNumber;
+    }
+}
@@ -11,6 +11,9 @@ package com.nextian.ipmi.connection.queue;
 import com.nextian.ipmi.coding.commands.IpmiCommandCoder;
 import com.nextian.ipmi.connection.Connection;
 import com.nextian.ipmi.connection.ConnectionException;
+import com.nextian.ipmi.metrics.Counter;
+import com.nextian.ipmi.trace.Tracer;
+import com.nextian.ipmi.trace.Tracing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -150,12 +153,23 @@ public class MessageQueue extends TimerTask {
      * Removes message with the given tag from the queue.
      */
     public void remove(int tag) {
+        remove(tag, null);
+    }
+
+    /**
+     * Removes message with the given tag from the queue only if it is the given request. Tag of a timed out request
+     * may be already reused by another one, which must not be removed.
+     *
+     * @param tag     tag of the message
+     * @param request request sent with the tag or null to remove any message with the tag
+     */
+    public void remove(int tag, IpmiCommandCoder request) {
         run();
         synchronized (queue) {
             int i = 0;
             int index = -1;
             for (QueueElement element : queue) {
-                if (element.getId() % 64 == tag) {
+                if (element.getId() % 64 == tag && (request == null || element.getRequest() == request)) {
                     index = i;
                     break;
                 }
@@ -220,6 +234,41 @@ public class MessageQueue extends TimerTask {
         }
     }
 
+    /**
+     * @return number of requests waiting for response
+     */
+    public int getPendingCount() {
+        synchronized (queue) {
+            int count = 0;
+            for (QueueElement element : queue) {
+                if (element.getRequest() != null) {
+                    ++count;
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * @return sequence number of the last message sent
+     */
+    public int getLastSequenceNumber() {
+        synchronized (lastSequenceNumberLock) {
+            return lastSequenceNumber;
+        }
+    }
+
+    /**
+     * Continues numbering of the messages after the given sequence number, e.g. when resuming a session.
+     *
+     * @param lastSequenceNumber sequence number of the last message sent in the session
+     */
+    public void setLastSequenceNumber(int lastSequenceNumber) {
+        synchronized (lastSequenceNumberLock) {
+            this.lastSequenceNumber = lastSequenceNumber;
+        }
+    }
+
     /**
      * Returns message with the given sequence number from the queue or null if no message with the given tag is
      * currently in the queue.
@@ -235,6 +284,21 @@ public class MessageQueue extends TimerTask {
         return null;
     }
 
+    /**
+     * Returns the time the message with the given tag was queued in ns of {@link System#nanoTime()} or -1 if no
+     * message with the given tag is currently in the queue.
+     */
+    public long getQueueTime(int tag) {
+        synchronized (queue) {
+            for (QueueElement element : queue) {
+                if (element.getId() % 64 == tag && element.getRequest() != null) {
+                    return element.getQueueTime();
+                }
+            }
+        }
+        return -1;
+    }
+
     /**
      * Returns index of the message with the given sequence number from the queue or -1 if no message with the given
      * tag is currently in the queue.
@@ -298,10 +362,18 @@ public class MessageQueue extends TimerTask {
                             || queue.get(0).getRequest() == null) {
                         int tag = queue.get(0).getId() % 64;
                         boolean done = queue.get(0).getRequest() == null;
+                        long queueTime = queue.get(0).getQueueTime();
                         queue.remove(0);
                         LOGGER.info("Removing message after timeout, tag: {}", tag);
                         releaseTag(tag);
                         if (!done) {
+                            connection.getMetrics().increment(Counter.Timeouts);
+                            connection.getHealth().recordTimeout();
+                            Tracer tracer = Tracing.getTracer();
+                            if (tracer != null) {
+                                tracer.requestTimedOut(connection.getRemoteMachineAddress(), tag,
+                                        System.nanoTime() - queueTime);
+                            }
                             connection.notifyListeners(connection.getHandle(), tag, null,
                                     new ConnectionException("Message timed out"));
                         }
@@ -25,10 +25,16 @@ public class QueueElement {
     private ResponseData response;
     private Date timestamp;
 
+    /**
+     * Time the element was queued in ns of {@link System#nanoTime()}, for measuring the round trip time.
+     */
+    private long queueTime;
+
     public QueueElement(int id, IpmiCommandCoder request) {
         this.id = id;
         this.request = request;
         timestamp = new Date();
+        queueTime = System.nanoTime();
         retries = 0;
     }
 
@@ -69,4 +75,8 @@ public class QueueElement {
     public Date getTimestamp() {
         return timestamp;
     }
+
+    public long getQueueTime() {
+        return queueTime;
+    }
 }
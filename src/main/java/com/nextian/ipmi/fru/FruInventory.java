@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.fru;
+
+import com.nextian.ipmi.common.TypeConverter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Parsed content of the FRU inventory area (Platform Management FRU Information Storage Definition v1.0). Chassis,
+ * Board and Product Info Areas are decoded, Internal Use and MultiRecord areas are left out.
+ * Instances are immutable and may be shared between readers via {@link FruParseCache}.
+ */
+public class FruInventory {
+
+    /**
+     * Type/length byte marking the end of the area fields.
+     */
+    private static final int END_OF_FIELDS = 0xC1;
+
+    /**
+     * Board manufacturing date is counted in minutes from 0:00 1/1/96.
+     */
+    private static final long BOARD_DATE_EPOCH = 820454400000L;
+
+    private int chassisType = -1;
+    private String chassisPartNumber;
+    private String chassisSerialNumber;
+    private List<String> chassisCustomFields = Collections.emptyList();
+
+    private Date boardManufacturingDate;
+    private String boardManufacturer;
+    private String boardProductName;
+    private String boardSerialNumber;
+    private String boardPartNumber;
+    private List<String> boardCustomFields = Collections.emptyList();
+
+    private String productManufacturer;
+    private String productName;
+    private String productPartNumber;
+    private String productVersion;
+    private String productSerialNumber;
+    private String productAssetTag;
+    private List<String> productCustomFields = Collections.emptyList();
+
+    private FruInventory() {
+    }
+
+    /**
+     * Parses raw FRU inventory area.
+     *
+     * @param data raw FRU inventory area starting with the Common Header
+     * @return parsed inventory
+     * @throws IllegalArgumentException when data is not a valid FRU inventory
+     */
+    public static FruInventory parse(byte[] data) {
+        if (data == null || data.length < 8) {
+            throw new IllegalArgumentException("FRU data too short");
+        }
+        if ((data[0] & 0x0f) != 0x01) {
+            throw new IllegalArgumentException("Unsupported FRU format version");
+        }
+        if (checksum(data, 0, 8) != 0) {
+            throw new IllegalArgumentException("Invalid FRU Common Header checksum");
+        }
+
+        FruInventory inventory = new FruInventory();
+
+        int chassis = TypeConverter.byteToInt(data[2]) * 8;
+        int board = TypeConverter.byteToInt(data[3]) * 8;
+        int product = TypeConverter.byteToInt(data[4]) * 8;
+
+        if (chassis != 0) {
+            inventory.parseChassisArea(data, chassis);
+        }
+        if (board != 0) {
+            inventory.parseBoardArea(data, board);
+        }
+        if (product != 0) {
+            inventory.parseProductArea(data, product);
+        }
+
+        return inventory;
+    }
+
+    private void parseChassisArea(byte[] data, int offset) {
+        checkArea(data, offset);
+        int[] pos = {offset + 3};
+        chassisType = TypeConverter.byteToInt(data[offset + 2]);
+        chassisPartNumber = readField(data, pos);
+        chassisSerialNumber = readField(data, pos);
+        chassisCustomFields = readCustomFields(data, pos);
+    }
+
+    private void parseBoardArea(byte[] data, int offset) {
+        checkArea(data, offset);
+        int[] pos = {offset + 6};
+        long minutes = TypeConverter.byteToInt(data[offset + 3])
+                | (TypeConverter.byteToInt(data[offset + 4]) << 8)
+                | (TypeConverter.byteToInt(data[offset + 5]) << 16);
+        if (minutes != 0) {
+            boardManufacturingDate = new Date(BOARD_DATE_EPOCH + minutes * 60000L);
+        }
+        boardManufacturer = readField(data, pos);
+        boardProductName = readField(data, pos);
+        boardSerialNumber = readField(data, pos);
+        boardPartNumber = readField(data, pos);
+        readField(data, pos); // FRU File ID
+        boardCustomFields = readCustomFields(data, pos);
+    }
+
+    private void parseProductArea(byte[] data, int offset) {
+        checkArea(data, offset);
+        int[] pos = {offset + 3};
+        productManufacturer = readField(data, pos);
+        productName = readField(data, pos);
+        productPartNumber = readField(data, pos);
+        productVersion = readField(data, pos);
+        productSerialNumber = readField(data, pos);
+        productAssetTag = readField(data, pos);
+        readField(data, pos); // FRU File ID
+        productCustomFields = readCustomFields(data, pos);
+    }
+
+    /**
+     * Validates area length and checksum.
+     */
+    private static void checkArea(byte[] data, int offset) {
+        if (offset + 2 > data.length) {
+            throw new IllegalArgumentException("FRU area offset out of range");
+        }
+        int length = TypeConverter.byteToInt(data[offset + 1]) * 8;
+        if (length == 0 || offset + length > data.length) {
+            throw new IllegalArgumentException("Invalid FRU area length");
+        }
+        if (checksum(data, offset, length) != 0) {
+            throw new IllegalArgumentException("Invalid FRU area checksum");
+        }
+    }
+
+    private static List<String> readCustomFields(byte[] data, int[] pos) {
+        List<String> fields = new ArrayList<String>();
+        String field;
+        while ((field = readField(data, pos)) != null) {
+            fields.add(field);
+        }
+        return Collections.unmodifiableList(fields);
+    }
+
+    /**
+     * Reads type/length encoded field and moves position past it.
+     *
+     * @return decoded field or null when end of fields marker is reached
+     */
+    private static String readField(byte[] data, int[] pos) {
+        if (pos[0] >= data.length) {
+            return null;
+        }
+        int typeLength = TypeConverter.byteToInt(data[pos[0]]);
+        if (typeLength == END_OF_FIELDS) {
+            return null;
+        }
+        int length = typeLength & 0x3f;
+        int start = pos[0] + 1;
+        if (start + length > data.length) {
+            throw new IllegalArgumentException("FRU field exceeds area");
+        }
+        pos[0] = start + length;
+
+        switch (typeLength >> 6) {
+            case 0:
+                return toHex(data, start, length);
+            case 1:
+                return decodeBcdPlus(data, start, length);
+            case 2:
+                return decodeSixBitAscii(data, start, length);
+            default:
+                return decodeLatin1(data, start, length);
+        }
+    }
+
+    private static String toHex(byte[] data, int start, int length) {
+        StringBuilder sb = new StringBuilder(length * 2);
+        for (int i = start; i < start + length; ++i) {
+            String hex = Integer.toHexString(TypeConverter.byteToInt(data[i]));
+            if (hex.length() == 1) {
+                sb.append('0');
+            }
+            sb.append(hex);
+        }
+        return sb.toString();
+    }
+
+    private static String decodeBcdPlus(byte[] data, int start, int length) {
+        final char[] digits = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', ' ', '-', '.', '?', '?', '?'};
+        StringBuilder sb = new StringBuilder(length * 2);
+        for (int i = start; i < start + length; ++i) {
+            sb.append(digits[(data[i] >> 4) & 0x0f]);
+            sb.append(digits[data[i] & 0x0f]);
+        }
+        return sb.toString().trim();
+    }
+
+    private static String decodeSixBitAscii(byte[] data, int start, int length) {
+        StringBuilder sb = new StringBuilder(length * 4 / 3);
+        int bits = 0;
+        int buffer = 0;
+        for (int i = start; i < start + length; ++i) {
+            buffer |= TypeConverter.byteToInt(data[i]) << bits;
+            bits += 8;
+            while (bits >= 6) {
+                sb.append((char) ((buffer & 0x3f) + 0x20));
+                buffer >>= 6;
+                bits -= 6;
+            }
+        }
+        return sb.toString().trim();
+    }
+
+    private static String decodeLatin1(byte[] data, int start, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; ++i) {
+            chars[i] = (char) TypeConverter.byteToInt(data[start + i]);
+        }
+        return new String(chars).trim();
+    }
+
+    private static int checksum(byte[] data, int offset, int length) {
+        int sum = 0;
+        for (int i = offset; i < offset + length; ++i) {
+            sum += TypeConverter.byteToInt(data[i]);
+        }
+        return sum & 0xff;
+    }
+
+    /**
+     * @return Chassis Type code (SMBIOS) or -1 if Chassis Info Area is not present
+     */
+    public int getChassisType() {
+        return chassisType;
+    }
+
+    public String getChassisPartNumber() {
+        return chassisPartNumber;
+    }
+
+    public String getChassisSerialNumber() {
+        return chassisSerialNumber;
+    }
+
+    public List<String> getChassisCustomFields() {
+        return chassisCustomFields;
+    }
+
+    public Date getBoardManufacturingDate() {
+        return boardManufacturingDate == null ? null : new Date(boardManufacturingDate.getTime());
+    }
+
+    public String getBoardManufacturer() {
+        return boardManufacturer;
+    }
+
+    public String getBoardProductName() {
+        return boardProductName;
+    }
+
+    public String getBoardSerialNumber() {
+        return boardSerialNumber;
+    }
+
+    public String getBoardPartNumber() {
+        return boardPartNumber;
+    }
+
+    public List<String> getBoardCustomFields() {
+        return boardCustomFields;
+    }
+
+    public String getProductManufacturer() {
+        return productManufacturer;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public String getProductPartNumber() {
+        return productPartNumber;
+    }
+
+    public String getProductVersion() {
+        return productVersion;
+    }
+
+    public String getProductSerialNumber() {
+        return productSerialNumber;
+    }
+
+    public String getProductAssetTag() {
+        return productAssetTag;
+    }
+
+    public List<String> getProductCustomFields() {
+        return productCustomFields;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.fru;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of parsed {@link FruInventory} keyed by the SHA-1 of the raw inventory area. Hosts of the same model usually
+ * share most of their FRU contents and inventory rarely changes between polls, so the parse is skipped whenever the
+ * same content was already seen. Least recently used entries are evicted when the cache is full.
+ */
+public class FruParseCache {
+
+    /**
+     * Default maximum number of cached inventories.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final Map<String, FruInventory> cache;
+
+    public FruParseCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity maximum number of cached inventories
+     */
+    public FruParseCache(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        cache = new LinkedHashMap<String, FruInventory>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FruInventory> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns parsed inventory for the given raw data, parsing it only if the same content is not cached.
+     *
+     * @param data raw FRU inventory area
+     * @return parsed inventory
+     * @throws IllegalArgumentException when data is not a valid FRU inventory
+     */
+    public FruInventory get(byte[] data) {
+        String key = digest(data);
+        synchronized (cache) {
+            FruInventory inventory = cache.get(key);
+            if (inventory != null) {
+                return inventory;
+            }
+        }
+        FruInventory inventory = FruInventory.parse(data);
+        synchronized (cache) {
+            cache.put(key, inventory);
+        }
+        return inventory;
+    }
+
+    /**
+     * @return number of cached inventories
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    private static String digest(byte[] data) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            return new BigInteger(1, md.digest(data)).toString(16) + ":" + data.length;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+}
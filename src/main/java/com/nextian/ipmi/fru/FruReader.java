@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.fru;
+
+import com.nextian.ipmi.api.async.ConnectionHandle;
+import com.nextian.ipmi.api.async.IpmiAsyncConnector;
+import com.nextian.ipmi.api.async.RequestPipeline;
+import com.nextian.ipmi.api.async.messages.IpmiError;
+import com.nextian.ipmi.api.async.messages.IpmiResponse;
+import com.nextian.ipmi.api.async.messages.IpmiResponseData;
+import com.nextian.ipmi.coding.commands.IpmiVersion;
+import com.nextian.ipmi.coding.commands.fru.GetFruInventoryAreaInfo;
+import com.nextian.ipmi.coding.commands.fru.GetFruInventoryAreaInfoResponseData;
+import com.nextian.ipmi.coding.commands.fru.ReadFruData;
+import com.nextian.ipmi.coding.commands.fru.ReadFruDataResponseData;
+import com.nextian.ipmi.coding.payload.CompletionCode;
+import com.nextian.ipmi.coding.payload.lan.IPMIException;
+import com.nextian.ipmi.coding.protocol.AuthenticationType;
+import com.nextian.ipmi.common.Defaults;
+import com.nextian.ipmi.connection.ConnectionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads FRU inventory over an open session. The size of the inventory area is obtained with Get FRU Inventory Area
+ * Info, then the area is split into disjoint chunks that are read with Read FRU Data in parallel (up to the session's
+ * message window). When the BMC rejects a chunk as too large, the chunk size is halved and the affected ranges are
+ * re-read. Raw data is parsed through {@link FruParseCache}, so unchanged inventory is parsed only once.
+ */
+public class FruReader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FruReader.class);
+
+    /**
+     * Initial number of bytes requested by a single Read FRU Data command.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 32;
+
+    /**
+     * Chunk size below which the reader gives up shrinking.
+     */
+    private static final int MIN_CHUNK_SIZE = 4;
+
+    private final IpmiAsyncConnector connector;
+    private final FruParseCache cache;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int window = RequestPipeline.DEFAULT_WINDOW;
+    private int timeout = Defaults.TIMEOUT;
+    private int retries = Defaults.RETRIES;
+
+    /**
+     * @param connector connector used to send requests
+     * @param cache     cache of parsed inventories, may be shared between readers
+     */
+    public FruReader(IpmiAsyncConnector connector, FruParseCache cache) {
+        this.connector = connector;
+        this.cache = cache;
+    }
+
+    /**
+     * @param chunkSize initial number of bytes requested by a single Read FRU Data command (4-255)
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < MIN_CHUNK_SIZE || chunkSize > 0xff) {
+            throw new IllegalArgumentException("Chunk size must be " + MIN_CHUNK_SIZE + "-255");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param window maximum number of Read FRU Data requests in flight (1-7)
+     */
+    public void setWindow(int window) {
+        this.window = window;
+    }
+
+    /**
+     * @param timeout time in milliseconds to wait for a single response
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @param retries number of times a chunk that failed for reasons other than its size is re-read
+     */
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    /**
+     * Reads and parses FRU inventory.
+     *
+     * @param handle connection with an open session
+     * @param fruId  ID of the FRU device (0 is the BMC's FRU)
+     * @return parsed inventory
+     * @throws ConnectionException  when request cannot be sent or response does not arrive in time
+     * @throws IPMIException        when BMC rejects the request
+     * @throws InterruptedException when thread is interrupted
+     */
+    public FruInventory read(ConnectionHandle handle, int fruId)
+            throws ConnectionException, IPMIException, InterruptedException {
+        return cache.get(readRaw(handle, fruId));
+    }
+
+    /**
+     * Reads raw FRU inventory area.
+     *
+     * @param handle connection with an open session
+     * @param fruId  ID of the FRU device (0 is the BMC's FRU)
+     * @return content of the FRU inventory area
+     * @throws ConnectionException  when request cannot be sent or response does not arrive in time
+     * @throws IPMIException        when BMC rejects the request
+     * @throws InterruptedException when thread is interrupted
+     */
+    public byte[] readRaw(ConnectionHandle handle, int fruId)
+            throws ConnectionException, IPMIException, InterruptedException {
+        RequestPipeline pipeline = new RequestPipeline(connector, handle, window, timeout);
+
+        GetFruInventoryAreaInfoResponseData info = (GetFruInventoryAreaInfoResponseData) getData(pipeline.execute(
+                Collections.singletonList(new GetFruInventoryAreaInfo(IpmiVersion.V20, handle.getCipherSuite(),
+                        AuthenticationType.RMCPPlus, fruId))).get(0));
+
+        int unit = info.isWordAccess() ? 2 : 1;
+        byte[] data = new byte[info.getAreaSize()];
+        int size = alignDown(chunkSize, unit);
+
+        List<int[]> pending = new ArrayList<int[]>();
+        split(0, data.length, size, pending);
+
+        int failures = 0;
+
+        while (!pending.isEmpty()) {
+            List<ReadFruData> requests = new ArrayList<ReadFruData>(pending.size());
+            for (int[] range : pending) {
+                requests.add(new ReadFruData(IpmiVersion.V20, handle.getCipherSuite(), AuthenticationType.RMCPPlus,
+                        fruId, range[0] / unit, (range[1] + unit - 1) / unit, info.isWordAccess()));
+            }
+
+            List<IpmiResponse> responses = pipeline.execute(requests);
+            List<int[]> next = new ArrayList<int[]>();
+            int newSize = size;
+
+            for (int i = 0; i < responses.size(); ++i) {
+                int[] range = pending.get(i);
+                IpmiResponse response = responses.get(i);
+
+                if (response instanceof IpmiResponseData) {
+                    byte[] chunk = ((ReadFruDataResponseData) ((IpmiResponseData) response).getResponseData()).getData();
+                    int length = Math.min(chunk.length, range[1]);
+                    if (length == 0) {
+                        throw new ConnectionException("Empty Read FRU Data response at offset " + range[0]);
+                    }
+                    System.arraycopy(chunk, 0, data, range[0], length);
+                    if (length < range[1]) {
+                        next.add(new int[]{range[0] + length, range[1] - length});
+                    }
+                } else {
+                    Exception exception = ((IpmiError) response).getException();
+                    if (exception instanceof IPMIException
+                            && isRequestSizeError(((IPMIException) exception).getCompletionCode())) {
+                        if (size <= MIN_CHUNK_SIZE) {
+                            throw (IPMIException) exception;
+                        }
+                        newSize = Math.max(alignDown(size / 2, unit), MIN_CHUNK_SIZE);
+                        next.add(range);
+                    } else if (exception instanceof IPMIException) {
+                        throw (IPMIException) exception;
+                    } else if (++failures > retries) {
+                        throw new ConnectionException("Read FRU Data failed", exception);
+                    } else {
+                        next.add(range);
+                    }
+                }
+            }
+
+            if (newSize != size) {
+                LOGGER.debug("Reducing FRU chunk size from {} to {}", size, newSize);
+                size = newSize;
+            }
+
+            pending = new ArrayList<int[]>();
+            for (int[] range : next) {
+                split(range[0], range[1], size, pending);
+            }
+        }
+
+        return data;
+    }
+
+    private static Object getData(IpmiResponse response) throws IPMIException, ConnectionException {
+        if (response instanceof IpmiResponseData) {
+            return ((IpmiResponseData) response).getResponseData();
+        }
+        Exception exception = ((IpmiError) response).getException();
+        if (exception instanceof IPMIException) {
+            throw (IPMIException) exception;
+        }
+        throw new ConnectionException("Request failed", exception);
+    }
+
+    /**
+     * Checks if completion code indicates that the requested data did not fit into the response.
+     */
+    private static boolean isRequestSizeError(CompletionCode code) {
+        return code == CompletionCode.CannotRespond
+                || code == CompletionCode.LengthLimitExceeded
+                || code == CompletionCode.InvalidRequestLength
+                || code == CompletionCode.RequestTruncated;
+    }
+
+    private static void split(int offset, int length, int size, List<int[]> ranges) {
+        for (int pos = offset; pos < offset + length; pos += size) {
+            ranges.add(new int[]{pos, Math.min(size, offset + length - pos)});
+        }
+    }
+
+    private static int alignDown(int value, int unit) {
+        return value - value % unit;
+    }
+}
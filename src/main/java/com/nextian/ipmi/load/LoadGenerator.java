@@ -0,0 +1,718 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.load;
+
+import com.nextian.ipmi.api.async.ConnectionHandle;
+import com.nextian.ipmi.api.async.IpmiAsyncConnector;
+import com.nextian.ipmi.api.async.IpmiListener;
+import com.nextian.ipmi.api.async.messages.IpmiError;
+import com.nextian.ipmi.api.async.messages.IpmiResponse;
+import com.nextian.ipmi.coding.commands.IpmiCommandCoder;
+import com.nextian.ipmi.coding.commands.IpmiVersion;
+import com.nextian.ipmi.coding.commands.PrivilegeLevel;
+import com.nextian.ipmi.coding.commands.chassis.GetChassisStatus;
+import com.nextian.ipmi.coding.commands.dcmi.GetPowerReading;
+import com.nextian.ipmi.coding.commands.fru.GetFruInventoryAreaInfo;
+import com.nextian.ipmi.coding.commands.sdr.ReserveSdrRepository;
+import com.nextian.ipmi.coding.payload.lan.IPMIException;
+import com.nextian.ipmi.coding.protocol.AuthenticationType;
+import com.nextian.ipmi.coding.security.CipherSuite;
+import com.nextian.ipmi.coding.security.SecurityConstants;
+import com.nextian.ipmi.common.Defaults;
+import com.nextian.ipmi.connection.ConnectionException;
+import com.nextian.ipmi.metrics.LatencyHistogram;
+import com.nextian.ipmi.sim.BmcSimulator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator: opens sessions with a fleet of BMCs and sends a mix of commands at a constant rate,
+ * regardless of how fast the responses come. Latency of each request is measured from the time it was scheduled to
+ * be sent, so requests delayed by the congestion of the connector (e.g. waiting for a free slot in the session) are
+ * accounted for and the results are not affected by coordinated omission.
+ * <p>
+ * Requests are sent by a single thread and are spread over the sessions round-robin. A session has at most
+ * {@link #setWindow(int) window} requests in flight, the following ones wait in the backlog of the session. Timed
+ * out requests are retried up to {@link #setRetries(int)} times.
+ * <p>
+ * Run {@link #main(String[])} without arguments for the list of options. By default the load is generated against
+ * an in-process {@link BmcSimulator}.
+ */
+public class LoadGenerator implements IpmiListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadGenerator.class);
+
+    /**
+     * Default number of requests in flight per session. The connector queues at most 8 messages per session and
+     * frees the slot only after the listeners are notified, so the window must leave some room.
+     */
+    public static final int DEFAULT_WINDOW = 4;
+
+    public static final int DEFAULT_RETRIES = 1;
+
+    private static final int OPENING_THREADS = 16;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    /**
+     * Creates the command sent in the session.
+     */
+    public abstract static class CommandFactory {
+        /**
+         * @param cipherSuite cipher suite of the session
+         * @return command to send, used for all requests of this type in the session
+         */
+        public abstract IpmiCommandCoder create(CipherSuite cipherSuite);
+    }
+
+    private static final Map<String, CommandFactory> COMMANDS = new LinkedHashMap<String, CommandFactory>();
+
+    static {
+        COMMANDS.put("chassis", new CommandFactory() {
+            @Override
+            public IpmiCommandCoder create(CipherSuite cipherSuite) {
+                return new GetChassisStatus(IpmiVersion.V20, cipherSuite, AuthenticationType.RMCPPlus);
+            }
+        });
+        COMMANDS.put("power", new CommandFactory() {
+            @Override
+            public IpmiCommandCoder create(CipherSuite cipherSuite) {
+                return new GetPowerReading(IpmiVersion.V20, cipherSuite, AuthenticationType.RMCPPlus);
+            }
+        });
+        COMMANDS.put("sdr-reserve", new CommandFactory() {
+            @Override
+            public IpmiCommandCoder create(CipherSuite cipherSuite) {
+                return new ReserveSdrRepository(IpmiVersion.V20, cipherSuite, AuthenticationType.RMCPPlus);
+            }
+        });
+        COMMANDS.put("fru-info", new CommandFactory() {
+            @Override
+            public IpmiCommandCoder create(CipherSuite cipherSuite) {
+                return new GetFruInventoryAreaInfo(IpmiVersion.V20, cipherSuite, AuthenticationType.RMCPPlus, 0);
+            }
+        });
+    }
+
+    private final IpmiAsyncConnector connector;
+    private final List<Session> sessions = new ArrayList<Session>();
+    private final Map<Integer, Session> sessionsByHandle = new ConcurrentHashMap<Integer, Session>();
+    private final List<String> commandNames = new ArrayList<String>();
+    private final List<CommandFactory> commandFactories = new ArrayList<CommandFactory>();
+    private final List<Integer> commandWeights = new ArrayList<Integer>();
+    private int totalWeight;
+    private final Random random = new Random(0);
+
+    private double rate = 100;
+    private int window = DEFAULT_WINDOW;
+    private int retries = DEFAULT_RETRIES;
+
+    /**
+     * Sessions with a freed slot in the window or with a request to retry, to be served by the sender thread.
+     */
+    private final ConcurrentLinkedQueue<Session> ready = new ConcurrentLinkedQueue<Session>();
+    private volatile Thread sender;
+
+    private LatencyHistogram latency;
+    private LatencyHistogram[] commandLatency;
+    private final AtomicLong scheduled = new AtomicLong();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong inFlight = new AtomicLong();
+    private long elapsed;
+
+    /**
+     * @param connector connector used to open the sessions and send the requests
+     */
+    public LoadGenerator(IpmiAsyncConnector connector) {
+        this.connector = connector;
+    }
+
+    /**
+     * @param rate number of requests per second to schedule
+     */
+    public void setRate(double rate) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("Rate must be positive");
+        }
+        this.rate = rate;
+    }
+
+    /**
+     * @param window maximal number of requests in flight per session, 1-7
+     */
+    public void setWindow(int window) {
+        if (window < 1 || window > 7) {
+            throw new IllegalArgumentException("Window must be in range 1-7");
+        }
+        this.window = window;
+    }
+
+    /**
+     * @param retries number of times the timed out request is sent again
+     */
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    /**
+     * Adds command to the mix. Commands are picked at random with probability proportional to their weights.
+     *
+     * @param name   one of the names returned by {@link #getCommandNames()}
+     * @param weight weight of the command
+     */
+    public void addCommand(String name, int weight) {
+        CommandFactory factory = COMMANDS.get(name);
+        if (factory == null) {
+            throw new IllegalArgumentException("Unknown command " + name + ", supported: " + COMMANDS.keySet());
+        }
+        addCommand(name, factory, weight);
+    }
+
+    /**
+     * Adds custom command to the mix.
+     *
+     * @param name    name of the command in the report
+     * @param factory creates the command for a session
+     * @param weight  weight of the command
+     */
+    public void addCommand(String name, CommandFactory factory, int weight) {
+        if (!sessions.isEmpty()) {
+            throw new IllegalStateException("Commands must be added before the sessions are opened");
+        }
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Weight must be positive");
+        }
+        commandNames.add(name);
+        commandFactories.add(factory);
+        commandWeights.add(weight);
+        totalWeight += weight;
+    }
+
+    /**
+     * @return names of the built-in commands
+     */
+    public static List<String> getCommandNames() {
+        return new ArrayList<String>(COMMANDS.keySet());
+    }
+
+    /**
+     * Opens the sessions, spread evenly over the targets. Sessions that cannot be opened are skipped.
+     *
+     * @param targets        addresses of the BMCs
+     * @param count          number of sessions to open
+     * @param cipherSuiteId  0, 3 or 17
+     * @param privilegeLevel requested privilege level
+     * @param username       the username
+     * @param password       the password
+     * @return number of the sessions opened
+     * @throws InterruptedException when thread is interrupted
+     */
+    public int openSessions(List<InetAddress> targets, int count, final int cipherSuiteId,
+                            final PrivilegeLevel privilegeLevel, final String username, final String password)
+            throws InterruptedException {
+        if (commandFactories.isEmpty()) {
+            addCommand("chassis", 1);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(OPENING_THREADS);
+        try {
+            List<Future<Session>> futures = new ArrayList<Future<Session>>(count);
+            for (int i = 0; i < count; ++i) {
+                final InetAddress target = targets.get(i % targets.size());
+                futures.add(executor.submit(new Callable<Session>() {
+                    @Override
+                    public Session call() throws Exception {
+                        ConnectionHandle handle = connector.createConnection(target, createCipherSuite(cipherSuiteId),
+                                privilegeLevel);
+                        try {
+                            connector.openSession(handle, username, password, null);
+                        } catch (ConnectionException e) {
+                            connector.closeConnection(handle);
+                            throw e;
+                        }
+                        return new Session(handle);
+                    }
+                }));
+            }
+            for (Future<Session> future : futures) {
+                try {
+                    Session session = future.get();
+                    sessions.add(session);
+                    sessionsByHandle.put(session.handle.getHandle(), session);
+                } catch (ExecutionException e) {
+                    LOGGER.warn("Failed to open session: " + e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        connector.registerListener(this);
+        return sessions.size();
+    }
+
+    /**
+     * Generates the load for the given time, then waits for the requests in flight. Counters and latencies of the
+     * previous run are reset.
+     *
+     * @param duration     time of scheduling the requests in ms
+     * @param drainTimeout maximal time to wait for the requests in flight in ms
+     * @throws InterruptedException when thread is interrupted
+     */
+    public void run(long duration, long drainTimeout) throws InterruptedException {
+        if (sessions.isEmpty()) {
+            throw new IllegalStateException("No sessions open");
+        }
+        scheduled.set(0);
+        succeeded.set(0);
+        errors.set(0);
+        timeouts.set(0);
+        retried.set(0);
+        failed.set(0);
+        latency = new LatencyHistogram();
+        commandLatency = new LatencyHistogram[commandNames.size()];
+        for (int i = 0; i < commandLatency.length; ++i) {
+            commandLatency[i] = new LatencyHistogram();
+        }
+        sender = Thread.currentThread();
+        long period = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(duration);
+        long next = start;
+        int nextSession = 0;
+        try {
+            while (next < end) {
+                long now = System.nanoTime();
+                while (next <= now && next < end) {
+                    Session session = sessions.get(nextSession);
+                    nextSession = (nextSession + 1) % sessions.size();
+                    scheduled.incrementAndGet();
+                    inFlight.incrementAndGet();
+                    synchronized (session) {
+                        session.backlog.add(new Request(pickCommand(), next));
+                    }
+                    serve(session);
+                    next += period;
+                }
+                serveReady();
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                LockSupport.parkNanos(this, next - System.nanoTime());
+            }
+            long drainEnd = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeout);
+            while (inFlight.get() > 0 && System.nanoTime() < drainEnd) {
+                serveReady();
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(10));
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            elapsed = System.nanoTime() - start;
+            sender = null;
+        }
+    }
+
+    /**
+     * Prints throughput, latency percentiles and the error counters of the last run.
+     *
+     * @param out stream to print the report to
+     */
+    public void printReport(PrintStream out) {
+        double seconds = elapsed / 1e9;
+        out.println(String.format("Sessions: %d, target rate: %.1f req/s, window: %d, retries: %d",
+                sessions.size(), rate, window, retries));
+        out.println(String.format("Requests: scheduled %d, succeeded %d, errors %d, timeouts %d, retried %d, "
+                + "failed %d, not completed %d", scheduled.get(), succeeded.get(), errors.get(), timeouts.get(),
+                retried.get(), failed.get(), inFlight.get()));
+        out.println(String.format("Throughput: %.1f resp/s in %.1f s", (succeeded.get() + errors.get()) / seconds,
+                seconds));
+        printLatency(out, "all", latency);
+        if (commandLatency.length > 1) {
+            for (int i = 0; i < commandLatency.length; ++i) {
+                printLatency(out, commandNames.get(i), commandLatency[i]);
+            }
+        }
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getSucceededCount() {
+        return succeeded.get();
+    }
+
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    public long getRetriedCount() {
+        return retried.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Closes the sessions opened by {@link #openSessions}.
+     */
+    public void closeSessions() {
+        connector.unregisterListener(this);
+        for (Session session : sessions) {
+            try {
+                connector.closeSession(session.handle);
+            } catch (Exception e) {
+                LOGGER.debug("Failed to close session", e);
+            }
+            connector.closeConnection(session.handle);
+        }
+        sessions.clear();
+        sessionsByHandle.clear();
+    }
+
+    @Override
+    public void notify(IpmiResponse response) {
+        Session session = sessionsByHandle.get(response.getHandle().getHandle());
+        if (session == null) {
+            return;
+        }
+        Request request;
+        synchronized (session) {
+            request = session.inFlight.remove(response.getTag());
+            if (request == null) {
+                // response came before the sender registered the request
+                session.early.put(response.getTag(), response);
+                return;
+            }
+        }
+        complete(session, request, response);
+    }
+
+    /**
+     * Sends requests from the backlog of the session while there is room in its window. Called by the sender thread
+     * only.
+     */
+    private void serve(Session session) {
+        while (true) {
+            Request request;
+            synchronized (session) {
+                if (session.inFlight.size() >= window || session.backlog.isEmpty()) {
+                    return;
+                }
+                request = session.backlog.removeFirst();
+            }
+            int tag;
+            try {
+                tag = connector.sendMessage(session.handle, session.commands[request.command]);
+            } catch (ConnectionException e) {
+                LOGGER.debug("Failed to send request", e);
+                tag = -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                tag = -1;
+            }
+            if (tag < 0) {
+                failed.incrementAndGet();
+                inFlight.decrementAndGet();
+                continue;
+            }
+            IpmiResponse early;
+            synchronized (session) {
+                early = session.early.remove(tag);
+                if (early == null) {
+                    session.inFlight.put(tag, request);
+                }
+            }
+            if (early != null) {
+                complete(session, request, early);
+            }
+        }
+    }
+
+    private void serveReady() {
+        Session session;
+        while ((session = ready.poll()) != null) {
+            serve(session);
+        }
+    }
+
+    private void complete(Session session, Request request, IpmiResponse response) {
+        if (response instanceof IpmiError && !(((IpmiError) response).getException() instanceof IPMIException)) {
+            if (((IpmiError) response).getException() instanceof ConnectionException) {
+                timeouts.incrementAndGet();
+            }
+            if (request.tries <= retries) {
+                ++request.tries;
+                retried.incrementAndGet();
+                synchronized (session) {
+                    session.backlog.addFirst(request);
+                }
+            } else {
+                failed.incrementAndGet();
+                inFlight.decrementAndGet();
+            }
+        } else {
+            long value = System.nanoTime() - request.scheduled;
+            latency.record(value);
+            commandLatency[request.command].record(value);
+            if (response instanceof IpmiError) {
+                errors.incrementAndGet();
+            } else {
+                succeeded.incrementAndGet();
+            }
+            inFlight.decrementAndGet();
+        }
+        ready.add(session);
+        Thread thread = sender;
+        if (thread != null && thread != Thread.currentThread()) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private int pickCommand() {
+        int value = random.nextInt(totalWeight);
+        for (int i = 0; i < commandWeights.size(); ++i) {
+            value -= commandWeights.get(i);
+            if (value < 0) {
+                return i;
+            }
+        }
+        return commandWeights.size() - 1;
+    }
+
+    private static void printLatency(PrintStream out, String name, LatencyHistogram histogram) {
+        StringBuilder line = new StringBuilder(String.format("Latency [ms] %-12s", name));
+        for (double percentile : PERCENTILES) {
+            line.append(String.format(" p%s %.3f", percentile == Math.rint(percentile)
+                    ? String.valueOf((int) percentile) : String.valueOf(percentile),
+                    histogram.getValueAtPercentile(percentile) / 1e6));
+        }
+        line.append(String.format(" max %.3f mean %.3f (%d)", histogram.getMax() / 1e6, histogram.getMean() / 1e6,
+                histogram.getTotalCount()));
+        out.println(line);
+    }
+
+    /**
+     * @param id 0, 3 or 17
+     * @return new instance of the cipher suite
+     */
+    static CipherSuite createCipherSuite(int id) {
+        switch (id) {
+            case 0:
+                return CipherSuite.getEmpty();
+            case 3:
+                return new CipherSuite((byte) 3, SecurityConstants.AA_RAKP_HMAC_SHA1,
+                        SecurityConstants.CA_AES_CBC128, SecurityConstants.IA_HMAC_SHA1_96);
+            case 17:
+                return new CipherSuite((byte) 17, SecurityConstants.AA_RAKP_HMAC_SHA256,
+                        SecurityConstants.CA_AES_CBC128, SecurityConstants.IA_HMAC_SHA256_128);
+            default:
+                throw new IllegalArgumentException("Unsupported cipher suite " + id + ", use 0, 3 or 17");
+        }
+    }
+
+    /**
+     * Parses the range of IPv4 addresses.
+     *
+     * @param range single address or first and last address separated with '-'
+     * @return addresses in the range
+     * @throws UnknownHostException when address is invalid
+     */
+    static List<InetAddress> parseRange(String range) throws UnknownHostException {
+        String[] bounds = range.split("-");
+        int first = toInt(InetAddress.getByName(bounds[0].trim()));
+        int last = bounds.length > 1 ? toInt(InetAddress.getByName(bounds[1].trim())) : first;
+        List<InetAddress> addresses = new ArrayList<InetAddress>();
+        for (long address = first & 0xffffffffL; address <= (last & 0xffffffffL); ++address) {
+            addresses.add(InetAddress.getByAddress(new byte[]{(byte) (address >>> 24), (byte) (address >>> 16),
+                    (byte) (address >>> 8), (byte) address}));
+        }
+        return addresses;
+    }
+
+    private static int toInt(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        if (bytes.length != 4) {
+            throw new IllegalArgumentException("Only IPv4 ranges are supported: " + address);
+        }
+        return ((bytes[0] & 0xff) << 24) | ((bytes[1] & 0xff) << 16) | ((bytes[2] & 0xff) << 8) | (bytes[3] & 0xff);
+    }
+
+    /**
+     * Runs the load generator from the command line.
+     *
+     * @param args options, see the usage message
+     */
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<String, String>();
+        options.put("sim", "100");
+        options.put("user", "admin");
+        options.put("password", "password");
+        options.put("sessions", "100");
+        options.put("rate", "1000");
+        options.put("duration", "10");
+        options.put("warmup", "2");
+        options.put("mix", "chassis=1");
+        options.put("cipher-suite", "3");
+        options.put("port", "6000");
+        options.put("timeout", String.valueOf(Defaults.TIMEOUT));
+        options.put("retries", String.valueOf(DEFAULT_RETRIES));
+        options.put("window", String.valueOf(DEFAULT_WINDOW));
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length
+                    || (!options.containsKey(args[i].substring(2)) && !"target".equals(args[i].substring(2)))) {
+                printUsage();
+                return;
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+
+        BmcSimulator simulator = null;
+        IpmiAsyncConnector connector = null;
+        try {
+            List<InetAddress> targets;
+            if (options.containsKey("target")) {
+                targets = parseRange(options.get("target"));
+                connector = new IpmiAsyncConnector(Integer.parseInt(options.get("port")));
+            } else {
+                simulator = new BmcSimulator();
+                targets = simulator.addBmcs(Integer.parseInt(options.get("sim")), options.get("user"),
+                        options.get("password"));
+                connector = new IpmiAsyncConnector(simulator);
+            }
+            LoadGenerator generator = new LoadGenerator(connector);
+            generator.setRate(Double.parseDouble(options.get("rate")));
+            generator.setWindow(Integer.parseInt(options.get("window")));
+            generator.setRetries(Integer.parseInt(options.get("retries")));
+            for (String entry : options.get("mix").split(",")) {
+                String[] command = entry.split("=");
+                generator.addCommand(command[0].trim(), command.length > 1 ? Integer.parseInt(command[1].trim()) : 1);
+            }
+
+            long openStart = System.currentTimeMillis();
+            int opened = generator.openSessions(targets, Integer.parseInt(options.get("sessions")),
+                    Integer.parseInt(options.get("cipher-suite")), PrivilegeLevel.User, options.get("user"),
+                    options.get("password"));
+            System.out.println(String.format("Opened %d sessions with %d targets in %d ms", opened, targets.size(),
+                    System.currentTimeMillis() - openStart));
+            if (opened == 0) {
+                return;
+            }
+            int timeout = Integer.parseInt(options.get("timeout"));
+            for (Session session : generator.sessions) {
+                connector.setTimeout(session.handle, timeout);
+            }
+
+            long drainTimeout = (long) timeout * (generator.retries + 1);
+            long warmup = Long.parseLong(options.get("warmup"));
+            if (warmup > 0) {
+                // results of the warm-up are dropped, they are dominated by class loading and JIT compilation
+                generator.run(TimeUnit.SECONDS.toMillis(warmup), drainTimeout);
+            }
+            generator.run(TimeUnit.SECONDS.toMillis(Long.parseLong(options.get("duration"))), drainTimeout);
+            generator.printReport(System.out);
+            generator.closeSessions();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.out.println("Load generation failed: " + e);
+            LOGGER.error(e.getMessage(), e);
+        } finally {
+            if (connector != null) {
+                connector.tearDown();
+            }
+            if (simulator != null) {
+                simulator.shutdown();
+            }
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Options (defaults in brackets):\n"
+                + "  --target <first>[-<last>]  IPv4 range of the BMCs, in-process simulator is used if missing\n"
+                + "  --sim <count>              number of simulated BMCs [100]\n"
+                + "  --user <name>              username [admin]\n"
+                + "  --password <password>      password [password]\n"
+                + "  --sessions <count>         sessions to open, spread over the BMCs [100]\n"
+                + "  --rate <req/s>             requests scheduled per second [1000]\n"
+                + "  --duration <s>             duration of the load [10]\n"
+                + "  --warmup <s>               duration of the load before the measurement [2]\n"
+                + "  --mix <cmd>=<weight>,...   commands " + COMMANDS.keySet() + " [chassis=1]\n"
+                + "  --cipher-suite <id>        0, 3 or 17 [3]\n"
+                + "  --window <count>           requests in flight per session, 1-7 [" + DEFAULT_WINDOW + "]\n"
+                + "  --timeout <ms>             request timeout [" + Defaults.TIMEOUT + "]\n"
+                + "  --retries <count>          retries of the timed out request [" + DEFAULT_RETRIES + "]\n"
+                + "  --port <port>              local UDP port for --target [6000]");
+    }
+
+    /**
+     * Request scheduled by the generator.
+     */
+    private static class Request {
+        private final int command;
+
+        /**
+         * Time the request was scheduled to be sent at, in ns of {@link System#nanoTime()}.
+         */
+        private final long scheduled;
+        private int tries = 1;
+
+        Request(int command, long scheduled) {
+            this.command = command;
+            this.scheduled = scheduled;
+        }
+    }
+
+    /**
+     * Open session with its commands and the requests waiting for a slot or a response.
+     */
+    private class Session {
+        private final ConnectionHandle handle;
+        private final IpmiCommandCoder[] commands;
+        private final LinkedList<Request> backlog = new LinkedList<Request>();
+        private final Map<Integer, Request> inFlight = new HashMap<Integer, Request>();
+        private final Map<Integer, IpmiResponse> early = new HashMap<Integer, IpmiResponse>();
+
+        Session(ConnectionHandle handle) {
+            this.handle = handle;
+            commands = new IpmiCommandCoder[commandFactories.size()];
+            for (int i = 0; i < commands.length; ++i) {
+                commands[i] = commandFactories.get(i).create(handle.getCipherSuite());
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.metrics;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Live metrics of a single connection. Every event is also passed to the {@link ConnectorMetrics} of the connector
+ * owning the connection. Round trip times are kept in a compact histogram (precision of 12.5%, up to 16.7 s), so
+ * metrics of thousands of connections take little memory.
+ */
+public class ConnectionMetrics {
+
+    private static final int COUNTERS = Counter.values().length;
+    private static final int PHASES = HandshakePhase.values().length;
+    private static final int RTT_SUB_BUCKET_BITS = 3;
+    private static final long RTT_HIGHEST_TRACKABLE_VALUE = 1L << 24;
+
+    private final ConnectorMetrics connector;
+
+    /**
+     * Connection is used by a few threads only, so the counters are not striped.
+     */
+    private final StripedCounters counters = new StripedCounters(COUNTERS, 1);
+    private final LatencyHistogram rtt = new LatencyHistogram(RTT_SUB_BUCKET_BITS, RTT_HIGHEST_TRACKABLE_VALUE);
+
+    /**
+     * Duration of the last run of each handshake phase in microseconds, -1 if not run yet.
+     */
+    private final AtomicLongArray handshake = new AtomicLongArray(PHASES);
+
+    /**
+     * @param connector metrics of the connector owning the connection, null if none
+     */
+    public ConnectionMetrics(ConnectorMetrics connector) {
+        this.connector = connector;
+        for (int i = 0; i < PHASES; ++i) {
+            handshake.set(i, -1);
+        }
+    }
+
+    public void increment(Counter counter) {
+        counters.increment(counter.ordinal());
+        if (connector != null) {
+            connector.increment(counter);
+        }
+    }
+
+    /**
+     * @param nanos round trip time of the request in ns
+     */
+    public void recordRtt(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        rtt.record(micros);
+        if (connector != null) {
+            connector.recordRtt(micros);
+        }
+    }
+
+    /**
+     * @param phase phase of the handshake
+     * @param nanos duration of the phase in ns
+     */
+    public void recordHandshakePhase(HandshakePhase phase, long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        handshake.set(phase.ordinal(), micros);
+        if (connector != null) {
+            connector.recordHandshakePhase(phase, micros);
+        }
+    }
+
+    /**
+     * @param handle  handle of the connection
+     * @param address address of the managed system
+     * @return current values of the metrics
+     */
+    public ConnectionMetricsSnapshot snapshot(int handle, InetAddress address) {
+        long[] durations = new long[PHASES];
+        for (int i = 0; i < PHASES; ++i) {
+            durations[i] = handshake.get(i);
+        }
+        return new ConnectionMetricsSnapshot(handle, address, counters.getAll(), new HistogramSnapshot(rtt),
+                durations);
+    }
+}
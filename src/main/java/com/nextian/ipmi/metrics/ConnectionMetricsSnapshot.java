@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.metrics;
+
+import java.net.InetAddress;
+
+/**
+ * Metrics of a single connection captured at some point in time.
+ */
+public class ConnectionMetricsSnapshot extends MetricsSnapshot {
+
+    private final int handle;
+    private final InetAddress address;
+    private final long[] handshake;
+
+    ConnectionMetricsSnapshot(int handle, InetAddress address, long[] counters, HistogramSnapshot rtt,
+                              long[] handshake) {
+        super(counters, rtt);
+        this.handle = handle;
+        this.address = address;
+        this.handshake = handshake;
+    }
+
+    public int getHandle() {
+        return handle;
+    }
+
+    /**
+     * @return address of the managed system
+     */
+    public InetAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * @param phase phase of the handshake
+     * @return duration of the last run of the phase in microseconds, -1 if the phase was not run
+     */
+    public long getHandshakeDuration(HandshakePhase phase) {
+        return handshake[phase.ordinal()];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("Connection ").append(handle).append(' ').append(address);
+        appendCounters(builder).append(" handshake[us]:");
+        for (HandshakePhase phase : HandshakePhase.values()) {
+            builder.append(' ').append(phase).append('=').append(getHandshakeDuration(phase));
+        }
+        return builder.toString();
+    }
+}
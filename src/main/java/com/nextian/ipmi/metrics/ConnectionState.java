@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.metrics;
+
+/**
+ * Coarse state of a connection, grouping the states of its {@link com.nextian.ipmi.sm.StateMachine}.
+ */
+public enum ConnectionState {
+    /**
+     * Connection was created, cipher suites were not queried yet.
+     */
+    Uninitialized,
+    /**
+     * Get Channel Cipher Suites requests are in progress.
+     */
+    CipherDiscovery,
+    /**
+     * Connection is ready to start a session, e.g. before the first session or after the session was closed or lost.
+     */
+    NoSession,
+    /**
+     * Session is being established.
+     */
+    Handshake,
+    /**
+     * Session is open.
+     */
+    SessionValid
+}
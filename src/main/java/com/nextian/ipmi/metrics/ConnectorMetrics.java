@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.metrics;
+
+/**
+ * Live metrics of all connections of a connector, aggregated as the events happen. Counters are striped, as they
+ * are updated by all threads sending and receiving messages.
+ */
+public class ConnectorMetrics {
+
+    private static final int RTT_SUB_BUCKET_BITS = 6;
+
+    /**
+     * Round trip times and handshake durations are tracked up to 134 s (in microseconds).
+     */
+    private static final long HIGHEST_TRACKABLE_VALUE = 1L << 27;
+
+    private final StripedCounters counters = new StripedCounters(Counter.values().length);
+    private final LatencyHistogram rtt = new LatencyHistogram(RTT_SUB_BUCKET_BITS, HIGHEST_TRACKABLE_VALUE);
+    private final LatencyHistogram[] handshake = new LatencyHistogram[HandshakePhase.values().length];
+
+    public ConnectorMetrics() {
+        for (int i = 0; i < handshake.length; ++i) {
+            handshake[i] = new LatencyHistogram(RTT_SUB_BUCKET_BITS, HIGHEST_TRACKABLE_VALUE);
+        }
+    }
+
+    void increment(Counter counter) {
+        counters.increment(counter.ordinal());
+    }
+
+    void recordRtt(long micros) {
+        rtt.record(micros);
+    }
+
+    void recordHandshakePhase(HandshakePhase phase, long micros) {
+        handshake[phase.ordinal()].record(micros);
+    }
+
+    /**
+     * @param connectionCount    number of the connections at the moment
+     * @param requestsInFlight   number of the requests waiting for responses at the moment
+     * @param connectionsByState numbers of the connections in each {@link ConnectionState} at the moment
+     * @param openCircuitCount   number of the connections with the circuit breaker not closed at the moment
+     * @return current values of the metrics
+     */
+    public ConnectorMetricsSnapshot snapshot(int connectionCount, int requestsInFlight, int[] connectionsByState,
+                                             int openCircuitCount) {
+        HistogramSnapshot[] durations = new HistogramSnapshot[handshake.length];
+        for (int i = 0; i < handshake.length; ++i) {
+            durations[i] = new HistogramSnapshot(handshake[i]);
+        }
+        return new ConnectorMetricsSnapshot(connectionCount, requestsInFlight, connectionsByState, openCircuitCount,
+                counters.getAll(), new HistogramSnapshot(rtt), durations);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.metrics;
+
+/**
+ * Metrics of all connections of a connector captured at some point in time.
+ */
+public class ConnectorMetricsSnapshot extends MetricsSnapshot {
+
+    private final int connectionCount;
+    private final int requestsInFlight;
+    private final int[] connectionsByState;
+    private final int openCircuitCount;
+    private final HistogramSnapshot[] handshake;
+
+    ConnectorMetricsSnapshot(int connectionCount, int requestsInFlight, int[] connectionsByState,
+                             int openCircuitCount, long[] counters, HistogramSnapshot rtt,
+                             HistogramSnapshot[] handshake) {
+        super(counters, rtt);
+        this.connectionCount = connectionCount;
+        this.requestsInFlight = requestsInFlight;
+        this.connectionsByState = connectionsByState;
+        this.openCircuitCount = openCircuitCount;
+        this.handshake = handshake;
+    }
+
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    /**
+     * @return number of requests waiting for responses in all connections
+     */
+    public int getRequestsInFlight() {
+        return requestsInFlight;
+    }
+
+    /**
+     * @param state state of the connections
+     * @return number of the connections in the given state
+     */
+    public int getConnectionCount(ConnectionState state) {
+        return connectionsByState[state.ordinal()];
+    }
+
+    /**
+     * @return number of the connections with the circuit breaker open or half-open
+     */
+    public int getOpenCircuitCount() {
+        return openCircuitCount;
+    }
+
+    /**
+     * @param phase phase of the handshake
+     * @return durations of the phase in microseconds
+     */
+    public HistogramSnapshot getHandshakeDuration(HandshakePhase phase) {
+        return handshake[phase.ordinal()];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("Connections: ").append(connectionCount);
+        for (ConnectionState state : ConnectionState.values()) {
+            builder.append(' ').append(state).append('=').append(getConnectionCount(state));
+        }
+        builder.append(" InFlight=").append(requestsInFlight).append(" OpenCircuits=").append(openCircuitCount);
+        appendCounters(builder);
+        for (HandshakePhase phase : HandshakePhase.values()) {
+            builder.append(" handshake ").append(phase).append("[us]: ").append(getHandshakeDuration(phase));
+        }
+        return builder.toString();
+    }
+}
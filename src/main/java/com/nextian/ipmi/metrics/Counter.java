@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.metrics;
+
+/**
+ * Events counted per connection and for the whole connector.
+ */
+public enum Counter {
+    /**
+     * Requests sent in the session, including keepalives and retries.
+     */
+    RequestsSent,
+    /**
+     * Responses matched with the requests waiting for them.
+     */
+    ResponsesReceived,
+    /**
+     * Requests sent again after the previous attempt failed.
+     */
+    Retries,
+    /**
+     * Requests removed from the message queue without a response.
+     */
+    Timeouts,
+    /**
+     * Responses dropped because no request with their tag was waiting, e.g. late responses of timed out requests.
+     */
+    OrphanResponses,
+    /**
+     * Messages dropped because their session sequence number was out of the sliding window.
+     */
+    SequenceWindowDrops,
+    /**
+     * Messages with invalid AuthCode.
+     */
+    IntegrityFailures,
+    /**
+     * Waits for a free slot in the full message queue.
+     */
+    QueueFullWaits,
+    /**
+     * Requests rejected without sending because the circuit breaker of the connection was open.
+     */
+    FastFailures
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.metrics;
+
+/**
+ * Phases of the session establishment, timed from sending the first request of the phase to receiving its last
+ * response.
+ */
+public enum HandshakePhase {
+    /**
+     * Get Channel Cipher Suites requests.
+     */
+    CipherSuites,
+    /**
+     * Get Channel Authentication Capabilities request.
+     */
+    AuthenticationCapabilities,
+    /**
+     * Open Session request.
+     */
+    OpenSession,
+    /**
+     * RAKP Message 1 and 2.
+     */
+    Rakp1,
+    /**
+     * RAKP Message 3 and 4.
+     */
+    Rakp3
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.metrics;
+
+/**
+ * Summary of a {@link LatencyHistogram} at some point in time.
+ */
+public class HistogramSnapshot {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    /**
+     * Upper bounds of the buckets of {@link #getCumulativeCount(int)} in microseconds, from 100 us to 10 s.
+     */
+    private static final long[] BUCKET_BOUNDS = {100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000,
+            250000, 500000, 1000000, 2500000, 5000000, 10000000};
+
+    private final long count;
+    private final long sum;
+    private final long[] buckets;
+    private final double mean;
+    private final long max;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long p999;
+
+    /**
+     * @param histogram histogram to summarize, values recorded concurrently may be partially accounted for
+     */
+    public HistogramSnapshot(LatencyHistogram histogram) {
+        count = histogram.getTotalCount();
+        sum = histogram.getSum();
+        buckets = histogram.getCumulativeCounts(BUCKET_BOUNDS);
+        mean = histogram.getMean();
+        max = histogram.getMax();
+        long[] values = histogram.getValuesAtPercentiles(PERCENTILES);
+        p50 = values[0];
+        p90 = values[1];
+        p99 = values[2];
+        p999 = values[3];
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * @return number of the buckets of {@link #getCumulativeCount(int)}
+     */
+    public static int getBucketCount() {
+        return BUCKET_BOUNDS.length;
+    }
+
+    /**
+     * @param bucket index of the bucket
+     * @return upper bound of the bucket in microseconds
+     */
+    public static long getBucketBound(int bucket) {
+        return BUCKET_BOUNDS[bucket];
+    }
+
+    /**
+     * Assumes the values are in microseconds, like all the latencies of the metrics.
+     *
+     * @param bucket index of the bucket
+     * @return number of the values not greater than the upper bound of the bucket
+     */
+    public long getCumulativeCount(int bucket) {
+        return buckets[bucket];
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP90() {
+        return p90;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getP999() {
+        return p999;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1f p50=%d p90=%d p99=%d p99.9=%d max=%d", count, mean, p50, p90, p99,
+                p999, max);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies with log-linear buckets: each power of two is split into 2^subBucketBits buckets and the
+ * values below 2^(subBucketBits + 1) are counted exactly. With the default 6 bits values are reported with precision
+ * better than 1.6% in the whole range. Recording is lock-free and does not allocate.
+ * <p>
+ * Unit of the values is up to the caller.
+ */
+public class LatencyHistogram {
+
+    private static final int DEFAULT_SUB_BUCKET_BITS = 6;
+
+    private final int subBucketBits;
+    private final int subBucketCount;
+    private final int linearLimit;
+    private final long highestTrackableValue;
+    private final AtomicLongArray counts;
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Creates histogram of the whole range of long values with precision better than 1.6%.
+     */
+    public LatencyHistogram() {
+        this(DEFAULT_SUB_BUCKET_BITS, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates histogram with the given precision and range. Smaller histograms are meant to be kept per connection.
+     *
+     * @param subBucketBits         number of buckets per power of two is 2^subBucketBits, 1-10
+     * @param highestTrackableValue values above it are counted in the last bucket, they are still accounted for in
+     *                              the maximum and the mean
+     */
+    public LatencyHistogram(int subBucketBits, long highestTrackableValue) {
+        if (subBucketBits < 1 || subBucketBits > 10) {
+            throw new IllegalArgumentException("Sub-bucket bits must be in range 1-10");
+        }
+        this.subBucketBits = subBucketBits;
+        subBucketCount = 1 << subBucketBits;
+        linearLimit = 2 * subBucketCount;
+        this.highestTrackableValue = Math.max(highestTrackableValue, linearLimit - 1);
+        counts = new AtomicLongArray(indexOf(this.highestTrackableValue) + 1);
+    }
+
+    /**
+     * @param value latency, negative values are recorded as 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(indexOf(Math.min(value, highestTrackableValue)));
+        totalCount.incrementAndGet();
+        sum.addAndGet(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * @return sum of the recorded values
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * @return maximal recorded value
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return mean of the recorded values or 0 if nothing was recorded
+     */
+    public double getMean() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+
+    /**
+     * @param percentile percentile (0-100)
+     * @return highest value of the bucket holding the given percentile of the recorded values or 0 if nothing was
+     * recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        return getValuesAtPercentiles(new double[]{percentile})[0];
+    }
+
+    /**
+     * Finds values of several percentiles in a single pass over the buckets.
+     *
+     * @param percentiles percentiles (0-100) in ascending order
+     * @return highest values of the buckets holding the given percentiles of the recorded values, zeros if nothing
+     * was recorded
+     */
+    public long[] getValuesAtPercentiles(double[] percentiles) {
+        long[] values = new long[percentiles.length];
+        long count = totalCount.get();
+        if (count == 0) {
+            return values;
+        }
+        long maxValue = max.get();
+        int next = 0;
+        long rank = rankOf(percentiles[0], count);
+        long seen = 0;
+        for (int i = 0; i < counts.length() && next < percentiles.length; ++i) {
+            seen += counts.get(i);
+            while (next < percentiles.length && seen >= rank) {
+                values[next] = Math.min(highestValueOf(i), maxValue);
+                if (++next < percentiles.length) {
+                    rank = rankOf(percentiles[next], count);
+                }
+            }
+        }
+        // buckets may lag behind the total count when recording is in progress
+        for (; next < percentiles.length; ++next) {
+            values[next] = maxValue;
+        }
+        return values;
+    }
+
+    /**
+     * Counts the recorded values not greater than each of the bounds in a single pass over the buckets. A bucket is
+     * accounted for at the first bound not lower than its highest value, so the counts are exact for the values
+     * counted exactly and off by less than the precision of the histogram for the others.
+     *
+     * @param bounds upper bounds in ascending order
+     * @return cumulative counts of the values for each bound
+     */
+    public long[] getCumulativeCounts(long[] bounds) {
+        long[] cumulative = new long[bounds.length];
+        int next = 0;
+        long seen = 0;
+        for (int i = 0; i < counts.length() && next < bounds.length; ++i) {
+            long highest = highestValueOf(i);
+            while (next < bounds.length && highest > bounds[next]) {
+                cumulative[next++] = seen;
+            }
+            seen += counts.get(i);
+        }
+        for (; next < bounds.length; ++next) {
+            cumulative[next] = seen;
+        }
+        return cumulative;
+    }
+
+    private static long rankOf(double percentile, long count) {
+        long rank = (long) Math.ceil(percentile / 100 * count);
+        return rank < 1 ? 1 : rank;
+    }
+
+    private int indexOf(long value) {
+        if (value < linearLimit) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - subBucketBits;
+        return linearLimit + (shift - 1) * subBucketCount + (int) (value >>> shift) - subBucketCount;
+    }
+
+    private long highestValueOf(int index) {
+        if (index < linearLimit) {
+            return index;
+        }
+        int shift = (index - linearLimit) / subBucketCount + 1;
+        long subBucket = (index - linearLimit) % subBucketCount + subBucketCount;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.metrics;
+
+/**
+ * Counters and round trip times captured at some point in time. Counters are captured one by one, so events counted
+ * concurrently may be reflected in some of them only.
+ */
+public class MetricsSnapshot {
+
+    private final long timestamp;
+    private final long[] counters;
+    private final HistogramSnapshot rtt;
+
+    MetricsSnapshot(long[] counters, HistogramSnapshot rtt) {
+        timestamp = System.currentTimeMillis();
+        this.counters = counters;
+        this.rtt = rtt;
+    }
+
+    /**
+     * @return time of the snapshot in ms
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getCount(Counter counter) {
+        return counters[counter.ordinal()];
+    }
+
+    /**
+     * @return round trip times of the requests in microseconds, from sending the request to receiving its response
+     */
+    public HistogramSnapshot getRtt() {
+        return rtt;
+    }
+
+    /**
+     * @return ratio of the timed out requests to all requests sent or 0 if nothing was sent
+     */
+    public double getTimeoutRatio() {
+        long sent = getCount(Counter.RequestsSent);
+        return sent == 0 ? 0 : (double) getCount(Counter.Timeouts) / sent;
+    }
+
+    StringBuilder appendCounters(StringBuilder builder) {
+        for (Counter counter : Counter.values()) {
+            builder.append(' ').append(counter).append('=').append(getCount(counter));
+        }
+        return builder.append(" rtt[us]: ").append(rtt);
+    }
+}
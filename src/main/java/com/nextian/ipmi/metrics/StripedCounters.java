@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Set of counters updated concurrently by many threads. Each counter is split into stripes placed in separate cache
+ * lines and a thread updates the stripe picked by its ID, so threads rarely contend on the same cache line. Value of
+ * the counter is the sum of its stripes.
+ */
+public class StripedCounters {
+
+    /**
+     * Number of longs in a cache line.
+     */
+    private static final int LINE = 8;
+
+    private final int count;
+    private final int stride;
+    private final int mask;
+    private final AtomicLongArray cells;
+
+    /**
+     * @param count   number of counters
+     * @param stripes number of stripes, rounded up to a power of two. 1 disables the striping, which suits counters
+     *                updated by a few threads.
+     */
+    public StripedCounters(int count, int stripes) {
+        if (count < 1 || stripes < 1) {
+            throw new IllegalArgumentException("Number of counters and stripes must be positive");
+        }
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) {
+            size <<= 1;
+        }
+        this.count = count;
+        mask = size - 1;
+        // separate stripes with a full line, the array itself is not aligned to the cache line
+        stride = size == 1 ? count : ((count + LINE - 1) / LINE + 1) * LINE;
+        cells = new AtomicLongArray(stride * size);
+    }
+
+    /**
+     * Creates counters with two stripes per available processor.
+     *
+     * @param count number of counters
+     */
+    public StripedCounters(int count) {
+        this(count, 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void increment(int counter) {
+        add(counter, 1);
+    }
+
+    public void add(int counter, long delta) {
+        cells.addAndGet(stripe() + counter, delta);
+    }
+
+    /**
+     * @param counter index of the counter
+     * @return sum of the stripes, not atomic with respect to the concurrent updates
+     */
+    public long get(int counter) {
+        long sum = 0;
+        for (int i = counter; i < cells.length(); i += stride) {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+
+    /**
+     * @return values of all counters
+     */
+    public long[] getAll() {
+        long[] values = new long[count];
+        for (int base = 0; base < cells.length(); base += stride) {
+            for (int i = 0; i < count; ++i) {
+                values[i] += cells.get(base + i);
+            }
+        }
+        return values;
+    }
+
+    private int stripe() {
+        if (mask == 0) {
+            return 0;
+        }
+        long id = Thread.currentThread().getId();
+        return ((int) (id ^ (id >>> 16)) & mask) * stride;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.sdr;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers the order of record IDs (the Next Record ID chain) of each BMC's SDR Repository from the previous
+ * download. Used by {@link SdrReader} to request upcoming records before the previous response arrives.
+ */
+public class SdrChainCache {
+
+    private final Map<String, int[]> chains = new HashMap<String, int[]>();
+
+    /**
+     * @param host key identifying the BMC
+     * @return record IDs in repository order or null if the chain is not known
+     */
+    public synchronized int[] get(String host) {
+        return chains.get(host);
+    }
+
+    /**
+     * @param host  key identifying the BMC
+     * @param chain record IDs in repository order
+     */
+    public synchronized void put(String host, int[] chain) {
+        chains.put(host, chain);
+    }
+
+    public synchronized void invalidate(String host) {
+        chains.remove(host);
+    }
+}
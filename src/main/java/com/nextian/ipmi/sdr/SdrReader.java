@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.sdr;
+
+import com.nextian.ipmi.api.async.ConnectionHandle;
+import com.nextian.ipmi.api.async.IpmiAsyncConnector;
+import com.nextian.ipmi.api.async.RequestPipeline;
+import com.nextian.ipmi.api.async.messages.IpmiError;
+import com.nextian.ipmi.api.async.messages.IpmiResponse;
+import com.nextian.ipmi.api.async.messages.IpmiResponseData;
+import com.nextian.ipmi.coding.commands.IpmiVersion;
+import com.nextian.ipmi.coding.commands.ResponseData;
+import com.nextian.ipmi.coding.commands.sdr.GetSdr;
+import com.nextian.ipmi.coding.commands.sdr.GetSdrResponseData;
+import com.nextian.ipmi.coding.commands.sdr.ReserveSdrRepository;
+import com.nextian.ipmi.coding.commands.sdr.ReserveSdrRepositoryResponseData;
+import com.nextian.ipmi.coding.payload.CompletionCode;
+import com.nextian.ipmi.coding.payload.lan.IPMIException;
+import com.nextian.ipmi.coding.protocol.AuthenticationType;
+import com.nextian.ipmi.common.Defaults;
+import com.nextian.ipmi.connection.ConnectionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Downloads the SDR Repository. Records form a linked list (each Get SDR response carries the ID of the next record),
+ * so the first download walks the repository one record per round trip. The resulting record ID chain is kept in
+ * {@link SdrChainCache} and subsequent downloads request the next window of known IDs in parallel under one
+ * reservation. Each response is checked against the cached chain; where the chain has changed the reader walks
+ * sequentially until it reaches a known record again.
+ */
+public class SdrReader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SdrReader.class);
+
+    /**
+     * Number of bytes read at once when the BMC cannot return the entire record in one response.
+     */
+    private static final int PART_SIZE = 16;
+
+    /**
+     * Upper bound of records in the repository, protects against cyclic chains.
+     */
+    private static final int MAX_RECORDS = 0xFFFF;
+
+    private final IpmiAsyncConnector connector;
+    private final SdrChainCache chainCache;
+    private int window = RequestPipeline.DEFAULT_WINDOW;
+    private int timeout = Defaults.TIMEOUT;
+    private int retries = Defaults.RETRIES;
+
+    /**
+     * @param connector  connector used to send requests
+     * @param chainCache cache of record ID chains, may be shared between readers
+     */
+    public SdrReader(IpmiAsyncConnector connector, SdrChainCache chainCache) {
+        this.connector = connector;
+        this.chainCache = chainCache;
+    }
+
+    /**
+     * @param window maximum number of Get SDR requests in flight (1-7)
+     */
+    public void setWindow(int window) {
+        this.window = window;
+    }
+
+    /**
+     * @param timeout time in milliseconds to wait for a single response
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @param retries number of times a failed window or a canceled reservation is retried
+     */
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    /**
+     * Reads all records from the SDR Repository and updates the cached record ID chain.
+     *
+     * @param handle connection with an open session
+     * @param host   key identifying the BMC in the {@link SdrChainCache}
+     * @return records in the repository order
+     * @throws ConnectionException  when request cannot be sent or response does not arrive in time
+     * @throws IPMIException        when BMC rejects the request
+     * @throws InterruptedException when thread is interrupted
+     */
+    public List<SdrRecord> read(ConnectionHandle handle, String host)
+            throws ConnectionException, IPMIException, InterruptedException {
+        RequestPipeline pipeline = new RequestPipeline(connector, handle, window, timeout);
+
+        int[] chain = chainCache.get(host);
+        Map<Integer, Integer> positions = new HashMap<Integer, Integer>();
+        if (chain != null) {
+            for (int i = 0; i < chain.length; ++i) {
+                positions.put(chain[i], i);
+            }
+        }
+
+        List<SdrRecord> records = new ArrayList<SdrRecord>();
+        int reservationId = reserve(pipeline, handle);
+        int failures = 0;
+
+        int nextId = GetSdr.FIRST_RECORD;
+        // Successor of the last accepted record - reading is resumed from it after a failed window
+        int resumeId = GetSdr.FIRST_RECORD;
+        int position = positionOf(nextId, chain, positions);
+
+        while (nextId != GetSdr.LAST_RECORD) {
+            if (records.size() >= MAX_RECORDS) {
+                throw new ConnectionException("SDR Repository record chain does not terminate");
+            }
+
+            List<GetSdr> requests = new ArrayList<GetSdr>();
+            requests.add(new GetSdr(IpmiVersion.V20, handle.getCipherSuite(), AuthenticationType.RMCPPlus,
+                    reservationId, nextId, 0, GetSdr.ENTIRE_RECORD));
+            if (position >= 0) {
+                for (int i = position + 1; i < chain.length && requests.size() < window; ++i) {
+                    requests.add(new GetSdr(IpmiVersion.V20, handle.getCipherSuite(), AuthenticationType.RMCPPlus,
+                            reservationId, chain[i], 0, GetSdr.ENTIRE_RECORD));
+                }
+            }
+
+            try {
+                List<IpmiResponse> responses = pipeline.execute(requests);
+
+                for (int k = 0; k < responses.size(); ++k) {
+                    GetSdrResponseData data = getRecord(pipeline, handle, reservationId, requests.get(k),
+                            responses.get(k));
+                    records.add(new SdrRecord(data.getRecordData()));
+                    resumeId = data.getNextRecordId();
+
+                    int expected = GetSdr.LAST_RECORD;
+                    if (position >= 0 && position + k + 1 < chain.length) {
+                        expected = chain[position + k + 1];
+                    }
+
+                    if (position < 0 || data.getNextRecordId() != expected || k == responses.size() - 1) {
+                        nextId = data.getNextRecordId();
+                        if (position >= 0 && data.getNextRecordId() != expected) {
+                            LOGGER.debug("SDR chain of {} changed after record {}", host, requests.get(k).getRecordId());
+                        }
+                        position = positionOf(nextId, chain, positions);
+                        break;
+                    }
+                }
+            } catch (IPMIException e) {
+                if (e.getCompletionCode() != CompletionCode.ReservationCanceled || ++failures > retries) {
+                    throw e;
+                }
+                // Records accepted in this window are kept, the rest is requested again under new reservation
+                reservationId = reserve(pipeline, handle);
+                nextId = resumeId;
+                position = positionOf(nextId, chain, positions);
+            } catch (ConnectionException e) {
+                if (++failures > retries) {
+                    throw e;
+                }
+                nextId = resumeId;
+                position = positionOf(nextId, chain, positions);
+            }
+        }
+
+        int[] newChain = new int[records.size()];
+        for (int i = 0; i < newChain.length; ++i) {
+            newChain[i] = records.get(i).getRecordId();
+        }
+        chainCache.put(host, newChain);
+
+        return records;
+    }
+
+    /**
+     * @return index of the record in the cached chain or -1 if the record is not known
+     */
+    private static int positionOf(int recordId, int[] chain, Map<Integer, Integer> positions) {
+        if (chain == null || chain.length == 0) {
+            return -1;
+        }
+        if (recordId == GetSdr.FIRST_RECORD) {
+            return 0;
+        }
+        Integer position = positions.get(recordId);
+        return position != null ? position : -1;
+    }
+
+    /**
+     * Extracts entire record from the response. Falls back to reading the record in parts when the BMC cannot return
+     * it in one response.
+     */
+    private GetSdrResponseData getRecord(RequestPipeline pipeline, ConnectionHandle handle, int reservationId,
+                                         GetSdr request, IpmiResponse response)
+            throws IPMIException, ConnectionException, InterruptedException {
+        if (response instanceof IpmiResponseData) {
+            return (GetSdrResponseData) ((IpmiResponseData) response).getResponseData();
+        }
+        Exception exception = ((IpmiError) response).getException();
+        if (exception instanceof IPMIException) {
+            CompletionCode code = ((IPMIException) exception).getCompletionCode();
+            if (code == CompletionCode.CannotRespond || code == CompletionCode.LengthLimitExceeded) {
+                return readInParts(pipeline, handle, reservationId, request.getRecordId());
+            }
+            throw (IPMIException) exception;
+        }
+        throw new ConnectionException("Get SDR failed", exception);
+    }
+
+    private GetSdrResponseData readInParts(RequestPipeline pipeline, ConnectionHandle handle, int reservationId,
+                                           int recordId)
+            throws IPMIException, ConnectionException, InterruptedException {
+        GetSdrResponseData header = (GetSdrResponseData) getData(pipeline.execute(Collections.singletonList(
+                new GetSdr(IpmiVersion.V20, handle.getCipherSuite(), AuthenticationType.RMCPPlus, reservationId,
+                        recordId, 0, SdrRecord.HEADER_SIZE))).get(0));
+
+        byte[] record = new byte[SdrRecord.HEADER_SIZE + new SdrRecord(header.getRecordData()).getRecordLength()];
+        System.arraycopy(header.getRecordData(), 0, record, 0, SdrRecord.HEADER_SIZE);
+
+        int offset = SdrRecord.HEADER_SIZE;
+        while (offset < record.length) {
+            int count = Math.min(PART_SIZE, record.length - offset);
+            GetSdrResponseData part = (GetSdrResponseData) getData(pipeline.execute(Collections.singletonList(
+                    new GetSdr(IpmiVersion.V20, handle.getCipherSuite(), AuthenticationType.RMCPPlus, reservationId,
+                            recordId, offset, count))).get(0));
+            int length = Math.min(part.getRecordData().length, count);
+            if (length == 0) {
+                throw new ConnectionException("Empty Get SDR response for record " + recordId);
+            }
+            System.arraycopy(part.getRecordData(), 0, record, offset, length);
+            offset += length;
+        }
+
+        GetSdrResponseData result = new GetSdrResponseData();
+        result.setNextRecordId(header.getNextRecordId());
+        result.setRecordData(record);
+        return result;
+    }
+
+    private int reserve(RequestPipeline pipeline, ConnectionHandle handle)
+            throws IPMIException, ConnectionException, InterruptedException {
+        return ((ReserveSdrRepositoryResponseData) getData(pipeline.execute(Collections.singletonList(
+                new ReserveSdrRepository(IpmiVersion.V20, handle.getCipherSuite(), AuthenticationType.RMCPPlus)))
+                .get(0))).getReservationId();
+    }
+
+    private static ResponseData getData(IpmiResponse response) throws IPMIException, ConnectionException {
+        if (response instanceof IpmiResponseData) {
+            return ((IpmiResponseData) response).getResponseData();
+        }
+        Exception exception = ((IpmiError) response).getException();
+        if (exception instanceof IPMIException) {
+            throw (IPMIException) exception;
+        }
+        throw new ConnectionException("Request failed", exception);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.sdr;
+
+import com.nextian.ipmi.common.TypeConverter;
+
+/**
+ * Raw Sensor Data Record as read from the SDR Repository.
+ */
+public class SdrRecord {
+
+    /**
+     * Size of the record header (Record ID, SDR Version, Record Type, Record Length).
+     */
+    public static final int HEADER_SIZE = 5;
+
+    private final byte[] data;
+
+    /**
+     * @param data raw record including the header
+     */
+    public SdrRecord(byte[] data) {
+        if (data == null || data.length < HEADER_SIZE) {
+            throw new IllegalArgumentException("SDR record too short");
+        }
+        this.data = data;
+    }
+
+    public int getRecordId() {
+        return TypeConverter.byteToInt(data[0]) | (TypeConverter.byteToInt(data[1]) << 8);
+    }
+
+    public int getSdrVersion() {
+        return TypeConverter.byteToInt(data[2]);
+    }
+
+    public int getRecordType() {
+        return TypeConverter.byteToInt(data[3]);
+    }
+
+    /**
+     * @return length of the record body (without header)
+     */
+    public int getRecordLength() {
+        return TypeConverter.byteToInt(data[4]);
+    }
+
+    /**
+     * @return raw record including the header
+     */
+    public byte[] getData() {
+        return data;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.sel;
+
+/**
+ * Growable list of record indices kept in a primitive array. Used as a secondary index entry of
+ * {@link SelEventStore}. Appends are done under the store's write lock, readers take a size snapshot under the read
+ * lock so the backing array is never observed in an inconsistent state.
+ */
+class PostingList {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] values;
+
+    private int size;
+
+    PostingList() {
+        values = new int[INITIAL_CAPACITY];
+    }
+
+    void add(int value) {
+        if (size == values.length) {
+            int[] grown = new int[values.length << 1];
+            System.arraycopy(values, 0, grown, 0, size);
+            values = grown;
+        }
+        values[size++] = value;
+    }
+
+    int get(int index) {
+        return values[index];
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.sel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Append-only, in-memory store of SEL records gathered from many BMCs. Records are kept in their raw 16-byte form in
+ * fixed size byte slabs (no per-record objects are created). Store maintains secondary indexes on host, sensor type
+ * and timestamp (bucketed) in primitive posting lists. Queries are streaming scans - matching records are handed to
+ * {@link SelRecordVisitor} one at a time through a reused {@link SelRecordView}.
+ * <p>
+ * Store is thread safe. Visitor is called while holding the read lock so it must not append to the same store.
+ */
+public class SelEventStore {
+
+    /**
+     * Number of records held by one slab.
+     */
+    private static final int SLAB_RECORDS = 4096;
+
+    /**
+     * Default width of the timestamp index bucket in seconds.
+     */
+    public static final int DEFAULT_TIME_BUCKET = 3600;
+
+    private final int timeBucket;
+
+    private final ArrayList<byte[]> slabs = new ArrayList<byte[]>();
+
+    private final ArrayList<int[]> hostSlabs = new ArrayList<int[]>();
+
+    private int size;
+
+    private final Map<String, Integer> hostIds = new HashMap<String, Integer>();
+
+    private final ArrayList<String> hostNames = new ArrayList<String>();
+
+    private final ArrayList<PostingList> hostIndex = new ArrayList<PostingList>();
+
+    private final PostingList[] sensorTypeIndex = new PostingList[256];
+
+    private final TreeMap<Long, PostingList> timeIndex = new TreeMap<Long, PostingList>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public SelEventStore() {
+        this(DEFAULT_TIME_BUCKET);
+    }
+
+    /**
+     * @param timeBucket width of the timestamp index bucket in seconds
+     */
+    public SelEventStore(int timeBucket) {
+        if (timeBucket <= 0) {
+            throw new IllegalArgumentException("Time bucket must be positive");
+        }
+        this.timeBucket = timeBucket;
+    }
+
+    /**
+     * Appends SEL record to the store.
+     *
+     * @param host   name of the host (BMC) the record was read from
+     * @param record raw SEL record
+     * @return index of the record in the store
+     */
+    public int append(String host, byte[] record) {
+        return append(host, record, 0);
+    }
+
+    /**
+     * Appends SEL record to the store.
+     *
+     * @param host   name of the host (BMC) the record was read from
+     * @param data   buffer containing raw SEL record
+     * @param offset position of the record in the buffer
+     * @return index of the record in the store
+     */
+    public int append(String host, byte[] data, int offset) {
+        if (host == null) {
+            throw new IllegalArgumentException("Host cannot be null");
+        }
+        if (data == null || offset < 0 || data.length - offset < SelRecordView.RECORD_SIZE) {
+            throw new IllegalArgumentException("SEL record must be " + SelRecordView.RECORD_SIZE + " bytes long");
+        }
+        lock.writeLock().lock();
+        try {
+            int index = size;
+            int slot = index % SLAB_RECORDS;
+            if (slot == 0) {
+                slabs.add(new byte[SLAB_RECORDS * SelRecordView.RECORD_SIZE]);
+                hostSlabs.add(new int[SLAB_RECORDS]);
+            }
+            byte[] slab = slabs.get(index / SLAB_RECORDS);
+            System.arraycopy(data, offset, slab, slot * SelRecordView.RECORD_SIZE, SelRecordView.RECORD_SIZE);
+
+            int hostId = getOrCreateHostId(host);
+            hostSlabs.get(index / SLAB_RECORDS)[slot] = hostId;
+            hostIndex.get(hostId).add(index);
+
+            int recordType = data[offset + 2] & 0xff;
+            if (recordType < 0xC0) {
+                int sensorType = data[offset + 10] & 0xff;
+                if (sensorTypeIndex[sensorType] == null) {
+                    sensorTypeIndex[sensorType] = new PostingList();
+                }
+                sensorTypeIndex[sensorType].add(index);
+            }
+            if (recordType < 0xE0) {
+                Long bucket = SelRecordView.readTimestamp(data, offset) / timeBucket;
+                PostingList list = timeIndex.get(bucket);
+                if (list == null) {
+                    list = new PostingList();
+                    timeIndex.put(bucket, list);
+                }
+                list.add(index);
+            }
+
+            ++size;
+            return index;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of records in the store
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Visits records matching given query. The smallest of the applicable indexes is used to drive the scan, remaining
+     * criteria are checked against the raw record. Records are visited in the insertion order, except for the scans
+     * driven by the timestamp index where they are visited bucket by bucket.
+     *
+     * @param query   criteria of the scan
+     * @param visitor receives matching records
+     * @return number of visited records
+     */
+    public int scan(SelQuery query, SelRecordVisitor visitor) {
+        SelRecordView view = new SelRecordView();
+        int visited = 0;
+
+        lock.readLock().lock();
+        try {
+            PostingList driver = null;
+            if (query.getHost() != null) {
+                Integer hostId = hostIds.get(query.getHost());
+                if (hostId == null) {
+                    return 0;
+                }
+                driver = hostIndex.get(hostId);
+            }
+            if (query.getSensorType() != SelQuery.ANY) {
+                PostingList list = sensorTypeIndex[query.getSensorType()];
+                if (list == null) {
+                    return 0;
+                }
+                if (driver == null || list.size() < driver.size()) {
+                    driver = list;
+                }
+            }
+
+            if (query.hasTimeRange()) {
+                SortedMap<Long, PostingList> buckets = getBuckets(query);
+                long estimate = 0;
+                for (PostingList list : buckets.values()) {
+                    estimate += list.size();
+                }
+                if (driver == null || estimate < driver.size()) {
+                    for (PostingList list : buckets.values()) {
+                        int count = scanList(list, query, visitor, view);
+                        if (count < 0) {
+                            return visited - count - 1;
+                        }
+                        visited += count;
+                    }
+                    return visited;
+                }
+            }
+
+            if (driver != null) {
+                visited = scanList(driver, query, visitor, view);
+                return visited < 0 ? -visited - 1 : visited;
+            }
+
+            for (int index = 0; index < size; ++index) {
+                position(view, index);
+                if (query.matches(view)) {
+                    ++visited;
+                    if (!visitor.visit(view)) {
+                        break;
+                    }
+                }
+            }
+            return visited;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copies raw record into the given buffer.
+     *
+     * @param index  index of the record in the store
+     * @param buffer target buffer
+     * @param pos    position in the buffer where record will be copied
+     */
+    public void get(int index, byte[] buffer, int pos) {
+        lock.readLock().lock();
+        try {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Invalid record index " + index);
+            }
+            System.arraycopy(slabs.get(index / SLAB_RECORDS), (index % SLAB_RECORDS) * SelRecordView.RECORD_SIZE,
+                    buffer, pos, SelRecordView.RECORD_SIZE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Scans records from the posting list.
+     *
+     * @return number of visited records or, when visitor stopped the scan, -(number of visited records) - 1
+     */
+    private int scanList(PostingList list, SelQuery query, SelRecordVisitor visitor, SelRecordView view) {
+        int visited = 0;
+        int count = list.size();
+        for (int i = 0; i < count; ++i) {
+            position(view, list.get(i));
+            if (query.matches(view)) {
+                ++visited;
+                if (!visitor.visit(view)) {
+                    return -visited - 1;
+                }
+            }
+        }
+        return visited;
+    }
+
+    private SortedMap<Long, PostingList> getBuckets(SelQuery query) {
+        if (query.getFrom() != SelQuery.ANY && query.getTo() != SelQuery.ANY) {
+            return timeIndex.subMap(query.getFrom() / timeBucket, query.getTo() / timeBucket + 1);
+        } else if (query.getFrom() != SelQuery.ANY) {
+            return timeIndex.tailMap(query.getFrom() / timeBucket);
+        } else {
+            return timeIndex.headMap(query.getTo() / timeBucket + 1);
+        }
+    }
+
+    private void position(SelRecordView view, int index) {
+        int slab = index / SLAB_RECORDS;
+        int slot = index % SLAB_RECORDS;
+        view.position(slabs.get(slab), slot * SelRecordView.RECORD_SIZE, index,
+                hostNames.get(hostSlabs.get(slab)[slot]));
+    }
+
+    private int getOrCreateHostId(String host) {
+        Integer id = hostIds.get(host);
+        if (id == null) {
+            id = hostNames.size();
+            hostIds.put(host, id);
+            hostNames.add(host);
+            hostIndex.add(new PostingList());
+        }
+        return id;
+    }
+}
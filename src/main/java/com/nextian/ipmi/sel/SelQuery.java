@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.sel;
+
+/**
+ * Criteria of the {@link SelEventStore} scan. Criteria that are not set match all records.
+ */
+public class SelQuery {
+
+    /**
+     * Marks criterion as not set.
+     */
+    public static final int ANY = -1;
+
+    private String host;
+
+    private int sensorType = ANY;
+
+    private long from = ANY;
+
+    private long to = ANY;
+
+    /**
+     * @param host name of the host (BMC) the records were read from or null to match all hosts
+     */
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @param sensorType sensor type code (0-255) or {@link #ANY}
+     */
+    public void setSensorType(int sensorType) {
+        if (sensorType < ANY || sensorType > 0xff) {
+            throw new IllegalArgumentException("Sensor type must be 0-255");
+        }
+        this.sensorType = sensorType;
+    }
+
+    public int getSensorType() {
+        return sensorType;
+    }
+
+    /**
+     * Sets the time range of the query. Records without timestamp never match when the range is set.
+     *
+     * @param from beginning of the range in seconds (inclusive) or {@link #ANY}
+     * @param to   end of the range in seconds (exclusive) or {@link #ANY}
+     */
+    public void setTimeRange(long from, long to) {
+        if (from != ANY && to != ANY && from > to) {
+            throw new IllegalArgumentException("Invalid time range");
+        }
+        this.from = from;
+        this.to = to;
+    }
+
+    public long getFrom() {
+        return from;
+    }
+
+    public long getTo() {
+        return to;
+    }
+
+    boolean hasTimeRange() {
+        return from != ANY || to != ANY;
+    }
+
+    boolean matches(SelRecordView record) {
+        if (sensorType != ANY && record.getSensorType() != sensorType) {
+            return false;
+        }
+        if (hasTimeRange()) {
+            long timestamp = record.getTimestamp();
+            if (timestamp < 0 || (from != ANY && timestamp < from) || (to != ANY && timestamp >= to)) {
+                return false;
+            }
+        }
+        return host == null || host.equals(record.getHost());
+    }
+}
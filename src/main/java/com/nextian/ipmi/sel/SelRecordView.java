@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.sel;
+
+import com.nextian.ipmi.common.TypeConverter;
+
+/**
+ * Read-only view over a single raw SEL record held by {@link SelEventStore}. One instance is reused for all records
+ * visited during a scan, so it must not be retained by the {@link SelRecordVisitor} - use {@link #copyTo(byte[], int)}
+ * to keep the record.
+ */
+public class SelRecordView {
+
+    /**
+     * Size of the SEL record in bytes.
+     */
+    public static final int RECORD_SIZE = 16;
+
+    /**
+     * Record type of the standard System Event Record.
+     */
+    public static final int SYSTEM_EVENT_RECORD = 0x02;
+
+    private byte[] slab;
+
+    private int offset;
+
+    private int index;
+
+    private String host;
+
+    void position(byte[] slab, int offset, int index, String host) {
+        this.slab = slab;
+        this.offset = offset;
+        this.index = index;
+        this.host = host;
+    }
+
+    /**
+     * @return position of the record in the {@link SelEventStore}
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return name of the host (BMC) the record was read from
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return Record ID assigned by the BMC
+     */
+    public int getRecordId() {
+        return TypeConverter.byteToInt(slab[offset]) | (TypeConverter.byteToInt(slab[offset + 1]) << 8);
+    }
+
+    public int getRecordType() {
+        return TypeConverter.byteToInt(slab[offset + 2]);
+    }
+
+    /**
+     * @return true for the System Event Records and OEM timestamped records (types below E0h)
+     */
+    public boolean isTimestamped() {
+        return getRecordType() < 0xE0;
+    }
+
+    /**
+     * @return true for the records carrying sensor information (types below C0h)
+     */
+    public boolean isSystemEvent() {
+        return getRecordType() < 0xC0;
+    }
+
+    /**
+     * @return timestamp of the event in seconds (as reported by the BMC) or -1 if record is not timestamped
+     */
+    public long getTimestamp() {
+        if (!isTimestamped()) {
+            return -1;
+        }
+        return readTimestamp(slab, offset);
+    }
+
+    public int getGeneratorId() {
+        return TypeConverter.byteToInt(slab[offset + 7]) | (TypeConverter.byteToInt(slab[offset + 8]) << 8);
+    }
+
+    public int getEventMessageRevision() {
+        return TypeConverter.byteToInt(slab[offset + 9]);
+    }
+
+    /**
+     * @return sensor type code or -1 if record is not a System Event Record
+     */
+    public int getSensorType() {
+        return isSystemEvent() ? TypeConverter.byteToInt(slab[offset + 10]) : -1;
+    }
+
+    public int getSensorNumber() {
+        return TypeConverter.byteToInt(slab[offset + 11]);
+    }
+
+    /**
+     * @return Event/Reading Type Code (without the event direction bit)
+     */
+    public int getEventType() {
+        return TypeConverter.byteToInt(slab[offset + 12]) & 0x7f;
+    }
+
+    /**
+     * @return true if the event is a deassertion event
+     */
+    public boolean isDeassertion() {
+        return (slab[offset + 12] & 0x80) != 0;
+    }
+
+    /**
+     * @param number number of the event data byte (1-3)
+     * @return value of the event data byte
+     */
+    public int getEventData(int number) {
+        if (number < 1 || number > 3) {
+            throw new IllegalArgumentException("Event data number must be 1-3");
+        }
+        return TypeConverter.byteToInt(slab[offset + 12 + number]);
+    }
+
+    /**
+     * Copies raw record into the given buffer.
+     *
+     * @param buffer target buffer
+     * @param pos    position in the buffer where record will be copied
+     */
+    public void copyTo(byte[] buffer, int pos) {
+        System.arraycopy(slab, offset, buffer, pos, RECORD_SIZE);
+    }
+
+    static long readTimestamp(byte[] data, int offset) {
+        return (TypeConverter.byteToInt(data[offset + 3])
+                | (TypeConverter.byteToInt(data[offset + 4]) << 8)
+                | (TypeConverter.byteToInt(data[offset + 5]) << 16)
+                | ((long) TypeConverter.byteToInt(data[offset + 6]) << 24));
+    }
+}
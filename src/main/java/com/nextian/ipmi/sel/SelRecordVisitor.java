@@ -0,0 +1,23 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.sel;
+
+/**
+ * Receives records matching {@link SelQuery} during {@link SelEventStore#scan(SelQuery, SelRecordVisitor)}.
+ */
+public interface SelRecordVisitor {
+
+    /**
+     * Called for every matching record.
+     *
+     * @param record view of the record, valid only for the duration of the call
+     * @return false to stop the scan, true to continue
+     */
+    boolean visit(SelRecordView record);
+}
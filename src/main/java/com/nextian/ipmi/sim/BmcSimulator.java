@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.sim;
+
+import com.nextian.ipmi.common.Defaults;
+import com.nextian.ipmi.transport.Messenger;
+import com.nextian.ipmi.transport.UdpListener;
+import com.nextian.ipmi.transport.UdpMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process {@link Messenger} serving a fleet of {@link VirtualBmc}s, for load testing without network. Messages
+ * sent to the address of a simulated BMC are processed on a pool of worker threads and the responses are delivered
+ * to the registered listeners, as if they were received from the BMC's {@link Defaults#IPMI_PORT}. Messages sent to
+ * other addresses are dropped.
+ * <p>
+ * Usage: {@code new IpmiAsyncConnector(simulator)}, or {@code new ConnectionManager(simulator)}. The same fleet can
+ * be exposed over real UDP sockets with {@link UdpBmcServer}.
+ */
+public class BmcSimulator implements Messenger {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BmcSimulator.class);
+
+    /**
+     * First address assigned by {@link #addBmcs(int, String, String)}.
+     */
+    private static final int FIRST_GENERATED_ADDRESS = 0x7f010001; // 127.1.0.1
+
+    private final Map<InetAddress, VirtualBmc> bmcs = new ConcurrentHashMap<InetAddress, VirtualBmc>();
+    private final List<UdpListener> listeners = new ArrayList<UdpListener>();
+    private final ScheduledThreadPoolExecutor workers;
+    private int nextAddress = FIRST_GENERATED_ADDRESS;
+    private volatile long latency;
+
+    /**
+     * Creates simulator with a worker thread per available processor.
+     */
+    public BmcSimulator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads number of worker threads processing the requests
+     */
+    public BmcSimulator(int threads) {
+        workers = new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "BmcSimulator-" + ++count);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Adds BMC supporting {@link VirtualBmc#DEFAULT_CIPHER_SUITES}.
+     *
+     * @param address  address of the BMC
+     * @param username name of the only user
+     * @param password password of the user
+     * @return the BMC
+     */
+    public VirtualBmc addBmc(InetAddress address, String username, String password) {
+        return addBmc(new VirtualBmc(address, username, password, null));
+    }
+
+    /**
+     * Adds BMC, replacing the one with the same address.
+     *
+     * @param bmc the BMC
+     * @return the BMC
+     */
+    public VirtualBmc addBmc(VirtualBmc bmc) {
+        bmcs.put(bmc.getAddress(), bmc);
+        return bmc;
+    }
+
+    /**
+     * Adds BMCs at the consecutive loopback addresses starting with 127.1.0.1. Addresses ending with .0 and .255 are
+     * skipped.
+     *
+     * @param count    number of BMCs to add
+     * @param username name of the only user of each BMC
+     * @param password password of the user
+     * @return addresses of the added BMCs
+     */
+    public synchronized List<InetAddress> addBmcs(int count, String username, String password) {
+        List<InetAddress> addresses = new ArrayList<InetAddress>(count);
+        for (int i = 0; i < count; ++i) {
+            while ((nextAddress & 0xff) == 0 || (nextAddress & 0xff) == 0xff) {
+                ++nextAddress;
+            }
+            if ((nextAddress >>> 24) != 0x7f) {
+                throw new IllegalStateException("Loopback addresses exhausted");
+            }
+            InetAddress address;
+            try {
+                address = InetAddress.getByAddress(new byte[]{(byte) (nextAddress >>> 24), (byte) (nextAddress >>> 16),
+                        (byte) (nextAddress >>> 8), (byte) nextAddress});
+            } catch (UnknownHostException e) {
+                throw new IllegalStateException(e);
+            }
+            ++nextAddress;
+            addBmc(address, username, password);
+            addresses.add(address);
+        }
+        return addresses;
+    }
+
+    /**
+     * @param address address of the BMC
+     * @return the BMC or null if there is no BMC with this address
+     */
+    public VirtualBmc getBmc(InetAddress address) {
+        return bmcs.get(address);
+    }
+
+    /**
+     * Removes BMC, so its address stops responding.
+     *
+     * @param address address of the BMC
+     * @return removed BMC or null if there was none
+     */
+    public VirtualBmc removeBmc(InetAddress address) {
+        return bmcs.remove(address);
+    }
+
+    public Collection<VirtualBmc> getBmcs() {
+        return bmcs.values();
+    }
+
+    /**
+     * @param latency time in ms between sending the request and processing it by the BMC
+     */
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    public long getLatency() {
+        return latency;
+    }
+
+    @Override
+    public void send(final UdpMessage message) throws IOException {
+        final VirtualBmc bmc = bmcs.get(message.getAddress());
+        if (bmc == null) {
+            return;
+        }
+        final byte[] request = message.getMessage().clone();
+        workers.schedule(new Runnable() {
+            @Override
+            public void run() {
+                byte[] response = bmc.handle(request);
+                if (response != null) {
+                    UdpMessage received = new UdpMessage();
+                    received.setAddress(bmc.getAddress());
+                    received.setPort(Defaults.IPMI_PORT);
+                    received.setMessage(response);
+                    deliver(received);
+                }
+            }
+        }, latency, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void register(UdpListener listener) {
+        synchronized (listeners) {
+            listeners.add(listener);
+        }
+    }
+
+    @Override
+    public void unregister(UdpListener listener) {
+        synchronized (listeners) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Detaches all listeners. The simulated BMCs keep running, so the simulator can be reused by another connector
+     * until {@link #shutdown()}.
+     */
+    @Override
+    public void closeConnection() {
+        synchronized (listeners) {
+            listeners.clear();
+        }
+    }
+
+    /**
+     * Stops the worker threads. Pending requests are dropped.
+     */
+    public void shutdown() {
+        closeConnection();
+        workers.shutdownNow();
+    }
+
+    private void deliver(UdpMessage message) {
+        UdpListener[] current;
+        synchronized (listeners) {
+            current = listeners.toArray(new UdpListener[listeners.size()]);
+        }
+        // listeners are notified without the lock, so the workers deliver responses of different BMCs in parallel
+        for (UdpListener listener : current) {
+            try {
+                listener.notifyMessage(message);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                LOGGER.error("Listener failed to process message from " + message.getAddress(), e);
+            }
+        }
+    }
+}
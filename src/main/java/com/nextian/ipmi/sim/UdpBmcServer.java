@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.sim;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Exposes the BMCs of a {@link BmcSimulator} over UDP, so they can be reached by other processes or by a connector
+ * using the regular {@link com.nextian.ipmi.transport.UdpMessenger}. A socket is bound at the address of each BMC (the
+ * 127.0.0.0/8 addresses are all local on Linux) and all sockets are served by one selector thread.
+ * <p>
+ * The client always sends to {@link com.nextian.ipmi.common.Defaults#IPMI_PORT}, so binding to it requires
+ * privileges to bind low ports. Each BMC uses a file descriptor, the limit of open files must be raised for large
+ * fleets.
+ */
+public class UdpBmcServer extends Thread {
+    private static final Logger LOGGER = LoggerFactory.getLogger(UdpBmcServer.class);
+
+    private static final int BUFFER_SIZE = 512;
+
+    private final Selector selector;
+    private final List<DatagramChannel> channels = new ArrayList<DatagramChannel>();
+    private volatile boolean closing;
+
+    /**
+     * Binds sockets for all BMCs added to the simulator so far and starts serving them.
+     *
+     * @param simulator simulator holding the BMCs
+     * @param port      port to bind the sockets to
+     * @throws IOException when socket cannot be opened or bound
+     */
+    public UdpBmcServer(BmcSimulator simulator, int port) throws IOException {
+        super("UdpBmcServer");
+        setDaemon(true);
+        selector = Selector.open();
+        try {
+            for (VirtualBmc bmc : simulator.getBmcs()) {
+                DatagramChannel channel = DatagramChannel.open();
+                channels.add(channel);
+                channel.socket().bind(new InetSocketAddress(bmc.getAddress(), port));
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ, bmc);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        start();
+    }
+
+    @Override
+    public void run() {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        while (!closing) {
+            try {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    DatagramChannel channel = (DatagramChannel) key.channel();
+                    buffer.clear();
+                    SocketAddress sender = channel.receive(buffer);
+                    if (sender == null) {
+                        continue;
+                    }
+                    buffer.flip();
+                    byte[] request = new byte[buffer.remaining()];
+                    buffer.get(request);
+                    byte[] response = ((VirtualBmc) key.attachment()).handle(request);
+                    if (response != null) {
+                        channel.send(ByteBuffer.wrap(response), sender);
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (IOException e) {
+                if (!closing) {
+                    LOGGER.error(e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops serving and closes the sockets.
+     */
+    public void close() {
+        closing = true;
+        for (DatagramChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.debug("Failed to close channel", e);
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to close selector", e);
+        }
+    }
+}
@@ -0,0 +1,644 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.sim;
+
+import com.nextian.ipmi.coding.commands.CommandCodes;
+import com.nextian.ipmi.coding.payload.CompletionCode;
+import com.nextian.ipmi.coding.payload.PlainMessage;
+import com.nextian.ipmi.coding.payload.lan.NetworkFunction;
+import com.nextian.ipmi.coding.protocol.AuthenticationType;
+import com.nextian.ipmi.coding.protocol.Ipmiv20Message;
+import com.nextian.ipmi.coding.protocol.PayloadType;
+import com.nextian.ipmi.coding.protocol.decoder.PlainCommandv20Decoder;
+import com.nextian.ipmi.coding.protocol.decoder.ProtocolDecoder;
+import com.nextian.ipmi.coding.protocol.decoder.Protocolv20Decoder;
+import com.nextian.ipmi.coding.protocol.encoder.Protocolv20Encoder;
+import com.nextian.ipmi.coding.rmcp.RmcpClassOfMessage;
+import com.nextian.ipmi.coding.rmcp.RmcpConstants;
+import com.nextian.ipmi.coding.rmcp.RmcpDecoder;
+import com.nextian.ipmi.coding.rmcp.RmcpEncoder;
+import com.nextian.ipmi.coding.rmcp.RmcpIpmiMessage;
+import com.nextian.ipmi.coding.rmcp.RmcpMessage;
+import com.nextian.ipmi.coding.rmcp.RmcpVersion;
+import com.nextian.ipmi.coding.security.AuthenticationAlgorithm;
+import com.nextian.ipmi.coding.security.CipherSuite;
+import com.nextian.ipmi.coding.security.ConfidentialityNone;
+import com.nextian.ipmi.coding.security.SecurityConstants;
+import com.nextian.ipmi.common.TypeConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.InetAddress;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Simulated BMC with a single user, answering IPMI v2.0 / RMCP+ requests. Supports Get Channel Cipher Suites, Get
+ * Channel Authentication Capabilities, the RMCP+ Open Session and RAKP handshake, Get Chassis Status and Close
+ * Session. Messages are decoded and encoded with the codec classes used by the client, so the simulated traffic has
+ * the same cryptographic cost as the real one.
+ * <p>
+ * Requests are processed one at a time, like on a real BMC. Sessions idle for longer than the session timeout are
+ * expired.
+ */
+public class VirtualBmc {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualBmc.class);
+
+    /**
+     * Cipher suites supported by default.
+     */
+    public static final byte[] DEFAULT_CIPHER_SUITES = {0, 3, 17};
+
+    public static final int DEFAULT_MAX_SESSIONS = 32;
+    public static final long DEFAULT_SESSION_TIMEOUT = 60000;
+
+    private static final int CHANNEL_NUMBER = 1;
+    private static final int CIPHER_SUITE_CHUNK_SIZE = 16;
+    private static final int ADMINISTRATOR_LEVEL = 4;
+    private static final long EXPIRY_CHECK_PERIOD = 1000;
+
+    /**
+     * Authentication, integrity and confidentiality algorithms of the standard cipher suites 0-17 (IPMI v2.0
+     * specification, table 22-20). All of them are listed by Get Channel Cipher Suites, because the client selects
+     * suites by their position on the list.
+     */
+    private static final byte[][] STANDARD_CIPHER_SUITES = {
+            {SecurityConstants.AA_RAKP_NONE, SecurityConstants.IA_NONE, SecurityConstants.CA_NONE},
+            {SecurityConstants.AA_RAKP_HMAC_SHA1, SecurityConstants.IA_NONE, SecurityConstants.CA_NONE},
+            {SecurityConstants.AA_RAKP_HMAC_SHA1, SecurityConstants.IA_HMAC_SHA1_96, SecurityConstants.CA_NONE},
+            {SecurityConstants.AA_RAKP_HMAC_SHA1, SecurityConstants.IA_HMAC_SHA1_96, SecurityConstants.CA_AES_CBC128},
+            {SecurityConstants.AA_RAKP_HMAC_SHA1, SecurityConstants.IA_HMAC_SHA1_96, 2},
+            {SecurityConstants.AA_RAKP_HMAC_SHA1, SecurityConstants.IA_HMAC_SHA1_96, 3},
+            {SecurityConstants.AA_RAKP_HMAC_MD5, SecurityConstants.IA_NONE, SecurityConstants.CA_NONE},
+            {SecurityConstants.AA_RAKP_HMAC_MD5, SecurityConstants.IA_HMAC_MD5_128, SecurityConstants.CA_NONE},
+            {SecurityConstants.AA_RAKP_HMAC_MD5, SecurityConstants.IA_HMAC_MD5_128, SecurityConstants.CA_AES_CBC128},
+            {SecurityConstants.AA_RAKP_HMAC_MD5, SecurityConstants.IA_HMAC_MD5_128, 2},
+            {SecurityConstants.AA_RAKP_HMAC_MD5, SecurityConstants.IA_HMAC_MD5_128, 3},
+            {SecurityConstants.AA_RAKP_HMAC_MD5, SecurityConstants.IA_MD5_128, SecurityConstants.CA_NONE},
+            {SecurityConstants.AA_RAKP_HMAC_MD5, SecurityConstants.IA_MD5_128, SecurityConstants.CA_AES_CBC128},
+            {SecurityConstants.AA_RAKP_HMAC_MD5, SecurityConstants.IA_MD5_128, 2},
+            {SecurityConstants.AA_RAKP_HMAC_MD5, SecurityConstants.IA_MD5_128, 3},
+            {SecurityConstants.AA_RAKP_HMAC_SHA256, SecurityConstants.IA_NONE, SecurityConstants.CA_NONE},
+            {SecurityConstants.AA_RAKP_HMAC_SHA256, SecurityConstants.IA_HMAC_SHA256_128, SecurityConstants.CA_NONE},
+            {SecurityConstants.AA_RAKP_HMAC_SHA256, SecurityConstants.IA_HMAC_SHA256_128,
+                    SecurityConstants.CA_AES_CBC128},
+    };
+
+    private static final byte[] CIPHER_SUITE_RECORDS = prepareCipherSuiteRecords();
+
+    private final InetAddress address;
+    private final String username;
+    private final String password;
+    private final byte[] bmcKey;
+    private final byte[] guid = new byte[16];
+    private final boolean[] supportedCipherSuites = new boolean[STANDARD_CIPHER_SUITES.length];
+    private final Map<Integer, Session> sessions = new HashMap<Integer, Session>();
+    private final Random random;
+
+    private int maxSessions = DEFAULT_MAX_SESSIONS;
+    private long sessionTimeout = DEFAULT_SESSION_TIMEOUT;
+    private long lastExpiryCheck;
+    private boolean powerOn = true;
+    private long handshakes;
+    private long requests;
+
+    /**
+     * Creates BMC supporting {@link #DEFAULT_CIPHER_SUITES}.
+     *
+     * @param address  address the BMC is reachable at
+     * @param username name of the only user
+     * @param password password of the user
+     * @param bmcKey   Kg key if the two-key authentication is enabled, null otherwise
+     */
+    public VirtualBmc(InetAddress address, String username, String password, byte[] bmcKey) {
+        this(address, username, password, bmcKey, DEFAULT_CIPHER_SUITES);
+    }
+
+    /**
+     * @param address      address the BMC is reachable at
+     * @param username     name of the only user
+     * @param password     password of the user
+     * @param bmcKey       Kg key if the two-key authentication is enabled, null otherwise
+     * @param cipherSuites IDs of the cipher suites sessions can be opened with (0-17)
+     */
+    public VirtualBmc(InetAddress address, String username, String password, byte[] bmcKey, byte[] cipherSuites) {
+        this.address = address;
+        this.username = username;
+        this.password = password;
+        this.bmcKey = bmcKey;
+        for (byte id : cipherSuites) {
+            if (id < 0 || id >= STANDARD_CIPHER_SUITES.length) {
+                throw new IllegalArgumentException("Unsupported cipher suite " + id);
+            }
+            supportedCipherSuites[id] = true;
+        }
+        random = new Random(Arrays.hashCode(address.getAddress()) ^ System.nanoTime());
+        random.nextBytes(guid);
+    }
+
+    public InetAddress getAddress() {
+        return address;
+    }
+
+    public synchronized void setPowerOn(boolean powerOn) {
+        this.powerOn = powerOn;
+    }
+
+    public synchronized boolean isPowerOn() {
+        return powerOn;
+    }
+
+    /**
+     * @param maxSessions maximum number of concurrent sessions, Open Session requests above the limit are rejected
+     *                    with the insufficient resources status
+     */
+    public synchronized void setMaxSessions(int maxSessions) {
+        this.maxSessions = maxSessions;
+    }
+
+    /**
+     * @param sessionTimeout time in ms after which idle session is expired
+     */
+    public synchronized void setSessionTimeout(long sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    /**
+     * @return number of open sessions, including those during the handshake
+     */
+    public synchronized int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * @return number of completed RAKP handshakes
+     */
+    public synchronized long getHandshakeCount() {
+        return handshakes;
+    }
+
+    /**
+     * @return number of answered IPMI requests
+     */
+    public synchronized long getRequestCount() {
+        return requests;
+    }
+
+    /**
+     * Expires all sessions at once, as happens when the BMC is rebooted.
+     */
+    public synchronized void dropSessions() {
+        sessions.clear();
+    }
+
+    /**
+     * Processes a datagram received from the remote console.
+     *
+     * @param datagram RMCP packet
+     * @return RMCP packet of the response or null if the datagram is dropped without a response
+     */
+    public synchronized byte[] handle(byte[] datagram) {
+        expireSessions();
+        try {
+            RmcpMessage rmcpMessage = RmcpDecoder.decode(datagram);
+            if (rmcpMessage.getClassOfMessage() == RmcpClassOfMessage.Asf) {
+                return presencePong(rmcpMessage.getData());
+            }
+            if (rmcpMessage.getClassOfMessage() != RmcpClassOfMessage.Ipmi
+                    || ProtocolDecoder.decodeAuthenticationType(rmcpMessage) != AuthenticationType.RMCPPlus) {
+                return null; // only IPMI v2.0 is supported
+            }
+            byte[] raw = rmcpMessage.getData();
+            PayloadType payloadType = Protocolv20Decoder.decodePayloadType(raw[1]);
+            int sessionId = Protocolv20Decoder.decodeSessionID(rmcpMessage);
+            if (sessionId != 0) {
+                return payloadType == PayloadType.Ipmi ? handleSessionMessage(rmcpMessage, sessionId) : null;
+            }
+            byte[] payload = new PlainCommandv20Decoder(CipherSuite.getEmpty()).decode(rmcpMessage).getPayload()
+                    .getPayloadData();
+            switch (payloadType) {
+                case Ipmi:
+                    return handleCommand(null, payload);
+                case RmcpOpenSessionRequest:
+                    return openSession(payload);
+                case Rakp1:
+                    return rakp1(payload);
+                case Rakp3:
+                    return rakp3(payload);
+                default:
+                    return null;
+            }
+        } catch (IllegalArgumentException e) {
+            LOGGER.debug("Malformed message dropped by {}: {}", address, e.getMessage());
+        } catch (IndexOutOfBoundsException e) {
+            LOGGER.debug("Malformed message dropped by {}: {}", address, e.getMessage());
+        } catch (GeneralSecurityException e) {
+            LOGGER.warn("Message dropped by " + address, e);
+        }
+        return null;
+    }
+
+    /**
+     * @return ASF presence pong answering the presence ping or null for other ASF messages
+     */
+    private static byte[] presencePong(byte[] ping) {
+        if (ping.length < 8 || ping[4] != RmcpConstants.PRESENCE_PING) {
+            return null;
+        }
+        byte[] data = new byte[24];
+        System.arraycopy(TypeConverter.intToByteArray(RmcpConstants.ASFIANA), 0, data, 0, 4);
+        data[4] = RmcpConstants.PRESENCE_PONG;
+        data[5] = ping[5];
+        data[7] = 16;
+        // OEM IANA and OEM defined fields of the pong data are left as zeros
+        System.arraycopy(TypeConverter.intToByteArray(RmcpConstants.ASFIANA), 0, data, 8, 4);
+        data[16] = TypeConverter.intToByte(0x81); // IPMI supported, ASF v1.0
+        RmcpMessage pong = new RmcpMessage();
+        pong.setVersion(RmcpVersion.RMCP1_0);
+        pong.setSequenceNumber(0xff);
+        pong.setClassOfMessage(RmcpClassOfMessage.Asf);
+        pong.setData(data);
+        return RmcpEncoder.encode(pong);
+    }
+
+    private byte[] handleSessionMessage(RmcpMessage rmcpMessage, int sessionId) throws GeneralSecurityException {
+        Session session = sessions.get(sessionId);
+        if (session == null || !session.active) {
+            return null;
+        }
+        CipherSuite cipherSuite = session.cipherSuite;
+        Ipmiv20Message message = (Ipmiv20Message) new PlainCommandv20Decoder(cipherSuite).decode(rmcpMessage);
+        if (cipherSuite.getIntegrityAlgorithmCode() != SecurityConstants.IA_NONE) {
+            // Messages failing the integrity check are silently dropped
+            byte[] authCode = message.getAuthCode();
+            byte[] raw = rmcpMessage.getData();
+            if (!message.isPayloadAuthenticated() || authCode == null || !Arrays.equals(authCode, cipherSuite
+                    .getIntegrityAlgorithm().generateAuthCode(Arrays.copyOf(raw, raw.length - authCode.length)))) {
+                LOGGER.debug("Message with invalid integrity code dropped by {}", address);
+                return null;
+            }
+        }
+        session.lastActivity = System.currentTimeMillis();
+        return handleCommand(session, message.getPayload().getPayloadData());
+    }
+
+    /**
+     * Handles IPMI request.
+     *
+     * @param session session the request was received in, null for sessionless requests
+     * @param request IPMI LAN request
+     */
+    private byte[] handleCommand(Session session, byte[] request) throws InvalidKeyException {
+        if (request.length < 7) {
+            return null;
+        }
+        int networkFunction = TypeConverter.byteToInt(request[1]) >> 2;
+        byte command = request[5];
+        byte[] data = Arrays.copyOfRange(request, 6, request.length - 1);
+        byte completionCode = 0;
+        byte[] responseData = null;
+        Integer closedSession = null;
+
+        if (networkFunction == NetworkFunction.ApplicationRequest.getCode()
+                && command == CommandCodes.GET_CHANNEL_AUTHENTICATION_CAPABILITIES) {
+            responseData = new byte[8];
+            responseData[0] = CHANNEL_NUMBER;
+            responseData[1] = TypeConverter.intToByte(0x80 | 0x04); // IPMI v2.0 extended data, MD5
+            responseData[2] = TypeConverter.intToByte(bmcKey != null ? 0x24 : 0x04); // non-null usernames, Kg
+            responseData[3] = 0x02; // IPMI v2.0 connections
+        } else if (networkFunction == NetworkFunction.ApplicationRequest.getCode()
+                && command == CommandCodes.GET_CHANNEL_CIPHER_SUITES && data.length >= 3) {
+            int offset = (data[2] & 0x3f) * CIPHER_SUITE_CHUNK_SIZE;
+            int length = Math.max(0, Math.min(CIPHER_SUITE_CHUNK_SIZE, CIPHER_SUITE_RECORDS.length - offset));
+            responseData = new byte[1 + length];
+            responseData[0] = CHANNEL_NUMBER;
+            if (length > 0) {
+                System.arraycopy(CIPHER_SUITE_RECORDS, offset, responseData, 1, length);
+            }
+        } else if (session == null) {
+            return null; // other commands require session
+        } else if (networkFunction == NetworkFunction.ApplicationRequest.getCode()
+                && command == CommandCodes.CLOSE_SESSION && data.length >= 4) {
+            closedSession = TypeConverter.littleEndianByteArrayToInt(Arrays.copyOf(data, 4));
+            if (!sessions.containsKey(closedSession)) {
+                completionCode = TypeConverter.intToByte(CompletionCode.InvalidSessionId.getCode());
+                closedSession = null;
+            }
+        } else if (networkFunction == NetworkFunction.ChassisRequest.getCode()
+                && command == CommandCodes.GET_CHASSIS_STATUS) {
+            responseData = new byte[4];
+            responseData[0] = TypeConverter.intToByte(powerOn ? 0x01 : 0x00);
+        } else {
+            completionCode = TypeConverter.intToByte(CompletionCode.InvalidCommand.getCode());
+        }
+
+        byte[] response = encodeIpmiResponse(session, prepareLanResponse(request, completionCode, responseData));
+        ++requests;
+        if (closedSession != null) {
+            sessions.remove(closedSession);
+        }
+        return response;
+    }
+
+    private byte[] openSession(byte[] request) throws InvalidKeyException {
+        if (request.length < 32) {
+            return null;
+        }
+        int consoleSessionId = TypeConverter.littleEndianByteArrayToInt(Arrays.copyOfRange(request, 4, 8));
+        int privilegeLevel = request[1] & 0x0f;
+        byte cipherSuiteId = findCipherSuite(request[12], request[20], request[28]);
+
+        byte status = 0;
+        if (cipherSuiteId < 0) {
+            status = TypeConverter.intToByte(CompletionCode.NoMatchingCipherSuite.getCode());
+        } else if (privilegeLevel > ADMINISTRATOR_LEVEL) {
+            status = TypeConverter.intToByte(CompletionCode.InvalidRole.getCode());
+        } else if (sessions.size() >= maxSessions) {
+            status = TypeConverter.intToByte(CompletionCode.InsufficientResources.getCode());
+        }
+
+        byte[] response;
+        if (status != 0) {
+            response = new byte[8];
+        } else {
+            Session session = new Session(generateSessionId(), consoleSessionId, new CipherSuite(cipherSuiteId,
+                    request[12], request[28], request[20]));
+            sessions.put(session.managedSystemSessionId, session);
+
+            response = new byte[36];
+            response[2] = TypeConverter.intToByte(privilegeLevel == 0 ? ADMINISTRATOR_LEVEL : privilegeLevel);
+            System.arraycopy(TypeConverter.intToLittleEndianByteArray(session.managedSystemSessionId), 0, response, 8,
+                    4);
+            for (int i = 0; i < 3; ++i) {
+                response[12 + i * 8] = TypeConverter.intToByte(i); // payload type
+                response[15 + i * 8] = 0x08; // payload length
+                response[16 + i * 8] = request[12 + i * 8]; // algorithm
+            }
+        }
+        response[0] = request[0];
+        response[1] = status;
+        System.arraycopy(request, 4, response, 4, 4);
+        return encodeSessionlessMessage(PayloadType.RmcpOpenSessionResponse, response);
+    }
+
+    private byte[] rakp1(byte[] request) throws GeneralSecurityException {
+        if (request.length < 28) {
+            return null;
+        }
+        Session session = sessions.get(TypeConverter.littleEndianByteArrayToInt(Arrays.copyOfRange(request, 4, 8)));
+        if (session == null || session.active) {
+            return encodeRakpError(PayloadType.Rakp2, request[0], CompletionCode.InvalidId, 0);
+        }
+        int usernameLength = TypeConverter.byteToInt(request[27]);
+        if (28 + usernameLength > request.length
+                || !username.equals(new String(request, 28, usernameLength))) {
+            sessions.remove(session.managedSystemSessionId);
+            return encodeRakpError(PayloadType.Rakp2, request[0], CompletionCode.UnauthorizedName,
+                    session.consoleSessionId);
+        }
+        session.consoleRandomNumber = Arrays.copyOfRange(request, 8, 24);
+        session.role = request[24];
+        random.nextBytes(session.managedSystemRandomNumber);
+
+        AuthenticationAlgorithm authentication = session.cipherSuite.getAuthenticationAlgorithm();
+        byte[] user = username.getBytes();
+
+        // RAKP 2 Key Exchange Authentication Code
+        byte[] base = new byte[58 + user.length];
+        System.arraycopy(TypeConverter.intToLittleEndianByteArray(session.consoleSessionId), 0, base, 0, 4);
+        System.arraycopy(TypeConverter.intToLittleEndianByteArray(session.managedSystemSessionId), 0, base, 4, 4);
+        System.arraycopy(session.consoleRandomNumber, 0, base, 8, 16);
+        System.arraycopy(session.managedSystemRandomNumber, 0, base, 24, 16);
+        System.arraycopy(guid, 0, base, 40, 16);
+        base[56] = session.role;
+        base[57] = TypeConverter.intToByte(user.length);
+        System.arraycopy(user, 0, base, 58, user.length);
+        byte[] authCode = authentication.getKeyExchangeAuthenticationCode(base, password);
+
+        // Session Integrity Key, keyed the same way the client does it
+        byte[] sikBase = new byte[34 + user.length];
+        System.arraycopy(session.consoleRandomNumber, 0, sikBase, 0, 16);
+        System.arraycopy(session.managedSystemRandomNumber, 0, sikBase, 16, 16);
+        sikBase[32] = session.role;
+        sikBase[33] = TypeConverter.intToByte(user.length);
+        System.arraycopy(user, 0, sikBase, 34, user.length);
+        session.sik = authentication.getKeyExchangeAuthenticationCode(sikBase,
+                bmcKey == null || bmcKey.length == 0 ? password : new String(bmcKey));
+        session.lastActivity = System.currentTimeMillis();
+
+        byte[] response = new byte[40 + authCode.length];
+        response[0] = request[0];
+        System.arraycopy(TypeConverter.intToLittleEndianByteArray(session.consoleSessionId), 0, response, 4, 4);
+        System.arraycopy(session.managedSystemRandomNumber, 0, response, 8, 16);
+        System.arraycopy(guid, 0, response, 24, 16);
+        System.arraycopy(authCode, 0, response, 40, authCode.length);
+        return encodeSessionlessMessage(PayloadType.Rakp2, response);
+    }
+
+    private byte[] rakp3(byte[] request) throws GeneralSecurityException {
+        if (request.length < 8) {
+            return null;
+        }
+        Session session = sessions.get(TypeConverter.littleEndianByteArrayToInt(Arrays.copyOfRange(request, 4, 8)));
+        if (session == null || session.active || session.sik == null) {
+            return encodeRakpError(PayloadType.Rakp4, request[0], CompletionCode.InvalidId, 0);
+        }
+        if (request[1] != 0) {
+            // Remote console rejected RAKP 2
+            sessions.remove(session.managedSystemSessionId);
+            return null;
+        }
+        AuthenticationAlgorithm authentication = session.cipherSuite.getAuthenticationAlgorithm();
+        byte[] user = username.getBytes();
+
+        byte[] base = new byte[22 + user.length];
+        System.arraycopy(session.managedSystemRandomNumber, 0, base, 0, 16);
+        System.arraycopy(TypeConverter.intToLittleEndianByteArray(session.consoleSessionId), 0, base, 16, 4);
+        base[20] = session.role;
+        base[21] = TypeConverter.intToByte(user.length);
+        System.arraycopy(user, 0, base, 22, user.length);
+        byte[] expected = authentication.getKeyExchangeAuthenticationCode(base, password);
+        if (!MessageDigest.isEqual(expected, Arrays.copyOfRange(request, 8, request.length))) {
+            sessions.remove(session.managedSystemSessionId);
+            return encodeRakpError(PayloadType.Rakp4, request[0], CompletionCode.InvalidIntegrityCheckValue,
+                    session.consoleSessionId);
+        }
+
+        byte[] integrityCheckBase = new byte[36];
+        System.arraycopy(session.consoleRandomNumber, 0, integrityCheckBase, 0, 16);
+        System.arraycopy(TypeConverter.intToLittleEndianByteArray(session.managedSystemSessionId), 0,
+                integrityCheckBase, 16, 4);
+        System.arraycopy(guid, 0, integrityCheckBase, 20, 16);
+        byte[] integrityCheckValue = new byte[authentication.getIntegrityCheckBaseLength()];
+        if (integrityCheckValue.length > 0) {
+            Mac mac = Mac.getInstance(authentication.getSecretKeyAlgorithmName());
+            mac.init(new SecretKeySpec(session.sik, authentication.getSecretKeyAlgorithmName()));
+            System.arraycopy(mac.doFinal(integrityCheckBase), 0, integrityCheckValue, 0, integrityCheckValue.length);
+        }
+
+        session.cipherSuite.initializeAlgorithms(session.sik);
+        session.active = true;
+        session.lastActivity = System.currentTimeMillis();
+        ++handshakes;
+
+        byte[] response = new byte[8 + integrityCheckValue.length];
+        response[0] = request[0];
+        System.arraycopy(TypeConverter.intToLittleEndianByteArray(session.consoleSessionId), 0, response, 4, 4);
+        System.arraycopy(integrityCheckValue, 0, response, 8, integrityCheckValue.length);
+        return encodeSessionlessMessage(PayloadType.Rakp4, response);
+    }
+
+    private byte[] encodeRakpError(PayloadType payloadType, byte tag, CompletionCode status, int consoleSessionId)
+            throws InvalidKeyException {
+        byte[] response = new byte[8];
+        response[0] = tag;
+        response[1] = TypeConverter.intToByte(status.getCode());
+        System.arraycopy(TypeConverter.intToLittleEndianByteArray(consoleSessionId), 0, response, 4, 4);
+        return encodeSessionlessMessage(payloadType, response);
+    }
+
+    private byte[] encodeSessionlessMessage(PayloadType payloadType, byte[] payload) throws InvalidKeyException {
+        Ipmiv20Message message = new Ipmiv20Message(new ConfidentialityNone());
+        message.setAuthenticationType(AuthenticationType.RMCPPlus);
+        message.setPayloadType(payloadType);
+        message.setSessionID(0);
+        message.setSessionSequenceNumber(0);
+        message.setPayloadAuthenticated(false);
+        message.setPayloadEncrypted(false);
+        message.setPayload(new PlainMessage(payload));
+        return RmcpEncoder.encode(new RmcpIpmiMessage(new Protocolv20Encoder().encode(message)));
+    }
+
+    /**
+     * Encodes IPMI response the same way {@link com.nextian.ipmi.coding.commands.IpmiCommandCoder} encodes
+     * requests.
+     */
+    private byte[] encodeIpmiResponse(Session session, byte[] payload) throws InvalidKeyException {
+        if (session == null) {
+            return encodeSessionlessMessage(PayloadType.Ipmi, payload);
+        }
+        CipherSuite cipherSuite = session.cipherSuite;
+        Ipmiv20Message message = new Ipmiv20Message(cipherSuite.getConfidentialityAlgorithm());
+        message.setAuthenticationType(AuthenticationType.RMCPPlus);
+        message.setPayloadType(PayloadType.Ipmi);
+        message.setSessionID(session.consoleSessionId);
+        message.setSessionSequenceNumber(++session.sequenceNumber);
+        message.setPayloadAuthenticated(cipherSuite.getIntegrityAlgorithmCode() != SecurityConstants.IA_NONE);
+        message.setPayloadEncrypted(cipherSuite.getConfidentialityAlgorithmCode() != SecurityConstants.CA_NONE);
+        message.setPayload(new PlainMessage(payload));
+        message.setAuthCode(cipherSuite.getIntegrityAlgorithm().generateAuthCode(
+                message.getIntegrityAlgorithmBase(new Protocolv20Encoder())));
+        return RmcpEncoder.encode(new RmcpIpmiMessage(new Protocolv20Encoder().encode(message)));
+    }
+
+    /**
+     * @return IPMI LAN response to the request with addresses swapped and checksums calculated
+     */
+    private static byte[] prepareLanResponse(byte[] request, byte completionCode, byte[] data) {
+        int dataLength = data != null ? data.length : 0;
+        byte[] response = new byte[8 + dataLength];
+        response[0] = request[3];
+        response[1] = TypeConverter.intToByte(((TypeConverter.byteToInt(request[1]) & 0xfc) + 0x04)
+                | (request[4] & 0x03));
+        response[2] = checksum(response, 0, 2);
+        response[3] = request[0];
+        response[4] = TypeConverter.intToByte((TypeConverter.byteToInt(request[4]) & 0xfc) | (request[1] & 0x03));
+        response[5] = request[5];
+        response[6] = completionCode;
+        if (dataLength > 0) {
+            System.arraycopy(data, 0, response, 7, dataLength);
+        }
+        response[response.length - 1] = checksum(response, 3, response.length - 1);
+        return response;
+    }
+
+    private static byte checksum(byte[] data, int from, int to) {
+        int sum = 0;
+        for (int i = from; i < to; ++i) {
+            sum += TypeConverter.byteToInt(data[i]);
+        }
+        return (byte) -sum;
+    }
+
+    private byte findCipherSuite(byte authenticationAlgorithm, byte integrityAlgorithm,
+                                 byte confidentialityAlgorithm) {
+        for (byte id = 0; id < STANDARD_CIPHER_SUITES.length; ++id) {
+            byte[] algorithms = STANDARD_CIPHER_SUITES[id];
+            if (supportedCipherSuites[id] && algorithms[0] == authenticationAlgorithm
+                    && algorithms[1] == integrityAlgorithm && algorithms[2] == confidentialityAlgorithm) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    private int generateSessionId() {
+        int id;
+        do {
+            id = random.nextInt() & Integer.MAX_VALUE;
+        } while (id == 0 || sessions.containsKey(id));
+        return id;
+    }
+
+    private void expireSessions() {
+        long now = System.currentTimeMillis();
+        if (now - lastExpiryCheck < EXPIRY_CHECK_PERIOD) {
+            return;
+        }
+        lastExpiryCheck = now;
+        Iterator<Session> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().lastActivity > sessionTimeout) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return Cipher Suite Records of {@link #STANDARD_CIPHER_SUITES} as returned by Get Channel Cipher Suites
+     */
+    private static byte[] prepareCipherSuiteRecords() {
+        byte[] records = new byte[STANDARD_CIPHER_SUITES.length * 5];
+        for (int id = 0; id < STANDARD_CIPHER_SUITES.length; ++id) {
+            records[id * 5] = TypeConverter.intToByte(0xc0);
+            records[id * 5 + 1] = TypeConverter.intToByte(id);
+            records[id * 5 + 2] = STANDARD_CIPHER_SUITES[id][0];
+            records[id * 5 + 3] = TypeConverter.intToByte(0x40 | STANDARD_CIPHER_SUITES[id][1]);
+            records[id * 5 + 4] = TypeConverter.intToByte(0x80 | STANDARD_CIPHER_SUITES[id][2]);
+        }
+        return records;
+    }
+
+    private static class Session {
+        private final int managedSystemSessionId;
+        private final int consoleSessionId;
+        private final CipherSuite cipherSuite;
+        private final byte[] managedSystemRandomNumber = new byte[16];
+        private byte[] consoleRandomNumber;
+        private byte role;
+        private byte[] sik;
+        private boolean active;
+        private int sequenceNumber;
+        private long lastActivity = System.currentTimeMillis();
+
+        Session(int managedSystemSessionId, int consoleSessionId, CipherSuite cipherSuite) {
+            this.managedSystemSessionId = managedSystemSessionId;
+            this.consoleSessionId = consoleSessionId;
+            this.cipherSuite = cipherSuite;
+        }
+    }
+}
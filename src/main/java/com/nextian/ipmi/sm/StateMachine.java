@@ -8,13 +8,20 @@
  */
 package com.nextian.ipmi.sm;
 
+import com.nextian.ipmi.coding.rmcp.RmcpClassOfMessage;
+import com.nextian.ipmi.coding.rmcp.RmcpConstants;
 import com.nextian.ipmi.coding.rmcp.RmcpDecoder;
+import com.nextian.ipmi.coding.rmcp.RmcpMessage;
 import com.nextian.ipmi.common.Defaults;
+import com.nextian.ipmi.common.TypeConverter;
+import com.nextian.ipmi.sm.actions.PresencePongAction;
 import com.nextian.ipmi.sm.actions.StateMachineAction;
 import com.nextian.ipmi.sm.events.StateMachineEvent;
 import com.nextian.ipmi.sm.states.SessionValid;
 import com.nextian.ipmi.sm.states.State;
 import com.nextian.ipmi.sm.states.Uninitialized;
+import com.nextian.ipmi.trace.Tracer;
+import com.nextian.ipmi.trace.Tracing;
 import com.nextian.ipmi.transport.Messenger;
 import com.nextian.ipmi.transport.UdpListener;
 import com.nextian.ipmi.transport.UdpMessage;
@@ -40,6 +47,11 @@ public class StateMachine implements UdpListener {
      */
     private State current;
 
+    /**
+     * Time the current state was entered in ns of {@link System#nanoTime()}
+     */
+    private long currentEnterTime;
+
     private Messenger messenger;
 
     /**
@@ -57,7 +69,14 @@ public class StateMachine implements UdpListener {
     }
 
     public void setCurrent(State current) {
+        State previous = this.current;
+        long now = System.nanoTime();
+        Tracer tracer = Tracing.getTracer();
+        if (tracer != null) {
+            tracer.stateChanged(remoteMachineAddress, previous, current, previous != null ? now - currentEnterTime : 0);
+        }
         this.current = current;
+        currentEnterTime = now;
         current.onEnter(this);
     }
 
@@ -79,11 +98,29 @@ public class StateMachine implements UdpListener {
      * @throws IOException when sending of the message fails
      */
     public void sendMessage(byte[] message) throws IOException {
+        sendMessage(message, -1);
+    }
+
+    /**
+     * Sends message via {@link #messenger} to the managed system.
+     *
+     * @param message the encoded message
+     * @param tag     tag of the message reported to the {@link Tracer}, -1 if not known
+     * @throws IOException when sending of the message fails
+     */
+    public void sendMessage(byte[] message, int tag) throws IOException {
+        Tracer tracer = Tracing.getTracer();
+        long start = tracer != null ? System.nanoTime() : 0;
         UdpMessage udpMessage = new UdpMessage();
         udpMessage.setAddress(getRemoteMachineAddress());
         udpMessage.setPort(Defaults.IPMI_PORT);
         udpMessage.setMessage(message);
         messenger.send(udpMessage);
+        if (tracer != null) {
+            // RMCP header takes 4 bytes
+            tracer.messageSent(getRemoteMachineAddress(), Tracing.getPayloadType(message, 4), tag,
+                    System.nanoTime() - start);
+        }
     }
 
     public InetAddress getRemoteMachineAddress() {
@@ -154,7 +191,21 @@ public class StateMachine implements UdpListener {
     @Override
     public void notifyMessage(UdpMessage message) throws InterruptedException {
         if (message.getAddress().equals(getRemoteMachineAddress())) {
-            current.doAction(this, RmcpDecoder.decode(message.getMessage()));
+            Tracer tracer = Tracing.getTracer();
+            long start = tracer != null ? System.nanoTime() : 0;
+            RmcpMessage rmcpMessage = RmcpDecoder.decode(message.getMessage());
+            if (rmcpMessage.getClassOfMessage() == RmcpClassOfMessage.Asf) {
+                byte[] data = rmcpMessage.getData();
+                if (data.length >= 6 && data[4] == RmcpConstants.PRESENCE_PONG) {
+                    doExternalAction(new PresencePongAction(TypeConverter.byteToInt(data[5])));
+                }
+                return;
+            }
+            current.doAction(this, rmcpMessage);
+            if (tracer != null && rmcpMessage.getClassOfMessage() == RmcpClassOfMessage.Ipmi) {
+                tracer.messageReceived(getRemoteMachineAddress(), Tracing.getPayloadType(rmcpMessage.getData(), 0),
+                        Tracing.getSessionSequenceNumber(rmcpMessage.getData(), 0), System.nanoTime() - start);
+            }
         }
     }
 
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.sm.actions;
+
+/**
+ * Action representing ASF Presence Pong received from the managed system.
+ */
+public class PresencePongAction extends StateMachineAction {
+
+    private final int tag;
+
+    public PresencePongAction(int tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * @return ASF message tag of the answered ping
+     */
+    public int getTag() {
+        return tag;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.sm.events;
+
+import com.nextian.ipmi.coding.commands.PrivilegeLevel;
+import com.nextian.ipmi.coding.security.CipherSuite;
+import com.nextian.ipmi.sm.StateMachine;
+import com.nextian.ipmi.sm.states.Authcap;
+import com.nextian.ipmi.sm.states.OpenSessionWaiting;
+import com.nextian.ipmi.sm.states.Rakp1Waiting;
+
+/**
+ * Performs transition from {@link Authcap} to {@link OpenSessionWaiting} in the fast handshake mode. Get Channel
+ * Authentication Capabilities probe is sent together with the Open Session request and RAKP Message 1 is sent by the
+ * {@link StateMachine} as soon as the Open Session response arrives, moving on to {@link Rakp1Waiting}.
+ *
+ * @see StateMachine
+ */
+public class FastAuthorize extends Authorize {
+
+    /**
+     * Indicates that no Get Channel Authentication Capabilities probe should be sent.
+     */
+    public static final int NO_PROBE = -1;
+
+    private final int probeSequenceNumber;
+    private final String username;
+    private final String password;
+    private final byte[] bmcKey;
+
+    /**
+     * @param cipherSuite         {@link CipherSuite} that will be used during the session
+     * @param sequenceNumber      sequence number of the Open Session and RAKP messages
+     * @param privilegeLevel      requested Maximum {@link PrivilegeLevel}
+     * @param sessionId           the Remote Console's Session ID
+     * @param probeSequenceNumber sequence number of the Get Channel Authentication Capabilities probe or
+     *                            {@link #NO_PROBE}
+     * @param username            username for the RAKP Message 1
+     * @param password            password matching username
+     * @param bmcKey              BMC specific key, null if 'one-key' logins are used
+     */
+    public FastAuthorize(CipherSuite cipherSuite, int sequenceNumber, PrivilegeLevel privilegeLevel, int sessionId,
+                         int probeSequenceNumber, String username, String password, byte[] bmcKey) {
+        super(cipherSuite, sequenceNumber, privilegeLevel, sessionId);
+        this.probeSequenceNumber = probeSequenceNumber;
+        this.username = username;
+        this.password = password;
+        this.bmcKey = bmcKey;
+    }
+
+    public int getProbeSequenceNumber() {
+        return probeSequenceNumber;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public byte[] getBmcKey() {
+        return bmcKey;
+    }
+}
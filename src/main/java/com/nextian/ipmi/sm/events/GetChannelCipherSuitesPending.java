@@ -23,8 +23,24 @@ import com.nextian.ipmi.sm.states.State;
  */
 public class GetChannelCipherSuitesPending extends Default {
 
+	private final int[] sequenceNumbers;
+
 	public GetChannelCipherSuitesPending(int sequenceNumber) {
-		super(CipherSuite.getEmpty(), sequenceNumber, PrivilegeLevel.MaximumAvailable);
+		this(new int[]{sequenceNumber});
+	}
+
+	/**
+	 * Requests consecutive {@link GetChannelCipherSuites} list indexes at once, one per sequence number.
+	 *
+	 * @param sequenceNumbers distinct sequence numbers of the requests
+	 */
+	public GetChannelCipherSuitesPending(int[] sequenceNumbers) {
+		super(CipherSuite.getEmpty(), sequenceNumbers[0], PrivilegeLevel.MaximumAvailable);
+		this.sequenceNumbers = sequenceNumbers.clone();
+	}
+
+	public int[] getSequenceNumbers() {
+		return sequenceNumbers.clone();
 	}
 
 }
@@ -9,13 +9,17 @@
 package com.nextian.ipmi.sm.states;
 
 import com.nextian.ipmi.coding.Encoder;
+import com.nextian.ipmi.coding.commands.IpmiVersion;
 import com.nextian.ipmi.coding.commands.session.GetChannelAuthenticationCapabilities;
 import com.nextian.ipmi.coding.commands.session.OpenSession;
 import com.nextian.ipmi.coding.protocol.encoder.Protocolv20Encoder;
 import com.nextian.ipmi.coding.rmcp.RmcpMessage;
+import com.nextian.ipmi.coding.security.CipherSuite;
+import com.nextian.ipmi.common.TypeConverter;
 import com.nextian.ipmi.sm.StateMachine;
 import com.nextian.ipmi.sm.actions.ErrorAction;
 import com.nextian.ipmi.sm.events.Authorize;
+import com.nextian.ipmi.sm.events.FastAuthorize;
 import com.nextian.ipmi.sm.events.StateMachineEvent;
 
 import java.io.IOException;
@@ -24,7 +28,8 @@ import java.security.NoSuchAlgorithmException;
 
 /**
  * {@link GetChannelAuthenticationCapabilities} response was received. At this point the Session Challenge is going
- * to start. Transits to {@link OpenSessionWaiting} on {@link Authorize}.
+ * to start. Transits to {@link OpenSessionWaiting} on {@link Authorize}. On {@link FastAuthorize} the
+ * Get Channel Authentication Capabilities probe is sent along with the Open Session request.
  */
 public class Authcap extends State {
 
@@ -37,9 +42,24 @@ public class Authcap extends State {
                     event.getCipherSuite());
 
             try {
-                stateMachine.setCurrent(new OpenSessionWaiting(event.getSequenceNumber()));
+                if (event instanceof FastAuthorize) {
+                    FastAuthorize fastAuthorize = (FastAuthorize) event;
+                    stateMachine.setCurrent(new OpenSessionWaiting(event.getSequenceNumber(), fastAuthorize));
+                    if (fastAuthorize.getProbeSequenceNumber() != FastAuthorize.NO_PROBE) {
+                        // Probe is not waited for - some BMCs expect it before Open Session. It is sessionless, so
+                        // algorithms of the requested cipher suite (not initialized yet) must not be applied.
+                        GetChannelAuthenticationCapabilities authCap = new GetChannelAuthenticationCapabilities(
+                                IpmiVersion.V20, IpmiVersion.V20, CipherSuite.getEmpty(), event.getPrivilegeLevel(),
+                                TypeConverter.intToByte(0xe));
+                        stateMachine.sendMessage(Encoder.encode(new Protocolv20Encoder(), authCap,
+                                fastAuthorize.getProbeSequenceNumber(), 0),
+                                fastAuthorize.getProbeSequenceNumber() % 64);
+                    }
+                } else {
+                    stateMachine.setCurrent(new OpenSessionWaiting(event.getSequenceNumber()));
+                }
                 stateMachine.sendMessage(Encoder.encode(new Protocolv20Encoder(), openSession,
-                        event.getSequenceNumber(), 0));
+                        event.getSequenceNumber(), 0), event.getSequenceNumber() % 64);
             } catch (IOException e) {
                 stateMachine.setCurrent(this);
                 stateMachine.doExternalAction(new ErrorAction(e));
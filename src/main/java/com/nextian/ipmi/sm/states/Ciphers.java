@@ -36,7 +36,8 @@ public class Ciphers extends State {
             try {
                 stateMachine.setCurrent(new AuthcapWaiting(event.getSequenceNumber()));
                 stateMachine.sendMessage(Encoder.encode(
-                        new Protocolv20Encoder(), authCap, event.getSequenceNumber(), 0));
+                        new Protocolv20Encoder(), authCap, event.getSequenceNumber(), 0),
+                        event.getSequenceNumber() % 64);
             } catch (Exception e) {
                 stateMachine.setCurrent(this);
                 stateMachine.doExternalAction(new ErrorAction(e));
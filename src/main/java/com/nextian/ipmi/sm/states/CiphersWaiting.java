@@ -9,7 +9,9 @@
 package com.nextian.ipmi.sm.states;
 
 import com.nextian.ipmi.coding.Encoder;
+import com.nextian.ipmi.coding.commands.ResponseData;
 import com.nextian.ipmi.coding.commands.session.GetChannelCipherSuites;
+import com.nextian.ipmi.coding.commands.session.GetChannelCipherSuitesResponseData;
 import com.nextian.ipmi.coding.payload.lan.IPMIException;
 import com.nextian.ipmi.coding.payload.lan.IpmiLanResponse;
 import com.nextian.ipmi.coding.protocol.AuthenticationType;
@@ -40,14 +42,36 @@ import java.security.NoSuchAlgorithmException;
  * {@link Timeout}, further proceeds with getting
  * Cipher Suites on {@link GetChannelCipherSuitesPending} and moves on to
  * {@link Ciphers} on {@link DefaultAck}
+ * <p>
+ * Consecutive list indexes are requested at once, one per sequence number of the
+ * {@link GetChannelCipherSuitesPending} event. Responses are reassembled in the index order and reported as a single
+ * {@link ResponseAction} as soon as the data up to the last (shorter than 16 bytes) record chunk is complete, or when
+ * all requested chunks arrived.
  */
 public class CiphersWaiting extends State {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CiphersWaiting.class);
 
+    /**
+     * Size of the full cipher suite record chunk.
+     */
+    public static final int CHUNK_SIZE = 16;
+
+    /**
+     * Index of the first chunk of the current batch.
+     */
     private int index;
 
-    private int tag;
+    /**
+     * Sequence numbers of the current batch requests, request k asks for chunk index + k.
+     */
+    private int[] tags;
+
+    private byte[][] chunks;
+
+    private byte channelNumber;
+
+    private boolean completed;
 
     /**
      * Initializes state.
@@ -56,8 +80,42 @@ public class CiphersWaiting extends State {
      * @param tag   tag of the message
      */
     public CiphersWaiting(int index, int tag) {
+        this(index, new int[]{tag});
+    }
+
+    /**
+     * Initializes state.
+     *
+     * @param index index of the first channel cipher suite package to get
+     * @param tags  distinct tags of the messages, one per package
+     */
+    public CiphersWaiting(int index, int[] tags) {
         this.index = index;
-        this.tag = tag;
+        startBatch(tags);
+    }
+
+    private void startBatch(int[] tags) {
+        this.tags = tags.clone();
+        this.chunks = new byte[tags.length][];
+        this.completed = false;
+    }
+
+    /**
+     * Sends Get Channel Cipher Suites requests of the current batch.
+     *
+     * @param stateMachine state machine to send messages with
+     * @throws IOException              when sending of the message fails
+     * @throws NoSuchAlgorithmException when message encoding fails
+     * @throws InvalidKeyException      when message encoding fails
+     */
+    public void sendRequests(StateMachine stateMachine)
+            throws IOException, NoSuchAlgorithmException, InvalidKeyException {
+        for (int k = 0; k < tags.length && index + k <= 0x3F; ++k) {
+            GetChannelCipherSuites cipherSuites = new GetChannelCipherSuites(
+                    TypeConverter.intToByte(0xE),
+                    TypeConverter.intToByte(index + k));
+            stateMachine.sendMessage(Encoder.encode(new Protocolv20Encoder(), cipherSuites, tags[k], 0), tags[k] % 64);
+        }
     }
 
     @Override
@@ -66,14 +124,10 @@ public class CiphersWaiting extends State {
             stateMachine.setCurrent(new Uninitialized());
         } else if (machineEvent instanceof GetChannelCipherSuitesPending) {
             GetChannelCipherSuitesPending event = (GetChannelCipherSuitesPending) machineEvent;
-            GetChannelCipherSuites cipherSuites = new GetChannelCipherSuites(
-                    TypeConverter.intToByte(0xE),
-                    TypeConverter.intToByte(index + 1));
+            index += tags.length;
+            startBatch(event.getSequenceNumbers());
             try {
-                tag = event.getSequenceNumber();
-                stateMachine.sendMessage(Encoder.encode(new Protocolv20Encoder(), cipherSuites,
-                        event.getSequenceNumber(), 0));
-                ++index;
+                sendRequests(stateMachine);
             } catch (IOException e) {
                 stateMachine.doExternalAction(new ErrorAction(e));
             } catch (NoSuchAlgorithmException e) {
@@ -110,9 +164,22 @@ public class CiphersWaiting extends State {
             GetChannelCipherSuites suites = new GetChannelCipherSuites();
             if (suites.isCommandResponse(ipmiMessage)) {
                 IpmiLanResponse ipmiLanResponse = (IpmiLanResponse) ipmiMessage.getPayload();
-                if (TypeConverter.byteToInt(ipmiLanResponse.getSequenceNumber()) == tag) {
-                    stateMachine.doExternalAction(new ResponseAction(ipmiLanResponse.getCompletionCode(),
-                            suites.getResponseData(ipmiMessage)));
+                int position = positionOf(TypeConverter.byteToInt(ipmiLanResponse.getSequenceNumber()));
+                if (position >= 0 && chunks[position] == null && !completed) {
+                    GetChannelCipherSuitesResponseData data =
+                            (GetChannelCipherSuitesResponseData) suites.getResponseData(ipmiMessage);
+                    // Error or empty response means the index is past the end of the list
+                    chunks[position] = data != null && data.getCipherSuiteData() != null
+                            ? data.getCipherSuiteData() : new byte[0];
+                    if (position == 0 && data != null) {
+                        channelNumber = data.getChannelNumber();
+                    }
+                    ResponseData assembled = assemble();
+                    if (assembled != null) {
+                        completed = true;
+                        stateMachine.doExternalAction(new ResponseAction(ipmiLanResponse.getCompletionCode(),
+                                assembled));
+                    }
                 }
             }
         } catch (NoSuchAlgorithmException e) {
@@ -124,4 +191,41 @@ public class CiphersWaiting extends State {
         }
     }
 
+    private int positionOf(int tag) {
+        for (int k = 0; k < tags.length; ++k) {
+            if (tags[k] == tag) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return concatenated chunks of the batch or null if some chunk before the end of the list is still missing
+     */
+    private ResponseData assemble() {
+        int length = 0;
+        int count = 0;
+        while (count < chunks.length && chunks[count] != null) {
+            length += chunks[count].length;
+            if (chunks[count++].length < CHUNK_SIZE) {
+                break;
+            }
+        }
+        boolean complete = count == chunks.length || (count > 0 && chunks[count - 1].length < CHUNK_SIZE);
+        if (!complete) {
+            return null;
+        }
+        byte[] data = new byte[length];
+        int offset = 0;
+        for (int k = 0; k < count; ++k) {
+            System.arraycopy(chunks[k], 0, data, offset, chunks[k].length);
+            offset += chunks[k].length;
+        }
+        GetChannelCipherSuitesResponseData responseData = new GetChannelCipherSuitesResponseData();
+        responseData.setChannelNumber(channelNumber);
+        responseData.setCipherSuiteData(data);
+        return responseData;
+    }
+
 }
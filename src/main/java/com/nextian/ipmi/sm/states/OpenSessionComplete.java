@@ -36,7 +36,8 @@ public class OpenSessionComplete extends State {
 
             try {
                 stateMachine.setCurrent(new Rakp1Waiting(event.getSequenceNumber(), rakp1));
-                stateMachine.sendMessage(Encoder.encode(new Protocolv20Encoder(), rakp1, event.getSequenceNumber(), 0));
+                stateMachine.sendMessage(Encoder.encode(new Protocolv20Encoder(), rakp1, event.getSequenceNumber(), 0),
+                        event.getSequenceNumber() % 64);
             } catch (Exception e) {
                 stateMachine.setCurrent(this);
                 stateMachine.doExternalAction(new ErrorAction(e));
@@ -8,7 +8,10 @@
  */
 package com.nextian.ipmi.sm.states;
 
+import com.nextian.ipmi.coding.Encoder;
 import com.nextian.ipmi.coding.commands.session.OpenSession;
+import com.nextian.ipmi.coding.commands.session.OpenSessionResponseData;
+import com.nextian.ipmi.coding.commands.session.Rakp1;
 import com.nextian.ipmi.coding.payload.CompletionCode;
 import com.nextian.ipmi.coding.payload.lan.IPMIException;
 import com.nextian.ipmi.coding.protocol.AuthenticationType;
@@ -17,6 +20,7 @@ import com.nextian.ipmi.coding.protocol.PayloadType;
 import com.nextian.ipmi.coding.protocol.decoder.PlainCommandv20Decoder;
 import com.nextian.ipmi.coding.protocol.decoder.ProtocolDecoder;
 import com.nextian.ipmi.coding.protocol.decoder.Protocolv20Decoder;
+import com.nextian.ipmi.coding.protocol.encoder.Protocolv20Encoder;
 import com.nextian.ipmi.coding.rmcp.RmcpMessage;
 import com.nextian.ipmi.coding.security.CipherSuite;
 import com.nextian.ipmi.common.TypeConverter;
@@ -24,27 +28,51 @@ import com.nextian.ipmi.sm.StateMachine;
 import com.nextian.ipmi.sm.actions.ErrorAction;
 import com.nextian.ipmi.sm.actions.ResponseAction;
 import com.nextian.ipmi.sm.events.DefaultAck;
+import com.nextian.ipmi.sm.events.FastAuthorize;
 import com.nextian.ipmi.sm.events.StateMachineEvent;
 import com.nextian.ipmi.sm.events.Timeout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * Waiting for the {@link OpenSession} response.<br>
  * <li>Transition to {@link OpenSessionComplete} on {@link DefaultAck} <li>
  * Transition to {@link Authcap} on {@link Timeout}
+ * <p>
+ * In the fast handshake mode RAKP Message 1 is sent directly on the Open Session response and the state machine
+ * moves on to {@link Rakp1Waiting}.
  */
 public class OpenSessionWaiting extends State {
 
     private static Logger LOGGER = LoggerFactory.getLogger(OpenSessionWaiting.class);
     private int tag;
 
+    /**
+     * Data of the RAKP Message 1 to send right after the Open Session response in the fast handshake mode, null
+     * otherwise.
+     */
+    private FastAuthorize fastAuthorize;
+
     public OpenSessionWaiting(int tag) {
         this.tag = tag;
     }
 
+    /**
+     * Initializes state in the fast handshake mode - RAKP Message 1 is sent as soon as the Open Session response
+     * arrives and the state machine moves on to {@link Rakp1Waiting}.
+     *
+     * @param tag           tag of the Open Session and RAKP messages
+     * @param fastAuthorize event carrying data of the RAKP Message 1
+     */
+    public OpenSessionWaiting(int tag, FastAuthorize fastAuthorize) {
+        this.tag = tag;
+        this.fastAuthorize = fastAuthorize;
+    }
+
     @Override
     public void doTransition(StateMachine stateMachine, StateMachineEvent machineEvent) throws InterruptedException {
         if (machineEvent instanceof DefaultAck) {
@@ -73,13 +101,32 @@ public class OpenSessionWaiting extends State {
             OpenSession openSession = new OpenSession(CipherSuite.getEmpty());
             if (openSession.isCommandResponse(ipmiMessage)
                     && TypeConverter.byteToInt((ipmiMessage.getPayload()).getPayloadData()[0]) == tag) {
-                stateMachine.doExternalAction(new ResponseAction(CompletionCode.Ok,
-                        openSession.getResponseData(ipmiMessage)));
+                OpenSessionResponseData responseData =
+                        (OpenSessionResponseData) openSession.getResponseData(ipmiMessage);
+                if (fastAuthorize != null) {
+                    sendRakp1(stateMachine, responseData.getManagedSystemSessionId());
+                }
+                stateMachine.doExternalAction(new ResponseAction(CompletionCode.Ok, responseData));
             }
         } catch (IPMIException e) {
             stateMachine.doExternalAction(new ErrorAction(e));
         } catch (InvalidKeyException e) {
             stateMachine.doExternalAction(new ErrorAction(e));
+        } catch (NoSuchAlgorithmException e) {
+            stateMachine.setCurrent(new Authcap());
+            stateMachine.doExternalAction(new ErrorAction(e));
+        } catch (IOException e) {
+            stateMachine.setCurrent(new Authcap());
+            stateMachine.doExternalAction(new ErrorAction(e));
         }
     }
+
+    private void sendRakp1(StateMachine stateMachine, int managedSystemSessionId)
+            throws IOException, NoSuchAlgorithmException, InvalidKeyException {
+        Rakp1 rakp1 = new Rakp1(managedSystemSessionId, fastAuthorize.getPrivilegeLevel(),
+                fastAuthorize.getUsername(), fastAuthorize.getPassword(), fastAuthorize.getBmcKey(),
+                fastAuthorize.getCipherSuite());
+        stateMachine.setCurrent(new Rakp1Waiting(tag, rakp1));
+        stateMachine.sendMessage(Encoder.encode(new Protocolv20Encoder(), rakp1, tag, 0), tag % 64);
+    }
 }
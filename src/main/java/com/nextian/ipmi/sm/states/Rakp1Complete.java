@@ -51,7 +51,8 @@ public class Rakp1Complete extends State {
 			try {
 				stateMachine.setCurrent(new Rakp3Waiting(event.getSequenceNumber(), rakp1,
 						event.getRakp1ResponseData(), event.getCipherSuite()));
-				stateMachine.sendMessage(Encoder.encode(new Protocolv20Encoder(), rakp3, event.getSequenceNumber(), 0));
+				stateMachine.sendMessage(Encoder.encode(new Protocolv20Encoder(), rakp3, event.getSequenceNumber(), 0),
+						event.getSequenceNumber() % 64);
 				stateMachine.doExternalAction(new GetSikAction(rakp1.calculateSik(event.getRakp1ResponseData())));
 			} catch (IOException e) {
 				stateMachine.setCurrent(this);
@@ -71,7 +71,7 @@ public class SessionValid extends State {
             Sendv20Message event = (Sendv20Message) machineEvent;
             try {
                 stateMachine.sendMessage(Encoder.encode(new Protocolv20Encoder(), event.getCommandCoder(),
-                        event.getSequenceNumber(), event.getSessionId()));
+                        event.getSequenceNumber(), event.getSessionId()), event.getSequenceNumber() % 64);
             } catch (InvalidKeyException e) {
                 stateMachine.doExternalAction(new ErrorAction(e));
             } catch (NoSuchAlgorithmException e) {
@@ -85,7 +85,7 @@ public class SessionValid extends State {
                 stateMachine.sendMessage(Encoder.encode(new Protocolv20Encoder(),
                         new GetChannelAuthenticationCapabilities(IpmiVersion.V20, IpmiVersion.V20, cipherSuite,
                                 PrivilegeLevel.Callback, TypeConverter.intToByte(0xe)), event.getSequenceNumber(),
-                        event.getSessionId()));
+                        event.getSessionId()), event.getSequenceNumber() % 64);
             } catch (InvalidKeyException e) {
                 stateMachine.doExternalAction(new ErrorAction(e));
             } catch (NoSuchAlgorithmException e) {
@@ -102,7 +102,7 @@ public class SessionValid extends State {
                 stateMachine.setCurrent(new Authcap());
                 stateMachine.sendMessage(Encoder.encode(new Protocolv20Encoder(),
                         new CloseSession(IpmiVersion.V20, cipherSuite, AuthenticationType.RMCPPlus, event.getSessionId()),
-                        event.getSequenceNumber(), event.getSessionId()));
+                        event.getSequenceNumber(), event.getSessionId()), event.getSequenceNumber() % 64);
             } catch (InvalidKeyException e) {
                 stateMachine.setCurrent(this);
                 stateMachine.doExternalAction(new ErrorAction(e));
@@ -136,7 +136,7 @@ public class SessionValid extends State {
         }
         try {
             Ipmiv20Message message20 = (Ipmiv20Message) decoder.decode(message);
-            LOGGER.debug("doAction: decode: {}", message20.toString());
+            LOGGER.debug("doAction: decode: {}", message20);
             if (message20.getSessionID() == sessionId) {
                 stateMachine.doExternalAction(new MessageAction(message20));
             }
@@ -8,14 +8,9 @@
  */
 package com.nextian.ipmi.sm.states;
 
-import com.nextian.ipmi.coding.Encoder;
-import com.nextian.ipmi.coding.commands.session.GetChannelCipherSuites;
-import com.nextian.ipmi.coding.protocol.encoder.Protocolv20Encoder;
 import com.nextian.ipmi.coding.rmcp.RmcpMessage;
-import com.nextian.ipmi.common.TypeConverter;
 import com.nextian.ipmi.sm.StateMachine;
 import com.nextian.ipmi.sm.actions.ErrorAction;
-import com.nextian.ipmi.sm.events.Default;
 import com.nextian.ipmi.sm.events.GetChannelCipherSuitesPending;
 import com.nextian.ipmi.sm.events.StateMachineEvent;
 
@@ -31,13 +26,11 @@ public class Uninitialized extends State {
     @Override
     public void doTransition(StateMachine stateMachine, StateMachineEvent machineEvent) throws InterruptedException {
         if (machineEvent instanceof GetChannelCipherSuitesPending) {
-            Default event = (GetChannelCipherSuitesPending) machineEvent;
-            GetChannelCipherSuites cipherSuites = new GetChannelCipherSuites(TypeConverter.intToByte(0xE), (byte) 0);
+            GetChannelCipherSuitesPending event = (GetChannelCipherSuitesPending) machineEvent;
+            CiphersWaiting ciphersWaiting = new CiphersWaiting(0, event.getSequenceNumbers());
             try {
-                stateMachine.setCurrent(new CiphersWaiting(0, event.getSequenceNumber()));
-
-                stateMachine.sendMessage(Encoder.encode(new Protocolv20Encoder(), cipherSuites,
-                        event.getSequenceNumber(), 0));
+                stateMachine.setCurrent(ciphersWaiting);
+                ciphersWaiting.sendRequests(stateMachine);
             } catch (InvalidKeyException e) {
                 stateMachine.setCurrent(this);
                 stateMachine.doExternalAction(new ErrorAction(e));
@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.telemetry;
+
+/**
+ * Receives changes of the chassis status bits tracked by {@link ChassisStatusTable}.
+ */
+public interface ChassisStatusListener {
+
+    /**
+     * Called when at least one of the subscribed bits changed.
+     *
+     * @param host     name of the host
+     * @param previous previous packed status (0 for the first observation of the host)
+     * @param current  current packed status
+     * @param changed  mask of the changed bits (limited to the subscribed ones)
+     * @see ChassisStatusTable
+     */
+    void statusChanged(String host, int previous, int current, int changed);
+}
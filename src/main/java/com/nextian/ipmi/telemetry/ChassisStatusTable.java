@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.telemetry;
+
+import com.nextian.ipmi.api.async.ConnectionHandle;
+import com.nextian.ipmi.api.async.IpmiListener;
+import com.nextian.ipmi.api.async.messages.IpmiResponse;
+import com.nextian.ipmi.api.async.messages.IpmiResponseData;
+import com.nextian.ipmi.coding.commands.chassis.GetChassisStatusResponseData;
+import com.nextian.ipmi.common.TypeConverter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fleet-wide table of chassis states. Raw Get Chassis Status bytes of every host are packed into a single int
+ * (Current Power State in bits 0-7, Last Power Event in bits 8-15, Misc. Chassis State in bits 16-23 and Front Panel
+ * Button Capabilities in bits 24-31) and kept in a primitive array that is updated in place. Subscribers are notified
+ * only when the subscribed bits change. Queries scan the packed array.
+ * <p>
+ * Notifications of one host are delivered in the order its state changed, one at a time, so the last notification
+ * always carries the current state. Notifications of different hosts may be delivered concurrently.
+ * <p>
+ * Table can be registered as {@link IpmiListener} to pick up Get Chassis Status responses of the hosts bound via
+ * {@link #bind(String, ConnectionHandle)}.
+ */
+public class ChassisStatusTable implements IpmiListener {
+
+    public static final int POWER_ON = 0x01;
+    public static final int POWER_OVERLOAD = 0x02;
+    public static final int INTERLOCK = 0x04;
+    public static final int POWER_FAULT = 0x08;
+    public static final int POWER_CONTROL_FAULT = 0x10;
+    public static final int CHASSIS_INTRUSION = 0x01 << 16;
+    public static final int FRONT_PANEL_LOCKOUT = 0x02 << 16;
+    public static final int DRIVE_FAULT = 0x04 << 16;
+    public static final int COOLING_FAULT = 0x08 << 16;
+
+    /**
+     * All bits of the packed status.
+     */
+    public static final int ALL = 0xFFFFFFFF;
+
+    private final Object lock = new Object();
+    private final Map<String, Integer> slotsByHost = new HashMap<String, Integer>();
+    private String[] hosts = new String[16];
+    private int[] states = new int[16];
+    private boolean[] observed = new boolean[16];
+
+    /**
+     * Held while the state of the host is changed and the subscribers are notified.
+     */
+    private Object[] hostLocks = new Object[16];
+    private int size;
+
+    /**
+     * Maps connection slot (see {@link ConnectionHandle#getSlot()}) to the host's slot, -1 if connection is not bound.
+     * Generation of the bound handle is kept alongside, so responses on a connection that reused the slot are ignored.
+     */
+    private int[] slotsByConnection = new int[0];
+    private int[] generationsByConnection = new int[0];
+
+    private volatile Subscription[] subscriptions = new Subscription[0];
+
+    /**
+     * Subscribes listener to changes of the given bits.
+     *
+     * @param listener listener to notify
+     * @param mask     bits of the packed status the listener is interested in
+     */
+    public void subscribe(ChassisStatusListener listener, int mask) {
+        synchronized (lock) {
+            Subscription[] grown = new Subscription[subscriptions.length + 1];
+            System.arraycopy(subscriptions, 0, grown, 0, subscriptions.length);
+            grown[subscriptions.length] = new Subscription(listener, mask);
+            subscriptions = grown;
+        }
+    }
+
+    /**
+     * Removes all subscriptions of the listener.
+     *
+     * @param listener listener to remove
+     */
+    public void unsubscribe(ChassisStatusListener listener) {
+        synchronized (lock) {
+            List<Subscription> remaining = new ArrayList<Subscription>();
+            for (Subscription subscription : subscriptions) {
+                if (subscription.listener != listener) {
+                    remaining.add(subscription);
+                }
+            }
+            subscriptions = remaining.toArray(new Subscription[remaining.size()]);
+        }
+    }
+
+    /**
+     * Associates connection with the host so Get Chassis Status responses received on it update the host's state.
+     *
+     * @param host   name of the host
+     * @param handle connection to the host's BMC
+     */
+    public void bind(String host, ConnectionHandle handle) {
+        synchronized (lock) {
+            int slot = getOrCreateSlot(host);
+            int connectionSlot = handle.getSlot();
+            if (connectionSlot >= slotsByConnection.length) {
+                int length = Math.max(connectionSlot + 1, slotsByConnection.length * 2);
+                int[] grown = new int[length];
+                System.arraycopy(slotsByConnection, 0, grown, 0, slotsByConnection.length);
+                for (int i = slotsByConnection.length; i < grown.length; ++i) {
+                    grown[i] = -1;
+                }
+                int[] grownGenerations = new int[length];
+                System.arraycopy(generationsByConnection, 0, grownGenerations, 0, generationsByConnection.length);
+                slotsByConnection = grown;
+                generationsByConnection = grownGenerations;
+            }
+            slotsByConnection[connectionSlot] = slot;
+            generationsByConnection[connectionSlot] = handle.getGeneration();
+        }
+    }
+
+    /**
+     * Updates state of the host.
+     *
+     * @param host         name of the host
+     * @param responseData Get Chassis Status response
+     */
+    public void update(String host, GetChassisStatusResponseData responseData) {
+        int slot;
+        synchronized (lock) {
+            slot = getOrCreateSlot(host);
+        }
+        update(slot, pack(responseData));
+    }
+
+    /**
+     * Updates state of the host.
+     *
+     * @param host   name of the host
+     * @param status packed status
+     */
+    public void update(String host, int status) {
+        int slot;
+        synchronized (lock) {
+            slot = getOrCreateSlot(host);
+        }
+        update(slot, status);
+    }
+
+    /**
+     * @param host name of the host
+     * @return packed status of the host or 0 if host was not observed yet
+     */
+    public int getStatus(String host) {
+        synchronized (lock) {
+            Integer slot = slotsByHost.get(host);
+            return slot == null ? 0 : states[slot];
+        }
+    }
+
+    /**
+     * Finds observed hosts that have all the given bits set.
+     *
+     * @param mask bits of the packed status that must be set
+     * @return names of the matching hosts
+     */
+    public List<String> findHosts(int mask) {
+        return findHosts(mask, mask);
+    }
+
+    /**
+     * Finds observed hosts whose masked status equals the given value.
+     *
+     * @param mask  bits of the packed status to compare
+     * @param value expected value of the masked bits
+     * @return names of the matching hosts
+     */
+    public List<String> findHosts(int mask, int value) {
+        List<String> result = new ArrayList<String>();
+        synchronized (lock) {
+            for (int i = 0; i < size; ++i) {
+                if (observed[i] && (states[i] & mask) == value) {
+                    result.add(hosts[i]);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts observed hosts that have all the given bits set.
+     *
+     * @param mask bits of the packed status that must be set
+     * @return number of the matching hosts
+     */
+    public int count(int mask) {
+        int count = 0;
+        synchronized (lock) {
+            for (int i = 0; i < size; ++i) {
+                if (observed[i] && (states[i] & mask) == mask) {
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return number of known hosts, observed or not
+     */
+    public int getHostCount() {
+        synchronized (lock) {
+            return size;
+        }
+    }
+
+    /**
+     * Copies names and packed statuses of the observed hosts into the given arrays, so they can be processed without
+     * holding the table.
+     *
+     * @param hostsOut    array receiving names of the hosts
+     * @param statusesOut array receiving packed statuses
+     * @return number of copied hosts (limited by the length of the arrays)
+     */
+    public int copy(String[] hostsOut, int[] statusesOut) {
+        int count = 0;
+        synchronized (lock) {
+            for (int i = 0; i < size && count < hostsOut.length && count < statusesOut.length; ++i) {
+                if (observed[i]) {
+                    hostsOut[count] = hosts[i];
+                    statusesOut[count] = states[i];
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void notify(IpmiResponse response) {
+        if (!(response instanceof IpmiResponseData)
+                || !(((IpmiResponseData) response).getResponseData() instanceof GetChassisStatusResponseData)) {
+            return;
+        }
+        ConnectionHandle handle = response.getHandle();
+        int connectionSlot = handle.getSlot();
+        int slot;
+        synchronized (lock) {
+            if (connectionSlot >= slotsByConnection.length || slotsByConnection[connectionSlot] < 0
+                    || generationsByConnection[connectionSlot] != handle.getGeneration()) {
+                return;
+            }
+            slot = slotsByConnection[connectionSlot];
+        }
+        update(slot, pack((GetChassisStatusResponseData) ((IpmiResponseData) response).getResponseData()));
+    }
+
+    /**
+     * Packs Get Chassis Status response into a single int.
+     *
+     * @param responseData Get Chassis Status response
+     * @return packed status
+     */
+    public static int pack(GetChassisStatusResponseData responseData) {
+        int status = TypeConverter.byteToInt(responseData.getCurrentPowerState())
+                | (TypeConverter.byteToInt(responseData.getLastPowerEvent()) << 8)
+                | (TypeConverter.byteToInt(responseData.getMiscChassisState()) << 16);
+        if (responseData.isFrontPanelButtonCapabilitiesSet()) {
+            status |= TypeConverter.byteToInt(responseData.getFrontPanelButtonCapabilities()) << 24;
+        }
+        return status;
+    }
+
+    private void update(int slot, int status) {
+        Object hostLock;
+        synchronized (lock) {
+            hostLock = hostLocks[slot];
+        }
+        synchronized (hostLock) {
+            String host;
+            int previous;
+            synchronized (lock) {
+                previous = observed[slot] ? states[slot] : 0;
+                if (observed[slot] && previous == status) {
+                    return;
+                }
+                states[slot] = status;
+                observed[slot] = true;
+                host = hosts[slot];
+            }
+
+            int changed = previous ^ status;
+            for (Subscription subscription : subscriptions) {
+                if ((changed & subscription.mask) != 0) {
+                    subscription.listener.statusChanged(host, previous, status, changed & subscription.mask);
+                }
+            }
+        }
+    }
+
+    private int getOrCreateSlot(String host) {
+        Integer slot = slotsByHost.get(host);
+        if (slot != null) {
+            return slot;
+        }
+        if (size == states.length) {
+            String[] newHosts = new String[size * 2];
+            int[] newStates = new int[size * 2];
+            boolean[] newObserved = new boolean[size * 2];
+            Object[] newHostLocks = new Object[size * 2];
+            System.arraycopy(hosts, 0, newHosts, 0, size);
+            System.arraycopy(states, 0, newStates, 0, size);
+            System.arraycopy(observed, 0, newObserved, 0, size);
+            System.arraycopy(hostLocks, 0, newHostLocks, 0, size);
+            hosts = newHosts;
+            states = newStates;
+            observed = newObserved;
+            hostLocks = newHostLocks;
+        }
+        hosts[size] = host;
+        hostLocks[size] = new Object();
+        slotsByHost.put(host, size);
+        return size++;
+    }
+
+    private static class Subscription {
+        private final ChassisStatusListener listener;
+        private final int mask;
+
+        Subscription(ChassisStatusListener listener, int mask) {
+            this.listener = listener;
+            this.mask = mask;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.telemetry;
+
+/**
+ * Fixed size ring of (timestamp, watts) power samples of a single host kept in primitive arrays. When the ring is
+ * full the oldest sample is overwritten.
+ */
+public class PowerRingBuffer {
+
+    private final String host;
+    private final long[] timestamps;
+    private final int[] watts;
+    private int head;
+    private int size;
+
+    /**
+     * @param host     name of the host the samples come from
+     * @param capacity maximum number of samples kept
+     */
+    public PowerRingBuffer(String host, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.host = host;
+        this.timestamps = new long[capacity];
+        this.watts = new int[capacity];
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getCapacity() {
+        return watts.length;
+    }
+
+    /**
+     * Adds sample to the ring.
+     *
+     * @param timestamp time of the sample in milliseconds
+     * @param power     power in watts
+     */
+    public synchronized void add(long timestamp, int power) {
+        timestamps[head] = timestamp;
+        watts[head] = power;
+        head = (head + 1) % watts.length;
+        if (size < watts.length) {
+            ++size;
+        }
+    }
+
+    /**
+     * @return number of samples in the ring
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return time of the latest sample in milliseconds or -1 if there are no samples
+     */
+    public synchronized long getLatestTimestamp() {
+        return size == 0 ? -1 : timestamps[(head + watts.length - 1) % watts.length];
+    }
+
+    /**
+     * @return latest power reading in watts or -1 if there are no samples
+     */
+    public synchronized int getLatestWatts() {
+        return size == 0 ? -1 : watts[(head + watts.length - 1) % watts.length];
+    }
+
+    /**
+     * Copies the newest samples into the given arrays, ordered from the oldest to the newest.
+     *
+     * @param timestampsOut array receiving timestamps
+     * @param wattsOut      array receiving power readings
+     * @return number of copied samples (limited by the length of the arrays)
+     */
+    public synchronized int copy(long[] timestampsOut, int[] wattsOut) {
+        int count = Math.min(size, Math.min(timestampsOut.length, wattsOut.length));
+        int start = (head + watts.length - size) % watts.length;
+        for (int i = 0; i < count; ++i) {
+            int index = (start + size - count + i) % watts.length;
+            timestampsOut[i] = timestamps[index];
+            wattsOut[i] = watts[index];
+        }
+        return count;
+    }
+
+    public synchronized void clear() {
+        head = 0;
+        size = 0;
+    }
+}
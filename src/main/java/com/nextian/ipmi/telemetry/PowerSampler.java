@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.telemetry;
+
+import com.nextian.ipmi.api.async.ConnectionHandle;
+import com.nextian.ipmi.api.async.IpmiAsyncConnector;
+import com.nextian.ipmi.api.async.IpmiListener;
+import com.nextian.ipmi.api.async.messages.IpmiError;
+import com.nextian.ipmi.api.async.messages.IpmiResponse;
+import com.nextian.ipmi.api.async.messages.IpmiResponseData;
+import com.nextian.ipmi.coding.commands.IpmiVersion;
+import com.nextian.ipmi.coding.commands.dcmi.GetPowerReading;
+import com.nextian.ipmi.coding.commands.dcmi.GetPowerReadingResponseData;
+import com.nextian.ipmi.coding.protocol.AuthenticationType;
+import com.nextian.ipmi.common.Defaults;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Periodically samples DCMI power readings of many hosts over already open sessions and stores them in
+ * per-host {@link PowerRingBuffer}s. Requests are sent through {@link IpmiAsyncConnector} without waiting for the
+ * responses, at most one request per host is in flight. Request coders are created once per host and the sampling
+ * and response paths work on primitive arrays only, so the sampler itself does not allocate per sample.
+ * <p>
+ * Sampler is a {@link TimerTask} and, like {@link java.util.Timer} tasks in general, can be started only once.
+ */
+public class PowerSampler extends TimerTask implements IpmiListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PowerSampler.class);
+
+    private static final int NO_REQUEST = -1;
+
+    /**
+     * Marks request that is being sent and has no tag yet.
+     */
+    private static final int SENDING = -2;
+
+    private final IpmiAsyncConnector connector;
+    private final int capacity;
+    private final Object lock = new Object();
+    private final Map<String, Integer> slotsByHost = new HashMap<String, Integer>();
+
+    private ConnectionHandle[] handles = new ConnectionHandle[16];
+    private GetPowerReading[] requests = new GetPowerReading[16];
+    private PowerRingBuffer[] buffers = new PowerRingBuffer[16];
+    private int[] pendingTags = new int[16];
+    private long[] pendingSince = new long[16];
+    private int slotCount;
+
+    /**
+     * Maps connection slot (see {@link ConnectionHandle#getSlot()}) to the sampler's slot, -1 if connection is not
+     * sampled. Generation of the handle is checked against {@link #handles} on lookup.
+     */
+    private int[] slotsByConnection = new int[0];
+
+    private int timeout = Defaults.TIMEOUT;
+    private Timer timer;
+
+    /**
+     * @param connector connector the sessions were opened with
+     * @param capacity  number of samples kept per host
+     */
+    public PowerSampler(IpmiAsyncConnector connector, int capacity) {
+        this.connector = connector;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param timeout time in milliseconds after which an unanswered request no longer blocks the next sample
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Adds host to the sampled set.
+     *
+     * @param host   name of the host
+     * @param handle connection with an open session to the host's BMC
+     * @return ring buffer receiving the host's samples
+     */
+    public PowerRingBuffer addHost(String host, ConnectionHandle handle) {
+        synchronized (lock) {
+            if (slotsByHost.containsKey(host)) {
+                throw new IllegalArgumentException("Host " + host + " is already sampled");
+            }
+            if (slotCount == handles.length) {
+                grow();
+            }
+            if (handle.getSlot() >= slotsByConnection.length) {
+                int[] grown = new int[Math.max(handle.getSlot() + 1, slotsByConnection.length * 2)];
+                System.arraycopy(slotsByConnection, 0, grown, 0, slotsByConnection.length);
+                for (int i = slotsByConnection.length; i < grown.length; ++i) {
+                    grown[i] = -1;
+                }
+                slotsByConnection = grown;
+            }
+
+            int slot = slotCount++;
+            handles[slot] = handle;
+            requests[slot] = new GetPowerReading(IpmiVersion.V20, handle.getCipherSuite(), AuthenticationType.RMCPPlus);
+            buffers[slot] = new PowerRingBuffer(host, capacity);
+            pendingTags[slot] = NO_REQUEST;
+            slotsByConnection[handle.getSlot()] = slot;
+            slotsByHost.put(host, slot);
+            return buffers[slot];
+        }
+    }
+
+    /**
+     * Removes host from the sampled set.
+     *
+     * @param host name of the host
+     */
+    public void removeHost(String host) {
+        synchronized (lock) {
+            Integer slot = slotsByHost.remove(host);
+            if (slot == null) {
+                return;
+            }
+            if (slotsByConnection[handles[slot].getSlot()] == slot) {
+                slotsByConnection[handles[slot].getSlot()] = -1;
+            }
+
+            int last = --slotCount;
+            if (slot != last) {
+                handles[slot] = handles[last];
+                requests[slot] = requests[last];
+                buffers[slot] = buffers[last];
+                pendingTags[slot] = pendingTags[last];
+                pendingSince[slot] = pendingSince[last];
+                if (slotsByConnection[handles[slot].getSlot()] == last) {
+                    slotsByConnection[handles[slot].getSlot()] = slot;
+                }
+                slotsByHost.put(buffers[slot].getHost(), slot);
+            }
+            handles[last] = null;
+            requests[last] = null;
+            buffers[last] = null;
+        }
+    }
+
+    /**
+     * @param host name of the host
+     * @return ring buffer of the host or null if host is not sampled
+     */
+    public PowerRingBuffer getBuffer(String host) {
+        synchronized (lock) {
+            Integer slot = slotsByHost.get(host);
+            return slot == null ? null : buffers[slot];
+        }
+    }
+
+    /**
+     * @return number of sampled hosts
+     */
+    public int getHostCount() {
+        synchronized (lock) {
+            return slotCount;
+        }
+    }
+
+    /**
+     * Copies the latest power readings of the hosts that have any samples into the given arrays.
+     *
+     * @param hostsOut array receiving names of the hosts
+     * @param wattsOut array receiving the latest power readings in watts
+     * @return number of copied hosts (limited by the length of the arrays)
+     */
+    public int copyLatest(String[] hostsOut, int[] wattsOut) {
+        int count = 0;
+        synchronized (lock) {
+            for (int slot = 0; slot < slotCount && count < hostsOut.length && count < wattsOut.length; ++slot) {
+                int watts = buffers[slot].getLatestWatts();
+                if (watts != -1) {
+                    hostsOut[count] = buffers[slot].getHost();
+                    wattsOut[count] = watts;
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Starts sampling.
+     *
+     * @param period time between samples in milliseconds
+     */
+    public void start(long period) {
+        connector.registerListener(this);
+        timer = new Timer("PowerSampler", true);
+        timer.schedule(this, 0, period);
+    }
+
+    /**
+     * Stops sampling. Collected samples remain available.
+     */
+    public void stop() {
+        if (timer != null) {
+            timer.cancel();
+        }
+        connector.unregisterListener(this);
+    }
+
+    /**
+     * {@link TimerTask} runner - sends Get Power Reading to every host that has no request in flight.
+     */
+    @Override
+    public void run() {
+        for (int slot = 0; ; ++slot) {
+            ConnectionHandle handle;
+            GetPowerReading request;
+            long now = System.currentTimeMillis();
+
+            synchronized (lock) {
+                if (slot >= slotCount) {
+                    break;
+                }
+                if (pendingTags[slot] != NO_REQUEST && now - pendingSince[slot] < timeout) {
+                    continue;
+                }
+                handle = handles[slot];
+                request = requests[slot];
+                pendingTags[slot] = SENDING;
+                pendingSince[slot] = now;
+            }
+
+            int tag;
+            try {
+                tag = connector.sendMessage(handle, request);
+            } catch (Exception e) {
+                LOGGER.debug("Failed to send Get Power Reading, cause:", e);
+                tag = NO_REQUEST;
+            }
+
+            synchronized (lock) {
+                if (handles[slot] == handle && pendingTags[slot] == SENDING) {
+                    pendingTags[slot] = tag;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void notify(IpmiResponse response) {
+        ConnectionHandle handle = response.getHandle();
+        synchronized (lock) {
+            int connectionSlot = handle.getSlot();
+            if (connectionSlot >= slotsByConnection.length || slotsByConnection[connectionSlot] < 0) {
+                return;
+            }
+            int slot = slotsByConnection[connectionSlot];
+            if (handles[slot].getGeneration() != handle.getGeneration()) {
+                return; // response on a connection that reused the slot of a sampled one
+            }
+
+            if (response instanceof IpmiResponseData) {
+                if (((IpmiResponseData) response).getResponseData() instanceof GetPowerReadingResponseData) {
+                    GetPowerReadingResponseData data =
+                            (GetPowerReadingResponseData) ((IpmiResponseData) response).getResponseData();
+                    buffers[slot].add(System.currentTimeMillis(), data.getCurrentPower());
+                    pendingTags[slot] = NO_REQUEST;
+                }
+            } else if (response instanceof IpmiError && pendingTags[slot] == response.getTag()) {
+                pendingTags[slot] = NO_REQUEST;
+            }
+        }
+    }
+
+    private void grow() {
+        int length = handles.length * 2;
+        ConnectionHandle[] newHandles = new ConnectionHandle[length];
+        GetPowerReading[] newRequests = new GetPowerReading[length];
+        PowerRingBuffer[] newBuffers = new PowerRingBuffer[length];
+        int[] newPendingTags = new int[length];
+        long[] newPendingSince = new long[length];
+        System.arraycopy(handles, 0, newHandles, 0, slotCount);
+        System.arraycopy(requests, 0, newRequests, 0, slotCount);
+        System.arraycopy(buffers, 0, newBuffers, 0, slotCount);
+        System.arraycopy(pendingTags, 0, newPendingTags, 0, slotCount);
+        System.arraycopy(pendingSince, 0, newPendingSince, 0, slotCount);
+        handles = newHandles;
+        requests = newRequests;
+        buffers = newBuffers;
+        pendingTags = newPendingTags;
+        pendingSince = newPendingSince;
+    }
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.telemetry;
+
+import com.nextian.ipmi.api.async.IpmiAsyncConnector;
+import com.nextian.ipmi.metrics.ConnectionState;
+import com.nextian.ipmi.metrics.ConnectorMetricsSnapshot;
+import com.nextian.ipmi.metrics.Counter;
+import com.nextian.ipmi.metrics.HandshakePhase;
+import com.nextian.ipmi.metrics.HistogramSnapshot;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Exposes metrics of the connector and the latest fleet data in the Prometheus text format over the HTTP server
+ * built into the JDK:
+ * <ul>
+ * <li>numbers of the connections by {@link ConnectionState}, requests in flight and the {@link Counter}s</li>
+ * <li>round trip time and handshake phase duration histograms</li>
+ * <li>power state and faults of the hosts of a {@link ChassisStatusTable}</li>
+ * <li>latest power readings of the hosts of a {@link PowerSampler}</li>
+ * </ul>
+ * Fleet data is copied into primitive arrays and the text is rendered into a byte buffer, both reused by the
+ * following scrapes, so a scrape allocates little more than the connector metrics snapshot regardless of the number
+ * of hosts. Scrapes are rendered one at a time.
+ */
+public class PrometheusExporter implements HttpHandler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PrometheusExporter.class);
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final int[] FAULTS = {ChassisStatusTable.POWER_OVERLOAD, ChassisStatusTable.INTERLOCK,
+            ChassisStatusTable.POWER_FAULT, ChassisStatusTable.POWER_CONTROL_FAULT,
+            ChassisStatusTable.CHASSIS_INTRUSION, ChassisStatusTable.DRIVE_FAULT, ChassisStatusTable.COOLING_FAULT};
+    private static final String[] FAULT_NAMES = {"power_overload", "interlock", "power_fault", "power_control_fault",
+            "chassis_intrusion", "drive_fault", "cooling_fault"};
+
+    private static final String[] COUNTER_NAMES = new String[Counter.values().length];
+    private static final String[] COUNTER_HELP = new String[Counter.values().length];
+
+    static {
+        for (Counter counter : Counter.values()) {
+            COUNTER_NAMES[counter.ordinal()] = "ipmi_" + toSnakeCase(counter.name()) + "_total";
+            COUNTER_HELP[counter.ordinal()] = "Number of " + counter.name() + " events of all connections.";
+        }
+    }
+
+    private final IpmiAsyncConnector connector;
+    private volatile ChassisStatusTable chassisStatusTable;
+    private volatile PowerSampler powerSampler;
+    private HttpServer server;
+
+    private final TextBuffer text = new TextBuffer();
+    private final Map<String, byte[]> labels = new HashMap<String, byte[]>();
+    private String[] hosts = new String[16];
+    private int[] values = new int[16];
+
+    /**
+     * @param connector connector whose metrics are exported
+     */
+    public PrometheusExporter(IpmiAsyncConnector connector) {
+        this.connector = connector;
+    }
+
+    /**
+     * @param chassisStatusTable table whose hosts' power states and faults are exported, null to export none
+     */
+    public void setChassisStatusTable(ChassisStatusTable chassisStatusTable) {
+        this.chassisStatusTable = chassisStatusTable;
+    }
+
+    /**
+     * @param powerSampler sampler whose latest power readings are exported, null to export none
+     */
+    public void setPowerSampler(PowerSampler powerSampler) {
+        this.powerSampler = powerSampler;
+    }
+
+    /**
+     * Starts serving the metrics at {@code /metrics}.
+     *
+     * @param address address to listen at
+     * @throws IOException when the server cannot be bound
+     */
+    public synchronized void start(InetSocketAddress address) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Exporter is already started");
+        }
+        server = HttpServer.create(address, 0);
+        server.createContext("/metrics", this);
+        server.start();
+    }
+
+    /**
+     * Stops the server, scrapes in progress are given up to a second to complete.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(1);
+            server = null;
+        }
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            synchronized (text) {
+                render();
+                if ("HEAD".equals(method)) {
+                    exchange.sendResponseHeaders(200, -1);
+                } else {
+                    exchange.sendResponseHeaders(200, text.length);
+                    exchange.getResponseBody().write(text.bytes, 0, text.length);
+                }
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to render metrics", e);
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Renders the metrics, e.g. to serve them with another HTTP server.
+     *
+     * @param out stream to write the metrics to
+     * @throws IOException when writing fails
+     */
+    public void scrape(OutputStream out) throws IOException {
+        synchronized (text) {
+            render();
+            out.write(text.bytes, 0, text.length);
+        }
+    }
+
+    private void render() {
+        text.length = 0;
+        renderConnector(connector.getMetrics());
+        int hostCount = 0;
+        ChassisStatusTable table = chassisStatusTable;
+        if (table != null) {
+            hostCount = renderChassis(table);
+        }
+        PowerSampler sampler = powerSampler;
+        if (sampler != null) {
+            hostCount = Math.max(hostCount, renderPower(sampler));
+        }
+        // drop cached labels of the hosts that are gone when the cache grows well beyond the current fleet
+        if (labels.size() > 2 * hostCount + 1024) {
+            labels.clear();
+        }
+    }
+
+    private void renderConnector(ConnectorMetricsSnapshot metrics) {
+        header("ipmi_connections", "Connections by state.", "gauge");
+        for (ConnectionState state : ConnectionState.values()) {
+            text.append("ipmi_connections{state=\"").append(state.name()).append("\"} ")
+                    .append(metrics.getConnectionCount(state)).newLine();
+        }
+
+        header("ipmi_requests_in_flight", "Requests waiting for responses.", "gauge");
+        text.append("ipmi_requests_in_flight ").append(metrics.getRequestsInFlight()).newLine();
+
+        header("ipmi_open_circuits", "Connections failing fast because the managed system is not responding.",
+                "gauge");
+        text.append("ipmi_open_circuits ").append(metrics.getOpenCircuitCount()).newLine();
+
+        for (Counter counter : Counter.values()) {
+            String name = COUNTER_NAMES[counter.ordinal()];
+            header(name, COUNTER_HELP[counter.ordinal()], "counter");
+            text.append(name).append(' ').append(metrics.getCount(counter)).newLine();
+        }
+
+        header("ipmi_rtt_seconds", "Round trip times of the requests.", "histogram");
+        histogram("ipmi_rtt_seconds", null, metrics.getRtt());
+
+        header("ipmi_handshake_duration_seconds", "Durations of the session establishment phases.", "histogram");
+        for (HandshakePhase phase : HandshakePhase.values()) {
+            histogram("ipmi_handshake_duration_seconds", phase.name(), metrics.getHandshakeDuration(phase));
+        }
+    }
+
+    private int renderChassis(ChassisStatusTable table) {
+        int count = copy(table.getHostCount(), table, null);
+        header("ipmi_chassis_power_on", "1 if the system power is on.", "gauge");
+        for (int i = 0; i < count; ++i) {
+            text.append("ipmi_chassis_power_on{host=\"").append(label(hosts[i])).append("\"} ")
+                    .append((values[i] & ChassisStatusTable.POWER_ON) != 0 ? 1 : 0).newLine();
+        }
+        header("ipmi_chassis_fault", "Chassis faults, present only for the hosts reporting them.", "gauge");
+        for (int i = 0; i < count; ++i) {
+            for (int j = 0; j < FAULTS.length; ++j) {
+                if ((values[i] & FAULTS[j]) != 0) {
+                    text.append("ipmi_chassis_fault{host=\"").append(label(hosts[i])).append("\",fault=\"")
+                            .append(FAULT_NAMES[j]).append("\"} 1").newLine();
+                }
+            }
+        }
+        return count;
+    }
+
+    private int renderPower(PowerSampler sampler) {
+        int count = copy(sampler.getHostCount(), null, sampler);
+        header("ipmi_power_watts", "Latest DCMI power reading.", "gauge");
+        for (int i = 0; i < count; ++i) {
+            text.append("ipmi_power_watts{host=\"").append(label(hosts[i])).append("\"} ").append(values[i])
+                    .newLine();
+        }
+        return count;
+    }
+
+    private int copy(int hostCount, ChassisStatusTable table, PowerSampler sampler) {
+        if (hostCount > hosts.length) {
+            hosts = new String[hostCount + hostCount / 4];
+            values = new int[hosts.length];
+        }
+        return table != null ? table.copy(hosts, values) : sampler.copyLatest(hosts, values);
+    }
+
+    private void header(String name, String help, String type) {
+        text.append("# HELP ").append(name).append(' ').append(help).newLine();
+        text.append("# TYPE ").append(name).append(' ').append(type).newLine();
+    }
+
+    private void histogram(String name, String phase, HistogramSnapshot histogram) {
+        long count = histogram.getCount();
+        for (int i = 0; i < HistogramSnapshot.getBucketCount(); ++i) {
+            bucketName(name, phase);
+            text.appendMicrosAsSeconds(HistogramSnapshot.getBucketBound(i)).append("\"} ")
+                    .append(histogram.getCumulativeCount(i)).newLine();
+            count = Math.max(count, histogram.getCumulativeCount(i));
+        }
+        bucketName(name, phase);
+        text.append("+Inf\"} ").append(count).newLine();
+        text.append(name).append("_sum");
+        if (phase != null) {
+            text.append("{phase=\"").append(phase).append("\"}");
+        }
+        text.append(' ').appendMicrosAsSeconds(histogram.getSum()).newLine();
+        text.append(name).append("_count");
+        if (phase != null) {
+            text.append("{phase=\"").append(phase).append("\"}");
+        }
+        text.append(' ').append(count).newLine();
+    }
+
+    private void bucketName(String name, String phase) {
+        text.append(name).append("_bucket{");
+        if (phase != null) {
+            text.append("phase=\"").append(phase).append("\",");
+        }
+        text.append("le=\"");
+    }
+
+    /**
+     * @return escaped UTF-8 label value, cached per host name
+     */
+    private byte[] label(String value) {
+        byte[] label = labels.get(value);
+        if (label == null) {
+            try {
+                label = value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n").getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+            labels.put(value, label);
+        }
+        return label;
+    }
+
+    private static String toSnakeCase(String name) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < name.length(); ++i) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c)) {
+                if (i > 0) {
+                    builder.append('_');
+                }
+                builder.append(Character.toLowerCase(c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Growable byte buffer of the rendered text. Constants are ASCII and numbers are formatted in place.
+     */
+    private static final class TextBuffer {
+        private byte[] bytes = new byte[64 * 1024];
+        private int length;
+        private final byte[] digits = new byte[20];
+
+        TextBuffer append(String ascii) {
+            ensureCapacity(ascii.length());
+            for (int i = 0; i < ascii.length(); ++i) {
+                bytes[length++] = (byte) ascii.charAt(i);
+            }
+            return this;
+        }
+
+        TextBuffer append(byte[] value) {
+            ensureCapacity(value.length);
+            System.arraycopy(value, 0, bytes, length, value.length);
+            length += value.length;
+            return this;
+        }
+
+        TextBuffer append(char c) {
+            ensureCapacity(1);
+            bytes[length++] = (byte) c;
+            return this;
+        }
+
+        TextBuffer append(long value) {
+            ensureCapacity(20);
+            if (value < 0) {
+                bytes[length++] = '-';
+                value = -value;
+            }
+            int count = 0;
+            do {
+                digits[count++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+            while (count > 0) {
+                bytes[length++] = digits[--count];
+            }
+            return this;
+        }
+
+        /**
+         * Appends value in microseconds as seconds, without trailing zeros of the fraction.
+         */
+        TextBuffer appendMicrosAsSeconds(long micros) {
+            append(micros / 1000000);
+            long fraction = micros % 1000000;
+            if (fraction != 0) {
+                int scale = 6;
+                while (fraction % 10 == 0) {
+                    fraction /= 10;
+                    --scale;
+                }
+                append('.');
+                for (long padded = fraction * 10; padded < pow10(scale); padded *= 10) {
+                    append('0');
+                }
+                append(fraction);
+            }
+            return this;
+        }
+
+        TextBuffer newLine() {
+            return append('\n');
+        }
+
+        private static long pow10(int exponent) {
+            long value = 1;
+            for (int i = 0; i < exponent; ++i) {
+                value *= 10;
+            }
+            return value;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (length + extra > bytes.length) {
+                byte[] grown = new byte[Math.max(bytes.length * 2, length + extra)];
+                System.arraycopy(bytes, 0, grown, 0, length);
+                bytes = grown;
+            }
+        }
+    }
+}
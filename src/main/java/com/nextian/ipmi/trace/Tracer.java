@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.trace;
+
+import com.nextian.ipmi.coding.protocol.PayloadType;
+import com.nextian.ipmi.sm.states.State;
+
+import java.net.InetAddress;
+
+/**
+ * Receives trace events of the connections, e.g. to emit them as Java Flight Recorder events. Events are reported
+ * synchronously on the threads sending and receiving the messages, so implementations must be thread-safe and should
+ * not block. All durations are in nanoseconds.
+ *
+ * @see Tracing#setTracer(Tracer)
+ */
+public interface Tracer {
+
+    /**
+     * Checked before every event, so a tracer can be left installed while the recording is off.
+     *
+     * @return true if the events should be reported
+     */
+    boolean isEnabled();
+
+    /**
+     * Called after a datagram was handed to the {@link com.nextian.ipmi.transport.Messenger}.
+     *
+     * @param host        address of the managed system
+     * @param payloadType type of the payload or null if it could not be determined
+     * @param tag         tag of the message or -1 if not known
+     * @param duration    time spent in {@link com.nextian.ipmi.transport.Messenger#send}
+     */
+    void messageSent(InetAddress host, PayloadType payloadType, int tag, long duration);
+
+    /**
+     * Called after a datagram received from the managed system was dispatched by the current state of the
+     * connection, including decoding and notifying the listeners.
+     *
+     * @param host                  address of the managed system
+     * @param payloadType           type of the payload or null if it could not be determined
+     * @param sessionSequenceNumber session sequence number of the message, 0 for sessionless messages
+     * @param duration              time of the dispatch
+     */
+    void messageReceived(InetAddress host, PayloadType payloadType, int sessionSequenceNumber, long duration);
+
+    /**
+     * Called after an IPMI v2.0 session header was decoded and the payload decrypted.
+     *
+     * @param payloadType           type of the payload
+     * @param sessionId             session ID of the message
+     * @param sessionSequenceNumber session sequence number of the message
+     * @param payloadLength         length of the payload in bytes
+     * @param authCodeValid         false if the integrity check failed
+     * @param duration              time of decoding, including decryption and integrity check
+     */
+    void messageDecoded(PayloadType payloadType, int sessionId, int sessionSequenceNumber, int payloadLength,
+                        boolean authCodeValid, long duration);
+
+    /**
+     * Called when a response to the request was matched by its tag.
+     *
+     * @param host          address of the managed system
+     * @param tag           tag of the request
+     * @param roundTripTime time from queueing the request to receiving the response
+     */
+    void responseMatched(InetAddress host, int tag, long roundTripTime);
+
+    /**
+     * Called when a request was removed from the queue after it timed out.
+     *
+     * @param host address of the managed system
+     * @param tag  tag of the request
+     * @param age  time from queueing the request to its removal
+     */
+    void requestTimedOut(InetAddress host, int tag, long age);
+
+    /**
+     * Called when the state machine of a connection enters a state, also when it re-enters the current one.
+     *
+     * @param host     address of the managed system
+     * @param previous state left, null when the machine is started
+     * @param current  state entered
+     * @param duration time spent in the previous state
+     */
+    void stateChanged(InetAddress host, State previous, State current, long duration);
+}
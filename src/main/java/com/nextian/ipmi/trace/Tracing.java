@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.trace;
+
+import com.nextian.ipmi.coding.protocol.AuthenticationType;
+import com.nextian.ipmi.coding.protocol.PayloadType;
+import com.nextian.ipmi.common.TypeConverter;
+
+/**
+ * Holds the {@link Tracer} of the library. No tracer is installed by default, then the instrumented code only reads
+ * a volatile field per event.
+ * <p>
+ * Instrumented code takes the tracer with {@link #getTracer()} before measuring anything:
+ * <pre>
+ * Tracer tracer = Tracing.getTracer();
+ * long start = tracer != null ? System.nanoTime() : 0;
+ * ...
+ * if (tracer != null) {
+ *     tracer.messageSent(host, payloadType, tag, System.nanoTime() - start);
+ * }
+ * </pre>
+ */
+public final class Tracing {
+
+    private static volatile Tracer tracer;
+
+    /**
+     * Installs the tracer for all connections.
+     *
+     * @param tracer tracer or null to stop tracing
+     */
+    public static void setTracer(Tracer tracer) {
+        Tracing.tracer = tracer;
+    }
+
+    /**
+     * @return installed tracer if it is enabled, null otherwise
+     */
+    public static Tracer getTracer() {
+        Tracer current = tracer;
+        return current != null && current.isEnabled() ? current : null;
+    }
+
+    /**
+     * Reads the payload type from the session header without decoding the message.
+     *
+     * @param data   encoded IPMI message
+     * @param offset offset of the session header
+     * @return type of the payload, {@link PayloadType#Ipmi} for IPMI v1.5 messages or null if it could not be
+     * determined
+     */
+    public static PayloadType getPayloadType(byte[] data, int offset) {
+        if (data == null || data.length < offset + 2) {
+            return null;
+        }
+        try {
+            if (!isRmcpPlus(data[offset])) {
+                return PayloadType.Ipmi;
+            }
+            return PayloadType.parseInt(data[offset + 1] & 0x3f);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the session sequence number from the session header without decoding the message.
+     *
+     * @param data   encoded IPMI message
+     * @param offset offset of the session header
+     * @return session sequence number or 0 if it could not be determined
+     */
+    public static int getSessionSequenceNumber(byte[] data, int offset) {
+        PayloadType payloadType = getPayloadType(data, offset);
+        if (payloadType == null) {
+            return 0;
+        }
+        int sequenceNumberOffset;
+        if (!isRmcpPlus(data[offset])) {
+            sequenceNumberOffset = offset + 1;
+        } else if (payloadType == PayloadType.Oem) {
+            sequenceNumberOffset = offset + 12;
+        } else {
+            sequenceNumberOffset = offset + 6;
+        }
+        if (data.length < sequenceNumberOffset + 4) {
+            return 0;
+        }
+        return (data[sequenceNumberOffset] & 0xff) | (data[sequenceNumberOffset + 1] & 0xff) << 8
+                | (data[sequenceNumberOffset + 2] & 0xff) << 16 | (data[sequenceNumberOffset + 3] & 0xff) << 24;
+    }
+
+    private static boolean isRmcpPlus(byte authenticationType) {
+        return AuthenticationType.parseInt(TypeConverter.byteToInt(authenticationType) & 0x0f)
+                == AuthenticationType.RMCPPlus;
+    }
+
+    private Tracing() {
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * Trace events of the connections: sending, receiving and decoding of the messages, request timeouts and state
+ * machine transitions.
+ * <p>
+ * The library does not depend on Java Flight Recorder. To record the events on JDK 11 or newer implement
+ * {@link com.nextian.ipmi.trace.Tracer} committing a {@code jdk.jfr.Event} subclass per event, return
+ * {@code EventType.getEventType(...).isEnabled()} of these events from
+ * {@link com.nextian.ipmi.trace.Tracer#isEnabled()} and install it with
+ * {@link com.nextian.ipmi.trace.Tracing#setTracer(com.nextian.ipmi.trace.Tracer)}.
+ */
+package com.nextian.ipmi.trace;
@@ -0,0 +1,393 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.transport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link Messenger} decorator simulating a lossy network, for tuning retries and timeouts. Faults are applied to the
+ * messages in both directions: messages can be lost, delayed, reordered and duplicated, and the remote hosts can be
+ * stalled (messages to and from a stalled host are lost). All faults are disabled by default.
+ * <p>
+ * Decisions are drawn from a {@link Random} with the given seed, so the same sequence of messages is always
+ * affected in the same way. Decisions are taken in the order the messages are processed, so runs are reproducible
+ * only as long as that order is: with a single thread sending and the decorated messenger delivering the responses
+ * from a single thread. With concurrent senders (e.g. several connections) the interleaving, and so which message
+ * gets which decision, varies from run to run, while the rates stay the same.
+ * <p>
+ * Delayed messages are passed on by a pool of delivery threads. Messages of one remote host in one direction always
+ * go through the same thread, so they keep their order when their delays are equal, while different hosts are
+ * delivered in parallel. Inbound messages are decoded by the listeners on these threads, so the pool should not be
+ * smaller than the number of threads the decorated messenger delivers with.
+ * <p>
+ * Usage: {@code new ConnectionManager(new FaultInjectingMessenger(new UdpMessenger(port), seed))}.
+ */
+public class FaultInjectingMessenger implements Messenger {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FaultInjectingMessenger.class);
+
+    /**
+     * Distribution of the random part of the delay.
+     */
+    public enum Jitter {
+        /**
+         * Uniformly distributed from 0 to the jitter.
+         */
+        Uniform,
+        /**
+         * Exponentially distributed with mean equal to the jitter, which gives a long tail of delayed messages.
+         */
+        Exponential
+    }
+
+    private final Messenger messenger;
+    private final Random random;
+    private final List<UdpListener> listeners = new ArrayList<UdpListener>();
+    private final ScheduledThreadPoolExecutor[] schedulers;
+    private final UdpListener receiver = new UdpListener() {
+        @Override
+        public void notifyMessage(UdpMessage message) throws InterruptedException {
+            try {
+                process(message, false);
+            } catch (IOException e) {
+                // inbound messages are not sent, so it is never thrown
+                LOGGER.error(e.getMessage(), e);
+            }
+        }
+    };
+
+    /**
+     * Time in ms until which the host is stalled.
+     */
+    private final Map<InetAddress, Long> stalledUntil = new ConcurrentHashMap<InetAddress, Long>();
+
+    private volatile double lossRate;
+    private volatile double duplicationRate;
+    private volatile double reorderRate;
+    private volatile long reorderDelay = 10;
+    private volatile long latency;
+    private volatile long jitter;
+    private volatile Jitter jitterDistribution = Jitter.Uniform;
+    private volatile double stallRate;
+    private volatile long stallDuration;
+
+    private final AtomicLong passed = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+    private final AtomicLong duplicated = new AtomicLong();
+    private final AtomicLong reordered = new AtomicLong();
+
+    /**
+     * Creates messenger delivering the delayed messages with a thread per available processor.
+     *
+     * @param messenger messenger to decorate
+     * @param seed      seed of the fault decisions
+     */
+    public FaultInjectingMessenger(Messenger messenger, long seed) {
+        this(messenger, seed, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param messenger messenger to decorate
+     * @param seed      seed of the fault decisions
+     * @param threads   number of threads delivering the delayed messages
+     */
+    public FaultInjectingMessenger(Messenger messenger, long seed, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        this.messenger = messenger;
+        this.random = new Random(seed);
+        schedulers = new ScheduledThreadPoolExecutor[threads];
+        for (int i = 0; i < threads; ++i) {
+            final String name = "FaultInjectingMessenger-" + i;
+            schedulers[i] = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, name);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        messenger.register(receiver);
+    }
+
+    /**
+     * @param lossRate probability (0-1) that a message is lost
+     */
+    public void setLossRate(double lossRate) {
+        this.lossRate = checkProbability(lossRate);
+    }
+
+    public double getLossRate() {
+        return lossRate;
+    }
+
+    /**
+     * @param duplicationRate probability (0-1) that a message is passed twice
+     */
+    public void setDuplicationRate(double duplicationRate) {
+        this.duplicationRate = checkProbability(duplicationRate);
+    }
+
+    public double getDuplicationRate() {
+        return duplicationRate;
+    }
+
+    /**
+     * Reordered message is held back for additional time, so it is overtaken by the messages passed after it.
+     *
+     * @param reorderRate  probability (0-1) that a message is reordered
+     * @param reorderDelay time in ms for which the reordered message is held back
+     */
+    public void setReordering(double reorderRate, long reorderDelay) {
+        this.reorderRate = checkProbability(reorderRate);
+        this.reorderDelay = reorderDelay;
+    }
+
+    public double getReorderRate() {
+        return reorderRate;
+    }
+
+    public long getReorderDelay() {
+        return reorderDelay;
+    }
+
+    /**
+     * Sets delay of the messages, consisting of the fixed latency and the random jitter.
+     *
+     * @param latency            fixed part of the delay in ms
+     * @param jitter             random part of the delay in ms, see {@link Jitter}
+     * @param jitterDistribution distribution of the random part
+     */
+    public void setDelay(long latency, long jitter, Jitter jitterDistribution) {
+        if (latency < 0 || jitter < 0) {
+            throw new IllegalArgumentException("Delay must not be negative");
+        }
+        this.latency = latency;
+        this.jitter = jitter;
+        this.jitterDistribution = jitterDistribution;
+    }
+
+    public long getLatency() {
+        return latency;
+    }
+
+    public long getJitter() {
+        return jitter;
+    }
+
+    public Jitter getJitterDistribution() {
+        return jitterDistribution;
+    }
+
+    /**
+     * Stalls remote host for the given time. Messages to and from the stalled host are lost.
+     *
+     * @param address  address of the host
+     * @param duration duration of the stall in ms
+     */
+    public void stall(InetAddress address, long duration) {
+        stalledUntil.put(address, System.currentTimeMillis() + duration);
+    }
+
+    /**
+     * Makes the remote hosts stall at random: each message sent to a host that is not stalled starts its stall with
+     * the given probability.
+     *
+     * @param stallRate     probability (0-1) that a message sent starts the stall of its host
+     * @param stallDuration duration of the stall in ms
+     */
+    public void setStalls(double stallRate, long stallDuration) {
+        this.stallRate = checkProbability(stallRate);
+        this.stallDuration = stallDuration;
+    }
+
+    /**
+     * @param address address of the remote host
+     * @return true if the host is stalled at the moment
+     */
+    public boolean isStalled(InetAddress address) {
+        Long until = stalledUntil.get(address);
+        if (until == null) {
+            return false;
+        }
+        if (until <= System.currentTimeMillis()) {
+            stalledUntil.remove(address);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return number of messages passed on, including duplicates
+     */
+    public long getPassedCount() {
+        return passed.get();
+    }
+
+    /**
+     * @return number of messages lost, including the messages of the stalled hosts
+     */
+    public long getLostCount() {
+        return lost.get();
+    }
+
+    public long getDuplicatedCount() {
+        return duplicated.get();
+    }
+
+    public long getReorderedCount() {
+        return reordered.get();
+    }
+
+    @Override
+    public void send(UdpMessage message) throws IOException {
+        try {
+            process(message, true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void register(UdpListener listener) {
+        synchronized (listeners) {
+            listeners.add(listener);
+        }
+    }
+
+    @Override
+    public void unregister(UdpListener listener) {
+        synchronized (listeners) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Drops the delayed messages and closes the decorated messenger.
+     */
+    @Override
+    public void closeConnection() {
+        for (ScheduledThreadPoolExecutor scheduler : schedulers) {
+            scheduler.shutdownNow();
+        }
+        messenger.unregister(receiver);
+        messenger.closeConnection();
+    }
+
+    private void process(final UdpMessage message, final boolean outbound) throws IOException, InterruptedException {
+        InetAddress address = message.getAddress();
+        int copies;
+        long[] delays;
+        synchronized (random) {
+            if (outbound && stallRate > 0 && !isStalled(address) && random.nextDouble() < stallRate) {
+                stall(address, stallDuration);
+            }
+            if (isStalled(address) || (lossRate > 0 && random.nextDouble() < lossRate)) {
+                lost.incrementAndGet();
+                return;
+            }
+            copies = duplicationRate > 0 && random.nextDouble() < duplicationRate ? 2 : 1;
+            delays = new long[copies];
+            for (int i = 0; i < copies; ++i) {
+                delays[i] = nextDelay();
+            }
+        }
+        if (copies > 1) {
+            duplicated.incrementAndGet();
+        }
+        for (final long delay : delays) {
+            passed.incrementAndGet();
+            if (delay == 0) {
+                pass(message, outbound);
+            } else {
+                try {
+                    getScheduler(address, outbound).schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                pass(message, outbound);
+                            } catch (IOException e) {
+                                LOGGER.debug("Failed to send delayed message", e);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                    }, delay, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // messenger was closed
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return delivery thread of the messages of the host in the given direction
+     */
+    private ScheduledThreadPoolExecutor getScheduler(InetAddress address, boolean outbound) {
+        int index = ((address.hashCode() * 31 + (outbound ? 1 : 0)) & Integer.MAX_VALUE) % schedulers.length;
+        return schedulers[index];
+    }
+
+    /**
+     * Must be called with the lock of {@link #random} held.
+     */
+    private long nextDelay() {
+        long delay = latency;
+        if (jitter > 0) {
+            if (jitterDistribution == Jitter.Exponential) {
+                delay += (long) (-Math.log(1 - random.nextDouble()) * jitter);
+            } else {
+                delay += (long) (random.nextDouble() * (jitter + 1));
+            }
+        }
+        if (reorderRate > 0 && random.nextDouble() < reorderRate) {
+            reordered.incrementAndGet();
+            delay += reorderDelay;
+        }
+        return delay;
+    }
+
+    private void pass(UdpMessage message, boolean outbound) throws IOException, InterruptedException {
+        if (outbound) {
+            messenger.send(message);
+        } else {
+            UdpListener[] current;
+            synchronized (listeners) {
+                current = listeners.toArray(new UdpListener[listeners.size()]);
+            }
+            // listeners are notified without the lock, so delivery threads do not wait for each other
+            for (UdpListener listener : current) {
+                listener.notifyMessage(message);
+            }
+        }
+    }
+
+    private static double checkProbability(double probability) {
+        if (probability < 0 || probability > 1) {
+            throw new IllegalArgumentException("Probability must be in range 0-1");
+        }
+        return probability;
+    }
+}
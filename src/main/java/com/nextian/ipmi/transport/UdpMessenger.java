@@ -19,6 +19,7 @@ import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Handles the UDP connection.
@@ -28,7 +29,7 @@ public class UdpMessenger extends Thread implements Messenger {
     private static final String DEFAULT_ADDRESS = "0.0.0.0";
     private static final int DEFAULTBUFFERSIZE = 512;
     private static final Logger LOGGER = LoggerFactory.getLogger(UdpMessenger.class);
-    private static int sentPackets = 0;
+    private static final AtomicInteger sentPackets = new AtomicInteger();
     private int port;
     private DatagramSocket socket;
     private List<UdpListener> listeners;
@@ -61,7 +62,7 @@ public class UdpMessenger extends Thread implements Messenger {
      *                         local port.
      */
     public UdpMessenger(int port, InetAddress address) throws SocketException {
-        sentPackets = 0;
+        sentPackets.set(0);
         this.port = port;
         listeners = new ArrayList<UdpListener>();
         bufferSize = DEFAULTBUFFERSIZE;
@@ -75,7 +76,7 @@ public class UdpMessenger extends Thread implements Messenger {
      * For debug/testing purposes only.
      */
     public static int getSentPackets() {
-        return sentPackets;
+        return sentPackets.get();
     }
 
     public int getPort() {
@@ -192,7 +193,7 @@ public class UdpMessenger extends Thread implements Messenger {
             LOGGER.debug("UDP send error: {}", e.toString());
             throw e;
         }
-        ++sentPackets;
+        sentPackets.incrementAndGet();
     }
 
 }
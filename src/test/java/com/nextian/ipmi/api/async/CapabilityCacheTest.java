@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.api.async;
+
+import com.nextian.ipmi.coding.security.CipherSuite;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.Collections;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class CapabilityCacheTest {
+
+    private static final long TTL = 300;
+
+    @Test
+    public void putExtendsEntryLife() throws Exception {
+        CapabilityCache cache = new CapabilityCache(TTL);
+        InetAddress address = InetAddress.getByName("127.0.0.1");
+
+        cache.putCipherSuites(address, Collections.singletonList(CipherSuite.getEmpty()));
+        Thread.sleep(TTL * 2 / 3);
+        cache.putCipherSuites(address, Collections.singletonList(CipherSuite.getEmpty()));
+        Thread.sleep(TTL * 2 / 3);
+
+        assertNotNull(cache.getCipherSuites(address));
+
+        Thread.sleep(TTL);
+        assertNull(cache.getCipherSuites(address));
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.api.async;
+
+import com.nextian.ipmi.api.async.messages.IpmiResponse;
+import com.nextian.ipmi.api.async.messages.IpmiResponseData;
+import com.nextian.ipmi.coding.commands.IpmiVersion;
+import com.nextian.ipmi.coding.commands.PrivilegeLevel;
+import com.nextian.ipmi.coding.commands.chassis.GetChassisStatus;
+import com.nextian.ipmi.coding.protocol.AuthenticationType;
+import com.nextian.ipmi.connection.Connection;
+import com.nextian.ipmi.sim.BmcSimulator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RequestPipelineTest {
+
+    private BmcSimulator simulator;
+    private IpmiAsyncConnector connector;
+    private ConnectionHandle handle;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new BmcSimulator();
+        connector = new IpmiAsyncConnector(simulator);
+        handle = connector.createConnection(simulator.addBmcs(1, "admin", "password").get(0),
+                Connection.getDefaultCipherSuite(), PrivilegeLevel.User);
+        connector.openSession(handle, "admin", "password", null);
+    }
+
+    @After
+    public void tearDown() {
+        connector.tearDown();
+        simulator.shutdown();
+    }
+
+    @Test
+    public void defaultWindowGetsAllResponses() throws Exception {
+        RequestPipeline pipeline = new RequestPipeline(connector, handle, RequestPipeline.DEFAULT_WINDOW, 5000);
+        List<GetChassisStatus> requests = new ArrayList<GetChassisStatus>();
+        for (int i = 0; i < 32; ++i) {
+            requests.add(new GetChassisStatus(IpmiVersion.V20, handle.getCipherSuite(), AuthenticationType.RMCPPlus));
+        }
+
+        List<IpmiResponse> responses = pipeline.execute(requests);
+
+        assertEquals(requests.size(), responses.size());
+        for (IpmiResponse response : responses) {
+            assertTrue(response instanceof IpmiResponseData);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void windowMustNotFillMessageQueue() {
+        new RequestPipeline(connector, handle, RequestPipeline.MAX_WINDOW + 1, 5000);
+    }
+}
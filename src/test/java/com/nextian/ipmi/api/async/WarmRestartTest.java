@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.api.async;
+
+import com.nextian.ipmi.api.async.messages.IpmiResponse;
+import com.nextian.ipmi.api.async.messages.IpmiResponseData;
+import com.nextian.ipmi.coding.commands.IpmiVersion;
+import com.nextian.ipmi.coding.commands.PrivilegeLevel;
+import com.nextian.ipmi.coding.commands.chassis.GetChassisStatus;
+import com.nextian.ipmi.coding.commands.chassis.GetChassisStatusResponseData;
+import com.nextian.ipmi.coding.protocol.AuthenticationType;
+import com.nextian.ipmi.coding.security.CipherSuite;
+import com.nextian.ipmi.coding.security.SecurityConstants;
+import com.nextian.ipmi.sim.BmcSimulator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class WarmRestartTest {
+
+    private static final String USERNAME = "admin";
+    private static final String PASSWORD = "password";
+    private static final byte[] KEY = "0123456789abcdef".getBytes();
+
+    private BmcSimulator simulator;
+    private InetAddress address;
+    private File snapshot;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new BmcSimulator();
+        address = simulator.addBmcs(1, USERNAME, PASSWORD).get(0);
+        snapshot = File.createTempFile("warm-restart", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        simulator.shutdown();
+        snapshot.delete();
+    }
+
+    @Test
+    public void resumedSessionSendsRequests() throws Exception {
+        IpmiAsyncConnector connector = new IpmiAsyncConnector(simulator);
+        CipherSuite cipherSuite = new CipherSuite((byte) 3, SecurityConstants.AA_RAKP_HMAC_SHA1,
+                SecurityConstants.CA_AES_CBC128, SecurityConstants.IA_HMAC_SHA1_96);
+        ConnectionHandle handle = connector.createConnection(address, cipherSuite, PrivilegeLevel.User);
+        connector.openSession(handle, USERNAME, PASSWORD, null);
+        WarmRestart warmRestart = new WarmRestart(connector, KEY);
+        warmRestart.track(handle, USERNAME, PASSWORD, null);
+        assertEquals(1, warmRestart.save(snapshot));
+        warmRestart.close();
+        connector.tearDown();
+
+        IpmiAsyncConnector restarted = new IpmiAsyncConnector(simulator);
+        final BlockingQueue<IpmiResponse> responses = new LinkedBlockingQueue<IpmiResponse>();
+        restarted.registerListener(new IpmiListener() {
+            @Override
+            public void notify(IpmiResponse response) {
+                responses.add(response);
+            }
+        });
+        WarmRestart resumed = new WarmRestart(restarted, KEY);
+        try {
+            List<ConnectionHandle> handles = resumed.restore(snapshot);
+            assertEquals(1, handles.size());
+            ConnectionHandle resumedHandle = handles.get(0);
+
+            int tag = restarted.sendMessage(resumedHandle, new GetChassisStatus(IpmiVersion.V20,
+                    resumedHandle.getCipherSuite(), AuthenticationType.RMCPPlus));
+            assertTrue(tag >= 0);
+
+            IpmiResponse response;
+            do {
+                response = responses.poll(5, TimeUnit.SECONDS);
+                assertNotNull("No response to the request sent in the resumed session", response);
+            } while (response.getTag() != tag);
+            assertTrue(response instanceof IpmiResponseData);
+            assertTrue(((IpmiResponseData) response).getResponseData() instanceof GetChassisStatusResponseData);
+        } finally {
+            resumed.close();
+            restarted.tearDown();
+        }
+    }
+}
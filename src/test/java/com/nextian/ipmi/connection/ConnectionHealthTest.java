@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.connection;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionHealthTest {
+
+    private static final long OPEN_TIME = 200;
+
+    private ConnectionHealth health;
+
+    @Before
+    public void setUp() {
+        health = new ConnectionHealth();
+        health.setFailureThreshold(1);
+        health.setOpenTime(OPEN_TIME);
+    }
+
+    @Test
+    public void pongLetsSingleTrialRequestThrough() throws Exception {
+        health.recordTimeout();
+        assertFalse(health.startRequest());
+
+        Thread.sleep(OPEN_TIME + 50);
+        health.recordPong(health.startProbe());
+
+        assertEquals(CircuitState.HalfOpen, health.getState());
+        assertTrue(health.startRequest());
+        assertFalse(health.startRequest());
+
+        health.recordResponse(1000);
+        assertEquals(CircuitState.Closed, health.getState());
+    }
+
+    @Test
+    public void failedTrialKeepsDoubledOpenTime() throws Exception {
+        health.recordTimeout();
+
+        Thread.sleep(OPEN_TIME + 50);
+        health.recordPong(health.startProbe());
+        assertTrue(health.startRequest());
+        health.recordTimeout();
+        assertEquals(CircuitState.Open, health.getState());
+
+        // Pong answered, but IPMI did not - the next probe waits twice as long
+        Thread.sleep(OPEN_TIME + 50);
+        assertEquals(-1, health.startProbe());
+        Thread.sleep(OPEN_TIME);
+        int tag = health.startProbe();
+        assertTrue(tag >= 0);
+        health.recordPong(tag);
+        assertTrue(health.startRequest());
+        health.recordTimeout();
+
+        Thread.sleep(3 * OPEN_TIME + 50);
+        assertEquals(-1, health.startProbe());
+    }
+}
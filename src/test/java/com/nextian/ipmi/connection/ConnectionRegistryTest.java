@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.connection;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionRegistryTest {
+
+    @Test
+    public void reconnectingHostDoesNotChurnOneSlot() {
+        ConnectionRegistry registry = new ConnectionRegistry();
+        Set<Integer> slots = new HashSet<Integer>();
+        for (int i = 0; i < ConnectionRegistry.MIN_FREE_SLOTS; ++i) {
+            int handle = registry.allocate();
+            assertTrue("Slot reused too early", slots.add(ConnectionRegistry.slotOf(handle)));
+            registry.remove(handle);
+        }
+        int handle = registry.allocate();
+        assertEquals("Oldest free slot is reused first", 0, ConnectionRegistry.slotOf(handle));
+        assertEquals(1, ConnectionRegistry.generationOf(handle));
+    }
+
+    @Test
+    public void staleHandleDoesNotResolveAfterChurn() {
+        ConnectionRegistry registry = new ConnectionRegistry();
+        Connection first = new Connection(null, 0, 5000, 1000);
+        int stale = registry.allocate();
+        registry.put(stale, first);
+        assertSame(first, registry.get(stale));
+        registry.remove(stale);
+
+        // More reconnects than the generation bits alone could tell apart
+        for (int i = 0; i <= ConnectionRegistry.GENERATION_MASK + 1; ++i) {
+            int handle = registry.allocate();
+            Connection connection = new Connection(null, handle, 5000, 1000);
+            registry.put(handle, connection);
+            assertNull(registry.get(stale));
+            registry.remove(handle);
+        }
+    }
+}
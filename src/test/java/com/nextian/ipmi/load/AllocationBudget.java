@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) Nextian. All rights reserved.
+ *
+ * This software is furnished under a license. Use, duplication,
+ * disclosure and all other uses are restricted to the rights
+ * specified in the written license agreement.
+ *
+ */
+package com.nextian.ipmi.load;
+
+import com.nextian.ipmi.api.async.ConnectionHandle;
+import com.nextian.ipmi.api.async.IpmiAsyncConnector;
+import com.nextian.ipmi.api.async.IpmiListener;
+import com.nextian.ipmi.api.async.messages.IpmiError;
+import com.nextian.ipmi.api.async.messages.IpmiResponse;
+import com.nextian.ipmi.coding.commands.IpmiVersion;
+import com.nextian.ipmi.coding.commands.PrivilegeLevel;
+import com.nextian.ipmi.coding.commands.chassis.GetChassisStatus;
+import com.nextian.ipmi.coding.protocol.AuthenticationType;
+import com.nextian.ipmi.common.Defaults;
+import com.nextian.ipmi.sim.VirtualBmc;
+import com.nextian.ipmi.transport.Messenger;
+import com.nextian.ipmi.transport.UdpListener;
+import com.nextian.ipmi.transport.UdpMessage;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the number of bytes allocated per request in the steady state of a session against a budget. Requests go
+ * through the whole {@link IpmiAsyncConnector} send and receive path, with an in-memory {@link Messenger} passing
+ * the datagrams to a {@link VirtualBmc}. Allocations are summed over all threads of the process with
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long[])}, less the ones made by the BMC.
+ * <p>
+ * Arguments are {@code <cipher suite>=<bytes per request>} pairs, e.g. {@code 0=4000 3=9000}. Exits with status 1
+ * when any budget is exceeded, so it fails the {@code verify} phase of the build (see {@code pom.xml}).
+ */
+public final class AllocationBudget {
+
+    private static final int WARMUP_REQUESTS = 20000;
+    private static final int MEASURED_REQUESTS = 50000;
+    private static final long RESPONSE_TIMEOUT = 5000;
+    private static final String USERNAME = "admin";
+    private static final String PASSWORD = "password";
+
+    public static void main(String[] args) throws Exception {
+        Map<Integer, Long> budgets = new LinkedHashMap<Integer, Long>();
+        for (String arg : args) {
+            String[] budget = arg.split("=");
+            if (budget.length != 2) {
+                System.err.println("Usage: AllocationBudget <cipher suite>=<bytes per request> ...");
+                System.exit(2);
+            }
+            budgets.put(Integer.parseInt(budget[0].trim()), Long.parseLong(budget[1].trim()));
+        }
+        if (budgets.isEmpty()) {
+            System.err.println("Usage: AllocationBudget <cipher suite>=<bytes per request> ...");
+            System.exit(2);
+        }
+
+        boolean exceeded = false;
+        for (Map.Entry<Integer, Long> budget : budgets.entrySet()) {
+            long allocated = measure(budget.getKey());
+            boolean ok = allocated <= budget.getValue();
+            System.out.println(String.format("Cipher suite %d: %d B/request, budget %d B/request %s", budget.getKey(),
+                    allocated, budget.getValue(), ok ? "OK" : "EXCEEDED"));
+            exceeded |= !ok;
+        }
+        System.exit(exceeded ? 1 : 0);
+    }
+
+    /**
+     * @param cipherSuite ID of the cipher suite of the session
+     * @return bytes allocated per request
+     */
+    static long measure(int cipherSuite) throws Exception {
+        VirtualBmc bmc = new VirtualBmc(InetAddress.getByName("127.1.0.1"), USERNAME, PASSWORD, null);
+        InMemoryMessenger messenger = new InMemoryMessenger(bmc);
+        IpmiAsyncConnector connector = new IpmiAsyncConnector(messenger);
+        try {
+            final Semaphore responses = new Semaphore(0);
+            final int[] errors = new int[1];
+            connector.registerListener(new IpmiListener() {
+                @Override
+                public void notify(IpmiResponse response) {
+                    if (response instanceof IpmiError) {
+                        ++errors[0];
+                    }
+                    responses.release();
+                }
+            });
+            ConnectionHandle handle = connector.createConnection(bmc.getAddress(),
+                    LoadGenerator.createCipherSuite(cipherSuite), PrivilegeLevel.User);
+            connector.openSession(handle, USERNAME, PASSWORD, null);
+            GetChassisStatus request = new GetChassisStatus(IpmiVersion.V20, handle.getCipherSuite(),
+                    AuthenticationType.RMCPPlus);
+
+            send(connector, handle, request, responses, WARMUP_REQUESTS);
+            long start = allocatedBytes();
+            long bmcStart = messenger.getBmcAllocatedBytes();
+            send(connector, handle, request, responses, MEASURED_REQUESTS);
+            long allocated = allocatedBytes() - start - (messenger.getBmcAllocatedBytes() - bmcStart);
+            if (errors[0] > 0) {
+                throw new IllegalStateException(errors[0] + " requests failed");
+            }
+            connector.closeSession(handle);
+            return allocated / MEASURED_REQUESTS;
+        } finally {
+            connector.tearDown();
+            messenger.closeConnection();
+        }
+    }
+
+    private static void send(IpmiAsyncConnector connector, ConnectionHandle handle, GetChassisStatus request,
+                             Semaphore responses, int count) throws Exception {
+        for (int i = 0; i < count; ++i) {
+            connector.sendMessage(handle, request);
+            if (!responses.tryAcquire(RESPONSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("No response in " + RESPONSE_TIMEOUT + " ms");
+            }
+        }
+    }
+
+    /**
+     * @return bytes allocated so far by the live threads
+     */
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long sum = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) {
+                sum += bytes;
+            }
+        }
+        return sum;
+    }
+
+    private static long currentThreadAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Passes the datagrams to the BMC and its responses to the listeners on a single thread, keeping count of the
+     * bytes allocated by the BMC.
+     */
+    private static final class InMemoryMessenger implements Messenger, Runnable {
+        private final VirtualBmc bmc;
+        private final BlockingQueue<byte[]> requests = new LinkedBlockingQueue<byte[]>();
+        private final List<UdpListener> listeners = new ArrayList<UdpListener>();
+        private final Thread thread;
+        private volatile long bmcAllocatedBytes;
+
+        InMemoryMessenger(VirtualBmc bmc) {
+            this.bmc = bmc;
+            thread = new Thread(this, "InMemoryMessenger");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        long getBmcAllocatedBytes() {
+            return bmcAllocatedBytes;
+        }
+
+        @Override
+        public void send(UdpMessage message) {
+            requests.add(message.getMessage());
+        }
+
+        @Override
+        public void register(UdpListener listener) {
+            synchronized (listeners) {
+                listeners.add(listener);
+            }
+        }
+
+        @Override
+        public void unregister(UdpListener listener) {
+            synchronized (listeners) {
+                listeners.remove(listener);
+            }
+        }
+
+        @Override
+        public void closeConnection() {
+            thread.interrupt();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    byte[] request = requests.take();
+                    long start = currentThreadAllocatedBytes();
+                    byte[] response = bmc.handle(request);
+                    bmcAllocatedBytes += currentThreadAllocatedBytes() - start;
+                    if (response == null) {
+                        continue;
+                    }
+                    UdpMessage message = new UdpMessage();
+                    message.setAddress(bmc.getAddress());
+                    message.setPort(Defaults.IPMI_PORT);
+                    message.setMessage(response);
+                    synchronized (listeners) {
+                        for (UdpListener listener : listeners) {
+                            listener.notifyMessage(message);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                // closed
+            }
+        }
+    }
+
+    private AllocationBudget() {
+    }
+}